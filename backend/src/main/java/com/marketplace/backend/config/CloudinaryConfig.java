@@ -3,14 +3,17 @@ package com.marketplace.backend.config;
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
 import com.marketplace.backend.service.CloudinaryService;
+import com.marketplace.backend.service.ImageProcessor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * Configuration for Cloudinary.
+ * Configuration for Cloudinary, the default image storage.
  */
 @Configuration
+@ConditionalOnProperty(name = "images.storage", havingValue = "cloudinary", matchIfMissing = true)
 public class CloudinaryConfig {
 
   @Value("${cloudinary.cloud_name}")
@@ -39,11 +42,12 @@ public class CloudinaryConfig {
   /**
    * Bean for CloudinaryService.
    *
-   * @param cloudinary the Cloudinary instance
+   * @param cloudinary     the Cloudinary instance
+   * @param imageProcessor the processor downsizing images before upload
    * @return a CloudinaryService instance
    */
   @Bean
-  public CloudinaryService cloudinaryService(Cloudinary cloudinary) {
-    return new CloudinaryService(cloudinary);
+  public CloudinaryService cloudinaryService(Cloudinary cloudinary, ImageProcessor imageProcessor) {
+    return new CloudinaryService(cloudinary, imageProcessor);
   }
 }
@@ -0,0 +1,40 @@
+package com.marketplace.backend.config;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Configuration for the HTTP client used for calls to Vipps.
+ * The JDK client keeps connections to Vipps alive and reuses them across requests, so checkouts
+ * do not pay for a new TLS handshake, and every call is bounded by the configured timeouts.
+ */
+@Configuration
+public class VippsConfig {
+
+  @Value("${vipps.connect-timeout-ms:2000}")
+  private long connectTimeoutMs;
+
+  @Value("${vipps.read-timeout-ms:10000}")
+  private long readTimeoutMs;
+
+  /**
+   * Bean for the RestTemplate used for calls to Vipps.
+   *
+   * @return a RestTemplate with a pooled HTTP client and timeouts
+   */
+  @Bean
+  public RestTemplate vippsRestTemplate() {
+    HttpClient httpClient = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+        .followRedirects(HttpClient.Redirect.NEVER)
+        .build();
+    JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+    return new RestTemplate(requestFactory);
+  }
+}
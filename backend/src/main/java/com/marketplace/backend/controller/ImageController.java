@@ -0,0 +1,99 @@
+package com.marketplace.backend.controller;
+
+import com.marketplace.backend.service.LocalImageStorage;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Controller serving images from the local image storage.
+ * Stored images never change, so responses carry a strong ETag and may be cached forever.
+ * Whole files are handed to the servlet container to send with sendfile where it supports it;
+ * other responses, including range requests, are streamed from the file by Spring.
+ */
+@RestController
+@RequestMapping("/api/images")
+@ConditionalOnProperty(name = "images.storage", havingValue = "local")
+public class ImageController {
+
+  private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+  private static final long MIN_SENDFILE_SIZE = 48 * 1024;
+  private static final String EXTENSION = ".jpg";
+
+  private final LocalImageStorage localImageStorage;
+
+  /**
+   * Constructor for ImageController.
+   *
+   * @param localImageStorage the storage the images are read from
+   */
+  public ImageController(LocalImageStorage localImageStorage) {
+    this.localImageStorage = localImageStorage;
+  }
+
+  /**
+   * Get a stored image.
+   *
+   * @param path     the public ID of the image with its extension
+   * @param request  the current request
+   * @param response the current response
+   * @return the image, 304 if the client has it already, or 404 if it does not exist
+   * @throws IOException if the file cannot be read
+   */
+  @GetMapping("/{*path}")
+  public ResponseEntity<Resource> getImage(@PathVariable String path, HttpServletRequest request,
+                                           HttpServletResponse response) throws IOException {
+    if (!path.endsWith(EXTENSION)) {
+      return ResponseEntity.notFound().build();
+    }
+    String publicId = path.substring(1, path.length() - EXTENSION.length());
+    Optional<Path> file = localImageStorage.resolve(publicId).filter(Files::isRegularFile);
+    if (file.isEmpty()) {
+      logger.debug("Image {} not found", publicId);
+      return ResponseEntity.notFound().build();
+    }
+
+    String etag = "\"" + publicId.replace('/', '-') + "\"";
+    if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+      return null;
+    }
+
+    long size = Files.size(file.get());
+    ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+        .eTag(etag)
+        .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+        .contentType(MediaType.IMAGE_JPEG);
+
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+        && request.getHeader(HttpHeaders.RANGE) == null && size >= MIN_SENDFILE_SIZE) {
+      request.setAttribute(SENDFILE_FILENAME, file.get().toString());
+      request.setAttribute(SENDFILE_START, 0L);
+      request.setAttribute(SENDFILE_END, size);
+      return ok.contentLength(size).build();
+    }
+    return ok.body(new FileSystemResource(file.get()));
+  }
+}
@@ -3,6 +3,7 @@ package com.marketplace.backend.controller;
 import com.marketplace.backend.dto.ItemCreateDto;
 import com.marketplace.backend.dto.ItemUpdateDto;
 import com.marketplace.backend.dto.ItemResponseDto;
+import com.marketplace.backend.dto.ItemSliceDto;
 import com.marketplace.backend.model.ItemStatus;
 import com.marketplace.backend.service.ItemService;
 import java.io.IOException;
@@ -11,6 +12,8 @@ import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -72,6 +75,43 @@ public class ItemController {
   }
 
 
+  /**
+   * Get a slice of the filtered items, newest first, continuing from a cursor.
+   *
+   * @param minPrice    the minimum price
+   * @param maxPrice    the maximum price
+   * @param categoryIds the category IDs
+   * @param searchQuery the search query
+   * @param latitude    the latitude
+   * @param longitude   the longitude
+   * @param distanceKm  the distance in kilometers
+   * @param cursor      the cursor from the previous slice, or none for the first slice
+   * @param size        the slice size
+   * @return the slice of items, or 400 if the cursor is invalid
+   */
+  @GetMapping("/feed")
+  public ResponseEntity<ItemSliceDto> getFilteredItemFeed(
+      @RequestParam(required = false) Double minPrice,
+      @RequestParam(required = false) Double maxPrice,
+      @RequestParam(required = false) List<Long> categoryIds,
+      @RequestParam(required = false) String searchQuery,
+      @RequestParam(required = false) BigDecimal latitude,
+      @RequestParam(required = false) BigDecimal longitude,
+      @RequestParam(required = false) Double distanceKm,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "6") int size
+  ) {
+    logger.info("Fetching filtered item feed with params: minPrice={}, maxPrice={}, categoryIds={}, search={}, location=({},{}), distance={}, cursor={}, size={}",
+        minPrice, maxPrice, categoryIds, searchQuery, latitude, longitude, distanceKm, cursor, size);
+    try {
+      return ResponseEntity.ok(itemService.getFilteredItemFeed(
+          minPrice, maxPrice, categoryIds, searchQuery, latitude, longitude, distanceKm, cursor, size));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Rejected item feed request: {}", e.getMessage());
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
   /**
    * Get an item by its id.
    *
@@ -122,6 +162,48 @@ public class ItemController {
     return ResponseEntity.ok(favorites);
   }
 
+  /**
+   * Get a slice of the current user's items, newest first, continuing from a cursor.
+   *
+   * @param cursor the cursor from the previous slice, or none for the first slice
+   * @param size   the slice size
+   * @return the slice of items, or 400 if the cursor is invalid
+   */
+  @GetMapping("/my-items/feed")
+  public ResponseEntity<ItemSliceDto> getItemFeedForCurrentUser(
+          @RequestParam(required = false) String cursor,
+          @RequestParam(defaultValue = "6") int size
+  ) {
+    logger.info("Fetching current user's item feed");
+    try {
+      return ResponseEntity.ok(itemService.getItemFeedForCurrentUser(cursor, size));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Rejected item feed request: {}", e.getMessage());
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
+  /**
+   * Get a slice of the current user's favorite items, newest first, continuing from a cursor.
+   *
+   * @param cursor the cursor from the previous slice, or none for the first slice
+   * @param size   the slice size
+   * @return the slice of items, or 400 if the cursor is invalid
+   */
+  @GetMapping("/favorites/feed")
+  public ResponseEntity<ItemSliceDto> getFavoriteItemFeedForCurrentUser(
+          @RequestParam(required = false) String cursor,
+          @RequestParam(defaultValue = "6") int size
+  ) {
+    logger.info("Fetching favorite item feed for current user");
+    try {
+      return ResponseEntity.ok(itemService.getFavoriteItemFeedForCurrentUser(cursor, size));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Rejected item feed request: {}", e.getMessage());
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
   /**
    * Toggle favorite status for an item.
    * If the item is already marked favorite, it will be removed.
@@ -150,7 +232,7 @@ public class ItemController {
    * Create a new item.
    *
    * @param dto the item to create
-   * @return the created item as a DTO
+   * @return the created item as a DTO, or 400 if an image cannot be decoded
    */
   @PostMapping("/create")
   public ResponseEntity<ItemResponseDto> createItem(
@@ -164,6 +246,9 @@ public class ItemController {
 
       logger.info("Item created successfully with ID: {}", createdItem.getId());
       return ResponseEntity.ok(createdItem);
+    } catch (IllegalArgumentException e) {
+      logger.warn("Rejected image for new item {}: {}", dto.getTitle(), e.getMessage());
+      return ResponseEntity.badRequest().build();
     } catch (Exception e) {
       logger.error("Failed to create item {}: {}", dto.getTitle(), e.getMessage(), e);
       throw e;
@@ -175,7 +260,9 @@ public class ItemController {
    *
    * @param id the ID of the item to update
    * @param dto the updated item data
-   * @return the updated item as a DTO if successful, 404 otherwise
+   * @return the updated item as a DTO if successful, 404 if not found, 400 if an image cannot
+   *     be decoded, or 409 if the item was changed concurrently, for example sold, or its status
+   *     is changed while a buyer is paying for it
    */
   @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
   public ResponseEntity<ItemResponseDto> updateItem(
@@ -195,6 +282,15 @@ public class ItemController {
         logger.warn("Item with ID {} not found for update", id);
         return ResponseEntity.notFound().build();
       }
+    } catch (OptimisticLockingFailureException e) {
+      logger.warn("Item {} was changed concurrently, update rejected", id);
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalStateException e) {
+      logger.warn("Update of item {} rejected: {}", id, e.getMessage());
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalArgumentException e) {
+      logger.warn("Rejected image for item {}: {}", id, e.getMessage());
+      return ResponseEntity.badRequest().build();
     } catch (Exception e) {
       logger.error("Failed to update item {}: {}", id, e.getMessage(), e);
       throw e;
@@ -205,7 +301,7 @@ public class ItemController {
    * Delete an item.
    *
    * @param id the ID of the item to delete
-   * @return a 204 response if successful, 404 otherwise
+   * @return a 204 response if successful, 409 if a buyer is paying for the item, 404 otherwise
    */
   @DeleteMapping("/{id}")
   public ResponseEntity<Void> deleteItem(@PathVariable Long id) {
@@ -220,6 +316,12 @@ public class ItemController {
         logger.warn("Item with ID {} not found for deletion", id);
         return ResponseEntity.notFound().build();
       }
+    } catch (OptimisticLockingFailureException e) {
+      logger.warn("Item {} was changed concurrently, deletion rejected", id);
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalStateException e) {
+      logger.warn("Deletion of item {} rejected: {}", id, e.getMessage());
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
     } catch (Exception e) {
       logger.error("Failed to delete item {}: {}", id, e.getMessage(), e);
       throw e;
@@ -231,7 +333,8 @@ public class ItemController {
    *
    * @param id the ID of the item to update
    * @param newStatus the new status of the item
-   * @return a 200 response if successful, 404 otherwise
+   * @return a 200 response if successful, 409 if the item was changed concurrently, for example
+   *     sold, or another buyer is paying for it, 404 otherwise
    */
   @PutMapping("/{id}/status")
   public ResponseEntity<Void> updateItemStatus(
@@ -250,6 +353,12 @@ public class ItemController {
         logger.warn("Item with ID {} not found for status update", id);
         return ResponseEntity.notFound().build();
       }
+    } catch (OptimisticLockingFailureException e) {
+      logger.warn("Item {} was changed concurrently, status update to {} rejected", id, newStatus);
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalStateException e) {
+      logger.warn("Status update of item {} to {} rejected: {}", id, newStatus, e.getMessage());
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
     } catch (Exception e) {
       logger.error("Failed to update status for item {}: {}", id, e.getMessage(), e);
       throw e;
@@ -1,11 +1,15 @@
 package com.marketplace.backend.controller;
 
+import com.marketplace.backend.dto.ConversationDto;
 import com.marketplace.backend.dto.MessageSendDto;
 import com.marketplace.backend.dto.MessageResponseDto;
 import com.marketplace.backend.model.ReservationStatus;
 import com.marketplace.backend.service.MessageService;
+import com.marketplace.backend.service.MessageStreamService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,9 +26,42 @@ public class MessageController {
   private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
 
   private final MessageService messageService;
+  private final MessageStreamService messageStreamService;
 
-  public MessageController(MessageService messageService) {
+  public MessageController(MessageService messageService, MessageStreamService messageStreamService) {
     this.messageService = messageService;
+    this.messageStreamService = messageStreamService;
+  }
+
+  /**
+   * Issue a short-lived token for opening the message stream from a browser. An EventSource
+   * cannot set the Authorization header, so the token is passed as the {@code token} query
+   * parameter of the stream instead.
+   */
+  @PostMapping("/stream-token")
+  public ResponseEntity<Map<String, String>> issueStreamToken() {
+    logger.info("Issuing message stream token");
+    try {
+      return ResponseEntity.ok(Map.of("token", messageStreamService.issueStreamTokenForCurrentUser()));
+    } catch (Exception e) {
+      logger.error("Failed to issue message stream token: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Open a server-sent event stream of new messages and reservation updates for the current user.
+   * Authenticated by the Authorization header or by a stream token in the {@code token} parameter.
+   */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamMessages() {
+    logger.info("Opening message stream");
+    try {
+      return messageStreamService.openForCurrentUser();
+    } catch (Exception e) {
+      logger.error("Failed to open message stream: {}", e.getMessage(), e);
+      throw e;
+    }
   }
 
   /**
@@ -81,16 +118,28 @@ public class MessageController {
 
 
   /**
-   * Get all messages between the current user and another user for a specific item.
+   * Get the messages between the current user and another user for a specific item, oldest first.
+   * Pass a limit to page through the thread: {@code beforeId} loads older messages and
+   * {@code afterId} loads newer ones. Without a limit the whole thread is returned.
+   * A limit below one is rejected.
    */
   @GetMapping("/conversation")
   public ResponseEntity<List<MessageResponseDto>> getConversation(
       @RequestParam Long itemId,
-      @RequestParam Long withUserId
+      @RequestParam Long withUserId,
+      @RequestParam(required = false) Long beforeId,
+      @RequestParam(required = false) Long afterId,
+      @RequestParam(required = false) Integer limit
   ) {
-    logger.info("Fetching conversation for item {} with user {}", itemId, withUserId);
+    logger.info("Fetching conversation for item {} with user {}, beforeId={}, afterId={}, limit={}",
+        itemId, withUserId, beforeId, afterId, limit);
+    if (limit != null && limit < 1) {
+      logger.warn("Invalid conversation page limit: {}", limit);
+      return ResponseEntity.badRequest().build();
+    }
     try {
-      List<MessageResponseDto> messages = messageService.getMessagesWithUserForItem(withUserId, itemId);
+      List<MessageResponseDto> messages =
+          messageService.getMessagesWithUserForItem(withUserId, itemId, beforeId, afterId, limit);
       return ResponseEntity.ok(messages);
     } catch (Exception e) {
       logger.error("Failed to fetch conversation: {}", e.getMessage(), e);
@@ -99,13 +148,16 @@ public class MessageController {
   }
 
   /**
-   * Get all conversations the current user is involved in.
+   * Get the conversations the current user is involved in, most recently active first.
    */
   @GetMapping("/conversations")
-  public ResponseEntity<List<Map<String, Object>>> getAllConversations() {
-    logger.info("Fetching all conversations for current user");
+  public ResponseEntity<List<ConversationDto>> getAllConversations(
+      @RequestParam(defaultValue = "0") int page,
+      @RequestParam(defaultValue = "50") int size
+  ) {
+    logger.info("Fetching conversations for current user, page={}, size={}", page, size);
     try {
-      List<Map<String, Object>> conversations = messageService.getConversationsForCurrentUser();
+      List<ConversationDto> conversations = messageService.getConversationsForCurrentUser(page, size);
       return ResponseEntity.ok(conversations);
     } catch (Exception e) {
       logger.error("Failed to fetch conversations: {}", e.getMessage(), e);
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Controller for handling payment-related requests.
@@ -83,25 +84,35 @@ public class PaymentController {
 
   /**
    * Handles the completion of the payment process.
+   * The request is released from the servlet thread while waiting for the Vipps callback and
+   * redirected as soon as the order is finalized, or to the failure page on timeout.
    *
-   * @return a response entity redirecting to the payment completion page
+   * @param orderId the ID of the order
+   * @return a future of the response entity redirecting to the payment completion page
    */
   @GetMapping("/vipps-complete")
-  public ResponseEntity<Void> vippsComplete(@RequestParam String orderId) {
+  public CompletableFuture<ResponseEntity<Void>> vippsComplete(@RequestParam String orderId) {
     logger.info("Checking payment completion for order: {}", orderId);
 
     try {
-      boolean isFinalized = paymentService.hasOrderBeenFinalized(orderId);
-      URI redirectUri = isFinalized
-          ? URI.create("http://localhost:5173/payment-complete?orderId=" + orderId)
-          : URI.create("http://localhost:5173/payment-failed");
-
-      logger.info("Redirecting to: {}", redirectUri);
-      return ResponseEntity.status(HttpStatus.FOUND).location(redirectUri).build();
+      return paymentService.awaitOrderFinalized(orderId)
+          .thenApply(isFinalized -> redirectAfterPayment(orderId, isFinalized))
+          .exceptionally(e -> {
+            logger.error("Error during payment completion check for order {}: {}", orderId, e.getMessage(), e);
+            return redirectAfterPayment(orderId, false);
+          });
     } catch (Exception e) {
       logger.error("Error during payment completion check for order {}: {}", orderId, e.getMessage(), e);
-      return ResponseEntity.status(HttpStatus.FOUND)
-          .location(URI.create("http://localhost:5173/payment-failed")).build();
+      return CompletableFuture.completedFuture(redirectAfterPayment(orderId, false));
     }
   }
+
+  private ResponseEntity<Void> redirectAfterPayment(String orderId, boolean isFinalized) {
+    URI redirectUri = isFinalized
+        ? URI.create("http://localhost:5173/payment-complete?orderId=" + orderId)
+        : URI.create("http://localhost:5173/payment-failed");
+
+    logger.info("Redirecting to: {}", redirectUri);
+    return ResponseEntity.status(HttpStatus.FOUND).location(redirectUri).build();
+  }
 }
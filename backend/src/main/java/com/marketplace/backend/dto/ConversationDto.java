@@ -0,0 +1,141 @@
+package com.marketplace.backend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO for an entry in the inbox of the current user.
+ */
+public class ConversationDto {
+  private Long itemId;
+  private String itemTitle;
+  private Long withUserId;
+  private String withUserName;
+  private String lastMessage;
+  private LocalDateTime lastSentAt;
+  private int unreadCount;
+
+  /**
+   * Default constructor.
+   */
+  public ConversationDto() {}
+
+  /**
+   * Create a ConversationDto.
+   *
+   * @param itemId       the ID of the item the conversation is about
+   * @param itemTitle    the title of the item
+   * @param withUserId   the ID of the other participant
+   * @param withUserName the name of the other participant
+   * @param lastMessage  the text of the latest message
+   * @param lastSentAt   the time the latest message was sent
+   * @param unreadCount  the number of messages the current user has not read
+   */
+  public ConversationDto(Long itemId, String itemTitle, Long withUserId, String withUserName,
+                         String lastMessage, LocalDateTime lastSentAt, int unreadCount) {
+    this.itemId = itemId;
+    this.itemTitle = itemTitle;
+    this.withUserId = withUserId;
+    this.withUserName = withUserName;
+    this.lastMessage = lastMessage;
+    this.lastSentAt = lastSentAt;
+    this.unreadCount = unreadCount;
+  }
+
+  /**
+   * Get the ID of the item the conversation is about.
+   *
+   * @return the ID of the item
+   */
+  public Long getItemId() { return itemId; }
+
+  /**
+   * Set the ID of the item the conversation is about.
+   *
+   * @param itemId the ID of the item
+   */
+  public void setItemId(Long itemId) { this.itemId = itemId; }
+
+  /**
+   * Get the title of the item.
+   *
+   * @return the title of the item
+   */
+  public String getItemTitle() { return itemTitle; }
+
+  /**
+   * Set the title of the item.
+   *
+   * @param itemTitle the title of the item
+   */
+  public void setItemTitle(String itemTitle) { this.itemTitle = itemTitle; }
+
+  /**
+   * Get the ID of the other participant.
+   *
+   * @return the ID of the other participant
+   */
+  public Long getWithUserId() { return withUserId; }
+
+  /**
+   * Set the ID of the other participant.
+   *
+   * @param withUserId the ID of the other participant
+   */
+  public void setWithUserId(Long withUserId) { this.withUserId = withUserId; }
+
+  /**
+   * Get the name of the other participant.
+   *
+   * @return the name of the other participant
+   */
+  public String getWithUserName() { return withUserName; }
+
+  /**
+   * Set the name of the other participant.
+   *
+   * @param withUserName the name of the other participant
+   */
+  public void setWithUserName(String withUserName) { this.withUserName = withUserName; }
+
+  /**
+   * Get the text of the latest message.
+   *
+   * @return the text of the latest message
+   */
+  public String getLastMessage() { return lastMessage; }
+
+  /**
+   * Set the text of the latest message.
+   *
+   * @param lastMessage the text of the latest message
+   */
+  public void setLastMessage(String lastMessage) { this.lastMessage = lastMessage; }
+
+  /**
+   * Get the time the latest message was sent.
+   *
+   * @return the time the latest message was sent
+   */
+  public LocalDateTime getLastSentAt() { return lastSentAt; }
+
+  /**
+   * Set the time the latest message was sent.
+   *
+   * @param lastSentAt the time the latest message was sent
+   */
+  public void setLastSentAt(LocalDateTime lastSentAt) { this.lastSentAt = lastSentAt; }
+
+  /**
+   * Get the number of messages the current user has not read.
+   *
+   * @return the unread count
+   */
+  public int getUnreadCount() { return unreadCount; }
+
+  /**
+   * Set the number of messages the current user has not read.
+   *
+   * @param unreadCount the unread count
+   */
+  public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+}
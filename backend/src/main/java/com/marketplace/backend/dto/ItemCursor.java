@@ -0,0 +1,81 @@
+package com.marketplace.backend.dto;
+
+import com.marketplace.backend.model.Item;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque cursor over the (published date, id) position of an item in a feed.
+ */
+public class ItemCursor {
+  private final LocalDateTime publishedDate;
+  private final Long id;
+
+  /**
+   * Create a cursor.
+   *
+   * @param publishedDate the published date of the last item returned
+   * @param id            the ID of the last item returned
+   */
+  public ItemCursor(LocalDateTime publishedDate, Long id) {
+    this.publishedDate = publishedDate;
+    this.id = id;
+  }
+
+  /**
+   * Create a cursor positioned at the given item.
+   *
+   * @param item the last item returned
+   * @return the cursor
+   */
+  public static ItemCursor fromEntity(Item item) {
+    return new ItemCursor(item.getPublishedDate(), item.getId());
+  }
+
+  /**
+   * Decode a cursor previously returned to a client.
+   *
+   * @param cursor the encoded cursor, or null for the first page
+   * @return the cursor, or null if none was given
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public static ItemCursor decode(String cursor) {
+    if (cursor == null || cursor.isBlank()) {
+      return null;
+    }
+    try {
+      String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int separator = decoded.lastIndexOf('|');
+      return new ItemCursor(LocalDateTime.parse(decoded.substring(0, separator)),
+          Long.parseLong(decoded.substring(separator + 1)));
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+    }
+  }
+
+  /**
+   * Encode the cursor for a client.
+   *
+   * @return the encoded cursor
+   */
+  public String encode() {
+    String raw = publishedDate + "|" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get the published date of the last item returned.
+   *
+   * @return the published date
+   */
+  public LocalDateTime getPublishedDate() { return publishedDate; }
+
+  /**
+   * Get the ID of the last item returned.
+   *
+   * @return the item ID
+   */
+  public Long getId() { return id; }
+}
@@ -27,6 +27,8 @@ public class ItemResponseDto {
   private Long sellerId;
   private String sellerName;
   private List<String> imageUrls;
+  private List<Long> imageIds;
+  private List<String> thumbnailUrls;
   private boolean favoritedByCurrentUser;
   private Long reservedById;
 
@@ -45,6 +47,22 @@ public class ItemResponseDto {
    * @return the ItemResponseDto
    */
   public static ItemResponseDto fromEntity(Item item, User currentUser) {
+    boolean isFavorited = currentUser != null &&
+        item.getFavoritedByUsers() != null &&
+        item.getFavoritedByUsers().contains(currentUser);
+
+    return fromEntity(item, isFavorited);
+  }
+
+  /**
+   * Create an ItemResponseDto from an Item entity with a precomputed favorite flag.
+   * Used by list endpoints so the favorites of every item do not have to be loaded.
+   *
+   * @param item                   the item entity
+   * @param favoritedByCurrentUser whether the current user has marked the item as favorite
+   * @return the ItemResponseDto
+   */
+  public static ItemResponseDto fromEntity(Item item, boolean favoritedByCurrentUser) {
     ItemResponseDto dto = new ItemResponseDto();
     dto.setId(item.getId());
     dto.setTitle(item.getTitle());
@@ -61,12 +79,15 @@ public class ItemResponseDto {
     dto.setImageUrls(item.getImages() != null
         ? item.getImages().stream().map(Image::getImageUrl).collect(Collectors.toList())
         : null);
-
-    boolean isFavorited = currentUser != null &&
-        item.getFavoritedByUsers() != null &&
-        item.getFavoritedByUsers().contains(currentUser);
-
-    dto.setFavoritedByCurrentUser(isFavorited);
+    dto.setImageIds(item.getImages() != null
+        ? item.getImages().stream().map(Image::getId).collect(Collectors.toList())
+        : null);
+    dto.setThumbnailUrls(item.getImages() != null
+        ? item.getImages().stream()
+            .map(image -> image.getThumbnailUrl() != null ? image.getThumbnailUrl() : image.getImageUrl())
+            .collect(Collectors.toList())
+        : null);
+    dto.setFavoritedByCurrentUser(favoritedByCurrentUser);
     dto.setReservedById(item.getReservedBy() != null ? item.getReservedBy().getId() : null);
 
     return dto;
@@ -79,7 +100,7 @@ public class ItemResponseDto {
    * @return the ItemResponseDto
    */
   public static ItemResponseDto fromEntity(Item item) {
-    return fromEntity(item, null);
+    return fromEntity(item, false);
   }
 
   /**
@@ -264,6 +285,35 @@ public class ItemResponseDto {
    */
   public void setImageUrls(List<String> imageUrls) { this.imageUrls = imageUrls; }
 
+  /**
+   * Get the image IDs of the item, in the same order as the image URLs.
+   *
+   * @return the image IDs of the item
+   */
+  public List<Long> getImageIds() { return imageIds; }
+
+  /**
+   * Set the image IDs of the item.
+   *
+   * @param imageIds the image IDs of the item
+   */
+  public void setImageIds(List<Long> imageIds) { this.imageIds = imageIds; }
+
+  /**
+   * Get the thumbnail URLs of the item, in the same order as the image URLs. Images without a
+   * thumbnail are listed with their full-size URL.
+   *
+   * @return the thumbnail URLs of the item
+   */
+  public List<String> getThumbnailUrls() { return thumbnailUrls; }
+
+  /**
+   * Set the thumbnail URLs of the item.
+   *
+   * @param thumbnailUrls the thumbnail URLs of the item
+   */
+  public void setThumbnailUrls(List<String> thumbnailUrls) { this.thumbnailUrls = thumbnailUrls; }
+
   /**
    * Check if the item is favorited by the current user.
    *
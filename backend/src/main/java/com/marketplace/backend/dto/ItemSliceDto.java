@@ -0,0 +1,71 @@
+package com.marketplace.backend.dto;
+
+import java.util.List;
+
+/**
+ * DTO for one slice of an item feed, with the cursor to fetch the next slice.
+ */
+public class ItemSliceDto {
+  private List<ItemResponseDto> items;
+  private String nextCursor;
+  private boolean hasNext;
+
+  /**
+   * Default constructor.
+   */
+  public ItemSliceDto() {}
+
+  /**
+   * Create an ItemSliceDto.
+   *
+   * @param items      the items in this slice
+   * @param nextCursor the cursor for the next slice, or null if this is the last one
+   */
+  public ItemSliceDto(List<ItemResponseDto> items, String nextCursor) {
+    this.items = items;
+    this.nextCursor = nextCursor;
+    this.hasNext = nextCursor != null;
+  }
+
+  /**
+   * Get the items in this slice.
+   *
+   * @return the items
+   */
+  public List<ItemResponseDto> getItems() { return items; }
+
+  /**
+   * Set the items in this slice.
+   *
+   * @param items the items
+   */
+  public void setItems(List<ItemResponseDto> items) { this.items = items; }
+
+  /**
+   * Get the cursor for the next slice.
+   *
+   * @return the cursor, or null if this is the last slice
+   */
+  public String getNextCursor() { return nextCursor; }
+
+  /**
+   * Set the cursor for the next slice.
+   *
+   * @param nextCursor the cursor, or null if this is the last slice
+   */
+  public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+
+  /**
+   * Check if there are more items after this slice.
+   *
+   * @return true if there is a next slice
+   */
+  public boolean isHasNext() { return hasNext; }
+
+  /**
+   * Set if there are more items after this slice.
+   *
+   * @param hasNext true if there is a next slice
+   */
+  public void setHasNext(boolean hasNext) { this.hasNext = hasNext; }
+}
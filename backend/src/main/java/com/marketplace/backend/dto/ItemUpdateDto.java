@@ -18,6 +18,7 @@ public class ItemUpdateDto {
   private BigDecimal longitude;
   private ItemStatus status;
   private List<MultipartFile> images;
+  private List<Long> keepImageIds;
 
   /**
    * Get the title of the item.
@@ -130,4 +131,19 @@ public class ItemUpdateDto {
    * @param images the images of the item
    */
   public void setImages(List<MultipartFile> images) { this.images = images; }
-}
\ No newline at end of file
+
+  /**
+   * Get the IDs of the existing images to keep. If null, all existing images are kept when no
+   * images are submitted, and replaced by the submitted images otherwise.
+   *
+   * @return the IDs of the images to keep
+   */
+  public List<Long> getKeepImageIds() { return keepImageIds; }
+
+  /**
+   * Set the IDs of the existing images to keep.
+   *
+   * @param keepImageIds the IDs of the images to keep
+   */
+  public void setKeepImageIds(List<Long> keepImageIds) { this.keepImageIds = keepImageIds; }
+}
@@ -0,0 +1,70 @@
+package com.marketplace.backend.dto;
+
+/**
+ * DTO for a message event pushed to a user over the message stream.
+ */
+public class MessageEventDto {
+
+  /**
+   * Event type for a new message or reservation request.
+   */
+  public static final String MESSAGE = "message";
+
+  /**
+   * Event type for a changed reservation status.
+   */
+  public static final String RESERVATION_STATUS = "reservation-status";
+
+  private String type;
+  private Long itemId;
+  private Long withUserId;
+  private MessageResponseDto message;
+
+  /**
+   * Default constructor.
+   */
+  public MessageEventDto() {}
+
+  /**
+   * Create a MessageEventDto.
+   *
+   * @param type       the event type
+   * @param itemId     the ID of the item the conversation is about
+   * @param withUserId the ID of the other participant, seen from the user receiving the event
+   * @param message    the message, seen from the user receiving the event
+   */
+  public MessageEventDto(String type, Long itemId, Long withUserId, MessageResponseDto message) {
+    this.type = type;
+    this.itemId = itemId;
+    this.withUserId = withUserId;
+    this.message = message;
+  }
+
+  /**
+   * Get the event type.
+   *
+   * @return the event type
+   */
+  public String getType() { return type; }
+
+  /**
+   * Get the ID of the item the conversation is about.
+   *
+   * @return the ID of the item
+   */
+  public Long getItemId() { return itemId; }
+
+  /**
+   * Get the ID of the other participant.
+   *
+   * @return the ID of the other participant
+   */
+  public Long getWithUserId() { return withUserId; }
+
+  /**
+   * Get the message.
+   *
+   * @return the message
+   */
+  public MessageResponseDto getMessage() { return message; }
+}
@@ -0,0 +1,146 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Model for a conversation summary.
+ * One row per item and pair of users, holding the latest message and the unread count of each
+ * side, so the inbox can be listed without reading the message history.
+ * The pair is stored with the lower user ID first.
+ */
+@Entity
+@Table(name = "Conversations",
+    uniqueConstraints = @UniqueConstraint(name = "uk_conversations_item_pair",
+        columnNames = {"item_id", "user_low_id", "user_high_id"}),
+    indexes = {
+        @Index(name = "idx_conversations_low_sent", columnList = "user_low_id, last_sent_at"),
+        @Index(name = "idx_conversations_high_sent", columnList = "user_high_id, last_sent_at")
+    })
+public class Conversation {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @ManyToOne(fetch = FetchType.LAZY, optional = false)
+  @JoinColumn(name = "item_id")
+  private Item item;
+
+  @ManyToOne(fetch = FetchType.LAZY, optional = false)
+  @JoinColumn(name = "user_low_id")
+  private User userLow;
+
+  @ManyToOne(fetch = FetchType.LAZY, optional = false)
+  @JoinColumn(name = "user_high_id")
+  private User userHigh;
+
+  @Column(name = "last_message_text", nullable = false, columnDefinition = "TEXT")
+  private String lastMessageText;
+
+  @Column(name = "last_sent_at", nullable = false)
+  private LocalDateTime lastSentAt;
+
+  @Column(name = "unread_low", nullable = false)
+  private int unreadLow;
+
+  @Column(name = "unread_high", nullable = false)
+  private int unreadHigh;
+
+  /**
+   * Default constructor.
+   */
+  public Conversation() {
+  }
+
+  /**
+   * Constructor for a conversation about an item between two users.
+   *
+   * @param item     the item the conversation is about
+   * @param userLow  the participant with the lower user ID
+   * @param userHigh the participant with the higher user ID
+   */
+  public Conversation(Item item, User userLow, User userHigh) {
+    this.item = item;
+    this.userLow = userLow;
+    this.userHigh = userHigh;
+  }
+
+  /**
+   * Get the ID of the conversation.
+   *
+   * @return the ID of the conversation
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the item the conversation is about.
+   *
+   * @return the item the conversation is about
+   */
+  public Item getItem() {
+    return item;
+  }
+
+  /**
+   * Get the participant with the lower user ID.
+   *
+   * @return the participant with the lower user ID
+   */
+  public User getUserLow() {
+    return userLow;
+  }
+
+  /**
+   * Get the participant with the higher user ID.
+   *
+   * @return the participant with the higher user ID
+   */
+  public User getUserHigh() {
+    return userHigh;
+  }
+
+  /**
+   * Get the text of the latest message.
+   *
+   * @return the text of the latest message
+   */
+  public String getLastMessageText() {
+    return lastMessageText;
+  }
+
+  /**
+   * Get the time the latest message was sent.
+   *
+   * @return the time the latest message was sent
+   */
+  public LocalDateTime getLastSentAt() {
+    return lastSentAt;
+  }
+
+  /**
+   * Set the latest message of the conversation.
+   *
+   * @param text   the text of the message
+   * @param sentAt the time the message was sent
+   */
+  public void setLastMessage(String text, LocalDateTime sentAt) {
+    this.lastMessageText = text;
+    this.lastSentAt = sentAt;
+  }
+
+  /**
+   * Count a message as unread for the given participant.
+   *
+   * @param receiverId the ID of the participant who received the message
+   */
+  public void incrementUnread(Long receiverId) {
+    if (userLow.getId().equals(receiverId)) {
+      unreadLow++;
+    } else {
+      unreadHigh++;
+    }
+  }
+}
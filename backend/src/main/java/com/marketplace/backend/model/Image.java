@@ -20,6 +20,9 @@ public class Image {
   @Column(name = "image_url", nullable = false)
   private String imageUrl;
 
+  @Column(name = "thumbnail_url")
+  private String thumbnailUrl;
+
   /**
    * Default constructor.
    */
@@ -36,6 +39,18 @@ public class Image {
     this.imageUrl = imageUrl;
   }
 
+  /**
+   * Constructor with fields and a thumbnail.
+   *
+   * @param item the associated item
+   * @param imageUrl the Cloudinary image URL
+   * @param thumbnailUrl the Cloudinary thumbnail URL, or null if there is none
+   */
+  public Image(Item item, String imageUrl, String thumbnailUrl) {
+    this(item, imageUrl);
+    this.thumbnailUrl = thumbnailUrl;
+  }
+
   public Long getId() {
     return id;
   }
@@ -59,4 +74,12 @@ public class Image {
   public void setImageUrl(String imageUrl) {
     this.imageUrl = imageUrl;
   }
+
+  public String getThumbnailUrl() {
+    return thumbnailUrl;
+  }
+
+  public void setThumbnailUrl(String thumbnailUrl) {
+    this.thumbnailUrl = thumbnailUrl;
+  }
 }
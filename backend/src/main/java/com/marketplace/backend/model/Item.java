@@ -5,12 +5,18 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import org.hibernate.annotations.UpdateTimestamp;
 
 /**
  * Model for an item.
  */
 @Entity
-@Table(name = "Items")
+@Table(name = "Items", indexes = {
+    @Index(name = "idx_items_location", columnList = "latitude, longitude"),
+    @Index(name = "idx_items_published", columnList = "published_date, id"),
+    @Index(name = "idx_items_seller_published", columnList = "seller_id, published_date, id"),
+    @Index(name = "idx_items_updated", columnList = "updated_at, id")
+})
 public class Item {
 
   @Id
@@ -53,6 +59,22 @@ public class Item {
   @JoinColumn(name = "reserved_by_id")
   private User reservedBy;
 
+  @Version
+  @Column(nullable = false)
+  private Long version;
+
+  // Only written by conditional updates, so saving an item never overwrites a claim
+  @Column(name = "purchase_claimed_by", insertable = false, updatable = false)
+  private Long purchaseClaimedBy;
+
+  @Column(name = "purchase_claim_expires_at", insertable = false, updatable = false)
+  private LocalDateTime purchaseClaimExpiresAt;
+
+  // Lets the in-memory item indexes pick up items changed on other instances
+  @UpdateTimestamp
+  @Column(name = "updated_at")
+  private LocalDateTime updatedAt;
+
 
   /**
    * Default constructor.
@@ -308,4 +330,32 @@ public class Item {
     this.reservedBy = reservedBy;
   }
 
+  /**
+   * Get the ID of the buyer paying for the item, if the claim has not expired.
+   *
+   * @param now the current time
+   * @return the ID of the buyer holding the purchase claim, or null if there is none
+   */
+  public Long getActivePurchaseClaim(LocalDateTime now) {
+    return purchaseClaimExpiresAt != null && purchaseClaimExpiresAt.isAfter(now) ? purchaseClaimedBy : null;
+  }
+
+  /**
+   * Get the version of the item, incremented on every update.
+   *
+   * @return the version of the item
+   */
+  public Long getVersion() {
+    return version;
+  }
+
+  /**
+   * Get when the item was last created or updated.
+   *
+   * @return the time of the last change of the item
+   */
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
 }
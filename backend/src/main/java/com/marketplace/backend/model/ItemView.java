@@ -7,12 +7,16 @@ import java.time.LocalDateTime;
  * Model for an item view.
  */
 @Entity
-@Table(name = "ItemViews")
+@Table(name = "ItemViews",
+    indexes = {
+        @Index(name = "idx_item_views_viewed_at", columnList = "viewed_at"),
+        @Index(name = "idx_item_views_user_viewed_at", columnList = "user_id, viewed_at")
+    })
 public class ItemView {
 
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
-  private Integer id;
+  private Long id;
 
   @ManyToOne(optional = false)
   @JoinColumn(name = "user_id")
@@ -48,7 +52,7 @@ public class ItemView {
    *
    * @return the ID of the item view
    */
-  public Integer getId() {
+  public Long getId() {
       return id;
   }
 
@@ -57,7 +61,7 @@ public class ItemView {
    *
    * @param id the ID of the item view
    */
-  public void setId(Integer id) {
+  public void setId(Long id) {
       this.id = id;
   }
 
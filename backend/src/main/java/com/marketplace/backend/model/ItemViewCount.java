@@ -0,0 +1,64 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+
+/**
+ * Model for the all-time view count of an item.
+ * Maintained by the view counters, so popularity can be read without aggregating ItemViews.
+ */
+@Entity
+@Table(name = "ItemViewCounts",
+    indexes = @Index(name = "idx_item_view_counts_total", columnList = "total_views"))
+public class ItemViewCount {
+
+  @Id
+  @Column(name = "item_id")
+  private Long itemId;
+
+  @Column(name = "total_views", nullable = false)
+  private long totalViews;
+
+  /**
+   * Default constructor.
+   */
+  public ItemViewCount() {
+  }
+
+  /**
+   * Constructor with all fields.
+   *
+   * @param itemId     the ID of the item
+   * @param totalViews the number of views of the item
+   */
+  public ItemViewCount(Long itemId, long totalViews) {
+    this.itemId = itemId;
+    this.totalViews = totalViews;
+  }
+
+  /**
+   * Get the ID of the item.
+   *
+   * @return the ID of the item
+   */
+  public Long getItemId() {
+    return itemId;
+  }
+
+  /**
+   * Get the number of views of the item.
+   *
+   * @return the number of views
+   */
+  public long getTotalViews() {
+    return totalViews;
+  }
+
+  /**
+   * Set the number of views of the item.
+   *
+   * @param totalViews the number of views
+   */
+  public void setTotalViews(long totalViews) {
+    this.totalViews = totalViews;
+  }
+}
@@ -0,0 +1,70 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Model for the number of views of an item on one day.
+ * Raw views older than the retention window are rolled up into these rows and deleted.
+ */
+@Entity
+@Table(name = "ItemViewDailyCounts",
+    uniqueConstraints = @UniqueConstraint(name = "uk_item_view_daily_counts_item_date",
+        columnNames = {"item_id", "view_date"}))
+public class ItemViewDailyCount {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "item_id", nullable = false)
+  private Long itemId;
+
+  @Column(name = "view_date", nullable = false)
+  private LocalDate viewDate;
+
+  @Column(name = "views", nullable = false)
+  private long views;
+
+  /**
+   * Default constructor.
+   */
+  public ItemViewDailyCount() {
+  }
+
+  /**
+   * Get the ID of the daily count.
+   *
+   * @return the ID of the daily count
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the ID of the item.
+   *
+   * @return the ID of the item
+   */
+  public Long getItemId() {
+    return itemId;
+  }
+
+  /**
+   * Get the day of the views.
+   *
+   * @return the day of the views
+   */
+  public LocalDate getViewDate() {
+    return viewDate;
+  }
+
+  /**
+   * Get the number of views of the item on the day.
+   *
+   * @return the number of views
+   */
+  public long getViews() {
+    return views;
+  }
+}
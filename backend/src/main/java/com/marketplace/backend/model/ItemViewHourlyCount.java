@@ -0,0 +1,71 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Model for the number of views of an item within one hour.
+ * Only the last week is kept; it backs the rolling last-day and last-week view counts.
+ */
+@Entity
+@Table(name = "ItemViewHourlyCounts",
+    uniqueConstraints = @UniqueConstraint(name = "uk_item_view_hourly_counts_item_hour",
+        columnNames = {"item_id", "hour_start"}),
+    indexes = @Index(name = "idx_item_view_hourly_counts_hour", columnList = "hour_start"))
+public class ItemViewHourlyCount {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "item_id", nullable = false)
+  private Long itemId;
+
+  @Column(name = "hour_start", nullable = false)
+  private LocalDateTime hourStart;
+
+  @Column(name = "views", nullable = false)
+  private long views;
+
+  /**
+   * Default constructor.
+   */
+  public ItemViewHourlyCount() {
+  }
+
+  /**
+   * Get the ID of the hourly count.
+   *
+   * @return the ID of the hourly count
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the ID of the item.
+   *
+   * @return the ID of the item
+   */
+  public Long getItemId() {
+    return itemId;
+  }
+
+  /**
+   * Get the start of the hour.
+   *
+   * @return the start of the hour
+   */
+  public LocalDateTime getHourStart() {
+    return hourStart;
+  }
+
+  /**
+   * Get the number of views of the item within the hour.
+   *
+   * @return the number of views
+   */
+  public long getViews() {
+    return views;
+  }
+}
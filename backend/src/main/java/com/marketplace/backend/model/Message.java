@@ -7,7 +7,9 @@ import java.time.LocalDateTime;
  * Model for a message.
  */
 @Entity
-@Table(name = "Messages")
+@Table(name = "Messages", indexes = {
+    @Index(name = "idx_messages_thread", columnList = "item_id, sender_id, receiver_id, id")
+})
 public class Message {
 
   @Id
@@ -4,7 +4,8 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "Orders")
+@Table(name = "Orders",
+    uniqueConstraints = @UniqueConstraint(name = "uk_orders_external_order_id", columnNames = "external_order_id"))
 public class Order {
 
   @Id
@@ -26,6 +27,9 @@ public class Order {
   @Column(nullable = false)
   private double price;
 
+  @Column(name = "external_order_id", length = 64)
+  private String externalOrderId;
+
 
   // Getters & setters
   public Long getId() { return id; }
@@ -43,4 +47,7 @@ public class Order {
   public void setOrderDate(LocalDateTime orderDate) { this.orderDate = orderDate; }
   public double getPrice() { return price; }
   public void setPrice(double price) { this.price = price; }
+
+  public String getExternalOrderId() { return externalOrderId; }
+  public void setExternalOrderId(String externalOrderId) { this.externalOrderId = externalOrderId; }
 }
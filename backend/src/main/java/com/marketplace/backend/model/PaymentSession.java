@@ -0,0 +1,93 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Model for the state of a payment in flight with Vipps, keyed by the order ID sent to Vipps.
+ * Sessions are kept for a limited time after they are created, long enough for the user to be
+ * redirected back after paying.
+ */
+@Entity
+@Table(name = "PaymentSessions",
+    indexes = @Index(name = "idx_payment_sessions_created_at", columnList = "created_at"))
+public class PaymentSession {
+
+  @Id
+  @Column(name = "order_id", length = 64)
+  private String orderId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(nullable = false, length = 16)
+  private PaymentSessionStatus status;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "finalized_at")
+  private LocalDateTime finalizedAt;
+
+  /**
+   * Default constructor.
+   */
+  public PaymentSession() {
+  }
+
+  /**
+   * Constructor for a pending payment session.
+   *
+   * @param orderId the ID of the order
+   * @param now     the current time
+   */
+  public PaymentSession(String orderId, LocalDateTime now) {
+    this.orderId = orderId;
+    this.status = PaymentSessionStatus.PENDING;
+    this.createdAt = now;
+  }
+
+  /**
+   * Get the ID of the order.
+   *
+   * @return the ID of the order
+   */
+  public String getOrderId() {
+    return orderId;
+  }
+
+  /**
+   * Get the status of the payment.
+   *
+   * @return the status of the payment
+   */
+  public PaymentSessionStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * Get the time the payment was initiated.
+   *
+   * @return the time the payment was initiated
+   */
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * Get the time the payment was finalized.
+   *
+   * @return the time the payment was finalized, or null if it is pending
+   */
+  public LocalDateTime getFinalizedAt() {
+    return finalizedAt;
+  }
+
+  /**
+   * Mark the payment as finalized.
+   *
+   * @param now the current time
+   */
+  public void markFinalized(LocalDateTime now) {
+    this.status = PaymentSessionStatus.FINALIZED;
+    this.finalizedAt = now;
+  }
+}
@@ -0,0 +1,9 @@
+package com.marketplace.backend.model;
+
+/**
+ * Enum for the statuses of a payment session.
+ */
+public enum PaymentSessionStatus {
+  PENDING,
+  FINALIZED
+}
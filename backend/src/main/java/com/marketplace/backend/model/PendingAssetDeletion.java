@@ -0,0 +1,107 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Model for an image asset waiting to be deleted from the image storage.
+ * Rows are written in the same transaction as the change that drops the asset, and removed once
+ * the asset is deleted, so an asset is neither deleted while still in use nor leaked.
+ */
+@Entity
+@Table(name = "PendingAssetDeletions",
+    indexes = @Index(name = "idx_pending_asset_deletions_next_attempt", columnList = "next_attempt_at"))
+public class PendingAssetDeletion {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "public_id", nullable = false)
+  private String publicId;
+
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+
+  @Column(name = "next_attempt_at", nullable = false)
+  private LocalDateTime nextAttemptAt;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "last_error", length = 500)
+  private String lastError;
+
+  /**
+   * Default constructor.
+   */
+  public PendingAssetDeletion() {
+  }
+
+  /**
+   * Constructor for a deletion to attempt right away.
+   *
+   * @param publicId the public ID of the asset to delete
+   * @param now      the current time
+   */
+  public PendingAssetDeletion(String publicId, LocalDateTime now) {
+    this.publicId = publicId;
+    this.attempts = 0;
+    this.nextAttemptAt = now;
+    this.createdAt = now;
+  }
+
+  /**
+   * Get the ID of the pending deletion.
+   *
+   * @return the ID of the pending deletion
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the public ID of the asset to delete.
+   *
+   * @return the public ID of the asset
+   */
+  public String getPublicId() {
+    return publicId;
+  }
+
+  /**
+   * Get the number of failed attempts to delete the asset.
+   *
+   * @return the number of failed attempts
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Get the time of the next attempt to delete the asset.
+   *
+   * @return the time of the next attempt
+   */
+  public LocalDateTime getNextAttemptAt() {
+    return nextAttemptAt;
+  }
+
+  /**
+   * Get the time the deletion was requested.
+   *
+   * @return the time the deletion was requested
+   */
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * Get the error of the last failed attempt.
+   *
+   * @return the error of the last attempt, or null
+   */
+  public String getLastError() {
+    return lastError;
+  }
+}
@@ -0,0 +1,83 @@
+package com.marketplace.backend.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * Model for the number of views by a user of items in one category on one day.
+ * Keeps the category interests of a user after their raw views have been rolled up and deleted.
+ */
+@Entity
+@Table(name = "UserCategoryViewDailyCounts",
+    uniqueConstraints = @UniqueConstraint(name = "uk_user_category_view_daily_counts",
+        columnNames = {"user_id", "category_id", "view_date"}),
+    indexes = @Index(name = "idx_user_category_view_daily_counts_user_date", columnList = "user_id, view_date"))
+public class UserCategoryViewDailyCount {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "user_id", nullable = false)
+  private Long userId;
+
+  @Column(name = "category_id", nullable = false)
+  private Long categoryId;
+
+  @Column(name = "view_date", nullable = false)
+  private LocalDate viewDate;
+
+  @Column(name = "views", nullable = false)
+  private long views;
+
+  /**
+   * Default constructor.
+   */
+  public UserCategoryViewDailyCount() {
+  }
+
+  /**
+   * Get the ID of the daily count.
+   *
+   * @return the ID of the daily count
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the ID of the user.
+   *
+   * @return the ID of the user
+   */
+  public Long getUserId() {
+    return userId;
+  }
+
+  /**
+   * Get the ID of the category.
+   *
+   * @return the ID of the category
+   */
+  public Long getCategoryId() {
+    return categoryId;
+  }
+
+  /**
+   * Get the day of the views.
+   *
+   * @return the day of the views
+   */
+  public LocalDate getViewDate() {
+    return viewDate;
+  }
+
+  /**
+   * Get the number of views on the day.
+   *
+   * @return the number of views
+   */
+  public long getViews() {
+    return views;
+  }
+}
@@ -0,0 +1,76 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.dto.ConversationDto;
+import com.marketplace.backend.model.Conversation;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository for handling conversation summaries.
+ */
+public interface ConversationRepository extends JpaRepository<Conversation, Long> {
+
+  /**
+   * Record a new message in an existing conversation summary.
+   *
+   * @return the number of updated rows, 0 if the conversation does not exist yet
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+    UPDATE Conversation c
+    SET c.lastMessageText = :text,
+        c.lastSentAt = :sentAt,
+        c.unreadLow = c.unreadLow + CASE WHEN c.userLow.id = :receiverId THEN 1 ELSE 0 END,
+        c.unreadHigh = c.unreadHigh + CASE WHEN c.userHigh.id = :receiverId THEN 1 ELSE 0 END
+    WHERE c.item.id = :itemId AND c.userLow.id = :userLowId AND c.userHigh.id = :userHighId
+    """)
+  int recordMessage(
+      @Param("itemId") Long itemId,
+      @Param("userLowId") Long userLowId,
+      @Param("userHighId") Long userHighId,
+      @Param("receiverId") Long receiverId,
+      @Param("text") String text,
+      @Param("sentAt") LocalDateTime sentAt
+  );
+
+  /**
+   * Reset the unread count of one participant of a conversation.
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+    UPDATE Conversation c
+    SET c.unreadLow = CASE WHEN c.userLow.id = :userId THEN 0 ELSE c.unreadLow END,
+        c.unreadHigh = CASE WHEN c.userHigh.id = :userId THEN 0 ELSE c.unreadHigh END
+    WHERE c.item.id = :itemId AND c.userLow.id = :userLowId AND c.userHigh.id = :userHighId
+    """)
+  void markRead(
+      @Param("itemId") Long itemId,
+      @Param("userLowId") Long userLowId,
+      @Param("userHighId") Long userHighId,
+      @Param("userId") Long userId
+  );
+
+  /**
+   * Find the conversations of a user, most recently active first.
+   */
+  @Query("""
+    SELECT new com.marketplace.backend.dto.ConversationDto(
+      i.id, i.title,
+      CASE WHEN lo.id = :userId THEN hi.id ELSE lo.id END,
+      CASE WHEN lo.id = :userId THEN hi.fullName ELSE lo.fullName END,
+      c.lastMessageText, c.lastSentAt,
+      CASE WHEN lo.id = :userId THEN c.unreadLow ELSE c.unreadHigh END)
+    FROM Conversation c JOIN c.item i JOIN c.userLow lo JOIN c.userHigh hi
+    WHERE lo.id = :userId OR hi.id = :userId
+    ORDER BY c.lastSentAt DESC, c.id DESC
+    """)
+  List<ConversationDto> findInbox(@Param("userId") Long userId, Pageable pageable);
+}
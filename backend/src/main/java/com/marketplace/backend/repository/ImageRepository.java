@@ -2,9 +2,19 @@ package com.marketplace.backend.repository;
 
 import com.marketplace.backend.model.Image;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 public interface ImageRepository extends JpaRepository<Image, Long> {
   List<Image> findByItemId(Long itemId);
+
+  /**
+   * Find the image and thumbnail URLs of all items of a seller.
+   *
+   * @return a list of [imageUrl, thumbnailUrl] rows, thumbnailUrl may be null
+   */
+  @Query("SELECT i.imageUrl, i.thumbnailUrl FROM Image i WHERE i.item.seller.id = :sellerId")
+  List<Object[]> findUrlsBySellerId(@Param("sellerId") Long sellerId);
 }
@@ -3,13 +3,17 @@ package com.marketplace.backend.repository;
 import com.marketplace.backend.model.Item;
 import com.marketplace.backend.model.User;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * Repository for handling item related requests.
@@ -27,6 +31,8 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
       AND (:searchQuery IS NULL OR
            LOWER(i.title) LIKE LOWER(CONCAT('%', :searchQuery, '%')) OR
            LOWER(i.description) LIKE LOWER(CONCAT('%', :searchQuery, '%')))
+      AND (:minLatitude IS NULL OR i.latitude BETWEEN :minLatitude AND :maxLatitude)
+      AND (:minLongitude IS NULL OR i.longitude BETWEEN :minLongitude AND :maxLongitude)
       AND (
            :latitude IS NULL OR 
            :longitude IS NULL OR 
@@ -49,9 +55,293 @@ public interface ItemRepository extends JpaRepository<Item, Long> {
       @Param("latitude") BigDecimal latitude,
       @Param("longitude") BigDecimal longitude,
       @Param("distanceKm") Double distanceKm,
+      @Param("minLatitude") BigDecimal minLatitude,
+      @Param("maxLatitude") BigDecimal maxLatitude,
+      @Param("minLongitude") BigDecimal minLongitude,
+      @Param("maxLongitude") BigDecimal maxLongitude,
       Pageable pageable
       );
 
+  /**
+   * Find the IDs among the given candidates that match the filters.
+   * Used when candidates have already been resolved from the search or geo index.
+   */
+  @Query("""
+    SELECT i.id FROM Item i
+    WHERE i.id IN :candidateIds
+      AND i.seller.id <> :currentUserId
+      AND i.status = com.marketplace.backend.model.ItemStatus.FOR_SALE
+      AND (:searchPattern IS NULL OR
+           LOWER(i.title) LIKE :searchPattern OR
+           LOWER(i.description) LIKE :searchPattern)
+      AND (:minPrice IS NULL OR i.price >= :minPrice)
+      AND (:maxPrice IS NULL OR i.price <= :maxPrice)
+      AND (:minLatitude IS NULL OR i.latitude BETWEEN :minLatitude AND :maxLatitude)
+      AND (:minLongitude IS NULL OR i.longitude BETWEEN :minLongitude AND :maxLongitude)
+      AND (:distanceKm IS NULL OR
+           6371 * acos(
+             cos(radians(:latitude)) * cos(radians(i.latitude)) *
+             cos(radians(i.longitude) - radians(:longitude)) +
+             sin(radians(:latitude)) * sin(radians(i.latitude))
+           ) <= :distanceKm)
+      AND (:anyCategory = true OR i.category.id IN :categoryIds)
+    """)
+  List<Long> findFilteredItemIdsAmong(
+      @Param("candidateIds") List<Long> candidateIds,
+      @Param("currentUserId") Long currentUserId,
+      @Param("searchPattern") String searchPattern,
+      @Param("minPrice") Double minPrice,
+      @Param("maxPrice") Double maxPrice,
+      @Param("anyCategory") boolean anyCategory,
+      @Param("categoryIds") List<Long> categoryIds,
+      @Param("latitude") BigDecimal latitude,
+      @Param("longitude") BigDecimal longitude,
+      @Param("distanceKm") Double distanceKm,
+      @Param("minLatitude") BigDecimal minLatitude,
+      @Param("maxLatitude") BigDecimal maxLatitude,
+      @Param("minLongitude") BigDecimal minLongitude,
+      @Param("maxLongitude") BigDecimal maxLongitude
+  );
+
+  /**
+   * Find the searchable text of items with an ID greater than the given one, ordered by ID.
+   *
+   * @return a list of [id, title, description] rows
+   */
+  @Query("SELECT i.id, i.title, i.description FROM Item i WHERE i.id > :afterId ORDER BY i.id")
+  List<Object[]> findSearchDocumentsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find the searchable text of items updated since the given time, with an ID greater than the
+   * given one, ordered by ID.
+   *
+   * @return a list of [id, title, description] rows
+   */
+  @Query("""
+    SELECT i.id, i.title, i.description FROM Item i
+    WHERE i.updatedAt >= :since AND i.id > :afterId
+    ORDER BY i.id
+    """)
+  List<Object[]> findSearchDocumentsUpdatedSince(@Param("since") LocalDateTime since,
+                                                 @Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find the IDs of items with an ID greater than the given one, ordered by ID.
+   *
+   * @return the IDs of the items
+   */
+  @Query("SELECT i.id FROM Item i WHERE i.id > :afterId ORDER BY i.id")
+  List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find the locations of items with an ID greater than the given one, ordered by ID.
+   *
+   * @return a list of [id, latitude, longitude] rows
+   */
+  @Query("SELECT i.id, i.latitude, i.longitude FROM Item i WHERE i.id > :afterId ORDER BY i.id")
+  List<Object[]> findLocationsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find the locations of items updated since the given time, with an ID greater than the given
+   * one, ordered by ID.
+   *
+   * @return a list of [id, latitude, longitude] rows
+   */
+  @Query("""
+    SELECT i.id, i.latitude, i.longitude FROM Item i
+    WHERE i.updatedAt >= :since AND i.id > :afterId
+    ORDER BY i.id
+    """)
+  List<Object[]> findLocationsUpdatedSince(@Param("since") LocalDateTime since,
+                                           @Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find what the recommendation index needs to know about items with an ID greater than the
+   * given one, ordered by ID.
+   *
+   * @return a list of [id, categoryId, sellerId, publishedDate, status] rows
+   */
+  @Query("""
+    SELECT i.id, c.id, i.seller.id, i.publishedDate, i.status
+    FROM Item i LEFT JOIN i.category c
+    WHERE i.id > :afterId
+    ORDER BY i.id
+    """)
+  List<Object[]> findRecommendationFactsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find what the recommendation index needs to know about items updated since the given time,
+   * with an ID greater than the given one, ordered by ID.
+   *
+   * @return a list of [id, categoryId, sellerId, publishedDate, status] rows
+   */
+  @Query("""
+    SELECT i.id, c.id, i.seller.id, i.publishedDate, i.status
+    FROM Item i LEFT JOIN i.category c
+    WHERE i.updatedAt >= :since AND i.id > :afterId
+    ORDER BY i.id
+    """)
+  List<Object[]> findRecommendationFactsUpdatedSince(@Param("since") LocalDateTime since,
+                                                     @Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find which of the given items the user has marked as favorite, in a single query against
+   * the favorites join table.
+   *
+   * @return the IDs of the favorited items
+   */
+  @Query("""
+    SELECT i.id FROM User u JOIN u.favoriteItems i
+    WHERE u.id = :userId AND i.id IN :itemIds
+    """)
+  List<Long> findFavoritedItemIds(@Param("userId") Long userId, @Param("itemIds") List<Long> itemIds);
+
   @Query("SELECT i FROM Item i JOIN i.favoritedByUsers u WHERE u = :user")
   Page<Item> findFavoritesByUser(@Param("user") User user, Pageable pageable);
+
+  /**
+   * Find the next slice of the filtered item feed, newest first, after the given cursor position.
+   * Text and distance candidates resolved from the item indexes can be passed as candidate IDs;
+   * otherwise the search pattern and distance predicates are evaluated in the query.
+   */
+  @Query("""
+    SELECT i FROM Item i
+    WHERE i.seller.id <> :currentUserId
+      AND i.status = com.marketplace.backend.model.ItemStatus.FOR_SALE
+      AND (:minPrice IS NULL OR i.price >= :minPrice)
+      AND (:maxPrice IS NULL OR i.price <= :maxPrice)
+      AND (:anyCategory = true OR i.category.id IN :categoryIds)
+      AND (:anyCandidate = true OR i.id IN :candidateIds)
+      AND (:searchPattern IS NULL OR
+           LOWER(i.title) LIKE :searchPattern OR
+           LOWER(i.description) LIKE :searchPattern)
+      AND (:minLatitude IS NULL OR i.latitude BETWEEN :minLatitude AND :maxLatitude)
+      AND (:minLongitude IS NULL OR i.longitude BETWEEN :minLongitude AND :maxLongitude)
+      AND (:distanceKm IS NULL OR
+           6371 * acos(
+             cos(radians(:latitude)) * cos(radians(i.latitude)) *
+             cos(radians(i.longitude) - radians(:longitude)) +
+             sin(radians(:latitude)) * sin(radians(i.latitude))
+           ) <= :distanceKm)
+      AND (:cursorDate IS NULL OR i.publishedDate < :cursorDate OR
+           (i.publishedDate = :cursorDate AND i.id < :cursorId))
+    ORDER BY i.publishedDate DESC, i.id DESC
+    """)
+  Slice<Item> findFilteredItemFeed(
+      @Param("currentUserId") Long currentUserId,
+      @Param("minPrice") Double minPrice,
+      @Param("maxPrice") Double maxPrice,
+      @Param("anyCategory") boolean anyCategory,
+      @Param("categoryIds") List<Long> categoryIds,
+      @Param("anyCandidate") boolean anyCandidate,
+      @Param("candidateIds") List<Long> candidateIds,
+      @Param("searchPattern") String searchPattern,
+      @Param("latitude") BigDecimal latitude,
+      @Param("longitude") BigDecimal longitude,
+      @Param("distanceKm") Double distanceKm,
+      @Param("minLatitude") BigDecimal minLatitude,
+      @Param("maxLatitude") BigDecimal maxLatitude,
+      @Param("minLongitude") BigDecimal minLongitude,
+      @Param("maxLongitude") BigDecimal maxLongitude,
+      @Param("cursorDate") LocalDateTime cursorDate,
+      @Param("cursorId") Long cursorId,
+      Pageable pageable
+  );
+
+  /**
+   * Find the next slice of a seller's items, newest first, after the given cursor position.
+   */
+  @Query("""
+    SELECT i FROM Item i
+    WHERE i.seller.id = :sellerId
+      AND (:cursorDate IS NULL OR i.publishedDate < :cursorDate OR
+           (i.publishedDate = :cursorDate AND i.id < :cursorId))
+    ORDER BY i.publishedDate DESC, i.id DESC
+    """)
+  Slice<Item> findSellerItemFeed(
+      @Param("sellerId") Long sellerId,
+      @Param("cursorDate") LocalDateTime cursorDate,
+      @Param("cursorId") Long cursorId,
+      Pageable pageable
+  );
+
+  /**
+   * Find the next slice of a user's favorite items, newest first, after the given cursor position.
+   */
+  @Query("""
+    SELECT i FROM Item i JOIN i.favoritedByUsers u
+    WHERE u.id = :userId
+      AND (:cursorDate IS NULL OR i.publishedDate < :cursorDate OR
+           (i.publishedDate = :cursorDate AND i.id < :cursorId))
+    ORDER BY i.publishedDate DESC, i.id DESC
+    """)
+  Slice<Item> findFavoriteItemFeed(
+      @Param("userId") Long userId,
+      @Param("cursorDate") LocalDateTime cursorDate,
+      @Param("cursorId") Long cursorId,
+      Pageable pageable
+  );
+
+  /**
+   * Mark an item as sold to a buyer if it is still for sale and not claimed by another buyer,
+   * in a single conditional update. A late payment of a buyer whose claim expired does not sell
+   * the item over the live claim of another buyer. Bumps the version, so concurrent
+   * read-modify-write updates of the item fail.
+   *
+   * @param id      the ID of the item
+   * @param buyerId the ID of the buyer
+   * @param now     the current time
+   * @return 1 if the item was sold, 0 if it was not for sale, claimed by another buyer or does
+   *     not exist
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("""
+    UPDATE Item i
+    SET i.status = com.marketplace.backend.model.ItemStatus.SOLD, i.version = i.version + 1,
+        i.updatedAt = :now, i.purchaseClaimedBy = NULL, i.purchaseClaimExpiresAt = NULL
+    WHERE i.id = :id
+      AND i.status = com.marketplace.backend.model.ItemStatus.FOR_SALE
+      AND (i.purchaseClaimedBy = :buyerId OR i.purchaseClaimExpiresAt IS NULL OR i.purchaseClaimExpiresAt <= :now)
+    """)
+  int markSoldIfForSale(@Param("id") Long id, @Param("buyerId") Long buyerId, @Param("now") LocalDateTime now);
+
+  /**
+   * Claim an item for a buyer about to pay for it, in a single conditional update.
+   * Succeeds if the item is for sale and not claimed by another buyer, or their claim expired.
+   * Bumps the version, so a seller's change of the item read before the claim fails instead of
+   * overwriting it.
+   *
+   * @param id        the ID of the item
+   * @param buyerId   the ID of the buyer
+   * @param now       the current time
+   * @param expiresAt the time the claim expires
+   * @return 1 if the item was claimed, 0 otherwise
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+    UPDATE Item i
+    SET i.purchaseClaimedBy = :buyerId, i.purchaseClaimExpiresAt = :expiresAt, i.version = i.version + 1
+    WHERE i.id = :id
+      AND i.status = com.marketplace.backend.model.ItemStatus.FOR_SALE
+      AND (i.purchaseClaimExpiresAt IS NULL OR i.purchaseClaimExpiresAt <= :now OR i.purchaseClaimedBy = :buyerId)
+    """)
+  int claimForPurchase(@Param("id") Long id, @Param("buyerId") Long buyerId,
+                       @Param("now") LocalDateTime now, @Param("expiresAt") LocalDateTime expiresAt);
+
+  /**
+   * Release the purchase claim of a buyer on an item.
+   *
+   * @param id      the ID of the item
+   * @param buyerId the ID of the buyer
+   * @return 1 if the claim was released, 0 if the buyer did not hold it
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+    UPDATE Item i
+    SET i.purchaseClaimedBy = NULL, i.purchaseClaimExpiresAt = NULL
+    WHERE i.id = :id AND i.purchaseClaimedBy = :buyerId
+    """)
+  int releasePurchaseClaim(@Param("id") Long id, @Param("buyerId") Long buyerId);
 }
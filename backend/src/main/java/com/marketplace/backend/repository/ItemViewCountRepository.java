@@ -0,0 +1,22 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.ItemViewCount;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Repository for handling all-time item view counts.
+ */
+public interface ItemViewCountRepository extends JpaRepository<ItemViewCount, Long> {
+
+  /**
+   * Find the view counts of items with an ID greater than the given one, ordered by item ID.
+   *
+   * @return a list of [itemId, totalViews] rows
+   */
+  @Query("SELECT c.itemId, c.totalViews FROM ItemViewCount c WHERE c.itemId > :afterId ORDER BY c.itemId")
+  List<Object[]> findCountsAfter(@Param("afterId") Long afterId, Pageable pageable);
+}
@@ -0,0 +1,20 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.ItemViewDailyCount;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+/**
+ * Repository for handling daily item view rollups.
+ */
+public interface ItemViewDailyCountRepository extends JpaRepository<ItemViewDailyCount, Long> {
+
+  /**
+   * Sum the rolled up views of every item.
+   *
+   * @return a list of [itemId, views] rows
+   */
+  @Query("SELECT d.itemId, SUM(d.views) FROM ItemViewDailyCount d GROUP BY d.itemId")
+  List<Object[]> sumViewsByItem();
+}
@@ -0,0 +1,34 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.ItemViewHourlyCount;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository for handling hourly item view counts.
+ */
+public interface ItemViewHourlyCountRepository extends JpaRepository<ItemViewHourlyCount, Long> {
+
+  /**
+   * Find the hourly view counts starting at or after the given time.
+   *
+   * @return a list of [itemId, hourStart, views] rows
+   */
+  @Query("SELECT h.itemId, h.hourStart, h.views FROM ItemViewHourlyCount h WHERE h.hourStart >= :since")
+  List<Object[]> findCountsSince(@Param("since") LocalDateTime since);
+
+  /**
+   * Delete the hourly view counts of hours before the given time.
+   *
+   * @return the number of deleted rows
+   */
+  @Modifying
+  @Transactional
+  @Query("DELETE FROM ItemViewHourlyCount h WHERE h.hourStart < :before")
+  int deleteCountsBefore(@Param("before") LocalDateTime before);
+}
@@ -1,30 +1,62 @@
 package com.marketplace.backend.repository;
 
 import com.marketplace.backend.model.ItemView;
-import com.marketplace.backend.model.User;
+import java.time.LocalDateTime;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 /**
  * Repository for handling item view related requests.
  */
-public interface ItemViewRepository extends JpaRepository<ItemView, Integer> {
+public interface ItemViewRepository extends JpaRepository<ItemView, Long> {
 
   /**
-   * Find the top 10 item views for a given user, ordered by the viewed date in descending order.
+   * Find the categories of the items a user viewed, newest view first.
    *
-   * @param user the user whose item views are to be found
-   * @return a list of the top 10 item views for the user
+   * @param userId the ID of the user
+   * @return the category IDs, one per view
    */
-  List<ItemView> findTop10ByUserOrderByViewedAtDesc(User user);
+  @Query("""
+    SELECT c.id FROM ItemView iv JOIN iv.item i JOIN i.category c
+    WHERE iv.user.id = :userId
+    ORDER BY iv.viewedAt DESC, iv.id DESC
+    """)
+  List<Long> findRecentCategoryIds(@Param("userId") Long userId, Pageable pageable);
 
   /**
-   * Find item IDs with their view count, ordered by most viewed.
+   * Find views with an ID greater than the given one, ordered by ID.
    *
-   * @return a list of [itemId, viewCount] pairs
+   * @return a list of [id, itemId, viewedAt] rows
    */
-  @Query("SELECT iv.item.id, COUNT(iv) FROM ItemView iv GROUP BY iv.item.id ORDER BY COUNT(iv) DESC")
-  List<Object[]> findItemIdsWithViewCountsDesc();
+  @Query("SELECT iv.id, iv.item.id, iv.viewedAt FROM ItemView iv WHERE iv.id > :afterId ORDER BY iv.id")
+  List<Object[]> findViewsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+  /**
+   * Find views older than the given time, ordered by ID.
+   *
+   * @return a list of [id, userId, itemId, categoryId, viewedAt] rows, categoryId may be null
+   */
+  @Query("""
+    SELECT iv.id, iv.user.id, i.id, c.id, iv.viewedAt
+    FROM ItemView iv JOIN iv.item i LEFT JOIN i.category c
+    WHERE iv.viewedAt < :before
+    ORDER BY iv.id
+    """)
+  List<Object[]> findViewsBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+  /**
+   * Delete the views with the given IDs.
+   *
+   * @return the number of deleted rows
+   */
+  @Modifying
+  @Transactional
+  @Query("DELETE FROM ItemView iv WHERE iv.id IN :ids")
+  int deleteViews(@Param("ids") List<Long> ids);
 }
@@ -1,9 +1,11 @@
 package com.marketplace.backend.repository;
 
+import com.marketplace.backend.dto.MessageResponseDto;
 import com.marketplace.backend.model.Message;
-import com.marketplace.backend.model.User;
-import com.marketplace.backend.model.Item;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
 
 /**
@@ -11,12 +13,60 @@ import java.util.List;
  */
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-  // Get all messages in a conversation between two users about an item
-  List<Message> findByItemAndSenderAndReceiverOrItemAndSenderAndReceiverOrderBySentAt(
-      Item item1, User sender1, User receiver1,
-      Item item2, User sender2, User receiver2
+  /**
+   * Find messages between two users about an item with an ID below the given one, newest first.
+   * Projects straight into DTOs, marking the messages sent by the first user as theirs.
+   */
+  @Query("""
+    SELECT new com.marketplace.backend.dto.MessageResponseDto(
+      m.id, CASE WHEN m.sender.id = :userId THEN true ELSE false END,
+      m.messageText, m.sentAt, m.isReservationRequest, m.reservationStatus)
+    FROM Message m
+    WHERE m.item.id = :itemId
+      AND ((m.sender.id = :userId AND m.receiver.id = :otherUserId)
+        OR (m.sender.id = :otherUserId AND m.receiver.id = :userId))
+      AND (:beforeId IS NULL OR m.id < :beforeId)
+    ORDER BY m.id DESC
+    """)
+  List<MessageResponseDto> findThreadBefore(
+      @Param("itemId") Long itemId,
+      @Param("userId") Long userId,
+      @Param("otherUserId") Long otherUserId,
+      @Param("beforeId") Long beforeId,
+      Pageable pageable
   );
 
-  // Get all messages involving a specific user
-  List<Message> findBySenderOrReceiver(User sender, User receiver);
+  /**
+   * Find messages between two users about an item with an ID above the given one, oldest first.
+   * Projects straight into DTOs, marking the messages sent by the first user as theirs.
+   */
+  @Query("""
+    SELECT new com.marketplace.backend.dto.MessageResponseDto(
+      m.id, CASE WHEN m.sender.id = :userId THEN true ELSE false END,
+      m.messageText, m.sentAt, m.isReservationRequest, m.reservationStatus)
+    FROM Message m
+    WHERE m.item.id = :itemId
+      AND ((m.sender.id = :userId AND m.receiver.id = :otherUserId)
+        OR (m.sender.id = :otherUserId AND m.receiver.id = :userId))
+      AND m.id > :afterId
+    ORDER BY m.id
+    """)
+  List<MessageResponseDto> findThreadAfter(
+      @Param("itemId") Long itemId,
+      @Param("userId") Long userId,
+      @Param("otherUserId") Long otherUserId,
+      @Param("afterId") Long afterId,
+      Pageable pageable
+  );
+
+  /**
+   * Find the participants and text of messages with an ID greater than the given one, ordered by ID.
+   *
+   * @return a list of [id, itemId, senderId, receiverId, messageText, sentAt] rows
+   */
+  @Query("""
+    SELECT m.id, m.item.id, m.sender.id, m.receiver.id, m.messageText, m.sentAt
+    FROM Message m WHERE m.id > :afterId ORDER BY m.id
+    """)
+  List<Object[]> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
 }
@@ -8,4 +8,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface OrderRepository extends JpaRepository<Order, Long> {
   Optional<Order> findTopByBuyerOrderByOrderDateDesc(User buyer);
 
+  boolean existsByExternalOrderId(String externalOrderId);
+
 }
@@ -0,0 +1,57 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.PaymentSession;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository for handling payment session entities.
+ */
+public interface PaymentSessionRepository extends JpaRepository<PaymentSession, String> {
+
+  /**
+   * Mark a session as finalized.
+   *
+   * @param orderId     the ID of the order
+   * @param finalizedAt the time the payment was finalized
+   * @return the number of updated sessions
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PaymentSession s
+      SET s.status = com.marketplace.backend.model.PaymentSessionStatus.FINALIZED, s.finalizedAt = :finalizedAt
+      WHERE s.orderId = :orderId
+      """)
+  int markFinalized(@Param("orderId") String orderId, @Param("finalizedAt") LocalDateTime finalizedAt);
+
+  /**
+   * Find which of a number of sessions are finalized.
+   *
+   * @param orderIds the IDs of the orders
+   * @return the IDs of the orders whose sessions are finalized
+   */
+  @Query("""
+      SELECT s.orderId FROM PaymentSession s
+      WHERE s.orderId IN :orderIds
+      AND s.status = com.marketplace.backend.model.PaymentSessionStatus.FINALIZED
+      """)
+  List<String> findFinalizedOrderIds(@Param("orderIds") Collection<String> orderIds);
+
+  /**
+   * Remove the sessions created before a point in time.
+   *
+   * @param before the creation time sessions are removed before
+   * @return the number of removed sessions
+   */
+  @Modifying
+  @Transactional
+  @Query("DELETE FROM PaymentSession s WHERE s.createdAt < :before")
+  int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
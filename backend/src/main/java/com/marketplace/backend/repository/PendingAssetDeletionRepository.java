@@ -0,0 +1,60 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.PendingAssetDeletion;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Repository for handling pending image asset deletions.
+ */
+public interface PendingAssetDeletionRepository extends JpaRepository<PendingAssetDeletion, Long> {
+
+  /**
+   * Find the deletions that are due, oldest first.
+   *
+   * @param now      the current time
+   * @param pageable the maximum number of deletions
+   * @return the due deletions
+   */
+  @Query("""
+      SELECT d FROM PendingAssetDeletion d
+      WHERE d.nextAttemptAt <= :now
+      ORDER BY d.nextAttemptAt, d.id
+      """)
+  List<PendingAssetDeletion> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+  /**
+   * Record a failed attempt and schedule the next one.
+   *
+   * @param id            the ID of the pending deletion
+   * @param nextAttemptAt the time of the next attempt
+   * @param lastError     the error of the failed attempt
+   * @return the number of updated rows
+   */
+  @Modifying
+  @Transactional
+  @Query("""
+      UPDATE PendingAssetDeletion d
+      SET d.attempts = d.attempts + 1, d.nextAttemptAt = :nextAttemptAt, d.lastError = :lastError
+      WHERE d.id = :id
+      """)
+  int recordFailure(@Param("id") Long id, @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                    @Param("lastError") String lastError);
+
+  /**
+   * Remove completed deletions.
+   *
+   * @param ids the IDs of the completed deletions
+   * @return the number of removed rows
+   */
+  @Modifying
+  @Transactional
+  @Query("DELETE FROM PendingAssetDeletion d WHERE d.id IN :ids")
+  int deleteCompleted(@Param("ids") List<Long> ids);
+}
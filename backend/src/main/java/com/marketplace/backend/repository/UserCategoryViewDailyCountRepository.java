@@ -0,0 +1,27 @@
+package com.marketplace.backend.repository;
+
+import com.marketplace.backend.model.UserCategoryViewDailyCount;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Repository for handling daily user category view rollups.
+ */
+public interface UserCategoryViewDailyCountRepository extends JpaRepository<UserCategoryViewDailyCount, Long> {
+
+  /**
+   * Find the rolled up category views of a user, newest day first.
+   *
+   * @param userId the ID of the user
+   * @return a list of [categoryId, views] rows
+   */
+  @Query("""
+    SELECT r.categoryId, r.views FROM UserCategoryViewDailyCount r
+    WHERE r.userId = :userId
+    ORDER BY r.viewDate DESC, r.views DESC
+    """)
+  List<Object[]> findRecentCategoryViews(@Param("userId") Long userId, Pageable pageable);
+}
@@ -2,6 +2,8 @@ package com.marketplace.backend.repository;
 
 import com.marketplace.backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.Optional;
 
 /**
@@ -11,4 +13,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
   boolean existsByEmail(String email);
   boolean existsByPhoneNumber(String phoneNumber);
   Optional<User> findByEmail(String email);
+
+  /**
+   * Find the profile picture URL of a user.
+   *
+   * @return the URL, or empty if the user does not exist or has no profile picture
+   */
+  @Query("SELECT u.profilePicture FROM User u WHERE u.id = :id")
+  Optional<String> findProfilePictureById(@Param("id") Long id);
 }
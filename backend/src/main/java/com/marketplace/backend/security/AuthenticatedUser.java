@@ -0,0 +1,79 @@
+package com.marketplace.backend.security;
+
+import com.marketplace.backend.model.Role;
+import com.marketplace.backend.model.User;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * Authenticated principal carrying the user ID and role, so services can identify the
+ * current user without looking them up by email again.
+ */
+public class AuthenticatedUser implements UserDetails {
+
+  private final Long id;
+  private final String email;
+  private final String password;
+  private final Role role;
+
+  /**
+   * Constructor for AuthenticatedUser.
+   *
+   * @param id       the user ID
+   * @param email    the email of the user
+   * @param password the password hash of the user
+   * @param role     the role of the user
+   */
+  public AuthenticatedUser(Long id, String email, String password, Role role) {
+    this.id = id;
+    this.email = email;
+    this.password = password;
+    this.role = role;
+  }
+
+  /**
+   * Create an AuthenticatedUser from a User entity.
+   *
+   * @param user the user entity
+   * @return the AuthenticatedUser
+   */
+  public static AuthenticatedUser fromEntity(User user) {
+    return new AuthenticatedUser(user.getId(), user.getEmail(), user.getPassword(), user.getRole());
+  }
+
+  /**
+   * Get the user ID.
+   *
+   * @return the user ID
+   */
+  public Long getId() {
+    return id;
+  }
+
+  /**
+   * Get the role of the user.
+   *
+   * @return the role of the user
+   */
+  public Role getRole() {
+    return role;
+  }
+
+  @Override
+  public Collection<? extends GrantedAuthority> getAuthorities() {
+    return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+  }
+
+  @Override
+  public String getPassword() {
+    return password;
+  }
+
+  @Override
+  public String getUsername() {
+    return email;
+  }
+}
@@ -0,0 +1,69 @@
+package com.marketplace.backend.security;
+
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.UserRepository;
+import java.util.Optional;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Access to the user of the current request.
+ * The ID is taken from the {@link AuthenticatedUser} principal set by {@link JwtAuthFilter},
+ * and only looked up by email when the request was authenticated some other way.
+ */
+@Component
+public class CurrentUser {
+
+  private final UserRepository userRepository;
+
+  /**
+   * Constructor for CurrentUser.
+   *
+   * @param userRepository the repository used when the principal does not carry an ID
+   */
+  public CurrentUser(UserRepository userRepository) {
+    this.userRepository = userRepository;
+  }
+
+  /**
+   * Get the email of the authenticated user.
+   *
+   * @return the email of the authenticated user
+   */
+  public String getEmail() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication.getName();
+  }
+
+  /**
+   * Find the ID of the authenticated user.
+   *
+   * @return the user ID, or empty if the user no longer exists
+   */
+  public Optional<Long> findId() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+      return Optional.of(principal.getId());
+    }
+    return userRepository.findByEmail(authentication.getName()).map(User::getId);
+  }
+
+  /**
+   * Get the ID of the authenticated user.
+   *
+   * @return the user ID
+   */
+  public Long getId() {
+    return findId().orElseThrow();
+  }
+
+  /**
+   * Get a reference to the authenticated user without loading it.
+   *
+   * @return a reference to the user entity
+   */
+  public User getReference() {
+    return userRepository.getReferenceById(getId());
+  }
+}
@@ -14,6 +14,7 @@ import org.springframework.stereotype.Service;
 public class CustomUserDetailsService implements UserDetailsService {
 
   private final UserRepository userRepo;
+  private final UserSnapshotCache userSnapshotCache;
 
   /**
    * Load user by email.
@@ -23,14 +24,22 @@ public class CustomUserDetailsService implements UserDetailsService {
    * @throws UsernameNotFoundException the username not found exception
    */
   @Override
-  public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+  public AuthenticatedUser loadUserByUsername(String email) throws UsernameNotFoundException {
     User user = userRepo.findByEmail(email)
         .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-    return org.springframework.security.core.userdetails.User.builder()
-        .username(user.getEmail())
-        .password(user.getPassword())
-        .roles(user.getRole().name())
-        .build();
+    return AuthenticatedUser.fromEntity(user);
+  }
+
+  /**
+   * Load user by email for authenticating a request, reusing a recent snapshot if there is one.
+   * Logins go through {@link #loadUserByUsername} so they always see the current password.
+   *
+   * @param email the email
+   * @return the user details
+   * @throws UsernameNotFoundException the username not found exception
+   */
+  public AuthenticatedUser loadCachedUserByUsername(String email) throws UsernameNotFoundException {
+    return userSnapshotCache.get(email, this::loadUserByUsername);
   }
 }
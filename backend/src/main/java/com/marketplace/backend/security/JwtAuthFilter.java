@@ -1,14 +1,17 @@
 package com.marketplace.backend.security;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -16,13 +19,26 @@ import java.io.IOException;
 
 /**
  * Filter for handling JWT authentication.
+ * The token is parsed once and the principal is built from its claims. The claims are checked
+ * against the cached snapshot of the user, so a token stops working soon after its user is
+ * deleted or changes role, while most requests are still authenticated without touching the
+ * database. Tokens issued before the user ID and role claims were added fall back to loading
+ * the user by email.
+ * Browsers cannot set the Authorization header on an EventSource, so the message stream also
+ * accepts a short-lived stream token in the {@code token} query parameter. Stream tokens are
+ * rejected as bearer tokens, and bearer tokens are rejected in the query parameter.
  */
 @Component
 @RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
 
+  private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
+
+  private static final String MESSAGE_STREAM_PATH = "/api/messages/stream";
+
   private final JwtService jwtService;
-  private final UserDetailsService userDetailsService;
+  private final CustomUserDetailsService userDetailsService;
+  private final TokenRevocationCache tokenRevocationCache;
 
   /**
    * Filter for handling JWT authentication.
@@ -40,29 +56,101 @@ public class JwtAuthFilter extends OncePerRequestFilter {
       throws ServletException, IOException {
 
     final String authHeader = request.getHeader("Authorization");
-    final String jwt;
-    final String username;
+    final boolean streamToken = authHeader == null && isMessageStreamRequest(request);
+    final String token;
+    if (authHeader != null && authHeader.startsWith("Bearer ")) {
+      token = authHeader.substring(7);
+    } else if (streamToken) {
+      token = request.getParameter("token");
+    } else {
+      token = null;
+    }
 
-    if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    if (token == null || SecurityContextHolder.getContext().getAuthentication() != null) {
       filterChain.doFilter(request, response);
       return;
     }
 
-    jwt = authHeader.substring(7);
-    username = jwtService.extractUsername(jwt);
-
-    if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-      UserDetails userDetails = this.userDetailsService.loadUserByUsername(username);
+    final Claims claims;
+    try {
+      claims = jwtService.parseToken(token);
+    } catch (JwtException | IllegalArgumentException e) {
+      logger.debug("Rejected JWT: {}", e.getMessage());
+      filterChain.doFilter(request, response);
+      return;
+    }
 
-      if (jwtService.isTokenValid(jwt, userDetails.getUsername())) {
-        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-            userDetails, null, userDetails.getAuthorities());
+    if (jwtService.isMessageStreamToken(claims) != streamToken) {
+      logger.debug("Rejected JWT: {} used outside its scope", streamToken ? "bearer token" : "stream token");
+      filterChain.doFilter(request, response);
+      return;
+    }
 
-        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-        SecurityContextHolder.getContext().setAuthentication(authToken);
+    AuthenticatedUser principal;
+    if (streamToken) {
+      principal = matchStreamUser(claims);
+    } else {
+      principal = jwtService.toPrincipal(claims);
+      if (principal != null) {
+        principal = matchCurrentUser(principal);
+      } else if (claims.getSubject() != null) {
+        principal = loadCachedUser(claims.getSubject());
       }
     }
 
+    if (principal != null && !tokenRevocationCache.isRevoked(principal.getId(), claims.getIssuedAt())) {
+      UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+          principal, null, principal.getAuthorities());
+
+      authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+      SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
+
     filterChain.doFilter(request, response);
   }
+
+  /**
+   * Check the principal described by a token against the cached snapshot of its user.
+   *
+   * @param principal the principal built from the token claims
+   * @return the principal, or null if the user no longer exists or has another ID or role
+   */
+  private AuthenticatedUser matchCurrentUser(AuthenticatedUser principal) {
+    AuthenticatedUser current = loadCachedUser(principal.getUsername());
+    if (current == null || !current.getId().equals(principal.getId())
+        || current.getRole() != principal.getRole()) {
+      logger.debug("Rejected JWT of user {}: the user was deleted or changed", principal.getId());
+      return null;
+    }
+    return principal;
+  }
+
+  /**
+   * Find the user a message stream token was issued to.
+   *
+   * @param claims the claims of a stream token
+   * @return the user, or null if the user no longer exists or has another ID
+   */
+  private AuthenticatedUser matchStreamUser(Claims claims) {
+    Number userId = claims.get(JwtService.USER_ID_CLAIM, Number.class);
+    AuthenticatedUser current = claims.getSubject() != null ? loadCachedUser(claims.getSubject()) : null;
+    if (current == null || userId == null || current.getId() != userId.longValue()) {
+      logger.debug("Rejected stream token of user {}: the user was deleted or changed", userId);
+      return null;
+    }
+    return current;
+  }
+
+  private boolean isMessageStreamRequest(HttpServletRequest request) {
+    return "GET".equals(request.getMethod())
+        && request.getRequestURI().equals(request.getContextPath() + MESSAGE_STREAM_PATH);
+  }
+
+  private AuthenticatedUser loadCachedUser(String email) {
+    try {
+      return userDetailsService.loadCachedUserByUsername(email);
+    } catch (UsernameNotFoundException e) {
+      return null;
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package com.marketplace.backend.security;
 
+import com.marketplace.backend.model.Role;
 import io.jsonwebtoken.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -15,6 +16,11 @@ public class JwtService {
   @Value("${jwt.secret}")
   private String SECRET_KEY;
   private static final long EXPIRATION_TIME = 1000 * 60 * 60;
+  static final String USER_ID_CLAIM = "uid";
+  static final String ROLE_CLAIM = "role";
+  static final String SCOPE_CLAIM = "scope";
+  static final String MESSAGE_STREAM_SCOPE = "message-stream";
+  private static final long STREAM_TOKEN_EXPIRATION_TIME = 1000 * 60;
 
   /**
    * Extract username from token.
@@ -54,6 +60,81 @@ public class JwtService {
         .compact();
   }
 
+  /**
+   * Generate token for an authenticated user, embedding the user ID and role so requests can be
+   * authenticated from the token alone.
+   *
+   * @param user the authenticated user
+   * @return the token
+   */
+  public String generateToken(AuthenticatedUser user) {
+    return Jwts.builder()
+        .setSubject(user.getUsername())
+        .claim(USER_ID_CLAIM, user.getId())
+        .claim(ROLE_CLAIM, user.getRole().name())
+        .setIssuedAt(new Date(System.currentTimeMillis()))
+        .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+        .signWith(SignatureAlgorithm.HS256, SECRET_KEY)
+        .compact();
+  }
+
+  /**
+   * Generate a short-lived token that only opens a message stream. Browsers cannot set headers
+   * on an EventSource, so this token is passed in the stream URL instead, where it may end up in
+   * logs; it is rejected everywhere else and expires after a minute.
+   *
+   * @param userId the ID of the user
+   * @param email  the email of the user
+   * @return the token
+   */
+  public String generateMessageStreamToken(Long userId, String email) {
+    return Jwts.builder()
+        .setSubject(email)
+        .claim(USER_ID_CLAIM, userId)
+        .claim(SCOPE_CLAIM, MESSAGE_STREAM_SCOPE)
+        .setIssuedAt(new Date(System.currentTimeMillis()))
+        .setExpiration(new Date(System.currentTimeMillis() + STREAM_TOKEN_EXPIRATION_TIME))
+        .signWith(SignatureAlgorithm.HS256, SECRET_KEY)
+        .compact();
+  }
+
+  /**
+   * Check if the claims belong to a message stream token.
+   *
+   * @param claims the claims of a parsed token
+   * @return true if the token only opens a message stream
+   */
+  public boolean isMessageStreamToken(Claims claims) {
+    return MESSAGE_STREAM_SCOPE.equals(claims.get(SCOPE_CLAIM, String.class));
+  }
+
+  /**
+   * Verify the signature and expiration of a token and return its claims.
+   *
+   * @param token the token
+   * @return the claims
+   * @throws JwtException if the token is invalid or expired
+   */
+  public Claims parseToken(String token) {
+    return extractAllClaims(token);
+  }
+
+  /**
+   * Build the principal described by the claims of a token. The claims may be stale, so the
+   * caller has to check them against the current user.
+   *
+   * @param claims the claims of a parsed token
+   * @return the principal, or null if the token does not carry the user ID and role
+   */
+  public AuthenticatedUser toPrincipal(Claims claims) {
+    Number userId = claims.get(USER_ID_CLAIM, Number.class);
+    String role = claims.get(ROLE_CLAIM, String.class);
+    if (userId == null || role == null) {
+      return null;
+    }
+    return new AuthenticatedUser(userId.longValue(), claims.getSubject(), null, Role.valueOf(role));
+  }
+
   /**
    * Validate token.
    *
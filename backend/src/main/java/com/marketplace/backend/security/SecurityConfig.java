@@ -45,6 +45,8 @@ public class SecurityConfig {
             .requestMatchers(HttpMethod.GET, "/api/payments/vipps-complete").permitAll()
             .requestMatchers(HttpMethod.GET, "/api/payments/vipps-complete/**").permitAll()
 
+            .requestMatchers(HttpMethod.GET, "/api/images/**").permitAll()
+
             .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
 
             .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
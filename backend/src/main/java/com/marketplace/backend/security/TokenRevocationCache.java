@@ -0,0 +1,40 @@
+package com.marketplace.backend.security;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory record of when each user's tokens were last revoked.
+ * Tokens issued before that moment are rejected, so credential changes take effect without
+ * looking the user up on every request.
+ */
+@Component
+public class TokenRevocationCache {
+
+  private final Map<Long, Long> notBeforeByUser = new ConcurrentHashMap<>();
+
+  /**
+   * Revoke all tokens issued to a user up to now.
+   *
+   * @param userId the ID of the user
+   */
+  public void revokeAll(Long userId) {
+    // Token issue times have second precision, so only revoke tokens from earlier seconds
+    long notBefore = System.currentTimeMillis() / 1000 * 1000;
+    notBeforeByUser.merge(userId, notBefore, Math::max);
+  }
+
+  /**
+   * Check if a token has been revoked.
+   *
+   * @param userId   the ID of the user the token was issued to
+   * @param issuedAt when the token was issued
+   * @return true if the token was issued before the user's tokens were last revoked
+   */
+  public boolean isRevoked(Long userId, Date issuedAt) {
+    Long notBefore = notBeforeByUser.get(userId);
+    return notBefore != null && (issuedAt == null || issuedAt.getTime() < notBefore);
+  }
+}
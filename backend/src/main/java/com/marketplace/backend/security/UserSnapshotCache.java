@@ -0,0 +1,72 @@
+package com.marketplace.backend.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived, bounded cache of authenticated user snapshots keyed by email.
+ * Used when authenticating requests so a user is not loaded from the database on every request.
+ * Entries expire after a few seconds and are invalidated when the user is updated.
+ */
+@Component
+public class UserSnapshotCache {
+
+  private static final long TTL_NANOS = 30_000_000_000L;
+  private static final int MAX_ENTRIES = 10_000;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private long invalidations = 0;
+
+  private record Entry(AuthenticatedUser user, long loadedAt) {}
+
+  /**
+   * Get the snapshot of a user, loading it if it is missing or expired.
+   *
+   * @param email  the email of the user
+   * @param loader the function loading the user from the database
+   * @return the user snapshot
+   */
+  public AuthenticatedUser get(String email, Function<String, AuthenticatedUser> loader) {
+    long now = System.nanoTime();
+    long invalidationsBeforeLoad;
+    synchronized (entries) {
+      Entry entry = entries.get(email);
+      if (entry != null && now - entry.loadedAt() < TTL_NANOS) {
+        return entry.user();
+      }
+      invalidationsBeforeLoad = invalidations;
+    }
+
+    AuthenticatedUser user = loader.apply(email);
+    synchronized (entries) {
+      // Don't cache a snapshot that may have been loaded before a concurrent update
+      if (invalidations == invalidationsBeforeLoad) {
+        entries.put(email, new Entry(user, now));
+      }
+    }
+    return user;
+  }
+
+  /**
+   * Remove the snapshot of a user, so the next request loads it again.
+   *
+   * @param email the email of the user
+   */
+  public void invalidate(String email) {
+    if (email == null) {
+      return;
+    }
+    synchronized (entries) {
+      entries.remove(email);
+      invalidations++;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.marketplace.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Base class of image storages, preparing images before they are stored.
+ * An upload is read once, spooling it to a temporary file while computing its hash, then
+ * downsized and handed to {@link #store(Path, String)} from disk, so an upload never holds the
+ * image content on the heap.
+ * Storing content that is already stored leaves the existing image in place, and the upload
+ * reports which images it created, so only those are deleted again when the upload is undone.
+ */
+public abstract class AbstractImageStorage implements ImageStorage {
+
+  private final ImageProcessor imageProcessor;
+
+  /**
+   * Constructor for AbstractImageStorage.
+   *
+   * @param imageProcessor the processor downsizing images before they are stored
+   */
+  protected AbstractImageStorage(ImageProcessor imageProcessor) {
+    this.imageProcessor = imageProcessor;
+  }
+
+  /**
+   * An image stored under a public ID.
+   *
+   * @param url     the URL of the image
+   * @param created true if the image was stored now, false if it was already stored
+   */
+  protected record StoredImage(String url, boolean created) {
+  }
+
+  /**
+   * Store a prepared image file under a public ID, unless an image is already stored under it.
+   *
+   * @param file     the image file, deleted by the caller afterwards
+   * @param publicId the public ID to store the image under
+   * @return the URL of the stored image and whether it was created
+   * @throws IOException if the image cannot be stored
+   */
+  protected abstract StoredImage store(Path file, String publicId) throws IOException;
+
+  @Override
+  public UploadedImage uploadImage(Long userId, MultipartFile file) throws IOException {
+    return upload(userId, file, false);
+  }
+
+  @Override
+  public UploadedImage uploadItemImage(Long userId, MultipartFile file) throws IOException {
+    return upload(userId, file, true);
+  }
+
+  private UploadedImage upload(Long userId, MultipartFile file, boolean withThumbnail) throws IOException {
+    Path spooled = Files.createTempFile("image-upload-", ".tmp");
+    ImageProcessor.ProcessedImage processed = null;
+    try {
+      MessageDigest digest = ImageStorage.newDigest();
+      try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+        Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+      }
+      String publicId = ImageStorage.publicIdFor(userId, digest);
+      processed = imageProcessor.process(spooled, withThumbnail);
+
+      StoredImage image = store(processed.image(), publicId);
+      List<String> created = new ArrayList<>(2);
+      if (image.created()) {
+        created.add(publicId);
+      }
+      if (processed.thumbnail() == null) {
+        return new UploadedImage(image.url(), null, created);
+      }
+      try {
+        StoredImage thumbnail = store(processed.thumbnail(), publicId + THUMBNAIL_SUFFIX);
+        if (thumbnail.created()) {
+          created.add(publicId + THUMBNAIL_SUFFIX);
+        }
+        return new UploadedImage(image.url(), thumbnail.url(), created);
+      } catch (IOException | RuntimeException e) {
+        if (image.created()) {
+          deleteImage(publicId);
+        }
+        throw e;
+      }
+    } finally {
+      Files.deleteIfExists(spooled);
+      if (processed != null) {
+        Files.deleteIfExists(processed.image());
+        if (processed.thumbnail() != null) {
+          Files.deleteIfExists(processed.thumbnail());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.PendingAssetDeletion;
+import com.marketplace.backend.repository.ImageRepository;
+import com.marketplace.backend.repository.PendingAssetDeletionRepository;
+import com.marketplace.backend.repository.UserRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Outbox of image assets to delete from the image storage.
+ * Callers enqueue the assets an entity change drops within the transaction of that change, and a
+ * background worker deletes them in batches. Failed deletions are retried with exponential
+ * backoff, so remote deletes never add to request latency and assets are not leaked when the
+ * storage is unavailable.
+ * Images are content addressed per user, so identical content shared by several items or a
+ * profile picture is one asset. An asset is only deleted once no item image or profile picture
+ * of its owner references it anymore; this is checked when the deletion is due rather than when
+ * it is enqueued, so a reference added in between, such as the same content uploaded again,
+ * also keeps the asset.
+ */
+@Component
+public class AssetDeletionOutbox {
+
+  private static final Logger logger = LoggerFactory.getLogger(AssetDeletionOutbox.class);
+
+  private static final int BATCH_SIZE = 100;
+  private static final int MAX_BATCHES_PER_DRAIN = 20;
+  static final Duration INITIAL_BACKOFF = Duration.ofSeconds(30);
+  static final Duration MAX_BACKOFF = Duration.ofHours(6);
+  private static final int WARN_AFTER_ATTEMPTS = 8;
+  private static final int MAX_ERROR_LENGTH = 500;
+
+  private final PendingAssetDeletionRepository pendingAssetDeletionRepository;
+  private final ImageStorage imageStorage;
+  private final ImageRepository imageRepository;
+  private final UserRepository userRepository;
+
+  /**
+   * Constructor for AssetDeletionOutbox.
+   *
+   * @param pendingAssetDeletionRepository the repository for pending deletions
+   * @param imageStorage                   the storage the assets are deleted from
+   * @param imageRepository                the repository for item images still referencing assets
+   * @param userRepository                 the repository for profile pictures still referencing assets
+   */
+  public AssetDeletionOutbox(PendingAssetDeletionRepository pendingAssetDeletionRepository,
+                             ImageStorage imageStorage, ImageRepository imageRepository,
+                             UserRepository userRepository) {
+    this.pendingAssetDeletionRepository = pendingAssetDeletionRepository;
+    this.imageStorage = imageStorage;
+    this.imageRepository = imageRepository;
+    this.userRepository = userRepository;
+  }
+
+  /**
+   * Enqueue assets for deletion. Joins the current transaction, so the assets are only deleted
+   * if the change dropping them commits.
+   *
+   * @param publicIds the public IDs of the assets to delete
+   */
+  public void enqueue(Collection<String> publicIds) {
+    if (publicIds.isEmpty()) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    pendingAssetDeletionRepository.saveAll(publicIds.stream()
+        .map(publicId -> new PendingAssetDeletion(publicId, now))
+        .toList());
+    logger.debug("Enqueued {} assets for deletion", publicIds.size());
+  }
+
+  /**
+   * Delete the assets that are due.
+   *
+   * @return the number of deleted assets
+   */
+  @Scheduled(fixedDelayString = "${asset-deletions.drain-interval-ms:5000}")
+  public synchronized int drain() {
+    int deleted = 0;
+    try {
+      for (int i = 0; i < MAX_BATCHES_PER_DRAIN; i++) {
+        List<PendingAssetDeletion> due = pendingAssetDeletionRepository.findDue(LocalDateTime.now(),
+            PageRequest.ofSize(BATCH_SIZE));
+        if (due.isEmpty()) {
+          break;
+        }
+        deleted += deleteBatch(due);
+        if (due.size() < BATCH_SIZE) {
+          break;
+        }
+      }
+      if (deleted > 0) {
+        logger.info("Deleted {} image assets", deleted);
+      }
+      return deleted;
+    } catch (Exception e) {
+      logger.error("Failed to drain asset deletions after {} assets: {}", deleted, e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  private int deleteBatch(List<PendingAssetDeletion> due) {
+    List<Long> completed = new ArrayList<>(due.size());
+    Set<String> referenced = findReferenced(due);
+    for (PendingAssetDeletion deletion : due) {
+      if (referenced.contains(deletion.getPublicId())) {
+        logger.debug("Keeping asset {}, it is still referenced", deletion.getPublicId());
+        completed.add(deletion.getId());
+        continue;
+      }
+      try {
+        imageStorage.deleteImage(deletion.getPublicId());
+        completed.add(deletion.getId());
+      } catch (Exception e) {
+        int attempts = deletion.getAttempts() + 1;
+        LocalDateTime next = LocalDateTime.now().plus(backoff(attempts));
+        String error = String.valueOf(e.getMessage());
+        pendingAssetDeletionRepository.recordFailure(deletion.getId(), next,
+            error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error);
+        if (attempts >= WARN_AFTER_ATTEMPTS) {
+          logger.warn("Deleting asset {} failed {} times, retrying at {}: {}",
+              deletion.getPublicId(), attempts, next, error);
+        } else {
+          logger.debug("Deleting asset {} failed, retrying at {}: {}", deletion.getPublicId(), next, error);
+        }
+      }
+    }
+    if (!completed.isEmpty()) {
+      pendingAssetDeletionRepository.deleteCompleted(completed);
+    }
+    return completed.size();
+  }
+
+  /**
+   * Find the assets of pending deletions that item images or profile pictures still reference.
+   * Only the images and profile picture of each asset's owner can reference it.
+   *
+   * @param deletions the pending deletions
+   * @return the public IDs of the referenced assets
+   */
+  private Set<String> findReferenced(List<PendingAssetDeletion> deletions) {
+    Map<Long, Set<String>> referencedByOwner = new HashMap<>();
+    Set<String> referenced = new HashSet<>();
+    for (PendingAssetDeletion deletion : deletions) {
+      Long ownerId = ImageStorage.ownerOf(deletion.getPublicId());
+      if (ownerId != null
+          && referencedByOwner.computeIfAbsent(ownerId, this::findReferencedBy).contains(deletion.getPublicId())) {
+        referenced.add(deletion.getPublicId());
+      }
+    }
+    return referenced;
+  }
+
+  private Set<String> findReferencedBy(Long userId) {
+    Set<String> publicIds = new HashSet<>();
+    for (Object[] urls : imageRepository.findUrlsBySellerId(userId)) {
+      addPublicIdOf((String) urls[0], publicIds);
+      addPublicIdOf((String) urls[1], publicIds);
+    }
+    userRepository.findProfilePictureById(userId).ifPresent(url -> addPublicIdOf(url, publicIds));
+    return publicIds;
+  }
+
+  private void addPublicIdOf(String url, Set<String> publicIds) {
+    if (url == null || url.isEmpty()) {
+      return;
+    }
+    try {
+      publicIds.add(imageStorage.publicIdOf(url));
+    } catch (IllegalArgumentException e) {
+      logger.debug("Ignoring image URL of another storage: {}", url);
+    }
+  }
+
+  /**
+   * Get the delay before the next attempt after a number of failed attempts.
+   *
+   * @param attempts the number of failed attempts
+   * @return the delay, doubling with every attempt up to {@link #MAX_BACKOFF}
+   */
+  static Duration backoff(int attempts) {
+    int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+    Duration delay = INITIAL_BACKOFF.multipliedBy(1L << exponent);
+    return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+  }
+}
@@ -4,12 +4,14 @@ import com.marketplace.backend.dto.RegisterRequestDto;
 import com.marketplace.backend.model.User;
 import com.marketplace.backend.model.Role;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.AuthenticatedUser;
 import com.marketplace.backend.security.JwtService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -54,7 +56,7 @@ public class AuthService {
 
     userRepository.save(user);
 
-    String token = jwtService.generateToken(user.getEmail());
+    String token = jwtService.generateToken(AuthenticatedUser.fromEntity(user));
     logger.info("User registered successfully: {}", user.getEmail());
 
     return token;
@@ -70,11 +72,11 @@ public class AuthService {
   public String loginUser(String email, String password) {
     logger.info("Authenticating user: {}", email);
 
-    authenticationManager.authenticate(
+    Authentication authentication = authenticationManager.authenticate(
         new UsernamePasswordAuthenticationToken(email, password)
     );
 
-    String token = jwtService.generateToken(email);
+    String token = jwtService.generateToken((AuthenticatedUser) authentication.getPrincipal());
     logger.info("User authenticated successfully: {}", email);
 
     return token;
@@ -2,68 +2,73 @@ package com.marketplace.backend.service;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import org.springframework.context.annotation.Primary;
-import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import java.nio.file.Path;
 
 import java.io.IOException;
 import java.util.Map;
 
 /**
- * Service for handling Cloudinary related operations.
+ * Image storage on Cloudinary.
  */
-@Service
-@Primary
-public class CloudinaryService {
+public class CloudinaryService extends AbstractImageStorage {
 
-  private final Cloudinary cloudinary;
+  private static final String UPLOAD_PATH = "/upload/";
 
-  public CloudinaryService(Cloudinary cloudinary) {
-    this.cloudinary = cloudinary;
-  }
+  private final Cloudinary cloudinary;
 
   /**
-   * Upload a file to Cloudinary and return the secure URL.
+   * Constructor for CloudinaryService.
    *
-   * @param file the file to upload
-   * @return the secure URL of the uploaded file
-   * @throws IOException if an error occurs during upload
+   * @param cloudinary     the Cloudinary client
+   * @param imageProcessor the processor downsizing images before upload
    */
-  public String uploadImage(Long userId, MultipartFile file) throws IOException {
-    String hash = hashFile(file.getBytes());
-    String publicId = "items/" + userId + "/" + hash;
+  public CloudinaryService(Cloudinary cloudinary, ImageProcessor imageProcessor) {
+    super(imageProcessor);
+    this.cloudinary = cloudinary;
+  }
 
+  @Override
+  protected StoredImage store(Path file, String publicId) throws IOException {
     Map<String, Object> uploadOptions = ObjectUtils.asMap(
         "public_id", publicId,
         "unique_filename", false,
         "overwrite", false
     );
 
-    Map<String, Object> result = cloudinary.uploader().upload(file.getBytes(), uploadOptions);
-    return result.get("secure_url").toString();
+    Map<String, Object> result = cloudinary.uploader().upload(file.toFile(), uploadOptions);
+    // Without overwrite, uploading to a taken public ID returns the existing asset flagged as such
+    boolean existing = Boolean.TRUE.equals(result.get("existing"));
+    return new StoredImage(result.get("secure_url").toString(), !existing);
   }
 
   /**
    * Delete a file from Cloudinary by its public ID.
    *
    * @param publicId the public ID of the file to delete
-   * @return the result map from Cloudinary
    * @throws IOException if an error occurs during deletion
    */
-  public Map<String, Object> deleteImage(String publicId) throws IOException {
-    return cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
+  @Override
+  public void deleteImage(String publicId) throws IOException {
+    cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
   }
 
-  private String hashFile(byte[] data) {
+  /**
+   * Extract the public ID of an image from its URL. For Cloudinary delivery URLs this is the path
+   * after the upload type and version, including folders, without the file extension.
+   *
+   * @param imageUrl the URL of the image
+   * @return the public ID of the image
+   */
+  @Override
+  public String publicIdOf(String imageUrl) {
     try {
-      MessageDigest digest = MessageDigest.getInstance("SHA-1");
-      byte[] hashBytes = digest.digest(data);
-      return Base64.getUrlEncoder().withoutPadding().encodeToString(hashBytes);
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("Failed to hash file", e);
+      int upload = imageUrl.indexOf(UPLOAD_PATH);
+      String path = upload >= 0
+          ? imageUrl.substring(upload + UPLOAD_PATH.length()).replaceFirst("^v\\d+/", "")
+          : imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
+      return path.substring(0, path.lastIndexOf("."));
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Invalid Cloudinary URL: " + imageUrl, e);
     }
   }
 }
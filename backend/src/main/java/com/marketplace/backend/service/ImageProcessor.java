@@ -0,0 +1,356 @@
+package com.marketplace.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Downsizes uploaded images and renders thumbnails before they are stored.
+ * Decoding a full-resolution photo takes tens of megabytes and a lot of CPU, so images are
+ * processed on a small fixed pool, and large images are decoded subsampled close to the target
+ * size instead of at full resolution.
+ * Only files that decode as images are accepted, and everything stored is a JPEG, so an image is
+ * never served with a content type that does not match its content. Photos are turned upright
+ * according to their EXIF orientation, since the re-encoded images carry no EXIF data.
+ */
+@Component
+public class ImageProcessor {
+
+  private static final Logger logger = LoggerFactory.getLogger(ImageProcessor.class);
+
+  private static final long PROCESS_TIMEOUT_SECONDS = 30;
+  private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+  private final int maxDimension;
+  private final int thumbnailDimension;
+  private final float jpegQuality;
+  private final ExecutorService executor;
+
+  /**
+   * Constructor for ImageProcessor.
+   *
+   * @param maxDimension       the maximum width and height of stored images
+   * @param thumbnailDimension the maximum width and height of thumbnails
+   * @param jpegQuality        the JPEG quality of re-encoded images, between 0 and 1
+   * @param threads            the number of images processed at the same time, or 0 for one per CPU
+   */
+  public ImageProcessor(@Value("${images.max-dimension:1600}") int maxDimension,
+                        @Value("${images.thumbnail-dimension:320}") int thumbnailDimension,
+                        @Value("${images.jpeg-quality:0.85}") float jpegQuality,
+                        @Value("${images.processing-threads:0}") int threads) {
+    this.maxDimension = maxDimension;
+    this.thumbnailDimension = thumbnailDimension;
+    this.jpegQuality = jpegQuality;
+    int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+      Thread thread = new Thread(runnable, "image-processing-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Downsize an image and optionally render a thumbnail of it.
+   * Upright JPEG images within the maximum dimensions are kept as they are, other images are
+   * re-encoded as JPEG.
+   *
+   * @param source        the image file
+   * @param withThumbnail whether to render a thumbnail
+   * @return the image to store, which is the source itself if unchanged, and the thumbnail
+   * @throws IOException              if processing fails or times out
+   * @throws IllegalArgumentException if the file is not an image that can be decoded
+   */
+  public ProcessedImage process(Path source, boolean withThumbnail) throws IOException {
+    Future<ProcessedImage> result = executor.submit(() -> processNow(source, withThumbnail));
+    try {
+      return result.get(PROCESS_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while processing image", e);
+    } catch (TimeoutException e) {
+      result.cancel(true);
+      throw new IOException("Timed out processing image", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException io) {
+        throw io;
+      }
+      if (e.getCause() instanceof IllegalArgumentException invalid) {
+        throw invalid;
+      }
+      throw new IOException("Failed to process image", e.getCause());
+    }
+  }
+
+  /**
+   * Stop the processing threads on shutdown.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private ProcessedImage processNow(Path source, boolean withThumbnail) throws IOException {
+    try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+      Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+      if (readers == null || !readers.hasNext()) {
+        logger.debug("Rejecting image {}, format not supported", source);
+        throw new IllegalArgumentException("Unsupported image format");
+      }
+
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        int longest;
+        try {
+          longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+        } catch (IOException | RuntimeException e) {
+          logger.debug("Rejecting image {}, reading its header failed: {}", source, e.getMessage());
+          throw new IllegalArgumentException("Image cannot be decoded", e);
+        }
+        boolean jpeg = "jpeg".equalsIgnoreCase(reader.getFormatName());
+        int orientation = jpeg ? readOrientation(source) : 1;
+        boolean keepSource = longest <= maxDimension && jpeg && orientation == 1;
+        if (keepSource && !withThumbnail) {
+          return new ProcessedImage(source, null);
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int step = Math.max(1, longest / maxDimension);
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage decoded;
+        try {
+          decoded = orient(reader.read(0, param), orientation);
+        } catch (IOException | RuntimeException e) {
+          logger.debug("Rejecting image {}, decoding failed: {}", source, e.getMessage());
+          throw new IllegalArgumentException("Image cannot be decoded", e);
+        }
+
+        Path image = keepSource ? source : writeJpeg(scale(decoded, maxDimension));
+        Path thumbnail = withThumbnail ? writeJpeg(scale(decoded, thumbnailDimension)) : null;
+        return new ProcessedImage(image, thumbnail);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * Read the EXIF orientation of a JPEG file. Only the segments before the image data are read.
+   *
+   * @param source the JPEG file
+   * @return the orientation from 1 to 8, or 1 if the file has none or it cannot be parsed
+   * @throws IOException if the file cannot be read
+   */
+  static int readOrientation(Path source) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+      if (in.readUnsignedShort() != 0xFFD8) {
+        return 1;
+      }
+      while (true) {
+        int marker = in.readUnsignedShort();
+        // Image data starts at the start of scan marker, EXIF data always comes before it
+        if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+          return 1;
+        }
+        int length = in.readUnsignedShort() - 2;
+        if (length < 0) {
+          return 1;
+        }
+        if (marker == 0xFFE1) {
+          byte[] segment = new byte[length];
+          in.readFully(segment);
+          int orientation = exifOrientation(segment);
+          if (orientation != 0) {
+            return orientation;
+          }
+        } else {
+          in.skipNBytes(length);
+        }
+      }
+    } catch (EOFException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * Get the orientation tag from the first image directory of an APP1 segment.
+   *
+   * @return the orientation, 1 if the segment is EXIF data without a valid one, or 0 if the
+   *     segment is not EXIF data
+   */
+  private static int exifOrientation(byte[] segment) {
+    if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i'
+        || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+      return 0;
+    }
+    ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+    if (tiff.get(0) == 'I' && tiff.get(1) == 'I') {
+      tiff.order(ByteOrder.LITTLE_ENDIAN);
+    } else if (tiff.get(0) != 'M' || tiff.get(1) != 'M') {
+      return 1;
+    }
+    try {
+      int directory = tiff.getInt(4);
+      int entries = Short.toUnsignedInt(tiff.getShort(directory));
+      for (int i = 0; i < entries; i++) {
+        int entry = directory + 2 + 12 * i;
+        if (Short.toUnsignedInt(tiff.getShort(entry)) == EXIF_ORIENTATION_TAG) {
+          int orientation = Short.toUnsignedInt(tiff.getShort(entry + 8));
+          return orientation >= 1 && orientation <= 8 ? orientation : 1;
+        }
+      }
+    } catch (IndexOutOfBoundsException e) {
+      logger.debug("Ignoring malformed EXIF data: {}", e.getMessage());
+    }
+    return 1;
+  }
+
+  /**
+   * Turn an image upright according to its EXIF orientation, flipping and rotating it in
+   * quarter turns.
+   */
+  static BufferedImage orient(BufferedImage image, int orientation) {
+    if (orientation <= 1 || orientation > 8) {
+      return image;
+    }
+    int width = image.getWidth();
+    int height = image.getHeight();
+    boolean transposed = orientation >= 5;
+    int targetWidth = transposed ? height : width;
+    int[] source = image.getRGB(0, 0, width, height, null, 0, width);
+    int[] target = new int[source.length];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int targetX;
+        int targetY;
+        switch (orientation) {
+          case 2 -> {
+            targetX = width - 1 - x;
+            targetY = y;
+          }
+          case 3 -> {
+            targetX = width - 1 - x;
+            targetY = height - 1 - y;
+          }
+          case 4 -> {
+            targetX = x;
+            targetY = height - 1 - y;
+          }
+          case 5 -> {
+            targetX = y;
+            targetY = x;
+          }
+          case 6 -> {
+            targetX = height - 1 - y;
+            targetY = x;
+          }
+          case 7 -> {
+            targetX = height - 1 - y;
+            targetY = width - 1 - x;
+          }
+          default -> {
+            targetX = y;
+            targetY = width - 1 - x;
+          }
+        }
+        target[targetY * targetWidth + targetX] = source[y * width + x];
+      }
+    }
+    BufferedImage oriented = new BufferedImage(targetWidth, transposed ? width : height,
+        BufferedImage.TYPE_INT_ARGB);
+    oriented.setRGB(0, 0, targetWidth, oriented.getHeight(), target, 0, targetWidth);
+    return oriented;
+  }
+
+  /**
+   * Scale an image to fit the given dimension, halving its size in steps so large reductions
+   * still average over all pixels. The result is always opaque RGB.
+   */
+  static BufferedImage scale(BufferedImage image, int dimension) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    double ratio = Math.min(1.0, (double) dimension / Math.max(width, height));
+    int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+    int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+    BufferedImage current = image;
+    do {
+      width = Math.max(targetWidth, width / 2);
+      height = Math.max(targetHeight, height / 2);
+      current = draw(current, width, height);
+    } while (width != targetWidth || height != targetHeight);
+    return current;
+  }
+
+  private static BufferedImage draw(BufferedImage image, int width, int height) {
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+    } finally {
+      graphics.dispose();
+    }
+    return scaled;
+  }
+
+  private Path writeJpeg(BufferedImage image) throws IOException {
+    Path target = Files.createTempFile("image-processed-", ".jpg");
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+      return target;
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(target);
+      throw e;
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * The result of processing an image.
+   *
+   * @param image     the image to store, which may be the source file
+   * @param thumbnail the thumbnail, or null if none was requested
+   */
+  public record ProcessedImage(Path image, Path thumbnail) {
+  }
+}
@@ -0,0 +1,134 @@
+package com.marketplace.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Storage for user uploaded images.
+ * Images are content addressed: the public ID of an image is derived from the user and the SHA-1
+ * hash of its content, so storing the same image twice yields the same public ID and URL.
+ * The implementation is selected with the {@code images.storage} property.
+ */
+public interface ImageStorage {
+
+  /**
+   * The suffix appended to the public ID of an image to get the public ID of its thumbnail.
+   */
+  String THUMBNAIL_SUFFIX = "_thumb";
+
+  /**
+   * Store an image without a thumbnail.
+   *
+   * @param userId the ID of the user owning the image
+   * @param file   the image to store
+   * @return the URL of the stored image, and its public ID if the upload created it
+   * @throws IOException              if the image cannot be stored
+   * @throws IllegalArgumentException if the file is not an image that can be decoded
+   */
+  UploadedImage uploadImage(Long userId, MultipartFile file) throws IOException;
+
+  /**
+   * Store an item image together with a thumbnail for feeds.
+   *
+   * @param userId the ID of the user owning the image
+   * @param file   the image to store
+   * @return the URLs of the image and its thumbnail
+   * @throws IOException              if the image cannot be stored
+   * @throws IllegalArgumentException if the file is not an image that can be decoded
+   */
+  UploadedImage uploadItemImage(Long userId, MultipartFile file) throws IOException;
+
+  /**
+   * Delete an image by its public ID. Deleting an image that does not exist is not an error.
+   *
+   * @param publicId the public ID of the image
+   * @throws IOException if the image cannot be deleted
+   */
+  void deleteImage(String publicId) throws IOException;
+
+  /**
+   * Extract the public ID of an image from a URL returned by this storage.
+   *
+   * @param imageUrl the URL of the image
+   * @return the public ID of the image
+   * @throws IllegalArgumentException if the URL does not name an image
+   */
+  String publicIdOf(String imageUrl);
+
+  /**
+   * Get the public ID an image is stored under.
+   *
+   * @param userId the ID of the user owning the image
+   * @param data   the content of the image
+   * @return the public ID of the image
+   */
+  static String publicIdFor(Long userId, byte[] data) {
+    MessageDigest digest = newDigest();
+    digest.update(data);
+    return publicIdFor(userId, digest);
+  }
+
+  /**
+   * Get the ID of the user owning an image from its public ID.
+   *
+   * @param publicId the public ID of the image
+   * @return the ID of the user, or null if the public ID is not content addressed
+   */
+  static Long ownerOf(String publicId) {
+    String[] parts = publicId.split("/");
+    if (parts.length != 3 || !parts[0].equals("items")) {
+      return null;
+    }
+    try {
+      return Long.valueOf(parts[1]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Get the public ID an image is stored under, reading its content from a stream.
+   *
+   * @param userId the ID of the user owning the image
+   * @param in     the content of the image, read to the end but not closed
+   * @return the public ID of the image
+   * @throws IOException if the stream cannot be read
+   */
+  static String publicIdFor(Long userId, InputStream in) throws IOException {
+    MessageDigest digest = newDigest();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      digest.update(buffer, 0, read);
+    }
+    return publicIdFor(userId, digest);
+  }
+
+  /**
+   * Get the public ID for a digest of the content of an image.
+   *
+   * @param userId the ID of the user owning the image
+   * @param digest the digest the content was written to
+   * @return the public ID of the image
+   */
+  static String publicIdFor(Long userId, MessageDigest digest) {
+    return "items/" + userId + "/" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+  }
+
+  /**
+   * Create the digest used to address images.
+   *
+   * @return a new SHA-1 digest
+   */
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Failed to hash file", e);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.marketplace.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Service uploading and deleting item images concurrently.
+ * Uploads run on a shared pool, and each user may only have a few uploads in flight at a time,
+ * so one seller with many photos cannot take all upload threads.
+ */
+@Service
+public class ImageUploadService {
+
+  private static final Logger logger = LoggerFactory.getLogger(ImageUploadService.class);
+
+  private static final int UPLOAD_THREADS = 16;
+  static final int MAX_UPLOADS_PER_USER = 4;
+  private static final int USER_PERMIT_STRIPES = 1024;
+  static final long UPLOAD_TIMEOUT_SECONDS = 30;
+
+  private final ImageStorage imageStorage;
+  private final Semaphore[] userPermits = new Semaphore[USER_PERMIT_STRIPES];
+  private final ExecutorService executor;
+
+  /**
+   * Constructor for ImageUploadService.
+   *
+   * @param imageStorage the storage the images are uploaded to
+   */
+  public ImageUploadService(ImageStorage imageStorage) {
+    this.imageStorage = imageStorage;
+    for (int i = 0; i < userPermits.length; i++) {
+      userPermits[i] = new Semaphore(MAX_UPLOADS_PER_USER);
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(UPLOAD_THREADS, runnable -> {
+      Thread thread = new Thread(runnable, "image-upload-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Upload images concurrently.
+   * If any upload fails or times out, the images that were created by the uploads, or still
+   * finish uploading later, are deleted again. Images whose content was already stored are kept.
+   *
+   * @param userId the ID of the user owning the images
+   * @param files  the images to upload
+   * @return the uploaded images, in the order of the files
+   * @throws IOException              if any upload fails or times out
+   * @throws IllegalArgumentException if any file is not an image that can be decoded
+   */
+  public List<UploadedImage> uploadAll(Long userId, List<MultipartFile> files) throws IOException {
+    if (files == null || files.isEmpty()) {
+      return List.of();
+    }
+    logger.debug("Uploading {} images for user {}", files.size(), userId);
+    Semaphore permits = userPermits[Math.floorMod(userId.hashCode(), USER_PERMIT_STRIPES)];
+    List<CompletableFuture<UploadedImage>> uploads = new ArrayList<>(files.size());
+    try {
+      for (MultipartFile file : files) {
+        if (!permits.tryAcquire(UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          throw new TimeoutException("Timed out waiting for an upload slot");
+        }
+        uploads.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return imageStorage.uploadItemImage(userId, file);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } finally {
+            permits.release();
+          }
+        }, executor));
+      }
+
+      List<UploadedImage> images = new ArrayList<>(uploads.size());
+      for (CompletableFuture<UploadedImage> upload : uploads) {
+        images.add(upload.get(UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      }
+      return images;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      discard(uploads);
+      throw new IOException("Interrupted while uploading images", e);
+    } catch (TimeoutException e) {
+      discard(uploads);
+      throw new IOException("Timed out uploading images", e);
+    } catch (ExecutionException e) {
+      discard(uploads);
+      Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+      if (cause instanceof IOException io) {
+        throw io;
+      }
+      if (cause instanceof IllegalArgumentException invalid) {
+        throw invalid;
+      }
+      throw new IOException("Failed to upload images", cause);
+    }
+  }
+
+  /**
+   * Delete images concurrently and wait for the deletions. Failures are logged, not thrown.
+   *
+   * @param publicIds the public IDs of the images to delete
+   */
+  public void deleteAll(Collection<String> publicIds) {
+    List<CompletableFuture<Void>> deletions = publicIds.stream()
+        .map(publicId -> CompletableFuture.runAsync(() -> delete(publicId), executor))
+        .toList();
+    try {
+      CompletableFuture.allOf(deletions.toArray(CompletableFuture[]::new))
+          .get(UPLOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      logger.warn("Not all of {} images were deleted: {}", publicIds.size(), e.getMessage());
+    }
+  }
+
+  /**
+   * Extract the public ID of an image from its URL.
+   *
+   * @param imageUrl the URL of the image
+   * @return the public ID of the image
+   */
+  public String publicIdOf(String imageUrl) {
+    return imageStorage.publicIdOf(imageUrl);
+  }
+
+  /**
+   * Get the public IDs of the images and thumbnails created by uploads, which are the ones to
+   * delete when the uploads are undone. Images that were already stored before are left out,
+   * since they may still be in use.
+   *
+   * @param images the uploaded images
+   * @return the public IDs of the images and thumbnails the uploads created
+   */
+  public List<String> createdPublicIdsOf(List<UploadedImage> images) {
+    List<String> publicIds = new ArrayList<>(images.size() * 2);
+    for (UploadedImage image : images) {
+      publicIds.addAll(image.createdPublicIds());
+    }
+    return publicIds;
+  }
+
+  /**
+   * Stop the upload threads on shutdown.
+   */
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Delete every image that was, or will still be, created by the uploads.
+   */
+  private void discard(List<CompletableFuture<UploadedImage>> uploads) {
+    for (CompletableFuture<UploadedImage> upload : uploads) {
+      upload.thenAcceptAsync(image -> image.createdPublicIds().forEach(this::delete), executor);
+    }
+  }
+
+  private void delete(String publicId) {
+    try {
+      imageStorage.deleteImage(publicId);
+    } catch (Exception e) {
+      logger.warn("Failed to delete image {}: {}", publicId, e.getMessage());
+      throw new IllegalStateException("Failed to delete image " + publicId, e);
+    }
+  }
+}
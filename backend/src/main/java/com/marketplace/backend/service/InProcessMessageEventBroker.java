@@ -0,0 +1,50 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Message event broker delivering events to subscribers in this process.
+ */
+@Component
+public class InProcessMessageEventBroker implements MessageEventBroker {
+
+  private static final Logger logger = LoggerFactory.getLogger(InProcessMessageEventBroker.class);
+
+  private final Map<Long, Set<Consumer<MessageEventDto>>> subscribers = new ConcurrentHashMap<>();
+
+  @Override
+  public void publish(Long userId, MessageEventDto event) {
+    Set<Consumer<MessageEventDto>> listeners = subscribers.get(userId);
+    if (listeners == null) {
+      return;
+    }
+    for (Consumer<MessageEventDto> listener : listeners) {
+      try {
+        listener.accept(event);
+      } catch (Exception e) {
+        logger.warn("Failed to deliver message event to user {}: {}", userId, e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public Runnable subscribe(Long userId, Consumer<MessageEventDto> listener) {
+    // Added within the atomic update, so a concurrent unsubscribe cannot drop the set in between
+    subscribers.compute(userId, (id, listeners) -> {
+      Set<Consumer<MessageEventDto>> updated = listeners != null ? listeners : ConcurrentHashMap.newKeySet();
+      updated.add(listener);
+      return updated;
+    });
+    return () -> subscribers.computeIfPresent(userId, (id, listeners) -> {
+      listeners.remove(listener);
+      return listeners.isEmpty() ? null : listeners;
+    });
+  }
+}
@@ -0,0 +1,301 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemRepository;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory grid index of item locations.
+ * Items are bucketed into fixed-size latitude/longitude cells, so a distance search only has to
+ * look at the cells overlapping the bounding box of the search circle. Kept up to date by
+ * {@link ItemService} on every item write on this instance, and by polling the database for
+ * items changed or deleted on other instances.
+ */
+@Component
+public class ItemGeoIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemGeoIndex.class);
+
+  static final double EARTH_RADIUS_KM = 6371;
+  private static final double KM_PER_DEGREE = EARTH_RADIUS_KM * Math.PI / 180;
+  private static final double CELL_SIZE_DEGREES = 0.1;
+  private static final int MAX_CELLS_PER_QUERY = 20_000;
+  private static final double DISTANCE_TOLERANCE_KM = 0.001;
+  private static final double BOX_MARGIN_DEGREES = 0.000001;
+  private static final int REBUILD_BATCH_SIZE = 1000;
+  // Items changed this long before a sync are read again by the next one, to cover clock skew
+  // between instances and transactions committing after the sync
+  private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+  private final ItemRepository itemRepository;
+
+  private final Map<Long, Set<Long>> itemsByCell = new HashMap<>();
+  private final Map<Long, double[]> locationsByItem = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean ready = false;
+  private volatile LocalDateTime syncedSince;
+
+  /**
+   * Constructor for ItemGeoIndex.
+   *
+   * @param itemRepository the repository used to build the index on startup
+   */
+  public ItemGeoIndex(ItemRepository itemRepository) {
+    this.itemRepository = itemRepository;
+  }
+
+  /**
+   * Build the index from all items in the database.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    logger.info("Building item geo index");
+    syncedSince = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int indexed = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findLocationsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (BigDecimal) row[1], (BigDecimal) row[2]);
+      }
+      indexed += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    ready = true;
+    logger.info("Item geo index built with {} items", indexed);
+  }
+
+  /**
+   * Move the items changed since the last sync, including those changed on other instances.
+   */
+  @Scheduled(fixedDelayString = "${items.index-sync-interval-ms:5000}")
+  public void sync() {
+    if (!ready) {
+      return;
+    }
+    LocalDateTime since = syncedSince;
+    LocalDateTime next = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int synced = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findLocationsUpdatedSince(since, lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (BigDecimal) row[1], (BigDecimal) row[2]);
+      }
+      synced += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    syncedSince = next;
+    logger.debug("Synced {} changed items into the item geo index", synced);
+  }
+
+  /**
+   * Remove items deleted on other instances. Their stale entries only cost memory, since the
+   * database filters the candidates, so this runs rarely.
+   */
+  @Scheduled(fixedDelayString = "${items.index-prune-interval-ms:600000}")
+  public void prune() {
+    if (!ready) {
+      return;
+    }
+    Set<Long> deleted;
+    lock.readLock().lock();
+    try {
+      deleted = new HashSet<>(locationsByItem.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    long lastId = 0L;
+    List<Long> batch;
+    do {
+      batch = itemRepository.findIdsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      if (!batch.isEmpty()) {
+        lastId = batch.get(batch.size() - 1);
+      }
+      batch.forEach(deleted::remove);
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    deleted.forEach(this::remove);
+    logger.debug("Pruned {} deleted items from the item geo index", deleted.size());
+  }
+
+  /**
+   * Check if the index has been built and can be used to answer queries.
+   *
+   * @return true if the index is ready
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Add or move an item in the index. Items without a location are removed.
+   *
+   * @param itemId    the ID of the item
+   * @param latitude  the latitude of the item
+   * @param longitude the longitude of the item
+   */
+  public void index(Long itemId, BigDecimal latitude, BigDecimal longitude) {
+    lock.writeLock().lock();
+    try {
+      removeUnlocked(itemId);
+      if (latitude == null || longitude == null) {
+        return;
+      }
+      double lat = latitude.doubleValue();
+      double lon = longitude.doubleValue();
+      locationsByItem.put(itemId, new double[] {lat, lon});
+      itemsByCell.computeIfAbsent(cellKey(cellOf(lat), cellOf(lon)), k -> new HashSet<>()).add(itemId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove an item from the index.
+   *
+   * @param itemId the ID of the item
+   */
+  public void remove(Long itemId) {
+    lock.writeLock().lock();
+    try {
+      removeUnlocked(itemId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Find the IDs of items within the given distance, nearest first.
+   * The database re-checks the exact distance, so the result may include items right at the edge.
+   *
+   * @param latitude   the latitude of the center
+   * @param longitude  the longitude of the center
+   * @param distanceKm the radius in kilometers
+   * @return the nearby item IDs, or null if the area is too large to answer from the index
+   */
+  public List<Long> findWithin(BigDecimal latitude, BigDecimal longitude, double distanceKm) {
+    BoundingBox box = BoundingBox.around(latitude.doubleValue(), longitude.doubleValue(), distanceKm);
+    int minLatCell = cellOf(box.minLatitude());
+    int maxLatCell = cellOf(box.maxLatitude());
+    int minLonCell = cellOf(box.minLongitude());
+    int maxLonCell = cellOf(box.maxLongitude());
+    if ((long) (maxLatCell - minLatCell + 1) * (maxLonCell - minLonCell + 1) > MAX_CELLS_PER_QUERY) {
+      return null;
+    }
+
+    double lat = latitude.doubleValue();
+    double lon = longitude.doubleValue();
+    Map<Long, Double> distances = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+        for (int lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+          Set<Long> items = itemsByCell.get(cellKey(latCell, lonCell));
+          if (items == null) {
+            continue;
+          }
+          for (Long itemId : items) {
+            double[] location = locationsByItem.get(itemId);
+            double distance = greatCircleKm(lat, lon, location[0], location[1]);
+            if (distance <= distanceKm + DISTANCE_TOLERANCE_KM) {
+              distances.put(itemId, distance);
+            }
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    List<Long> nearby = new ArrayList<>(distances.keySet());
+    nearby.sort(Comparator.comparing(distances::get));
+    return nearby;
+  }
+
+  private void removeUnlocked(Long itemId) {
+    double[] location = locationsByItem.remove(itemId);
+    if (location == null) {
+      return;
+    }
+    long key = cellKey(cellOf(location[0]), cellOf(location[1]));
+    Set<Long> items = itemsByCell.get(key);
+    if (items != null) {
+      items.remove(itemId);
+      if (items.isEmpty()) {
+        itemsByCell.remove(key);
+      }
+    }
+  }
+
+  private static int cellOf(double degrees) {
+    return (int) Math.floor(degrees / CELL_SIZE_DEGREES);
+  }
+
+  private static long cellKey(int latCell, int lonCell) {
+    return ((long) latCell << 32) | (lonCell & 0xffffffffL);
+  }
+
+  /**
+   * Great-circle distance using the same spherical law of cosines as the item search query.
+   */
+  static double greatCircleKm(double lat1, double lon1, double lat2, double lon2) {
+    double cosine = Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+        * Math.cos(Math.toRadians(lon2) - Math.toRadians(lon1))
+        + Math.sin(Math.toRadians(lat1)) * Math.sin(Math.toRadians(lat2));
+    return EARTH_RADIUS_KM * Math.acos(Math.max(-1, Math.min(1, cosine)));
+  }
+
+  /**
+   * A latitude/longitude box enclosing a search circle.
+   */
+  public record BoundingBox(double minLatitude, double maxLatitude,
+                            double minLongitude, double maxLongitude) {
+
+    /**
+     * Compute the box enclosing every point within the given distance of the center.
+     * The longitude range covers the whole globe near the poles and across the antimeridian.
+     *
+     * @param latitude   the latitude of the center
+     * @param longitude  the longitude of the center
+     * @param distanceKm the radius in kilometers
+     * @return the bounding box
+     */
+    public static BoundingBox around(double latitude, double longitude, double distanceKm) {
+      double deltaLat = distanceKm / KM_PER_DEGREE + BOX_MARGIN_DEGREES;
+      double minLat = Math.max(-90, latitude - deltaLat);
+      double maxLat = Math.min(90, latitude + deltaLat);
+      if (minLat <= -90 || maxLat >= 90) {
+        return new BoundingBox(minLat, maxLat, -180, 180);
+      }
+
+      double deltaLon = Math.toDegrees(Math.asin(Math.min(1,
+          Math.sin(distanceKm / EARTH_RADIUS_KM) / Math.cos(Math.toRadians(latitude)))))
+          + BOX_MARGIN_DEGREES;
+      if (distanceKm / EARTH_RADIUS_KM >= Math.PI / 2 || longitude - deltaLon < -180
+          || longitude + deltaLon > 180) {
+        return new BoundingBox(minLat, maxLat, -180, 180);
+      }
+      return new BoundingBox(minLat, maxLat, longitude - deltaLon, longitude + deltaLon);
+    }
+  }
+}
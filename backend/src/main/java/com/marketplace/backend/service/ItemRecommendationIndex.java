@@ -0,0 +1,321 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.ItemStatus;
+import com.marketplace.backend.repository.ItemRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of items by category for recommendations.
+ * Holds the category, seller, publish date and status of every item, kept up to date by
+ * {@link ItemService} and {@link PaymentService} on this instance, and by polling the database
+ * for items changed or deleted on other instances. Items for sale are periodically ranked per
+ * category by last-week views and recency, so a recommendation is a merge of the heads of the
+ * ranked lists of the categories a user is interested in.
+ */
+@Component
+public class ItemRecommendationIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemRecommendationIndex.class);
+
+  static final int MAX_RANKED_PER_CATEGORY = 200;
+  private static final double RECENCY_WEIGHT = 2.0;
+  private static final double RECENCY_HALF_LIFE_DAYS = 7;
+  private static final int REBUILD_BATCH_SIZE = 1000;
+  // Items changed this long before a sync are read again by the next one, to cover clock skew
+  // between instances and transactions committing after the sync
+  private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+  private final ItemRepository itemRepository;
+  private final ItemViewCounters itemViewCounters;
+
+  private final Map<Long, ItemFacts> itemsById = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile Map<Long, List<RankedItem>> rankedByCategory = Map.of();
+  private volatile LocalDateTime syncedSince;
+
+  /**
+   * Constructor for ItemRecommendationIndex.
+   *
+   * @param itemRepository   the repository used to build the index on startup
+   * @param itemViewCounters the view counters used to rank items by popularity
+   */
+  public ItemRecommendationIndex(ItemRepository itemRepository, ItemViewCounters itemViewCounters) {
+    this.itemRepository = itemRepository;
+    this.itemViewCounters = itemViewCounters;
+  }
+
+  /**
+   * Build the index from all items in the database.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    logger.info("Building item recommendation index");
+    LocalDateTime buildStart = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int indexed = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findRecommendationFactsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (Long) row[1], (Long) row[2], (LocalDateTime) row[3], (ItemStatus) row[4]);
+      }
+      indexed += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    rerank();
+    syncedSince = buildStart;
+    logger.info("Item recommendation index built with {} items", indexed);
+  }
+
+  /**
+   * Update the items changed since the last sync, including those changed on other instances.
+   * They are ranked by the next {@link #rerank()}.
+   */
+  @Scheduled(fixedDelayString = "${items.index-sync-interval-ms:5000}")
+  public void sync() {
+    LocalDateTime since = syncedSince;
+    if (since == null) {
+      return;
+    }
+    LocalDateTime next = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int synced = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findRecommendationFactsUpdatedSince(since, lastId,
+          PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (Long) row[1], (Long) row[2], (LocalDateTime) row[3], (ItemStatus) row[4]);
+      }
+      synced += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    syncedSince = next;
+    logger.debug("Synced {} changed items into the item recommendation index", synced);
+  }
+
+  /**
+   * Remove items deleted on other instances. Recommended items are loaded from the database,
+   * which drops deleted ones, so this only frees their slots in the rankings and runs rarely.
+   */
+  @Scheduled(fixedDelayString = "${items.index-prune-interval-ms:600000}")
+  public void prune() {
+    if (syncedSince == null) {
+      return;
+    }
+    Set<Long> deleted;
+    lock.readLock().lock();
+    try {
+      deleted = new HashSet<>(itemsById.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    long lastId = 0L;
+    List<Long> batch;
+    do {
+      batch = itemRepository.findIdsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      if (!batch.isEmpty()) {
+        lastId = batch.get(batch.size() - 1);
+      }
+      batch.forEach(deleted::remove);
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    deleted.forEach(this::remove);
+    logger.debug("Pruned {} deleted items from the item recommendation index", deleted.size());
+  }
+
+  /**
+   * Add or replace an item in the index.
+   *
+   * @param itemId        the ID of the item
+   * @param categoryId    the ID of the category of the item, or null
+   * @param sellerId      the ID of the seller
+   * @param publishedDate when the item was published
+   * @param status        the status of the item
+   */
+  public void index(Long itemId, Long categoryId, Long sellerId, LocalDateTime publishedDate, ItemStatus status) {
+    lock.writeLock().lock();
+    try {
+      itemsById.put(itemId, new ItemFacts(categoryId, sellerId, publishedDate, status));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Update the status of an indexed item. Items no longer for sale drop out of the next ranking.
+   *
+   * @param itemId the ID of the item
+   * @param status the new status of the item
+   */
+  public void updateStatus(Long itemId, ItemStatus status) {
+    lock.writeLock().lock();
+    try {
+      itemsById.computeIfPresent(itemId, (id, facts) ->
+          new ItemFacts(facts.categoryId(), facts.sellerId(), facts.publishedDate(), status));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove an item from the index.
+   *
+   * @param itemId the ID of the item
+   */
+  public void remove(Long itemId) {
+    lock.writeLock().lock();
+    try {
+      itemsById.remove(itemId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Find the category of an item.
+   *
+   * @param itemId the ID of the item
+   * @return the ID of the category, or null if the item is unknown or has no category
+   */
+  public Long findCategoryId(Long itemId) {
+    lock.readLock().lock();
+    try {
+      ItemFacts facts = itemsById.get(itemId);
+      return facts != null ? facts.categoryId() : null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Check if an item can be recommended, that is if it is for sale by another seller.
+   *
+   * @param itemId           the ID of the item
+   * @param excludedSellerId the seller whose items are not recommended
+   * @return true if the item is known, for sale and not sold by the excluded seller
+   */
+  public boolean isRecommendable(Long itemId, Long excludedSellerId) {
+    lock.readLock().lock();
+    try {
+      ItemFacts facts = itemsById.get(itemId);
+      return facts != null && facts.status() == ItemStatus.FOR_SALE && !facts.sellerId().equals(excludedSellerId);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Rank the items for sale in every category by popularity and recency.
+   */
+  @Scheduled(fixedDelayString = "${recommendations.rerank-interval-ms:60000}")
+  public void rerank() {
+    Map<Long, Long> weeklyViews = itemViewCounters.getLastWeekCounts();
+    LocalDateTime now = LocalDateTime.now();
+    Map<Long, PriorityQueue<RankedItem>> heaps = new HashMap<>();
+
+    lock.readLock().lock();
+    try {
+      itemsById.forEach((itemId, facts) -> {
+        if (facts.status() != ItemStatus.FOR_SALE || facts.categoryId() == null) {
+          return;
+        }
+        RankedItem ranked = new RankedItem(itemId, facts.sellerId(),
+            score(weeklyViews.getOrDefault(itemId, 0L), facts.publishedDate(), now));
+        PriorityQueue<RankedItem> heap = heaps.computeIfAbsent(facts.categoryId(),
+            id -> new PriorityQueue<>(MAX_RANKED_PER_CATEGORY + 1, Comparator.comparingDouble(RankedItem::score)));
+        heap.offer(ranked);
+        if (heap.size() > MAX_RANKED_PER_CATEGORY) {
+          heap.poll();
+        }
+      });
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    Map<Long, List<RankedItem>> ranked = new HashMap<>();
+    heaps.forEach((categoryId, heap) -> {
+      List<RankedItem> items = new ArrayList<>(heap);
+      items.sort(Comparator.comparingDouble(RankedItem::score).reversed());
+      ranked.put(categoryId, List.copyOf(items));
+    });
+    rankedByCategory = ranked;
+  }
+
+  /**
+   * Recommend items by merging the ranked lists of the given categories.
+   * Each list is weighted by the affinity of its category, and the best head of all lists is
+   * taken until enough items are found, so the cost depends on the limit rather than on the
+   * number of items.
+   *
+   * @param affinities       the weight of each category
+   * @param excludedSellerId the seller whose items are not recommended
+   * @param limit            the maximum number of items
+   * @return the recommended item IDs, best first
+   */
+  public List<Long> recommend(Map<Long, Double> affinities, Long excludedSellerId, int limit) {
+    Map<Long, List<RankedItem>> ranked = rankedByCategory;
+    PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparingDouble(Cursor::score).reversed());
+    affinities.forEach((categoryId, weight) -> {
+      List<RankedItem> items = ranked.get(categoryId);
+      if (items != null && !items.isEmpty() && weight > 0) {
+        heads.offer(new Cursor(items, 0, weight));
+      }
+    });
+
+    List<Long> recommended = new ArrayList<>(limit);
+    while (recommended.size() < limit && !heads.isEmpty()) {
+      Cursor cursor = heads.poll();
+      RankedItem item = cursor.head();
+      if (!item.sellerId().equals(excludedSellerId)) {
+        recommended.add(item.itemId());
+      }
+      if (cursor.position() + 1 < cursor.items().size()) {
+        heads.offer(new Cursor(cursor.items(), cursor.position() + 1, cursor.weight()));
+      }
+    }
+    return recommended;
+  }
+
+  /**
+   * Score an item by its views in the last week and how recently it was published.
+   */
+  static double score(long weeklyViews, LocalDateTime publishedDate, LocalDateTime now) {
+    double ageDays = publishedDate != null ? Math.max(0, Duration.between(publishedDate, now).toHours() / 24.0) : 365;
+    return Math.log1p(weeklyViews) + RECENCY_WEIGHT * Math.pow(0.5, ageDays / RECENCY_HALF_LIFE_DAYS);
+  }
+
+  private record ItemFacts(Long categoryId, Long sellerId, LocalDateTime publishedDate, ItemStatus status) {
+  }
+
+  private record RankedItem(Long itemId, Long sellerId, double score) {
+  }
+
+  private record Cursor(List<RankedItem> items, int position, double weight) {
+
+    RankedItem head() {
+      return items.get(position);
+    }
+
+    double score() {
+      return weight * head().score();
+    }
+  }
+}
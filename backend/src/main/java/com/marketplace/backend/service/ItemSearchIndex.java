@@ -0,0 +1,335 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory inverted index over item titles and descriptions.
+ * Kept up to date by {@link ItemService} on every item write on this instance, and by polling
+ * the database for items changed or deleted on other instances, so text search can resolve
+ * candidate item IDs without scanning the Items table with LIKE. Query terms match anywhere
+ * inside indexed tokens, so the candidates include every item containing the query as a
+ * substring; the database checks the query against the candidates, so search keeps the LIKE
+ * semantics.
+ */
+@Component
+public class ItemSearchIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+  private static final int TITLE_WEIGHT = 3;
+  private static final int DESCRIPTION_WEIGHT = 1;
+  static final int MAX_TERM_EXPANSIONS = 64;
+  private static final int GRAM_LENGTH = 3;
+  private static final int EXACT_BOOST = 3;
+  private static final int PREFIX_BOOST = 2;
+  private static final int INFIX_BOOST = 1;
+  private static final int REBUILD_BATCH_SIZE = 1000;
+  // Items changed this long before a sync are read again by the next one, to cover clock skew
+  // between instances and transactions committing after the sync
+  private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+  private final ItemRepository itemRepository;
+
+  private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+  private final Map<Long, Set<String>> tokensByItem = new HashMap<>();
+  private final Map<String, Set<String>> tokensByGram = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean ready = false;
+  private volatile LocalDateTime syncedSince;
+
+  /**
+   * Constructor for ItemSearchIndex.
+   *
+   * @param itemRepository the repository used to build the index on startup
+   */
+  public ItemSearchIndex(ItemRepository itemRepository) {
+    this.itemRepository = itemRepository;
+  }
+
+  /**
+   * Build the index from all items in the database.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    logger.info("Building item search index");
+    syncedSince = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int indexed = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findSearchDocumentsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (String) row[1], (String) row[2]);
+      }
+      indexed += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    ready = true;
+    logger.info("Item search index built with {} items", indexed);
+  }
+
+  /**
+   * Index the items changed since the last sync, including those changed on other instances.
+   */
+  @Scheduled(fixedDelayString = "${items.index-sync-interval-ms:5000}")
+  public void sync() {
+    if (!ready) {
+      return;
+    }
+    LocalDateTime since = syncedSince;
+    LocalDateTime next = LocalDateTime.now().minus(SYNC_OVERLAP);
+    long lastId = 0L;
+    int synced = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemRepository.findSearchDocumentsUpdatedSince(since, lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        index(lastId, (String) row[1], (String) row[2]);
+      }
+      synced += batch.size();
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    syncedSince = next;
+    logger.debug("Synced {} changed items into the item search index", synced);
+  }
+
+  /**
+   * Remove items deleted on other instances. Their stale entries only cost memory, since the
+   * database filters the candidates, so this runs rarely.
+   */
+  @Scheduled(fixedDelayString = "${items.index-prune-interval-ms:600000}")
+  public void prune() {
+    if (!ready) {
+      return;
+    }
+    Set<Long> deleted;
+    lock.readLock().lock();
+    try {
+      deleted = new HashSet<>(tokensByItem.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+    long lastId = 0L;
+    List<Long> batch;
+    do {
+      batch = itemRepository.findIdsAfter(lastId, PageRequest.ofSize(REBUILD_BATCH_SIZE));
+      if (!batch.isEmpty()) {
+        lastId = batch.get(batch.size() - 1);
+      }
+      batch.forEach(deleted::remove);
+    } while (batch.size() == REBUILD_BATCH_SIZE);
+    deleted.forEach(this::remove);
+    logger.debug("Pruned {} deleted items from the item search index", deleted.size());
+  }
+
+  /**
+   * Check if the index has been built and can be used to answer queries.
+   *
+   * @return true if the index is ready
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Add or replace the indexed text of an item.
+   *
+   * @param itemId      the ID of the item
+   * @param title       the title of the item
+   * @param description the description of the item
+   */
+  public void index(Long itemId, String title, String description) {
+    Map<String, Integer> weights = new HashMap<>();
+    tokenize(title).forEach(token -> weights.merge(token, TITLE_WEIGHT, Integer::sum));
+    tokenize(description).forEach(token -> weights.merge(token, DESCRIPTION_WEIGHT, Integer::sum));
+
+    lock.writeLock().lock();
+    try {
+      removeUnlocked(itemId);
+      weights.forEach((token, weight) -> postings.computeIfAbsent(token, t -> {
+        grams(t).forEach(gram -> tokensByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(t));
+        return new HashMap<>();
+      }).put(itemId, weight));
+      tokensByItem.put(itemId, new HashSet<>(weights.keySet()));
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove an item from the index.
+   *
+   * @param itemId the ID of the item
+   */
+  public void remove(Long itemId) {
+    lock.writeLock().lock();
+    try {
+      removeUnlocked(itemId);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Find the IDs of items with a token containing every term of the query, ranked by relevance.
+   * Each term matches whole tokens and, with lower scores, tokens starting with or containing the
+   * term. An item containing the query matches every term, since each term of the query lies
+   * within a token of the item; the returned items do not all contain the query, for example
+   * when the terms appear in another order, so the query still has to be checked against them.
+   * Queries the index cannot answer completely, because they have no letter or digit tokens or a
+   * term is found in too many tokens, are left to the database.
+   *
+   * @param query the search query
+   * @return the candidate item IDs, most relevant first, or null if the index cannot answer the query
+   */
+  public List<Long> search(String query) {
+    List<String> terms = tokenize(query);
+    if (terms.isEmpty()) {
+      return null;
+    }
+
+    lock.readLock().lock();
+    try {
+      Map<Long, Integer> scores = null;
+      for (String term : new HashSet<>(terms)) {
+        Map<Long, Integer> termScores = scoreTerm(term);
+        if (termScores == null) {
+          logger.debug("Search term '{}' is found in too many tokens, leaving query to the database", term);
+          return null;
+        }
+        if (scores == null) {
+          scores = termScores;
+        } else {
+          scores.keySet().retainAll(termScores.keySet());
+          scores.replaceAll((itemId, score) -> score + termScores.get(itemId));
+        }
+        if (scores.isEmpty()) {
+          return List.of();
+        }
+      }
+
+      List<Map.Entry<Long, Integer>> ranked = new ArrayList<>(scores.entrySet());
+      ranked.sort(Map.Entry.<Long, Integer>comparingByValue().reversed()
+          .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder())));
+      return ranked.stream().map(Map.Entry::getKey).toList();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Score every item with a token equal to, starting with or containing the given term.
+   *
+   * @return the score of each item, or null if the term is found in more than
+   *     {@link #MAX_TERM_EXPANSIONS} other tokens
+   */
+  private Map<Long, Integer> scoreTerm(String term) {
+    Map<Long, Integer> scores = new HashMap<>();
+    int expansions = 0;
+    for (String token : tokensContaining(term)) {
+      boolean exact = token.equals(term);
+      if (!exact && ++expansions > MAX_TERM_EXPANSIONS) {
+        return null;
+      }
+      int boost = exact ? EXACT_BOOST : token.startsWith(term) ? PREFIX_BOOST : INFIX_BOOST;
+      postings.get(token).forEach((itemId, weight) -> scores.merge(itemId, weight * boost, Math::max));
+    }
+    return scores;
+  }
+
+  /**
+   * Find the indexed tokens containing a term. Terms as long as a gram are looked up through
+   * the tokens containing each of their grams, shorter ones by scanning all tokens.
+   */
+  private List<String> tokensContaining(String term) {
+    if (term.length() < GRAM_LENGTH) {
+      return postings.keySet().stream().filter(token -> token.contains(term)).toList();
+    }
+    Set<String> candidates = null;
+    for (String gram : grams(term)) {
+      Set<String> tokens = tokensByGram.get(gram);
+      if (tokens == null) {
+        return List.of();
+      }
+      if (candidates == null || tokens.size() < candidates.size()) {
+        candidates = tokens;
+      }
+    }
+    return candidates.stream().filter(token -> token.contains(term)).toList();
+  }
+
+  private void removeUnlocked(Long itemId) {
+    Set<String> tokens = tokensByItem.remove(itemId);
+    if (tokens == null) {
+      return;
+    }
+    for (String token : tokens) {
+      Map<Long, Integer> items = postings.get(token);
+      if (items != null) {
+        items.remove(itemId);
+        if (items.isEmpty()) {
+          postings.remove(token);
+          for (String gram : grams(token)) {
+            Set<String> gramTokens = tokensByGram.get(gram);
+            gramTokens.remove(token);
+            if (gramTokens.isEmpty()) {
+              tokensByGram.remove(gram);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Split a token into its distinct substrings of {@link #GRAM_LENGTH} characters.
+   *
+   * @param token the token
+   * @return the grams of the token, none if it is shorter than a gram
+   */
+  static Set<String> grams(String token) {
+    Set<String> grams = new HashSet<>();
+    for (int i = 0; i + GRAM_LENGTH <= token.length(); i++) {
+      grams.add(token.substring(i, i + GRAM_LENGTH));
+    }
+    return grams;
+  }
+
+  /**
+   * Split text into lower-case letter and digit tokens.
+   *
+   * @param text the text to tokenize
+   * @return the tokens in order of appearance
+   */
+  static List<String> tokenize(String text) {
+    if (text == null || text.isBlank()) {
+      return List.of();
+    }
+    List<String> tokens = new ArrayList<>();
+    for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!token.isEmpty()) {
+        tokens.add(token);
+      }
+    }
+    return tokens;
+  }
+}
@@ -3,15 +3,17 @@ package com.marketplace.backend.service;
 import com.marketplace.backend.model.Image;
 import com.marketplace.backend.model.ItemStatus;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.data.domain.Slice;
 import com.marketplace.backend.dto.ItemCreateDto;
+import com.marketplace.backend.dto.ItemCursor;
 import com.marketplace.backend.dto.ItemResponseDto;
+import com.marketplace.backend.dto.ItemSliceDto;
 import com.marketplace.backend.dto.ItemUpdateDto;
 import com.marketplace.backend.model.Category;
 import com.marketplace.backend.model.Item;
@@ -19,14 +21,27 @@ import com.marketplace.backend.model.User;
 import com.marketplace.backend.repository.CategoryRepository;
 import com.marketplace.backend.repository.ItemRepository;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.CurrentUser;
+import com.marketplace.backend.service.ItemGeoIndex.BoundingBox;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
@@ -41,7 +56,16 @@ public class ItemService {
   private final UserRepository userRepository;
   private final CategoryRepository categoryRepository;
 
-  private final CloudinaryService cloudinaryService;
+  private final ImageUploadService imageUploadService;
+  private final AssetDeletionOutbox assetDeletionOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final ItemSearchIndex itemSearchIndex;
+  private final ItemGeoIndex itemGeoIndex;
+  private final ItemRecommendationIndex itemRecommendationIndex;
+  private final CurrentUser currentUser;
+
+  private static final int CANDIDATE_BATCH_SIZE = 1000;
+  private static final int MAX_FEED_CANDIDATES = 10_000;
 
   /**
    * Constructor for ItemService.
@@ -49,16 +73,31 @@ public class ItemService {
    * @param itemRepository     the repository for handling item entities
    * @param userRepository      the repository for handling user entities
    * @param categoryRepository the repository for handling category entities
-   * @param cloudinaryService  the service for handling Cloudinary related operations
+   * @param imageUploadService the service uploading and deleting item images
+   * @param assetDeletionOutbox the outbox of images to delete once a change commits
+   * @param transactionManager the transaction manager used to write items with their outbox entries
+   * @param itemSearchIndex    the in-memory text index of items
+   * @param itemGeoIndex       the in-memory location index of items
+   * @param itemRecommendationIndex the in-memory category index of items for recommendations
+   * @param currentUser        access to the user of the current request
    */
   @Autowired
   public ItemService(ItemRepository itemRepository,
                      UserRepository userRepository,
-                     CategoryRepository categoryRepository, CloudinaryService cloudinaryService) {
+                     CategoryRepository categoryRepository, ImageUploadService imageUploadService,
+                     AssetDeletionOutbox assetDeletionOutbox, PlatformTransactionManager transactionManager,
+                     ItemSearchIndex itemSearchIndex, ItemGeoIndex itemGeoIndex,
+                     ItemRecommendationIndex itemRecommendationIndex, CurrentUser currentUser) {
     this.itemRepository = itemRepository;
     this.userRepository = userRepository;
     this.categoryRepository = categoryRepository;
-    this.cloudinaryService = cloudinaryService;
+    this.imageUploadService = imageUploadService;
+    this.assetDeletionOutbox = assetDeletionOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.itemSearchIndex = itemSearchIndex;
+    this.itemGeoIndex = itemGeoIndex;
+    this.itemRecommendationIndex = itemRecommendationIndex;
+    this.currentUser = currentUser;
   }
 
   /**
@@ -93,21 +132,37 @@ public class ItemService {
                                                 int page, int size) {
 
     try {
-      String email = getAuthenticatedEmail();
-      User currentUser = userRepository.findByEmail(email).orElseThrow();
+      String email = currentUser.getEmail();
+      Long currentUserId = currentUser.getId();
       Pageable pageable = PageRequest.of(page, size);
 
-      logger.info("Fetching filtered items for user: {}", currentUser.getEmail());
+      logger.info("Fetching filtered items for user: {}", email);
+
+      boolean hasSearch = searchQuery != null && !searchQuery.isBlank();
+      boolean withinDistance = latitude != null && longitude != null && distanceKm != null;
+      BoundingBox box = withinDistance
+          ? BoundingBox.around(latitude.doubleValue(), longitude.doubleValue(), distanceKm)
+          : null;
+
+      List<Long> candidates = resolveIndexCandidates(searchQuery, latitude, longitude, distanceKm);
+      if (candidates != null) {
+        return findAmongCandidates(currentUserId, candidates, hasSearch ? searchPattern(searchQuery) : null,
+            minPrice, maxPrice, categoryIds, latitude, longitude, withinDistance ? distanceKm : null, box,
+            page, size);
+      }
 
       Page<Item> itemsPage = itemRepository.findFilteredItems(
-          currentUser.getId(), minPrice, maxPrice,
+          currentUserId, minPrice, maxPrice,
           (categoryIds != null && !categoryIds.isEmpty()) ? categoryIds : null,
-          (searchQuery != null && !searchQuery.isBlank()) ? searchQuery : null,
-          latitude, longitude, distanceKm, pageable);
-
-      return itemsPage.getContent().stream()
-          .map(item -> ItemResponseDto.fromEntity(item, currentUser))
-          .toList();
+          hasSearch ? searchQuery : null,
+          latitude, longitude, distanceKm,
+          box != null ? BigDecimal.valueOf(box.minLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.minLongitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLongitude()) : null,
+          pageable);
+
+      return toDtos(itemsPage.getContent(), currentUserId);
     } catch (Exception e) {
       logger.error("Failed to fetch filtered items: {}", e.getMessage(), e);
       throw e;
@@ -115,6 +170,149 @@ public class ItemService {
   }
 
 
+  /**
+   * Get a slice of the filtered item feed, newest first, starting after the given cursor.
+   * Unlike {@link #getFilteredItems}, this seeks on (published date, id) and runs no count query,
+   * so deep pages cost the same as the first one.
+   *
+   * @param minPrice    the minimum price
+   * @param maxPrice    the maximum price
+   * @param categoryIds the category IDs
+   * @param searchQuery the search query
+   * @param latitude    the latitude
+   * @param longitude   the longitude
+   * @param distanceKm  the distance in kilometers
+   * @param cursor      the cursor returned with the previous slice, or null for the first slice
+   * @param size        the slice size
+   * @return the slice of items and the cursor for the next slice
+   */
+  public ItemSliceDto getFilteredItemFeed(Double minPrice, Double maxPrice,
+                                          List<Long> categoryIds, String searchQuery,
+                                          BigDecimal latitude, BigDecimal longitude,
+                                          Double distanceKm, String cursor, int size) {
+    ItemCursor position = ItemCursor.decode(cursor);
+    try {
+      String email = currentUser.getEmail();
+      Long currentUserId = currentUser.getId();
+      logger.info("Fetching filtered item feed for user: {}", email);
+
+      boolean hasSearch = searchQuery != null && !searchQuery.isBlank();
+      boolean withinDistance = latitude != null && longitude != null && distanceKm != null;
+      BoundingBox box = withinDistance
+          ? BoundingBox.around(latitude.doubleValue(), longitude.doubleValue(), distanceKm)
+          : null;
+      boolean anyCategory = categoryIds == null || categoryIds.isEmpty();
+
+      List<Long> candidates = resolveIndexCandidates(searchQuery, latitude, longitude, distanceKm);
+      if (candidates != null && candidates.size() > MAX_FEED_CANDIDATES) {
+        candidates = null;
+      }
+      if (candidates != null && candidates.isEmpty()) {
+        return new ItemSliceDto(List.of(), null);
+      }
+      String searchPattern = hasSearch ? searchPattern(searchQuery) : null;
+
+      Slice<Item> slice = itemRepository.findFilteredItemFeed(
+          currentUserId, minPrice, maxPrice,
+          anyCategory, anyCategory ? List.of(-1L) : categoryIds,
+          candidates == null, candidates == null ? List.of(-1L) : candidates,
+          searchPattern, latitude, longitude, withinDistance ? distanceKm : null,
+          box != null ? BigDecimal.valueOf(box.minLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.minLongitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLongitude()) : null,
+          position != null ? position.getPublishedDate() : null,
+          position != null ? position.getId() : null,
+          PageRequest.ofSize(size));
+
+      return toSliceDto(slice, toDtos(slice.getContent(), currentUserId));
+    } catch (Exception e) {
+      logger.error("Failed to fetch filtered item feed: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Resolve candidate item IDs for the text and distance filters from the in-memory indexes.
+   *
+   * @return the candidate IDs in rank order, or null if the indexes cannot answer the query
+   */
+  private List<Long> resolveIndexCandidates(String searchQuery, BigDecimal latitude,
+                                            BigDecimal longitude, Double distanceKm) {
+    boolean hasSearch = searchQuery != null && !searchQuery.isBlank();
+    if (hasSearch && !itemSearchIndex.isReady()) {
+      return null;
+    }
+
+    List<Long> candidates = null;
+    if (hasSearch) {
+      candidates = itemSearchIndex.search(searchQuery);
+      if (candidates == null) {
+        return null;
+      }
+    }
+    List<Long> nearby = latitude != null && longitude != null && distanceKm != null
+        && itemGeoIndex.isReady()
+        ? itemGeoIndex.findWithin(latitude, longitude, distanceKm)
+        : null;
+    if (nearby != null) {
+      if (candidates == null) {
+        candidates = nearby;
+      } else {
+        Set<Long> nearbySet = new HashSet<>(nearby);
+        candidates = candidates.stream().filter(nearbySet::contains).toList();
+      }
+    }
+    if (candidates != null) {
+      logger.debug("Resolved {} candidates from item indexes", candidates.size());
+    }
+    return candidates;
+  }
+
+  /**
+   * Build the LIKE pattern matching titles and descriptions containing the search query.
+   */
+  private static String searchPattern(String searchQuery) {
+    return "%" + searchQuery.toLowerCase(Locale.ROOT) + "%";
+  }
+
+  /**
+   * Apply the remaining filters in the database to candidates resolved from the search or geo
+   * index, keeping the order of the candidates (relevance for text search, otherwise distance).
+   * The search pattern is checked again, since the search index returns a superset of the items
+   * containing the query.
+   */
+  private List<ItemResponseDto> findAmongCandidates(Long currentUserId, List<Long> ranked,
+                                                    String searchPattern,
+                                                    Double minPrice, Double maxPrice,
+                                                    List<Long> categoryIds,
+                                                    BigDecimal latitude, BigDecimal longitude,
+                                                    Double distanceKm, BoundingBox box,
+                                                    int page, int size) {
+    boolean anyCategory = categoryIds == null || categoryIds.isEmpty();
+    long needed = (long) (page + 1) * size;
+    List<Long> matching = new ArrayList<>();
+    for (int from = 0; from < ranked.size() && matching.size() < needed;
+         from += CANDIDATE_BATCH_SIZE) {
+      List<Long> candidates = ranked.subList(from, Math.min(from + CANDIDATE_BATCH_SIZE, ranked.size()));
+      Set<Long> filtered = new HashSet<>(itemRepository.findFilteredItemIdsAmong(
+          candidates, currentUserId, searchPattern, minPrice, maxPrice, anyCategory,
+          anyCategory ? List.of(-1L) : categoryIds,
+          latitude, longitude, distanceKm,
+          box != null ? BigDecimal.valueOf(box.minLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLatitude()) : null,
+          box != null ? BigDecimal.valueOf(box.minLongitude()) : null,
+          box != null ? BigDecimal.valueOf(box.maxLongitude()) : null));
+      candidates.stream().filter(filtered::contains).forEach(matching::add);
+    }
+
+    List<Long> pageIds = matching.stream().skip((long) page * size).limit(size).toList();
+    Map<Long, Item> itemsById = itemRepository.findAllById(pageIds).stream()
+        .collect(Collectors.toMap(Item::getId, Function.identity()));
+
+    return toDtos(pageIds.stream().map(itemsById::get).filter(Objects::nonNull).toList(), currentUserId);
+  }
+
   /**
    * Get an item by its ID.
    *
@@ -128,12 +326,11 @@ public class ItemService {
       logger.warn("Item with ID {} not found", id);
       return Optional.empty();
     }
-    String email = getAuthenticatedEmail();
-    User user = userRepository.findByEmail(email).orElseThrow(() ->
+    Long userId = currentUser.findId().orElseThrow(() ->
         new RuntimeException("Authenticated user not found in database")
     );
 
-    return Optional.of(ItemResponseDto.fromEntity(itemOpt.get(), user));
+    return Optional.of(toDtos(List.of(itemOpt.get()), userId).get(0));
   }
 
   /**
@@ -142,35 +339,58 @@ public class ItemService {
    * @return a list of items as DTOs
    */
   public List<ItemResponseDto> getItemsForCurrentUser(int page, int size) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Fetching items for current user: {}", email);
     try {
-      User user = userRepository.findByEmail(email).orElseThrow();
+      User user = currentUser.getReference();
       Pageable pageable = PageRequest.of(page, size);
 
       Page<Item> paged = itemRepository.findBySeller(user, pageable);
-      return paged.getContent().stream().map(ItemResponseDto::fromEntity).collect(Collectors.toList());
+      return toDtos(paged.getContent(), null);
     } catch (Exception e) {
       logger.error("Failed to fetch items for user {}: {}", email, e.getMessage(), e);
       throw e;
     }
   }
 
+  /**
+   * Get a slice of the current user's items, newest first, starting after the given cursor.
+   *
+   * @param cursor the cursor returned with the previous slice, or null for the first slice
+   * @param size   the slice size
+   * @return the slice of items and the cursor for the next slice
+   */
+  public ItemSliceDto getItemFeedForCurrentUser(String cursor, int size) {
+    ItemCursor position = ItemCursor.decode(cursor);
+    String email = currentUser.getEmail();
+    logger.info("Fetching item feed for current user: {}", email);
+    try {
+      Slice<Item> slice = itemRepository.findSellerItemFeed(currentUser.getId(),
+          position != null ? position.getPublishedDate() : null,
+          position != null ? position.getId() : null,
+          PageRequest.ofSize(size));
+      return toSliceDto(slice, toDtos(slice.getContent(), null));
+    } catch (Exception e) {
+      logger.error("Failed to fetch item feed for user {}: {}", email, e.getMessage(), e);
+      throw e;
+    }
+  }
+
   /**
    * Get all favorite items for the current user.
    *
    * @return a list of favorite items as DTOs
    */
   public List<ItemResponseDto> getFavoriteItemsForCurrentUser(int page, int size) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Fetching favorite items for user: {}", email);
     try {
-      User user = userRepository.findByEmail(email).orElseThrow();
+      User user = currentUser.getReference();
       Pageable pageable = PageRequest.of(page, size);
 
       Page<Item> paged = itemRepository.findFavoritesByUser(user, pageable);
       return paged.getContent().stream()
-          .map(item -> ItemResponseDto.fromEntity(item, user))
+          .map(item -> ItemResponseDto.fromEntity(item, true))
           .toList();
     } catch (Exception e) {
       logger.error("Failed to fetch favorite items for user {}: {}", email, e.getMessage(), e);
@@ -178,6 +398,31 @@ public class ItemService {
     }
   }
 
+  /**
+   * Get a slice of the current user's favorite items, newest first, starting after the given cursor.
+   *
+   * @param cursor the cursor returned with the previous slice, or null for the first slice
+   * @param size   the slice size
+   * @return the slice of items and the cursor for the next slice
+   */
+  public ItemSliceDto getFavoriteItemFeedForCurrentUser(String cursor, int size) {
+    ItemCursor position = ItemCursor.decode(cursor);
+    String email = currentUser.getEmail();
+    logger.info("Fetching favorite item feed for user: {}", email);
+    try {
+      Slice<Item> slice = itemRepository.findFavoriteItemFeed(currentUser.getId(),
+          position != null ? position.getPublishedDate() : null,
+          position != null ? position.getId() : null,
+          PageRequest.ofSize(size));
+      return toSliceDto(slice, slice.getContent().stream()
+          .map(item -> ItemResponseDto.fromEntity(item, true))
+          .toList());
+    } catch (Exception e) {
+      logger.error("Failed to fetch favorite item feed for user {}: {}", email, e.getMessage(), e);
+      throw e;
+    }
+  }
+
   /**
    * Toggle favorite status for an item.
    *
@@ -185,10 +430,10 @@ public class ItemService {
    * @return true if the item was toggled, false otherwise
    */
   public boolean toggleFavoriteItem(Long itemId) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Toggling favorite status for item {} by user {}", itemId, email);
     try {
-      Optional<User> userOpt = userRepository.findByEmail(email);
+      Optional<User> userOpt = currentUser.findId().flatMap(userRepository::findById);
       Optional<Item> itemOpt = itemRepository.findById(itemId);
 
       if (userOpt.isEmpty() || itemOpt.isEmpty()) {
@@ -222,10 +467,10 @@ public class ItemService {
    * @throws IOException if an error occurs during image upload
    */
   public ItemResponseDto createItem(ItemCreateDto dto) throws IOException {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Creating item '{}' for user {}", dto.getTitle(), email);
     try {
-      User seller = userRepository.findByEmail(email).orElseThrow();
+      User seller = currentUser.getReference();
       Category category = categoryRepository.findById(dto.getCategoryId()).orElseThrow();
 
       Item item = new Item();
@@ -239,17 +484,19 @@ public class ItemService {
       item.setPublishedDate(LocalDateTime.now());
       item.setStatus(ItemStatus.FOR_SALE);
 
-      if (dto.getImages() != null && !dto.getImages().isEmpty()) {
-        logger.debug("Uploading {} images to Cloudinary", dto.getImages().size());
-        Long userId = seller.getId();
-        for (MultipartFile imageFile : dto.getImages()) {
-          String url = cloudinaryService.uploadImage(userId, imageFile);
-          Image image = new Image(item, url);
-          item.addImage(image);
-        }
-      }
+      List<UploadedImage> uploaded = imageUploadService.uploadAll(seller.getId(), dto.getImages());
+      uploaded.forEach(image -> item.addImage(new Image(item, image.url(), image.thumbnailUrl())));
 
-      itemRepository.save(item);
+      try {
+        itemRepository.save(item);
+      } catch (RuntimeException e) {
+        imageUploadService.deleteAll(imageUploadService.createdPublicIdsOf(uploaded));
+        throw e;
+      }
+      itemSearchIndex.index(item.getId(), item.getTitle(), item.getDescription());
+      itemGeoIndex.index(item.getId(), item.getLatitude(), item.getLongitude());
+      itemRecommendationIndex.index(item.getId(), category.getId(), seller.getId(), item.getPublishedDate(),
+          item.getStatus());
       logger.info("Item '{}' created successfully", dto.getTitle());
       return ItemResponseDto.fromEntity(item);
     } catch (Exception e) {
@@ -260,16 +507,22 @@ public class ItemService {
 
 
   /**
-   * Update an item, completely replacing all existing images.
+   * Update an item. Existing images listed in the keep IDs of the DTO, or whose content is
+   * submitted again, are kept; only new content is uploaded. Dropped images are deleted in the
+   * background once the update commits.
    *
    * @param id the ID of the item to update
    * @param dto the updated item data
    * @return an optional updated item DTO if found
+   * @throws IllegalStateException if the status is changed while a buyer is paying for the item
    */
   public Optional<ItemResponseDto> updateItem(Long id, ItemUpdateDto dto) {
     logger.info("Updating item with ID: {}", id);
     try {
       return itemRepository.findById(id).map(item -> {
+        if (dto.getStatus() != null && dto.getStatus() != item.getStatus()) {
+          checkNotClaimedByAnotherBuyer(item, null);
+        }
         if (dto.getTitle() != null) item.setTitle(dto.getTitle());
         if (dto.getDescription() != null) item.setDescription(dto.getDescription());
         if (dto.getPrice() != null) item.setPrice(dto.getPrice());
@@ -277,34 +530,23 @@ public class ItemService {
         if (dto.getLongitude() != null) item.setLongitude(dto.getLongitude());
         if (dto.getStatus() != null) item.setStatus(dto.getStatus());
 
-        logger.debug("Replacing {} existing images", item.getImages().size());
-        item.getImages().forEach(image -> {
-          image.setItem(null);
-          try {
-            String publicId = extractPublicIdFromUrl(image.getImageUrl());
-            cloudinaryService.deleteImage(publicId);
-          } catch (IOException e) {
-            logger.error("Failed to delete image from Cloudinary: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to delete old image from Cloudinary", e);
-          }
-        });
-        item.getImages().clear();
-
-        if (dto.getImages() != null && !dto.getImages().isEmpty()) {
-          Long userId = item.getSeller().getId();
-          for (MultipartFile imageFile : dto.getImages()) {
-            try {
-              String url = cloudinaryService.uploadImage(userId, imageFile);
-              Image image = new Image(item, url);
-              item.addImage(image);
-            } catch (IOException e) {
-              logger.error("Failed to upload image to Cloudinary: {}", e.getMessage(), e);
-              throw new RuntimeException("Failed to upload image", e);
-            }
-          }
+        ImageChanges changes = applyImageChanges(item, dto);
+
+        Item updated;
+        try {
+          updated = transactionTemplate.execute(status -> {
+            assetDeletionOutbox.enqueue(changes.removedPublicIds());
+            return itemRepository.save(item);
+          });
+        } catch (RuntimeException e) {
+          imageUploadService.deleteAll(imageUploadService.createdPublicIdsOf(changes.uploaded()));
+          throw e;
         }
-
-        Item updated = itemRepository.save(item);
+        itemSearchIndex.index(updated.getId(), updated.getTitle(), updated.getDescription());
+        itemGeoIndex.index(updated.getId(), updated.getLatitude(), updated.getLongitude());
+        itemRecommendationIndex.index(updated.getId(),
+            updated.getCategory() != null ? updated.getCategory().getId() : null,
+            updated.getSeller().getId(), updated.getPublishedDate(), updated.getStatus());
         logger.info("Item with ID {} updated successfully", id);
         return ItemResponseDto.fromEntity(updated);
       });
@@ -316,32 +558,46 @@ public class ItemService {
 
 
   /**
-   * Delete an item.
+   * Delete an item. Its images are deleted in the background once the deletion commits.
    *
    * @param id the ID of the item to delete
    * @return true if the item was deleted, false otherwise
+   * @throws IllegalStateException if a buyer is paying for the item
    */
   public boolean deleteItem(Long id) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Deleting item with ID {} by user {}", id, email);
     try {
-      Optional<User> userOpt = userRepository.findByEmail(email);
+      Optional<Long> userIdOpt = currentUser.findId();
       Optional<Item> itemOpt = itemRepository.findById(id);
 
-      if (userOpt.isEmpty() || itemOpt.isEmpty()) {
+      if (userIdOpt.isEmpty() || itemOpt.isEmpty()) {
         logger.warn("Item or user not found for deletion. user: {}, item: {}", email, id);
         return false;
       }
 
-      User user = userOpt.get();
       Item item = itemOpt.get();
 
-      if (!item.getSeller().getId().equals(user.getId())) {
+      if (!item.getSeller().getId().equals(userIdOpt.get())) {
         logger.warn("User {} tried to delete item {} not owned by them", email, id);
         return false;
       }
 
-      itemRepository.delete(item);
+      checkNotClaimedByAnotherBuyer(item, null);
+
+      List<String> imagePublicIds = item.getImages().stream()
+          .flatMap(image -> image.getThumbnailUrl() != null
+              ? Stream.of(image.getImageUrl(), image.getThumbnailUrl())
+              : Stream.of(image.getImageUrl()))
+          .map(imageUploadService::publicIdOf)
+          .toList();
+      transactionTemplate.executeWithoutResult(status -> {
+        assetDeletionOutbox.enqueue(imagePublicIds);
+        itemRepository.delete(item);
+      });
+      itemSearchIndex.remove(id);
+      itemGeoIndex.remove(id);
+      itemRecommendationIndex.remove(id);
       logger.info("Item {} deleted successfully", id);
       return true;
     } catch (Exception e) {
@@ -355,28 +611,34 @@ public class ItemService {
    *
    * @param itemId the ID of the item to update
    * @param newStatus the new status of the item
+   * @param buyerId the ID of the buyer to reserve the item for
    * @return true if the status was updated, false otherwise
+   * @throws IllegalStateException if the item is taken off sale while a buyer other than the one
+   *     it is reserved for is paying for it
    */
   public boolean updateItemStatus(Long itemId, ItemStatus newStatus, Long buyerId) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Updating status of item {} to {} by user {}", itemId, newStatus, email);
     try {
-      Optional<User> sellerOpt = userRepository.findByEmail(email);
+      Optional<Long> sellerIdOpt = currentUser.findId();
       Optional<Item> itemOpt = itemRepository.findById(itemId);
 
-      if (sellerOpt.isEmpty() || itemOpt.isEmpty()) {
+      if (sellerIdOpt.isEmpty() || itemOpt.isEmpty()) {
         logger.warn("Seller or item not found. seller: {}, item: {}", email, itemId);
         return false;
       }
 
-      User seller = sellerOpt.get();
       Item item = itemOpt.get();
 
-      if (!item.getSeller().getId().equals(seller.getId())) {
+      if (!item.getSeller().getId().equals(sellerIdOpt.get())) {
         logger.warn("User {} is not the seller of item {}", email, itemId);
         return false;
       }
 
+      if (newStatus != ItemStatus.FOR_SALE) {
+        checkNotClaimedByAnotherBuyer(item, newStatus == ItemStatus.RESERVED ? buyerId : null);
+      }
+
       item.setStatus(newStatus);
 
       if (newStatus == ItemStatus.RESERVED) {
@@ -395,6 +657,7 @@ public class ItemService {
       }
 
       itemRepository.save(item);
+      itemRecommendationIndex.updateStatus(itemId, newStatus);
       logger.info("Item {} status updated to {}", itemId, newStatus);
       return true;
     } catch (Exception e) {
@@ -405,28 +668,121 @@ public class ItemService {
 
 
   /**
-   * Get the email of the authenticated user.
+   * Reject a change that takes an item off sale while a buyer is paying for it. The claim bumps
+   * the version of the item, so a claim made after the item was read fails the save instead.
    *
-   * @return the email of the authenticated user
+   * @param item the item to change
+   * @param buyerId the ID of the buyer the change is made for, who may hold the claim, or null
+   * @throws IllegalStateException if the item is claimed by another buyer
+   */
+  private void checkNotClaimedByAnotherBuyer(Item item, Long buyerId) {
+    Long claimedBy = item.getActivePurchaseClaim(LocalDateTime.now());
+    if (claimedBy != null && !claimedBy.equals(buyerId)) {
+      logger.warn("Item {} is being paid for by buyer {}", item.getId(), claimedBy);
+      throw new IllegalStateException("Item is being paid for by another buyer");
+    }
+  }
+
+  /**
+   * Wrap the DTOs of a slice, with a cursor positioned at the last item if more remain.
    */
-  private String getAuthenticatedEmail() {
-    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-    return authentication.getName();
+  private ItemSliceDto toSliceDto(Slice<Item> slice, List<ItemResponseDto> items) {
+    List<Item> content = slice.getContent();
+    String nextCursor = slice.hasNext() && !content.isEmpty()
+        ? ItemCursor.fromEntity(content.get(content.size() - 1)).encode()
+        : null;
+    return new ItemSliceDto(items, nextCursor);
   }
 
   /**
-   * Extract the public ID from a Cloudinary URL.
+   * Work out which images of an item to keep, upload the new ones and replace the image list.
+   * Without keep IDs, all images are kept if no files are submitted and replaced otherwise.
+   * Submitted files are matched to existing images by their content hash, so re-sending an
+   * image that is already stored does not upload it again.
    *
-   * @param imageUrl the Cloudinary URL
-   * @return the public ID
+   * @param item the item to update
+   * @param dto  the update with the submitted files and the IDs of the images to keep
+   * @return the uploaded images and the public IDs of the removed images and thumbnails
    */
-  private String extractPublicIdFromUrl(String imageUrl) {
+  private ImageChanges applyImageChanges(Item item, ItemUpdateDto dto) {
+    List<MultipartFile> files = dto.getImages() != null ? dto.getImages() : List.of();
+    if (dto.getKeepImageIds() == null && files.isEmpty()) {
+      return new ImageChanges(List.of(), List.of());
+    }
+
+    Set<Long> keepIds = dto.getKeepImageIds() != null ? new HashSet<>(dto.getKeepImageIds()) : Set.of();
+    Map<String, Image> existingByPublicId = new LinkedHashMap<>();
+    for (Image image : item.getImages()) {
+      existingByPublicId.put(imageUploadService.publicIdOf(image.getImageUrl()), image);
+    }
+
+    Set<Image> kept = new HashSet<>();
+    item.getImages().stream().filter(image -> keepIds.contains(image.getId())).forEach(kept::add);
+    Long sellerId = item.getSeller().getId();
+    Set<String> submittedPublicIds = new HashSet<>();
+    List<MultipartFile> newFiles = new ArrayList<>();
     try {
-      String filename = imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
-      return filename.substring(0, filename.lastIndexOf("."));
-    } catch (Exception e) {
-      logger.error("Failed to extract public ID from URL: {}", imageUrl, e);
-      throw new IllegalArgumentException("Invalid Cloudinary URL: " + imageUrl, e);
+      for (MultipartFile file : files) {
+        String publicId;
+        try (InputStream in = file.getInputStream()) {
+          publicId = ImageStorage.publicIdFor(sellerId, in);
+        }
+        if (!submittedPublicIds.add(publicId)) {
+          continue;
+        }
+        Image existing = existingByPublicId.get(publicId);
+        if (existing != null) {
+          kept.add(existing);
+        } else {
+          newFiles.add(file);
+        }
+      }
+    } catch (IOException e) {
+      logger.error("Failed to read submitted image: {}", e.getMessage(), e);
+      throw new RuntimeException("Failed to read image", e);
     }
+
+    List<UploadedImage> uploaded;
+    try {
+      uploaded = imageUploadService.uploadAll(sellerId, newFiles);
+    } catch (IOException e) {
+      logger.error("Failed to upload image to Cloudinary: {}", e.getMessage(), e);
+      throw new RuntimeException("Failed to upload image", e);
+    }
+
+    List<String> removedPublicIds = new ArrayList<>();
+    existingByPublicId.forEach((publicId, image) -> {
+      if (!kept.contains(image)) {
+        removedPublicIds.add(publicId);
+        if (image.getThumbnailUrl() != null) {
+          removedPublicIds.add(imageUploadService.publicIdOf(image.getThumbnailUrl()));
+        }
+      }
+    });
+    logger.debug("Keeping {} images, uploading {}, removing {}", kept.size(), uploaded.size(), removedPublicIds.size());
+    item.getImages().removeIf(image -> !kept.contains(image));
+    uploaded.forEach(image -> item.addImage(new Image(item, image.url(), image.thumbnailUrl())));
+    return new ImageChanges(uploaded, removedPublicIds);
+  }
+
+  private record ImageChanges(List<UploadedImage> uploaded, List<String> removedPublicIds) {
+  }
+
+  /**
+   * Map items to DTOs, resolving the favorite flags of all items with a single query
+   * instead of loading every item's favorites collection.
+   *
+   * @param items       the items to map
+   * @param currentUserId the ID of the current user, or null if favorites should not be resolved
+   * @return the DTOs in the same order as the items
+   */
+  private List<ItemResponseDto> toDtos(List<Item> items, Long currentUserId) {
+    Set<Long> favorited = currentUserId == null || items.isEmpty()
+        ? Set.of()
+        : new HashSet<>(itemRepository.findFavoritedItemIds(currentUserId,
+            items.stream().map(Item::getId).toList()));
+    return items.stream()
+        .map(item -> ItemResponseDto.fromEntity(item, favorited.contains(item.getId())))
+        .toList();
   }
 }
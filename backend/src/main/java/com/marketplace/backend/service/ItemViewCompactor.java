@@ -0,0 +1,145 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemViewRepository;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rolls raw item views older than the retention window up into daily aggregates.
+ * Each batch of old views is deleted and added to the per-item and per-user-category daily
+ * counts in one transaction, so a view is never lost if the job stops halfway. The views are
+ * deleted first, and the batch is rolled back if another instance deleted any of them already,
+ * so a view is never counted twice when several instances compact at once.
+ */
+@Component
+public class ItemViewCompactor {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemViewCompactor.class);
+
+  private static final int BATCH_SIZE = 5000;
+
+  private final ItemViewRepository itemViewRepository;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final int retentionDays;
+
+  /**
+   * Constructor for ItemViewCompactor.
+   *
+   * @param itemViewRepository the repository for raw item views
+   * @param jdbcTemplate       the template used to write the rollups in batches
+   * @param transactionManager the transaction manager used for each batch
+   * @param retentionDays      the number of days raw views are kept
+   */
+  public ItemViewCompactor(ItemViewRepository itemViewRepository, JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${item-views.retention-days:90}") int retentionDays) {
+    this.itemViewRepository = itemViewRepository;
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.retentionDays = retentionDays;
+  }
+
+  /**
+   * Roll up and delete all raw views from before the retention window.
+   *
+   * @return the number of rolled up views
+   */
+  @Scheduled(cron = "${item-views.compaction-cron:0 30 3 * * *}")
+  public synchronized int compact() {
+    LocalDateTime cutoff = LocalDate.now().minusDays(retentionDays).atStartOfDay();
+    logger.info("Rolling up item views before {}", cutoff);
+    int compacted = 0;
+    try {
+      int batchSize;
+      do {
+        Integer rolledUp = transactionTemplate.execute(status -> compactBatch(cutoff));
+        batchSize = rolledUp != null ? rolledUp : 0;
+        compacted += batchSize;
+      } while (batchSize == BATCH_SIZE);
+      logger.info("Rolled up {} item views", compacted);
+      return compacted;
+    } catch (ConcurrencyFailureException e) {
+      logger.info("Stopped rolling up item views after {} views: {}", compacted, e.getMessage());
+      return compacted;
+    } catch (Exception e) {
+      logger.error("Failed to roll up item views after {} views: {}", compacted, e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  private int compactBatch(LocalDateTime cutoff) {
+    List<Object[]> views = itemViewRepository.findViewsBefore(cutoff, PageRequest.ofSize(BATCH_SIZE));
+    if (views.isEmpty()) {
+      return 0;
+    }
+
+    List<Long> ids = views.stream().map(row -> (Long) row[0]).toList();
+    // Locks the views, so an instance compacting the same batch waits and then deletes fewer
+    int deleted = itemViewRepository.deleteViews(ids);
+    if (deleted != ids.size()) {
+      throw new ConcurrencyFailureException(
+          "Only " + deleted + " of " + ids.size() + " item views were left to roll up, another instance is compacting");
+    }
+
+    Map<List<Object>, Long> itemDays = new HashMap<>();
+    Map<List<Object>, Long> userCategoryDays = new HashMap<>();
+    for (Object[] row : views) {
+      Date day = Date.valueOf(((LocalDateTime) row[4]).toLocalDate());
+      itemDays.merge(List.of(row[2], day), 1L, Long::sum);
+      if (row[3] != null) {
+        userCategoryDays.merge(List.of(row[1], row[3], day), 1L, Long::sum);
+      }
+    }
+
+    upsert("UPDATE ItemViewDailyCounts SET views = views + ? WHERE item_id = ? AND view_date = ?",
+        "INSERT INTO ItemViewDailyCounts (views, item_id, view_date) VALUES (?, ?, ?)", itemDays);
+    upsert("UPDATE UserCategoryViewDailyCounts SET views = views + ? "
+            + "WHERE user_id = ? AND category_id = ? AND view_date = ?",
+        "INSERT INTO UserCategoryViewDailyCounts (views, user_id, category_id, view_date) VALUES (?, ?, ?, ?)",
+        userCategoryDays);
+    return views.size();
+  }
+
+  /**
+   * Add the given counts to existing rollup rows and insert the ones that did not exist yet.
+   */
+  private void upsert(String updateSql, String insertSql, Map<List<Object>, Long> counts) {
+    if (counts.isEmpty()) {
+      return;
+    }
+    List<Object[]> rows = new ArrayList<>(counts.size());
+    counts.forEach((key, views) -> {
+      List<Object> row = new ArrayList<>(key.size() + 1);
+      row.add(views);
+      row.addAll(key);
+      rows.add(row.toArray());
+    });
+
+    int[] updated = jdbcTemplate.batchUpdate(updateSql, rows);
+    List<Object[]> missing = new ArrayList<>();
+    for (int i = 0; i < updated.length; i++) {
+      if (updated[i] == 0) {
+        missing.add(rows.get(i));
+      }
+    }
+    if (!missing.isEmpty()) {
+      jdbcTemplate.batchUpdate(insertSql, missing);
+    }
+  }
+}
@@ -0,0 +1,384 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemViewCountRepository;
+import com.marketplace.backend.repository.ItemViewDailyCountRepository;
+import com.marketplace.backend.repository.ItemViewHourlyCountRepository;
+import com.marketplace.backend.repository.ItemViewRepository;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Rolling per-item view counters.
+ * Counts are kept in memory as {@link LongAdder}s, all-time and per hour for the last week. The
+ * views counted since the last flush are added to the ItemViewCounts and ItemViewHourlyCounts
+ * tables periodically, so several instances can count views of the same item without
+ * overwriting each other. Each flush then reloads the counts from those tables, so they include
+ * the views counted on other instances, and rebuilds the top-K most viewed items of every
+ * {@link Window}, so popularity lookups never aggregate raw views.
+ */
+@Component
+public class ItemViewCounters {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemViewCounters.class);
+
+  static final int TOP_K = 100;
+  private static final int DAY_HOURS = 24;
+  private static final int WEEK_HOURS = 7 * 24;
+  private static final int LOAD_BATCH_SIZE = 1000;
+
+  /**
+   * The time window of a view count.
+   */
+  public enum Window {
+    ALL_TIME, LAST_DAY, LAST_WEEK
+  }
+
+  private final ItemViewCountRepository itemViewCountRepository;
+  private final ItemViewHourlyCountRepository itemViewHourlyCountRepository;
+  private final ItemViewRepository itemViewRepository;
+  private final ItemViewDailyCountRepository itemViewDailyCountRepository;
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  private final Map<Long, LongAdder> totals = new ConcurrentHashMap<>();
+  private final Map<LocalDateTime, Map<Long, LongAdder>> hourly = new ConcurrentHashMap<>();
+  private final Map<Long, Long> unflushedTotals = new ConcurrentHashMap<>();
+  private final Map<HourlyKey, Long> unflushedHourly = new ConcurrentHashMap<>();
+  private volatile Map<Window, List<Long>> topItems = Map.of(
+      Window.ALL_TIME, List.of(), Window.LAST_DAY, List.of(), Window.LAST_WEEK, List.of());
+  private volatile Map<Long, Long> lastWeekCounts = Map.of();
+
+  /**
+   * Constructor for ItemViewCounters.
+   *
+   * @param itemViewCountRepository       the repository for all-time view counts
+   * @param itemViewHourlyCountRepository the repository for hourly view counts
+   * @param itemViewRepository            the repository used to backfill counts from raw views
+   * @param itemViewDailyCountRepository  the repository used to backfill counts from rolled up views
+   * @param jdbcTemplate                  the template used to write the counts in batches
+   * @param transactionManager            the transaction manager writing each flush atomically
+   */
+  public ItemViewCounters(ItemViewCountRepository itemViewCountRepository,
+                          ItemViewHourlyCountRepository itemViewHourlyCountRepository,
+                          ItemViewRepository itemViewRepository,
+                          ItemViewDailyCountRepository itemViewDailyCountRepository, JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager) {
+    this.itemViewCountRepository = itemViewCountRepository;
+    this.itemViewHourlyCountRepository = itemViewHourlyCountRepository;
+    this.itemViewRepository = itemViewRepository;
+    this.itemViewDailyCountRepository = itemViewDailyCountRepository;
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Load the stored counts, or compute them from the raw views the first time.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    if (itemViewCountRepository.count() == 0) {
+      backfill();
+      return;
+    }
+
+    logger.info("Loading item view counts");
+    long lastId = 0L;
+    List<Object[]> batch;
+    do {
+      batch = itemViewCountRepository.findCountsAfter(lastId, PageRequest.ofSize(LOAD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        totals.computeIfAbsent(lastId, id -> new LongAdder()).add((Long) row[1]);
+      }
+    } while (batch.size() == LOAD_BATCH_SIZE);
+
+    for (Object[] row : itemViewHourlyCountRepository.findCountsSince(oldestHour(WEEK_HOURS))) {
+      hourly.computeIfAbsent((LocalDateTime) row[1], hour -> new ConcurrentHashMap<>())
+          .computeIfAbsent((Long) row[0], id -> new LongAdder()).add((Long) row[2]);
+    }
+    refreshRankings();
+    logger.info("Loaded view counts of {} items", totals.size());
+  }
+
+  /**
+   * Count a view of an item.
+   *
+   * @param itemId   the ID of the item
+   * @param viewedAt when the item was viewed
+   */
+  public void increment(Long itemId, LocalDateTime viewedAt) {
+    totals.computeIfAbsent(itemId, id -> new LongAdder()).increment();
+    unflushedTotals.merge(itemId, 1L, Long::sum);
+
+    LocalDateTime hour = viewedAt.truncatedTo(ChronoUnit.HOURS);
+    if (!hour.isBefore(oldestHour(WEEK_HOURS))) {
+      hourly.computeIfAbsent(hour, h -> new ConcurrentHashMap<>())
+          .computeIfAbsent(itemId, id -> new LongAdder()).increment();
+      unflushedHourly.merge(new HourlyKey(itemId, hour), 1L, Long::sum);
+    }
+  }
+
+  /**
+   * Get the number of views of an item within a window.
+   *
+   * @param itemId the ID of the item
+   * @param window the time window
+   * @return the number of views
+   */
+  public long getViewCount(Long itemId, Window window) {
+    if (window == Window.ALL_TIME) {
+      LongAdder total = totals.get(itemId);
+      return total != null ? total.sum() : 0;
+    }
+    LocalDateTime oldest = oldestHour(window == Window.LAST_DAY ? DAY_HOURS : WEEK_HOURS);
+    long views = 0;
+    for (Map.Entry<LocalDateTime, Map<Long, LongAdder>> bucket : hourly.entrySet()) {
+      LongAdder count = bucket.getValue().get(itemId);
+      if (count != null && !bucket.getKey().isBefore(oldest)) {
+        views += count.sum();
+      }
+    }
+    return views;
+  }
+
+  /**
+   * Get the IDs of the most viewed items within a window, as of the last flush.
+   *
+   * @param window the time window
+   * @return up to {@link #TOP_K} item IDs, most viewed first
+   */
+  public List<Long> getTopItemIds(Window window) {
+    return topItems.get(window);
+  }
+
+  /**
+   * Get the last-week view count of every item viewed in the last week, as of the last flush.
+   *
+   * @return the view counts by item ID
+   */
+  public Map<Long, Long> getLastWeekCounts() {
+    return lastWeekCounts;
+  }
+
+  /**
+   * Add the views counted since the last flush to the database in one transaction, drop expired
+   * hours, reload the counts of all instances and rebuild the rankings. Views that fail to be
+   * written are kept for the next flush.
+   */
+  @Scheduled(fixedDelayString = "${item-views.counter-flush-interval-ms:60000}")
+  public synchronized void flush() {
+    try {
+      Map<Long, Long> totalDeltas = takeAll(unflushedTotals);
+      Map<HourlyKey, Long> hourlyDeltas = takeAll(unflushedHourly);
+      try {
+        transactionTemplate.executeWithoutResult(status -> {
+          writeTotals(totalDeltas);
+          writeHourly(hourlyDeltas);
+        });
+      } catch (RuntimeException e) {
+        totalDeltas.forEach((itemId, views) -> unflushedTotals.merge(itemId, views, Long::sum));
+        hourlyDeltas.forEach((key, views) -> unflushedHourly.merge(key, views, Long::sum));
+        throw e;
+      }
+      LocalDateTime oldest = oldestHour(WEEK_HOURS);
+      hourly.keySet().removeIf(hour -> hour.isBefore(oldest));
+      itemViewHourlyCountRepository.deleteCountsBefore(oldest);
+    } catch (Exception e) {
+      logger.error("Failed to write item view counts: {}", e.getMessage(), e);
+    }
+    try {
+      reload();
+    } catch (Exception e) {
+      logger.error("Failed to reload item view counts: {}", e.getMessage(), e);
+    }
+    refreshRankings();
+  }
+
+  /**
+   * Set the counts to the stored counts of all instances, plus the views of this instance not
+   * written yet. Views counted during the reload are in both the counts and the unflushed views,
+   * so a few may be counted twice until the next reload.
+   */
+  private void reload() {
+    Map<Long, Long> storedTotals = new HashMap<>();
+    long lastId = 0L;
+    List<Object[]> batch;
+    do {
+      batch = itemViewCountRepository.findCountsAfter(lastId, PageRequest.ofSize(LOAD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        storedTotals.put(lastId, (Long) row[1]);
+      }
+    } while (batch.size() == LOAD_BATCH_SIZE);
+
+    Map<HourlyKey, Long> storedHourly = new HashMap<>();
+    for (Object[] row : itemViewHourlyCountRepository.findCountsSince(oldestHour(WEEK_HOURS))) {
+      storedHourly.put(new HourlyKey((Long) row[0], (LocalDateTime) row[1]), (Long) row[2]);
+    }
+
+    storedTotals.forEach((itemId, views) -> totals.computeIfAbsent(itemId, id -> new LongAdder()));
+    totals.forEach((itemId, count) -> reset(count,
+        storedTotals.getOrDefault(itemId, 0L) + unflushedTotals.getOrDefault(itemId, 0L)));
+
+    storedHourly.forEach((key, views) -> hourly.computeIfAbsent(key.hourStart(), h -> new ConcurrentHashMap<>())
+        .computeIfAbsent(key.itemId(), id -> new LongAdder()));
+    hourly.forEach((hour, counts) -> counts.forEach((itemId, count) -> {
+      HourlyKey key = new HourlyKey(itemId, hour);
+      reset(count, storedHourly.getOrDefault(key, 0L) + unflushedHourly.getOrDefault(key, 0L));
+    }));
+  }
+
+  private static void reset(LongAdder count, long views) {
+    count.add(views - count.sum());
+  }
+
+  /**
+   * Rebuild the top-K rankings from the in-memory counts.
+   */
+  void refreshRankings() {
+    Map<Long, Long> lastDay = new HashMap<>();
+    Map<Long, Long> lastWeek = new HashMap<>();
+    LocalDateTime oldestOfDay = oldestHour(DAY_HOURS);
+    LocalDateTime oldestOfWeek = oldestHour(WEEK_HOURS);
+    hourly.forEach((hour, counts) -> {
+      if (hour.isBefore(oldestOfWeek)) {
+        return;
+      }
+      boolean withinDay = !hour.isBefore(oldestOfDay);
+      counts.forEach((itemId, count) -> {
+        long views = count.sum();
+        lastWeek.merge(itemId, views, Long::sum);
+        if (withinDay) {
+          lastDay.merge(itemId, views, Long::sum);
+        }
+      });
+    });
+
+    Map<Long, Long> allTime = new HashMap<>();
+    totals.forEach((itemId, count) -> allTime.put(itemId, count.sum()));
+
+    lastWeekCounts = Collections.unmodifiableMap(lastWeek);
+    topItems = Map.of(
+        Window.ALL_TIME, topK(allTime),
+        Window.LAST_DAY, topK(lastDay),
+        Window.LAST_WEEK, topK(lastWeek));
+  }
+
+  private void backfill() {
+    logger.info("Computing item view counts from rolled up and raw views");
+    for (Object[] row : itemViewDailyCountRepository.sumViewsByItem()) {
+      Long itemId = (Long) row[0];
+      totals.computeIfAbsent(itemId, id -> new LongAdder()).add((Long) row[1]);
+      unflushedTotals.merge(itemId, (Long) row[1], Long::sum);
+    }
+
+    long lastId = 0L;
+    int counted = 0;
+    List<Object[]> batch;
+    do {
+      batch = itemViewRepository.findViewsAfter(lastId, PageRequest.ofSize(LOAD_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        increment((Long) row[1], (LocalDateTime) row[2]);
+      }
+      counted += batch.size();
+    } while (batch.size() == LOAD_BATCH_SIZE);
+    flush();
+    logger.info("Computed view counts from {} views", counted);
+  }
+
+  private void writeTotals(Map<Long, Long> deltas) {
+    List<Object[]> rows = new ArrayList<>();
+    deltas.forEach((itemId, views) -> rows.add(new Object[] {views, itemId}));
+    upsert("UPDATE ItemViewCounts SET total_views = total_views + ? WHERE item_id = ?",
+        "INSERT INTO ItemViewCounts (total_views, item_id) VALUES (?, ?)", rows);
+  }
+
+  private void writeHourly(Map<HourlyKey, Long> deltas) {
+    List<Object[]> rows = new ArrayList<>();
+    deltas.forEach((key, views) ->
+        rows.add(new Object[] {views, key.itemId(), Timestamp.valueOf(key.hourStart())}));
+    upsert("UPDATE ItemViewHourlyCounts SET views = views + ? WHERE item_id = ? AND hour_start = ?",
+        "INSERT INTO ItemViewHourlyCounts (views, item_id, hour_start) VALUES (?, ?, ?)", rows);
+  }
+
+  /**
+   * Remove and return the views counted so far. Each key is removed atomically, so views
+   * counted concurrently are either taken or left for the next flush.
+   */
+  private static <K> Map<K, Long> takeAll(Map<K, Long> unflushed) {
+    Map<K, Long> taken = new HashMap<>();
+    for (K key : List.copyOf(unflushed.keySet())) {
+      Long views = unflushed.remove(key);
+      if (views != null) {
+        taken.put(key, views);
+      }
+    }
+    return taken;
+  }
+
+  /**
+   * Update the given rows and insert the ones that did not exist yet. An instance inserting the
+   * same row concurrently fails the transaction, and the views are added on the next flush.
+   */
+  private void upsert(String updateSql, String insertSql, List<Object[]> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    int[] updated = jdbcTemplate.batchUpdate(updateSql, rows);
+    List<Object[]> missing = new ArrayList<>();
+    for (int i = 0; i < updated.length; i++) {
+      if (updated[i] == 0) {
+        missing.add(rows.get(i));
+      }
+    }
+    if (!missing.isEmpty()) {
+      jdbcTemplate.batchUpdate(insertSql, missing);
+    }
+  }
+
+  private static List<Long> topK(Map<Long, Long> counts) {
+    Comparator<Map.Entry<Long, Long>> byViews = Map.Entry.<Long, Long>comparingByValue()
+        .thenComparing(Map.Entry.comparingByKey());
+    PriorityQueue<Map.Entry<Long, Long>> heap = new PriorityQueue<>(TOP_K + 1, byViews);
+    for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+      if (entry.getValue() <= 0) {
+        continue;
+      }
+      heap.offer(entry);
+      if (heap.size() > TOP_K) {
+        heap.poll();
+      }
+    }
+    List<Map.Entry<Long, Long>> ranked = new ArrayList<>(heap);
+    ranked.sort(byViews.reversed());
+    return ranked.stream().map(Map.Entry::getKey).toList();
+  }
+
+  private static LocalDateTime oldestHour(int hours) {
+    return LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(hours - 1L);
+  }
+
+  private record HourlyKey(Long itemId, LocalDateTime hourStart) {
+  }
+}
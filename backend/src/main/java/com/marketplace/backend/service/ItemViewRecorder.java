@@ -0,0 +1,233 @@
+package com.marketplace.backend.service;
+
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Buffers item views in a bounded queue and writes them to the ItemViews table in JDBC batches.
+ * Repeated views of the same item by the same user within {@link #DEDUPE_WINDOW_MS} are
+ * collapsed into one. When the queue is full new views are dropped and counted, so a burst of
+ * traffic never blocks the request threads or grows memory without bound.
+ */
+@Component
+public class ItemViewRecorder {
+
+  private static final Logger logger = LoggerFactory.getLogger(ItemViewRecorder.class);
+
+  static final long DEDUPE_WINDOW_MS = 5 * 60 * 1000L;
+  private static final int QUEUE_CAPACITY = 10_000;
+  private static final int BATCH_SIZE = 500;
+  private static final int MAX_TRACKED_VIEWS = 100_000;
+  private static final String INSERT_SQL =
+      "INSERT INTO ItemViews (user_id, item_id, viewed_at) VALUES (?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ItemViewCounters itemViewCounters;
+  private final ItemRecommendationIndex itemRecommendationIndex;
+  private final UserAffinityCache userAffinityCache;
+
+  private final BlockingQueue<ViewEvent> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final Map<ViewKey, Long> lastAcceptedAt = new ConcurrentHashMap<>();
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder collapsed = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private long droppedAtLastFlush = 0;
+  private volatile boolean accepting = true;
+
+  /**
+   * Constructor for ItemViewRecorder.
+   *
+   * @param jdbcTemplate     the template used for the batch inserts
+   * @param itemViewCounters the counters updated with every written view
+   * @param itemRecommendationIndex the index used to look up the category of viewed items
+   * @param userAffinityCache the category affinities updated with every written view
+   */
+  public ItemViewRecorder(JdbcTemplate jdbcTemplate, ItemViewCounters itemViewCounters,
+                          ItemRecommendationIndex itemRecommendationIndex, UserAffinityCache userAffinityCache) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.itemViewCounters = itemViewCounters;
+    this.itemRecommendationIndex = itemRecommendationIndex;
+    this.userAffinityCache = userAffinityCache;
+  }
+
+  /**
+   * Queue a view of an item by a user. Never blocks.
+   *
+   * @param userId the ID of the user
+   * @param itemId the ID of the item
+   * @return false if the view was dropped because the queue is full or shutting down
+   */
+  public boolean record(Long userId, Long itemId) {
+    if (!accepting) {
+      dropped.increment();
+      return false;
+    }
+
+    long now = System.currentTimeMillis();
+    ViewKey key = new ViewKey(userId, itemId);
+    Long previous = lastAcceptedAt.get(key);
+    if (previous != null && now - previous < DEDUPE_WINDOW_MS) {
+      collapsed.increment();
+      return true;
+    }
+    if (previous == null ? lastAcceptedAt.putIfAbsent(key, now) != null
+        : !lastAcceptedAt.replace(key, previous, now)) {
+      collapsed.increment();
+      return true;
+    }
+
+    if (!queue.offer(new ViewEvent(userId, itemId, LocalDateTime.now()))) {
+      lastAcceptedAt.remove(key, now);
+      dropped.increment();
+      return false;
+    }
+    accepted.increment();
+    return true;
+  }
+
+  /**
+   * Write all queued views to the database.
+   */
+  @Scheduled(fixedDelayString = "${item-views.flush-interval-ms:1000}")
+  public synchronized void flush() {
+    List<ViewEvent> batch = new ArrayList<>(BATCH_SIZE);
+    while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+      write(batch);
+      batch.clear();
+    }
+
+    long droppedTotal = dropped.sum();
+    if (droppedTotal > droppedAtLastFlush) {
+      logger.warn("Dropped {} item views since last flush, queue is full", droppedTotal - droppedAtLastFlush);
+      droppedAtLastFlush = droppedTotal;
+    }
+    forgetExpiredViews();
+  }
+
+  /**
+   * Stop accepting views and write the ones still queued.
+   */
+  @PreDestroy
+  public void shutdown() {
+    accepting = false;
+    flush();
+    logger.info("Item view recorder stopped: {} accepted, {} collapsed, {} dropped, {} written, {} failed",
+        accepted.sum(), collapsed.sum(), dropped.sum(), written.sum(), failed.sum());
+  }
+
+  /**
+   * Get the number of views waiting to be written.
+   *
+   * @return the queue length
+   */
+  public int getQueuedCount() {
+    return queue.size();
+  }
+
+  /**
+   * Get the number of views accepted into the queue.
+   *
+   * @return the accepted count
+   */
+  public long getAcceptedCount() {
+    return accepted.sum();
+  }
+
+  /**
+   * Get the number of views collapsed into an earlier view of the same item by the same user.
+   *
+   * @return the collapsed count
+   */
+  public long getCollapsedCount() {
+    return collapsed.sum();
+  }
+
+  /**
+   * Get the number of views dropped because the queue was full.
+   *
+   * @return the dropped count
+   */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * Get the number of views written to the database.
+   *
+   * @return the written count
+   */
+  public long getWrittenCount() {
+    return written.sum();
+  }
+
+  /**
+   * Get the number of views that could not be written, e.g. because the item was deleted.
+   *
+   * @return the failed count
+   */
+  public long getFailedCount() {
+    return failed.sum();
+  }
+
+  private void write(List<ViewEvent> batch) {
+    try {
+      jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+        ps.setLong(1, event.userId());
+        ps.setLong(2, event.itemId());
+        ps.setTimestamp(3, Timestamp.valueOf(event.viewedAt()));
+      });
+      written.add(batch.size());
+      batch.forEach(this::onWritten);
+    } catch (DataAccessException e) {
+      logger.warn("Batch insert of {} item views failed, retrying one by one: {}", batch.size(), e.getMessage());
+      for (ViewEvent event : batch) {
+        try {
+          jdbcTemplate.update(INSERT_SQL, event.userId(), event.itemId(), Timestamp.valueOf(event.viewedAt()));
+          written.increment();
+          onWritten(event);
+        } catch (DataAccessException rowError) {
+          logger.debug("Skipping view of item {} by user {}: {}", event.itemId(), event.userId(), rowError.getMessage());
+          failed.increment();
+        }
+      }
+    }
+  }
+
+  private void onWritten(ViewEvent event) {
+    itemViewCounters.increment(event.itemId(), event.viewedAt());
+    Long categoryId = itemRecommendationIndex.findCategoryId(event.itemId());
+    if (categoryId != null) {
+      userAffinityCache.recordView(event.userId(), categoryId);
+    }
+  }
+
+  private void forgetExpiredViews() {
+    long cutoff = System.currentTimeMillis() - DEDUPE_WINDOW_MS;
+    lastAcceptedAt.values().removeIf(acceptedAt -> acceptedAt < cutoff);
+    if (lastAcceptedAt.size() > MAX_TRACKED_VIEWS) {
+      lastAcceptedAt.clear();
+    }
+  }
+
+  private record ViewKey(Long userId, Long itemId) {
+  }
+
+  private record ViewEvent(Long userId, Long itemId, LocalDateTime viewedAt) {
+  }
+}
@@ -1,12 +1,14 @@
 package com.marketplace.backend.service;
 
 import com.marketplace.backend.model.Item;
-import com.marketplace.backend.model.ItemView;
-import com.marketplace.backend.model.User;
+import com.marketplace.backend.model.ItemStatus;
 import com.marketplace.backend.repository.ItemRepository;
 import com.marketplace.backend.repository.ItemViewRepository;
+import com.marketplace.backend.repository.UserCategoryViewDailyCountRepository;
+import com.marketplace.backend.security.CurrentUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -16,91 +18,135 @@ import java.util.stream.Collectors;
 public class ItemViewService {
   private static final Logger logger = LoggerFactory.getLogger(ItemViewService.class);
 
+  private static final int MAX_RECOMMENDATIONS = 50;
+  private static final int AFFINITY_HISTORY_SIZE = 50;
+
   private final ItemViewRepository itemViewRepository;
   private final ItemRepository itemRepository;
-
-  public ItemViewService(ItemViewRepository itemViewRepository, ItemRepository itemRepository) {
+  private final ItemViewRecorder itemViewRecorder;
+  private final ItemViewCounters itemViewCounters;
+  private final ItemRecommendationIndex itemRecommendationIndex;
+  private final UserAffinityCache userAffinityCache;
+  private final UserCategoryViewDailyCountRepository userCategoryViewDailyCountRepository;
+  private final CurrentUser currentUser;
+
+  public ItemViewService(ItemViewRepository itemViewRepository, ItemRepository itemRepository,
+                         ItemViewRecorder itemViewRecorder, ItemViewCounters itemViewCounters,
+                         ItemRecommendationIndex itemRecommendationIndex, UserAffinityCache userAffinityCache,
+                         UserCategoryViewDailyCountRepository userCategoryViewDailyCountRepository,
+                         CurrentUser currentUser) {
     this.itemViewRepository = itemViewRepository;
     this.itemRepository = itemRepository;
+    this.itemViewRecorder = itemViewRecorder;
+    this.itemViewCounters = itemViewCounters;
+    this.itemRecommendationIndex = itemRecommendationIndex;
+    this.userAffinityCache = userAffinityCache;
+    this.userCategoryViewDailyCountRepository = userCategoryViewDailyCountRepository;
+    this.currentUser = currentUser;
   }
 
   /**
-   * Logs a view of an item by a user.
+   * Logs a view of an item by the current user.
+   * The view is queued and written in a batch later; no entities are loaded.
+   *
+   * @param itemId the ID of the viewed item
    */
-  public void logItemView(User user, Item item) {
-    logger.info("Logging view of item {} by user {}", item.getId(), user.getEmail());
-    try {
-      ItemView itemView = new ItemView(user, item);
-      itemViewRepository.save(itemView);
-      logger.debug("Item view saved successfully for item {} by user {}", item.getId(), user.getEmail());
-    } catch (Exception e) {
-      logger.error("Failed to log item view for item {} by user {}: {}", item.getId(), user.getEmail(), e.getMessage(), e);
-      throw e;
+  public void logItemView(Long itemId) {
+    Long userId = currentUser.getId();
+    logger.debug("Queueing view of item {} by user {}", itemId, userId);
+    if (!itemViewRecorder.record(userId, itemId)) {
+      logger.debug("View of item {} by user {} was dropped", itemId, userId);
     }
   }
 
   /**
-   * Returns a list of up to 8 recommended items for a user.
-   * If the user has no recent views, fall back to most viewed items globally.
+   * Returns recommended items for the current user.
+   * Items are picked from the categories the user viewed recently, weighted by the user's
+   * affinity to each category, and topped up with the most viewed items globally.
+   *
+   * @param limit the maximum number of items
+   * @return the recommended items, best first
    */
-  public List<Item> getRecommendedItems(User user) {
-    logger.info("Generating recommended items for user {}", user.getEmail());
+  public List<Item> getRecommendedItems(int limit) {
+    Long userId = currentUser.getId();
+    logger.info("Generating recommended items for user {}", userId);
     try {
-      List<ItemView> recentViews = itemViewRepository.findTop10ByUserOrderByViewedAtDesc(user);
+      int size = Math.max(1, Math.min(limit, MAX_RECOMMENDATIONS));
+      Map<Long, Double> affinities = userAffinityCache.get(userId, this::findRecentCategoryIds);
 
-      if (recentViews.isEmpty()) {
-        return getMostViewedItemsExcludingUser(user, 8);
+      List<Item> recommended = loadForSale(itemRecommendationIndex.recommend(affinities, userId, size), userId);
+      if (recommended.size() < size) {
+        Set<Long> alreadyIncluded = recommended.stream().map(Item::getId).collect(Collectors.toSet());
+        recommended.addAll(getMostViewedItemsExcludingUser(userId, size - recommended.size(), alreadyIncluded));
       }
 
-      Set<Long> categoryIds = recentViews.stream()
-          .map(iv -> iv.getItem().getCategory().getId())
-          .collect(Collectors.toSet());
-
-      List<Item> categoryBased = itemRepository.findAll().stream()
-          .filter(item -> categoryIds.contains(item.getCategory().getId()))
-          .filter(item -> !item.getSeller().getId().equals(user.getId()))
-          .limit(8)
-          .collect(Collectors.toList());
-
-      if (categoryBased.size() >= 8) {
-        return categoryBased;
-      }
-
-      Set<Long> alreadyIncluded = categoryBased.stream().map(Item::getId).collect(Collectors.toSet());
-
-      List<Item> fallback = getMostViewedItemsExcludingUser(user, 8 - categoryBased.size()).stream()
-          .filter(item -> !alreadyIncluded.contains(item.getId()))
-          .toList();
-
-      List<Item> combined = new ArrayList<>(categoryBased);
-      combined.addAll(fallback);
-
-      logger.info("Returning {} total recommendations for user {}", combined.size(), user.getEmail());
-      return combined;
-
+      logger.info("Returning {} total recommendations for user {}", recommended.size(), userId);
+      return recommended;
     } catch (Exception e) {
-      logger.error("Failed to generate recommendations for user {}: {}", user.getEmail(), e.getMessage(), e);
+      logger.error("Failed to generate recommendations for user {}: {}", userId, e.getMessage(), e);
       throw e;
     }
   }
 
   /**
-   * Returns the most viewed items globally, excluding those from the given user.
+   * Find the categories of the last views of a user, newest first.
+   * Raw views are used first; older views that have been rolled up count once per view.
+   */
+  private List<Long> findRecentCategoryIds(Long userId) {
+    List<Long> categoryIds = new ArrayList<>(
+        itemViewRepository.findRecentCategoryIds(userId, PageRequest.ofSize(AFFINITY_HISTORY_SIZE)));
+    if (categoryIds.size() < AFFINITY_HISTORY_SIZE) {
+      for (Object[] row : userCategoryViewDailyCountRepository.findRecentCategoryViews(userId,
+          PageRequest.ofSize(AFFINITY_HISTORY_SIZE))) {
+        long views = Math.min((Long) row[1], AFFINITY_HISTORY_SIZE - categoryIds.size());
+        for (long i = 0; i < views; i++) {
+          categoryIds.add((Long) row[0]);
+        }
+        if (categoryIds.size() >= AFFINITY_HISTORY_SIZE) {
+          break;
+        }
+      }
+    }
+    return categoryIds;
+  }
+
+  /**
+   * Returns the most viewed items globally that are for sale, excluding those from the given user.
+   * Items popular in the last week come first, followed by the all-time most viewed.
+   * The cached rankings are filtered in memory, so only the returned items are loaded, in one query.
    */
-  private List<Item> getMostViewedItemsExcludingUser(User user, int limit) {
-    logger.debug("Fetching most viewed items (limit {}) excluding user {}", limit, user.getEmail());
+  private List<Item> getMostViewedItemsExcludingUser(Long userId, int limit, Set<Long> excludedItemIds) {
+    logger.debug("Fetching most viewed items (limit {}) excluding user {}", limit, userId);
     try {
-      return itemViewRepository.findItemIdsWithViewCountsDesc().stream()
-          .map(obj -> (Long) obj[0])
-          .map(itemRepository::findById)
-          .filter(Optional::isPresent)
-          .map(Optional::get)
-          .filter(item -> !item.getSeller().getId().equals(user.getId()))
+      Set<Long> rankedIds = new LinkedHashSet<>(itemViewCounters.getTopItemIds(ItemViewCounters.Window.LAST_WEEK));
+      rankedIds.addAll(itemViewCounters.getTopItemIds(ItemViewCounters.Window.ALL_TIME));
+      List<Long> picked = rankedIds.stream()
+          .filter(itemId -> !excludedItemIds.contains(itemId))
+          .filter(itemId -> itemRecommendationIndex.isRecommendable(itemId, userId))
           .limit(limit)
-          .collect(Collectors.toList());
+          .toList();
+      return loadForSale(picked, userId);
     } catch (Exception e) {
       logger.error("Error while fetching most viewed items: {}", e.getMessage(), e);
       throw e;
     }
   }
+
+  /**
+   * Load the given items in one query, keeping their order and only those for sale by others.
+   * The in-memory rankings can lag behind status changes, so the status is checked again here.
+   */
+  private List<Item> loadForSale(Collection<Long> itemIds, Long excludedSellerId) {
+    if (itemIds.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Map<Long, Item> itemsById = itemRepository.findAllById(itemIds).stream()
+        .collect(Collectors.toMap(Item::getId, item -> item));
+    return itemIds.stream()
+        .map(itemsById::get)
+        .filter(Objects::nonNull)
+        .filter(item -> item.getStatus() == ItemStatus.FOR_SALE)
+        .filter(item -> !item.getSeller().getId().equals(excludedSellerId))
+        .collect(Collectors.toCollection(ArrayList::new));
+  }
 }
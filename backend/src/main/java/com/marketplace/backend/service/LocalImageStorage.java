@@ -0,0 +1,98 @@
+package com.marketplace.backend.service;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Image storage on the local file system, for self-hosted and offline environments.
+ * Images are stored as files named by their public ID under a root directory and served by
+ * {@link com.marketplace.backend.controller.ImageController}. Since the public ID is derived from
+ * the content, a stored file never changes, so it is written once and can be cached forever.
+ */
+@Service
+@ConditionalOnProperty(name = "images.storage", havingValue = "local")
+public class LocalImageStorage extends AbstractImageStorage {
+
+  private static final Logger logger = LoggerFactory.getLogger(LocalImageStorage.class);
+
+  static final String EXTENSION = ".jpg";
+
+  private final Path root;
+  private final String baseUrl;
+
+  /**
+   * Constructor for LocalImageStorage.
+   *
+   * @param imageProcessor the processor downsizing images before they are stored
+   * @param root           the directory the images are stored in
+   * @param baseUrl        the URL the images are served under
+   * @throws IOException if the directory cannot be created
+   */
+  public LocalImageStorage(ImageProcessor imageProcessor,
+                           @Value("${images.local.root:data/images}") String root,
+                           @Value("${images.local.base-url:/api/images}") String baseUrl) throws IOException {
+    super(imageProcessor);
+    this.root = Files.createDirectories(Paths.get(root)).toAbsolutePath().normalize();
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    logger.info("Storing images in {}", this.root);
+  }
+
+  @Override
+  protected StoredImage store(Path file, String publicId) throws IOException {
+    Path target = resolve(publicId).orElseThrow(() -> new IOException("Invalid public ID: " + publicId));
+    boolean created = false;
+    if (!Files.exists(target)) {
+      Files.createDirectories(target.getParent());
+      Path partial = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+      try {
+        Files.copy(file, partial, StandardCopyOption.REPLACE_EXISTING);
+        // Linking fails if the image exists, so only one of concurrent uploads creates it
+        Files.createLink(target, partial);
+        created = true;
+      } catch (FileAlreadyExistsException e) {
+        logger.debug("Image {} was stored concurrently", publicId);
+      } finally {
+        Files.deleteIfExists(partial);
+      }
+    }
+    return new StoredImage(baseUrl + publicId + EXTENSION, created);
+  }
+
+  @Override
+  public void deleteImage(String publicId) throws IOException {
+    Optional<Path> file = resolve(publicId);
+    if (file.isPresent()) {
+      Files.deleteIfExists(file.get());
+    }
+  }
+
+  @Override
+  public String publicIdOf(String imageUrl) {
+    int start = imageUrl.indexOf(baseUrl);
+    if (start < 0 || !imageUrl.endsWith(EXTENSION)) {
+      throw new IllegalArgumentException("Invalid image URL: " + imageUrl);
+    }
+    return imageUrl.substring(start + baseUrl.length(), imageUrl.length() - EXTENSION.length());
+  }
+
+  /**
+   * Find the file an image is stored in.
+   *
+   * @param publicId the public ID of the image
+   * @return the file of the image, or empty if the public ID points outside the storage
+   */
+  public Optional<Path> resolve(String publicId) {
+    Path file = root.resolve(publicId + EXTENSION).normalize();
+    return file.startsWith(root) && !publicId.isBlank() ? Optional.of(file) : Optional.empty();
+  }
+}
@@ -0,0 +1,29 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+import java.util.function.Consumer;
+
+/**
+ * Fan-out of message events to the connections of their recipients.
+ * The in-process implementation only reaches connections on this node; running several nodes
+ * requires an implementation that relays events between them.
+ */
+public interface MessageEventBroker {
+
+  /**
+   * Deliver an event to every subscriber of a user.
+   *
+   * @param userId the ID of the recipient
+   * @param event  the event
+   */
+  void publish(Long userId, MessageEventDto event);
+
+  /**
+   * Subscribe to the events of a user.
+   *
+   * @param userId   the ID of the user
+   * @param listener the listener receiving the events
+   * @return a handle that removes the subscription when run
+   */
+  Runnable subscribe(Long userId, Consumer<MessageEventDto> listener);
+}
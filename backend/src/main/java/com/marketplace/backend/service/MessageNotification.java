@@ -0,0 +1,12 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+
+/**
+ * Application event asking for a message event to be pushed to a user once the change that
+ * caused it has been committed.
+ *
+ * @param userId the ID of the recipient
+ * @param event  the event to push
+ */
+public record MessageNotification(Long userId, MessageEventDto event) {}
@@ -1,24 +1,35 @@
 package com.marketplace.backend.service;
 
+import com.marketplace.backend.dto.ConversationDto;
+import com.marketplace.backend.dto.MessageEventDto;
 import com.marketplace.backend.dto.MessageSendDto;
 import com.marketplace.backend.dto.MessageResponseDto;
+import com.marketplace.backend.model.Conversation;
 import com.marketplace.backend.model.Item;
 import com.marketplace.backend.model.Message;
 import com.marketplace.backend.model.ReservationStatus;
 import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.ConversationRepository;
 import com.marketplace.backend.repository.ItemRepository;
 import com.marketplace.backend.repository.MessageRepository;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.CurrentUser;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 /**
  * Service for handling message related requests.
@@ -27,9 +38,16 @@ import java.util.stream.Collectors;
 public class MessageService {
   private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
+  private static final int BACKFILL_BATCH_SIZE = 1000;
+  private static final int MAX_THREAD_PAGE_SIZE = 200;
+
   private final MessageRepository messageRepository;
   private final UserRepository userRepository;
   private final ItemRepository itemRepository;
+  private final ConversationRepository conversationRepository;
+  private final CurrentUser currentUser;
+  private final ApplicationEventPublisher eventPublisher;
+  private final TransactionTemplate transactionTemplate;
 
   /**
    * Constructor for MessageService.
@@ -37,21 +55,31 @@ public class MessageService {
    * @param messageRepository the repository for handling message entities
    * @param userRepository     the repository for handling user entities
    * @param itemRepository     the repository for handling item entities
+   * @param conversationRepository the repository for handling conversation summaries
+   * @param currentUser        access to the user of the current request
+   * @param eventPublisher     the publisher of message notifications
+   * @param transactionManager the transaction manager saving messages with their conversation
    */
-  public MessageService(MessageRepository messageRepository, UserRepository userRepository, ItemRepository itemRepository) {
+  public MessageService(MessageRepository messageRepository, UserRepository userRepository, ItemRepository itemRepository,
+                        ConversationRepository conversationRepository, CurrentUser currentUser,
+                        ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
     this.messageRepository = messageRepository;
     this.userRepository = userRepository;
     this.itemRepository = itemRepository;
+    this.conversationRepository = conversationRepository;
+    this.currentUser = currentUser;
+    this.eventPublisher = eventPublisher;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
   /**
    * Send a message to a user about an item.
    */
   public void sendMessage(MessageSendDto dto) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Sending message from {} to user {} about item {}", email, dto.getReceiverId(), dto.getItemId());
     try {
-      User sender = userRepository.findByEmail(email).orElseThrow();
+      User sender = currentUser.getReference();
       User receiver = userRepository.findById(dto.getReceiverId()).orElseThrow();
       Item item = itemRepository.findById(dto.getItemId()).orElseThrow();
 
@@ -63,8 +91,8 @@ public class MessageService {
         throw new AccessDeniedException("You cannot send messages to yourself.");
       }
 
-      Message message = new Message(sender, receiver, item, dto.getMessageText(), LocalDateTime.now());
-      messageRepository.save(message);
+      LocalDateTime sentAt = LocalDateTime.now();
+      saveInConversation(() -> new Message(sender, receiver, item, dto.getMessageText(), sentAt));
       logger.info("Message successfully sent from {} to {} about item {}", sender.getId(), receiver.getId(), item.getId());
     } catch (Exception e) {
       logger.error("Failed to send message: {}", e.getMessage(), e);
@@ -76,10 +104,10 @@ public class MessageService {
    * Send a reservation request message to a user about an item.
    */
   public void sendReservationRequest(MessageSendDto dto) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Sending reservation request from {} to {} for item {}", email, dto.getReceiverId(), dto.getItemId());
     try {
-      User sender = userRepository.findByEmail(email).orElseThrow();
+      User sender = currentUser.getReference();
       User receiver = userRepository.findById(dto.getReceiverId()).orElseThrow();
       Item item = itemRepository.findById(dto.getItemId()).orElseThrow();
 
@@ -91,10 +119,13 @@ public class MessageService {
         throw new AccessDeniedException("You cannot send a reservation request to yourself.");
       }
 
-      Message message = new Message(sender, receiver, item, dto.getMessageText(), LocalDateTime.now());
-      message.setReservationRequest(true);
-      message.setReservationStatus(ReservationStatus.PENDING);
-      messageRepository.save(message);
+      LocalDateTime sentAt = LocalDateTime.now();
+      saveInConversation(() -> {
+        Message message = new Message(sender, receiver, item, dto.getMessageText(), sentAt);
+        message.setReservationRequest(true);
+        message.setReservationStatus(ReservationStatus.PENDING);
+        return message;
+      });
       logger.info("Reservation request sent successfully from {} to {} for item {}", sender.getId(), receiver.getId(), item.getId());
     } catch (Exception e) {
       logger.error("Failed to send reservation request: {}", e.getMessage(), e);
@@ -103,22 +134,27 @@ public class MessageService {
   }
 
   public void updateReservationStatus(Long messageId, ReservationStatus status) {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Updating reservation status of message {} to {} by user {}", messageId, status, email);
     try {
-      User currentUser = userRepository.findByEmail(email).orElseThrow();
-      Message message = messageRepository.findById(messageId).orElseThrow();
+      Long currentUserId = currentUser.getId();
+      transactionTemplate.executeWithoutResult(transaction -> {
+        Message message = messageRepository.findById(messageId).orElseThrow();
 
-      if (!message.isReservationRequest()) {
-        throw new IllegalArgumentException("This message is not a reservation request.");
-      }
+        if (!message.isReservationRequest()) {
+          throw new IllegalArgumentException("This message is not a reservation request.");
+        }
 
-      if (!message.getReceiver().getId().equals(currentUser.getId())) {
-        throw new AccessDeniedException("Only the receiver can update the reservation status.");
-      }
+        if (!message.getReceiver().getId().equals(currentUserId)) {
+          throw new AccessDeniedException("Only the receiver can update the reservation status.");
+        }
 
-      message.setReservationStatus(status);
-      messageRepository.save(message);
+        message.setReservationStatus(status);
+        messageRepository.save(message);
+        eventPublisher.publishEvent(new MessageNotification(message.getSender().getId(),
+            new MessageEventDto(MessageEventDto.RESERVATION_STATUS, message.getItem().getId(), currentUserId,
+                toResponseDto(message, true))));
+      });
       logger.info("Reservation status of message {} updated to {}", messageId, status);
     } catch (Exception e) {
       logger.error("Failed to update reservation status for message {}: {}", messageId, e.getMessage(), e);
@@ -126,37 +162,80 @@ public class MessageService {
     }
   }
 
+  /**
+   * Save a new message, record it in the summary of its conversation and notify the receiver,
+   * all in one transaction, so the summary never disagrees with the history and the receiver is
+   * only notified once the message has committed. When the first messages of a conversation race
+   * to create its summary, the losing transaction is rolled back and retried once, and then
+   * finds the summary.
+   *
+   * @param newMessage creates the message to save, once per attempt
+   */
+  private void saveInConversation(Supplier<Message> newMessage) {
+    try {
+      transactionTemplate.executeWithoutResult(transaction -> saveAndRecord(newMessage.get()));
+    } catch (DataIntegrityViolationException e) {
+      logger.debug("Conversation summary was created concurrently, retrying: {}", e.getMessage());
+      transactionTemplate.executeWithoutResult(transaction -> saveAndRecord(newMessage.get()));
+    }
+  }
+
+  private void saveAndRecord(Message message) {
+    messageRepository.save(message);
+    recordInConversation(message);
+    notifyReceiver(message);
+  }
 
+  /**
+   * Notify the receiver of a new message, so open message streams can push it without polling.
+   */
+  private void notifyReceiver(Message message) {
+    eventPublisher.publishEvent(new MessageNotification(message.getReceiver().getId(),
+        new MessageEventDto(MessageEventDto.MESSAGE, message.getItem().getId(), message.getSender().getId(),
+            toResponseDto(message, false))));
+  }
+
+  private static MessageResponseDto toResponseDto(Message message, boolean fromYou) {
+    return new MessageResponseDto(message.getId(), fromYou, message.getMessageText(), message.getSentAt(),
+        message.isReservationRequest(), message.getReservationStatus());
+  }
 
   /**
-   * Get all messages in a specific conversation.
+   * Get the messages in a specific conversation in the order they were sent.
+   * Without a limit the whole thread is returned. With a limit, the newest messages before
+   * {@code beforeId} (or the newest overall) are returned, or the oldest after {@code afterId}
+   * when polling for new messages.
+   *
+   * @param otherUserId the ID of the other participant
+   * @param itemId      the ID of the item the conversation is about
+   * @param beforeId    only return messages older than this message, or null
+   * @param afterId     only return messages newer than this message, or null
+   * @param limit       the maximum number of messages, or null for no limit
+   * @return the messages, oldest first
    */
-  public List<MessageResponseDto> getMessagesWithUserForItem(Long otherUserId, Long itemId) {
-    String email = getAuthenticatedEmail();
+  public List<MessageResponseDto> getMessagesWithUserForItem(Long otherUserId, Long itemId,
+                                                             Long beforeId, Long afterId,
+                                                             Integer limit) {
+    String email = currentUser.getEmail();
     logger.info("Fetching messages for item {} with user {} by user {}", itemId, otherUserId, email);
     try {
-      User currentUser = userRepository.findByEmail(email).orElseThrow();
-      User otherUser = userRepository.findById(otherUserId).orElseThrow();
-      Item item = itemRepository.findById(itemId).orElseThrow();
-
-      List<Message> messages = messageRepository
-          .findByItemAndSenderAndReceiverOrItemAndSenderAndReceiverOrderBySentAt(
-              item, currentUser, otherUser,
-              item, otherUser, currentUser
-          );
-
-      logger.debug("Found {} messages for item {} between user {} and {}", messages.size(), itemId, currentUser.getId(), otherUserId);
-
-      return messages.stream()
-          .map(msg -> new MessageResponseDto(
-              msg.getId(),
-              msg.getSender().getId().equals(currentUser.getId()),
-              msg.getMessageText(),
-              msg.getSentAt(),
-              msg.isReservationRequest(),
-              msg.getReservationStatus()
-          ))
-          .collect(Collectors.toList());
+      Long myId = currentUser.getId();
+      Pageable pageable = limit != null ? PageRequest.ofSize(Math.min(limit, MAX_THREAD_PAGE_SIZE)) : Pageable.unpaged();
+
+      List<MessageResponseDto> messages;
+      if (afterId != null) {
+        messages = messageRepository.findThreadAfter(itemId, myId, otherUserId, afterId, pageable);
+      } else {
+        messages = new ArrayList<>(
+            messageRepository.findThreadBefore(itemId, myId, otherUserId, beforeId, pageable));
+        Collections.reverse(messages);
+      }
+
+      logger.debug("Found {} messages for item {} between user {} and {}", messages.size(), itemId, myId, otherUserId);
+      if (beforeId == null) {
+        conversationRepository.markRead(itemId, Math.min(myId, otherUserId), Math.max(myId, otherUserId), myId);
+      }
+      return messages;
     } catch (Exception e) {
       logger.error("Failed to fetch messages for item {}: {}", itemId, e.getMessage(), e);
       throw e;
@@ -164,42 +243,19 @@ public class MessageService {
   }
 
   /**
-   * Get all conversations for the current user.
-   * Each conversation is defined by (itemId + other user).
+   * Get a page of the current user's conversations, most recently active first.
+   * Each conversation is defined by (itemId + other user) and read from its summary row.
+   *
+   * @param page the page number
+   * @param size the page size
+   * @return the conversations
    */
-  public List<Map<String, Object>> getConversationsForCurrentUser() {
-    String email = getAuthenticatedEmail();
-    logger.info("Fetching all conversations for user {}", email);
+  public List<ConversationDto> getConversationsForCurrentUser(int page, int size) {
+    String email = currentUser.getEmail();
+    logger.info("Fetching conversations for user {}", email);
     try {
-      User currentUser = userRepository.findByEmail(email).orElseThrow();
-      List<Message> allMessages = messageRepository.findBySenderOrReceiver(currentUser, currentUser);
-
-      Map<String, Message> latestMessages = new HashMap<>();
-
-      for (Message msg : allMessages) {
-        User other = msg.getSender().equals(currentUser) ? msg.getReceiver() : msg.getSender();
-        String key = msg.getItem().getId() + "-" + other.getId();
-
-        if (!latestMessages.containsKey(key) || msg.getSentAt().isAfter(latestMessages.get(key).getSentAt())) {
-          latestMessages.put(key, msg);
-        }
-      }
-
-      List<Map<String, Object>> conversations = latestMessages.values().stream()
-          .map(msg -> {
-            User other = msg.getSender().equals(currentUser) ? msg.getReceiver() : msg.getSender();
-            Map<String, Object> conversation = new HashMap<>();
-            conversation.put("itemId", msg.getItem().getId());
-            conversation.put("itemTitle", msg.getItem().getTitle());
-            conversation.put("withUserId", other.getId());
-            conversation.put("withUserName", other.getFullName());
-            conversation.put("lastMessage", msg.getMessageText());
-            conversation.put("lastSentAt", msg.getSentAt());
-            return conversation;
-          })
-          .sorted(Comparator.comparing(map -> (LocalDateTime) map.get("lastSentAt"), Comparator.reverseOrder()))
-          .collect(Collectors.toList());
-
+      List<ConversationDto> conversations =
+          conversationRepository.findInbox(currentUser.getId(), PageRequest.of(page, size));
       logger.debug("Found {} conversations for user {}", conversations.size(), email);
       return conversations;
     } catch (Exception e) {
@@ -209,10 +265,68 @@ public class MessageService {
   }
 
   /**
-   * Get the email of the authenticated user.
+   * Build the conversation summaries from the message history if none exist yet,
+   * so existing conversations show up in the inbox after the summary table is introduced.
+   * The summaries are saved in one transaction, so when several instances start at once and
+   * race to build them, only one succeeds and the others give up without failing startup.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void backfillConversations() {
+    if (conversationRepository.count() > 0) {
+      return;
+    }
+    try {
+      int built = transactionTemplate.execute(transaction -> buildConversations());
+      logger.info("Built {} conversation summaries", built);
+    } catch (DataIntegrityViolationException e) {
+      logger.info("Conversation summaries were built concurrently by another instance");
+    }
+  }
+
+  private int buildConversations() {
+    logger.info("Building conversation summaries from message history");
+    Map<List<Long>, Conversation> conversations = new HashMap<>();
+    long lastId = 0L;
+    List<Object[]> batch;
+    do {
+      batch = messageRepository.findSummariesAfter(lastId, PageRequest.ofSize(BACKFILL_BATCH_SIZE));
+      for (Object[] row : batch) {
+        lastId = (Long) row[0];
+        Long itemId = (Long) row[1];
+        Long userLowId = Math.min((Long) row[2], (Long) row[3]);
+        Long userHighId = Math.max((Long) row[2], (Long) row[3]);
+        Conversation conversation = conversations.computeIfAbsent(List.of(itemId, userLowId, userHighId),
+            key -> new Conversation(itemRepository.getReferenceById(itemId),
+                userRepository.getReferenceById(userLowId), userRepository.getReferenceById(userHighId)));
+        conversation.setLastMessage((String) row[4], (LocalDateTime) row[5]);
+      }
+    } while (batch.size() == BACKFILL_BATCH_SIZE);
+    conversationRepository.saveAllAndFlush(conversations.values());
+    return conversations.size();
+  }
+
+  /**
+   * Record a sent message in the summary of its conversation, creating the summary for the
+   * first message between two users about an item. Runs in the transaction saving the message.
    */
-  private String getAuthenticatedEmail() {
-    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-    return authentication.getName();
+  private void recordInConversation(Message message) {
+    Long itemId = message.getItem().getId();
+    Long senderId = message.getSender().getId();
+    Long receiverId = message.getReceiver().getId();
+    Long userLowId = Math.min(senderId, receiverId);
+    Long userHighId = Math.max(senderId, receiverId);
+
+    int updated = conversationRepository.recordMessage(itemId, userLowId, userHighId, receiverId,
+        message.getMessageText(), message.getSentAt());
+    if (updated > 0) {
+      return;
+    }
+
+    Conversation conversation = new Conversation(message.getItem(),
+        userRepository.getReferenceById(userLowId), userRepository.getReferenceById(userHighId));
+    conversation.setLastMessage(message.getMessageText(), message.getSentAt());
+    conversation.incrementUnread(receiverId);
+    // Flush so a summary created concurrently fails this transaction here, to be retried
+    conversationRepository.saveAndFlush(conversation);
   }
 }
@@ -0,0 +1,262 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+import com.marketplace.backend.security.CurrentUser;
+import com.marketplace.backend.security.JwtService;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Service pushing message events to users over server-sent events.
+ * Open streams are async requests, so idle connections hold no request thread. Events are
+ * written by a small pool of delivery threads, in order per stream, so a slow client cannot
+ * stall the request that sent the message or the streams of other users. A stream whose send
+ * has been stuck for too long, or that falls too far behind, is closed. Each user can have a
+ * few streams open at once; opening another closes their oldest.
+ */
+@Service
+public class MessageStreamService {
+
+  private static final Logger logger = LoggerFactory.getLogger(MessageStreamService.class);
+
+  private static final long STREAM_TIMEOUT_MS = 30 * 60 * 1000L;
+  private static final long SEND_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+  private static final int DELIVERY_THREADS = 4;
+  private static final int MAX_PENDING_EVENTS = 100;
+  static final int MAX_STREAMS_PER_USER = 5;
+
+  private final MessageEventBroker messageEventBroker;
+  private final CurrentUser currentUser;
+  private final JwtService jwtService;
+  private final Map<SseEmitter, Stream> streams = new ConcurrentHashMap<>();
+  private final Map<Long, Deque<Stream>> streamsByUser = new HashMap<>();
+  private final ExecutorService deliveryExecutor = Executors.newFixedThreadPool(DELIVERY_THREADS, runnable -> {
+    Thread thread = new Thread(runnable, "message-stream-delivery");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Constructor for MessageStreamService.
+   *
+   * @param messageEventBroker the broker fanning out events to open streams
+   * @param currentUser        access to the user of the current request
+   * @param jwtService         the service issuing stream tokens
+   */
+  public MessageStreamService(MessageEventBroker messageEventBroker, CurrentUser currentUser,
+                              JwtService jwtService) {
+    this.messageEventBroker = messageEventBroker;
+    this.currentUser = currentUser;
+    this.jwtService = jwtService;
+  }
+
+  /**
+   * Issue a short-lived token the current user can open a stream with from a browser, where
+   * an EventSource cannot send the Authorization header.
+   *
+   * @return the stream token
+   */
+  public String issueStreamTokenForCurrentUser() {
+    return jwtService.generateMessageStreamToken(currentUser.getId(), currentUser.getEmail());
+  }
+
+  /**
+   * Open a stream of message events for the current user.
+   *
+   * @return the emitter of the stream
+   */
+  public SseEmitter openForCurrentUser() {
+    return open(currentUser.getId());
+  }
+
+  /**
+   * Open a stream of message events for a user, closing their oldest stream if they already
+   * have the maximum number open.
+   *
+   * @param userId the ID of the user
+   * @return the emitter of the stream
+   */
+  SseEmitter open(Long userId) {
+    return open(userId, new SseEmitter(STREAM_TIMEOUT_MS));
+  }
+
+  SseEmitter open(Long userId, SseEmitter emitter) {
+    Stream stream = new Stream(userId, emitter);
+    Stream evicted = null;
+    synchronized (streamsByUser) {
+      Deque<Stream> userStreams = streamsByUser.computeIfAbsent(userId, id -> new ArrayDeque<>());
+      if (userStreams.size() >= MAX_STREAMS_PER_USER) {
+        evicted = userStreams.pollFirst();
+      }
+      userStreams.addLast(stream);
+    }
+    stream.unsubscribe = messageEventBroker.subscribe(userId,
+        event -> stream.enqueue(SseEmitter.event().name(event.getType()).data(event)));
+    streams.put(emitter, stream);
+
+    emitter.onCompletion(() -> close(stream));
+    emitter.onTimeout(() -> close(stream));
+    emitter.onError(e -> close(stream));
+    if (evicted != null) {
+      logger.debug("User {} opened more than {} message streams, closing the oldest", userId, MAX_STREAMS_PER_USER);
+      close(evicted);
+      evicted.emitter.complete();
+    }
+    logger.debug("Opened message stream for user {}, {} streams open", userId, streams.size());
+    return emitter;
+  }
+
+  /**
+   * Push a message event to its recipient once the transaction that caused it has committed.
+   *
+   * @param notification the event and its recipient
+   */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onMessageNotification(MessageNotification notification) {
+    messageEventBroker.publish(notification.userId(), notification.event());
+  }
+
+  /**
+   * Send a comment to every open stream, so proxies keep idle connections open and
+   * streams of clients that went away are detected and closed. Streams whose last send has
+   * been stuck for too long are closed instead.
+   */
+  @Scheduled(fixedDelay = 25_000)
+  public void sendHeartbeats() {
+    long now = System.nanoTime();
+    streams.values().forEach(stream -> {
+      if (stream.isStalled(now)) {
+        stream.fail(new IOException("Send timed out"));
+      } else {
+        stream.enqueue(SseEmitter.event().comment("heartbeat"));
+      }
+    });
+  }
+
+  /**
+   * Get the number of open streams.
+   *
+   * @return the number of open streams
+   */
+  public int getOpenStreamCount() {
+    return streams.size();
+  }
+
+  /**
+   * Stop the delivery threads on shutdown.
+   */
+  @PreDestroy
+  public void shutdown() {
+    deliveryExecutor.shutdownNow();
+  }
+
+  private void close(Stream stream) {
+    if (streams.remove(stream.emitter) == null) {
+      return;
+    }
+    stream.unsubscribe.run();
+    synchronized (streamsByUser) {
+      Deque<Stream> userStreams = streamsByUser.get(stream.userId);
+      if (userStreams != null) {
+        userStreams.remove(stream);
+        if (userStreams.isEmpty()) {
+          streamsByUser.remove(stream.userId);
+        }
+      }
+    }
+  }
+
+  /**
+   * An open stream and the events waiting to be sent to it. At most one delivery thread sends
+   * to a stream at a time, so its events arrive in order.
+   */
+  private final class Stream {
+
+    private final Long userId;
+    private final SseEmitter emitter;
+    private final Queue<SseEmitter.SseEventBuilder> pending = new ArrayDeque<>();
+    private Runnable unsubscribe = () -> { };
+    private boolean sending;
+    private long sendStartedAt;
+
+    Stream(Long userId, SseEmitter emitter) {
+      this.userId = userId;
+      this.emitter = emitter;
+    }
+
+    void enqueue(SseEmitter.SseEventBuilder event) {
+      boolean overflow = false;
+      boolean start = false;
+      synchronized (this) {
+        if (pending.size() >= MAX_PENDING_EVENTS) {
+          pending.clear();
+          overflow = true;
+        } else {
+          pending.add(event);
+          start = !sending;
+          sending = true;
+        }
+      }
+      if (overflow) {
+        fail(new IOException("Too many pending events"));
+      } else if (start) {
+        deliveryExecutor.execute(this::drain);
+      }
+    }
+
+    boolean isStalled(long now) {
+      synchronized (this) {
+        return sendStartedAt != 0 && now - sendStartedAt > SEND_TIMEOUT_NANOS;
+      }
+    }
+
+    void fail(Exception e) {
+      logger.debug("Closing message stream of user {}: {}", userId, e.getMessage());
+      close(this);
+      emitter.completeWithError(e);
+    }
+
+    private void drain() {
+      while (true) {
+        SseEmitter.SseEventBuilder event;
+        synchronized (this) {
+          event = pending.poll();
+          if (event == null) {
+            sending = false;
+            return;
+          }
+          sendStartedAt = System.nanoTime();
+        }
+        try {
+          emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+          synchronized (this) {
+            pending.clear();
+            sending = false;
+            sendStartedAt = 0;
+          }
+          fail(e);
+          return;
+        }
+        synchronized (this) {
+          sendStartedAt = 0;
+        }
+      }
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.marketplace.backend.service;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import com.marketplace.backend.model.Item;
 import com.marketplace.backend.model.ItemStatus;
 import com.marketplace.backend.model.Order;
@@ -9,14 +11,22 @@ import com.marketplace.backend.model.User;
 import com.marketplace.backend.repository.ItemRepository;
 import com.marketplace.backend.repository.OrderRepository;
 import com.marketplace.backend.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Map;
@@ -29,6 +39,8 @@ public class PaymentService {
 
   private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
 
+  private static final Duration DEFAULT_TOKEN_LIFETIME = Duration.ofMinutes(15);
+
   @Value("${vipps.client-id}")
   private String clientId;
 
@@ -44,11 +56,21 @@ public class PaymentService {
   @Value("${vipps.base-url}")
   private String vippsBaseUrl;
 
+  @Value("${payments.confirmation-timeout-ms:8000}")
+  private long confirmationTimeoutMs;
+
+  @Value("${payments.purchase-claim-ttl:PT10M}")
+  private Duration purchaseClaimTtl;
+
   private final UserRepository userRepository;
   private final ItemRepository itemRepository;
   private final OrderRepository orderRepository;
-  private final RestTemplate restTemplate = new RestTemplate();
-  private final ConcurrentMap<String, Boolean> paymentStatusMap = new ConcurrentHashMap<>();
+  private final ItemRecommendationIndex itemRecommendationIndex;
+  private final PaymentSessionStore paymentSessionStore;
+  private final TransactionTemplate transactionTemplate;
+  private final RestTemplate restTemplate;
+  private final VippsTokenCache tokenCache = new VippsTokenCache(this::fetchAccessToken);
+  private final ConcurrentMap<String, CompletableFuture<Boolean>> pendingConfirmations = new ConcurrentHashMap<>();
 
   /**
    * Constructor for PaymentService.
@@ -56,11 +78,29 @@ public class PaymentService {
    * @param userRepository    the repository for handling user entities
    * @param itemRepository    the repository for handling item entities
    * @param orderRepository   the repository for handling order entities
+   * @param itemRecommendationIndex the in-memory category index of items for recommendations
+   * @param paymentSessionStore the store of the state of payments in flight
+   * @param vippsRestTemplate the HTTP client for calls to Vipps
+   * @param transactionManager the transaction manager for creating orders
    */
-  public PaymentService(UserRepository userRepository, ItemRepository itemRepository, OrderRepository orderRepository) {
+  public PaymentService(UserRepository userRepository, ItemRepository itemRepository, OrderRepository orderRepository,
+                        ItemRecommendationIndex itemRecommendationIndex, PaymentSessionStore paymentSessionStore,
+                        RestTemplate vippsRestTemplate, PlatformTransactionManager transactionManager) {
     this.userRepository = userRepository;
     this.itemRepository = itemRepository;
     this.orderRepository = orderRepository;
+    this.itemRecommendationIndex = itemRecommendationIndex;
+    this.paymentSessionStore = paymentSessionStore;
+    this.restTemplate = vippsRestTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Stop refreshing the Vipps access token.
+   */
+  @PreDestroy
+  public void shutdown() {
+    tokenCache.shutdown();
   }
 
   /**
@@ -78,8 +118,8 @@ public class PaymentService {
 
     String accessToken;
     try {
-      accessToken = fetchAccessToken();
-      logger.debug("Successfully fetched access token for order {}", orderId);
+      accessToken = tokenCache.get();
+      logger.debug("Got access token for order {}", orderId);
     } catch (Exception e) {
       logger.error("Failed to fetch access token for order {}: {}", orderId, e.getMessage(), e);
       throw e;
@@ -140,9 +180,9 @@ public class PaymentService {
   /**
    * Fetches an access token from Vipps.
    *
-   * @return the access token
+   * @return the access token with its lifetime
    */
-  private String fetchAccessToken() {
+  private VippsTokenCache.AccessToken fetchAccessToken() {
     logger.debug("Fetching Vipps access token...");
 
     HttpHeaders headers = new HttpHeaders();
@@ -174,17 +214,36 @@ public class PaymentService {
         throw new RuntimeException("Vipps token response missing 'access_token'");
       }
 
-      return token.toString();
+      return VippsTokenCache.AccessToken.issued(token.toString(),
+          parseLifetime(response.getBody().get("expires_in")), Instant.now());
     } catch (Exception e) {
       logger.error("Error fetching Vipps access token: {}", e.getMessage(), e);
       throw new RuntimeException("Error fetching Vipps access token: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Parses the lifetime of an access token, which Vipps returns in seconds as a string.
+   *
+   * @param expiresIn the expires_in field of the token response
+   * @return the lifetime of the token
+   */
+  private Duration parseLifetime(Object expiresIn) {
+    try {
+      return Duration.ofSeconds(Long.parseLong(String.valueOf(expiresIn)));
+    } catch (NumberFormatException e) {
+      logger.warn("Invalid Vipps token lifetime '{}', assuming {}", expiresIn, DEFAULT_TOKEN_LIFETIME);
+      return DEFAULT_TOKEN_LIFETIME;
+    }
+  }
+
   /**
    * Finalizes the order after receiving a callback from Vipps.
+   * Duplicate and concurrent callbacks for the same order create a single order.
    *
    * @param orderId the ID of the order
+   * @param payload the payload of the callback
+   * @throws IllegalStateException if the payment was not completed or the item is no longer for sale
    */
   public void finalizeOrderFromVippsCallback(String orderId, Map<String, Object> payload) {
     logger.info("Finalizing order from Vipps callback: {}", orderId);
@@ -194,47 +253,92 @@ public class PaymentService {
 
     logger.debug("Vipps callback status for order {}: {}", orderId, status);
 
+    String[] parts = orderId.split("-");
+    Long itemId = Long.parseLong(parts[1]);
+    Long buyerId = Long.parseLong(parts[2]);
+
     if (!"SALE".equalsIgnoreCase(status)) {
       logger.warn("Vipps payment status is not 'SALE': {}", status);
+      itemRepository.releasePurchaseClaim(itemId, buyerId);
       throw new IllegalStateException("Payment not completed, status was: " + status);
     }
 
-    String[] parts = orderId.split("-");
-    Long itemId = Long.parseLong(parts[1]);
-    Long buyerId = Long.parseLong(parts[2]);
+    if (orderRepository.existsByExternalOrderId(orderId)) {
+      logger.info("Order {} was already finalized, ignoring duplicate callback", orderId);
+    } else {
+      boolean created;
+      try {
+        created = Boolean.TRUE.equals(transactionTemplate.execute(tx -> createOrder(orderId, itemId, buyerId)));
+      } catch (DataIntegrityViolationException e) {
+        if (!orderRepository.existsByExternalOrderId(orderId)) {
+          throw e;
+        }
+        created = false;
+      }
+      // Checked after the transaction, to see an order committed by a concurrent callback
+      if (!created && !orderRepository.existsByExternalOrderId(orderId)) {
+        logger.error("Item {} is no longer for sale, order {} was paid but not created", itemId, orderId);
+        throw new IllegalStateException("Item is no longer for sale");
+      }
+      if (created) {
+        itemRecommendationIndex.updateStatus(itemId, ItemStatus.SOLD);
+      } else {
+        logger.info("Order {} was finalized by a concurrent callback", orderId);
+      }
+    }
 
-    Optional<Item> itemOpt = itemRepository.findById(itemId);
-    Optional<User> buyerOpt = userRepository.findById(buyerId);
+    paymentSessionStore.markFinalized(orderId);
+    CompletableFuture<Boolean> confirmation = pendingConfirmations.remove(orderId);
+    if (confirmation != null) {
+      confirmation.complete(true);
+    }
+    logger.info("Order {} finalized successfully", orderId);
+  }
 
-    if (itemOpt.isEmpty() || buyerOpt.isEmpty()) {
+  /**
+   * Marks the item as sold and creates the order, unless the item is no longer for sale.
+   * The item is sold with a single conditional update, so of concurrent callbacks for the item
+   * only one creates an order.
+   *
+   * @param orderId the ID of the order
+   * @param itemId  the ID of the item
+   * @param buyerId the ID of the buyer
+   * @return true if the order was created, false if the item was not for sale or claimed by
+   *     another buyer
+   */
+  private boolean createOrder(String orderId, Long itemId, Long buyerId) {
+    Optional<User> buyerOpt = userRepository.findById(buyerId);
+    if (buyerOpt.isEmpty() || !itemRepository.existsById(itemId)) {
       logger.error("Item or buyer not found for order {}", orderId);
       throw new RuntimeException("Item or buyer not found");
     }
 
-    Item item = itemOpt.get();
-    User buyer = buyerOpt.get();
-
-    item.setStatus(ItemStatus.SOLD);
-    itemRepository.save(item);
+    if (itemRepository.markSoldIfForSale(itemId, buyerId, LocalDateTime.now()) == 0) {
+      return false;
+    }
 
+    Item item = itemRepository.findById(itemId).orElseThrow();
     Order order = new Order();
     order.setItem(item);
-    order.setBuyer(buyer);
+    order.setBuyer(buyerOpt.get());
     order.setSeller(item.getSeller());
     order.setOrderDate(LocalDateTime.now());
     order.setPrice(item.getPrice());
-
+    order.setExternalOrderId(orderId);
     orderRepository.save(order);
-    paymentStatusMap.put(orderId, true);
-    logger.info("Order {} finalized successfully", orderId);
+    return true;
   }
 
   /**
    * Creates a Vipps payment for an item.
+   * The item is claimed for the buyer first, so only one buyer at a time can pay for it. The
+   * claim is released if the payment cannot be initiated or is not completed, and expires after
+   * {@code payments.purchase-claim-ttl} if no callback arrives.
    *
    * @param itemId        the ID of the item
    * @param userEmail     the email of the user
    * @return the payment URL for redirection
+   * @throws IllegalStateException if the item is not for sale or claimed by another buyer
    */
   public String createVippsPayment(Long itemId, String userEmail) {
     logger.info("Creating Vipps payment for item {} by user {}", itemId, userEmail);
@@ -255,44 +359,84 @@ public class PaymentService {
       throw new IllegalStateException("Item is not available for purchase.");
     }
 
+    LocalDateTime now = LocalDateTime.now();
+    if (itemRepository.claimForPurchase(itemId, user.getId(), now, now.plus(purchaseClaimTtl)) == 0) {
+      logger.warn("Item {} is being paid for by another buyer", itemId);
+      throw new IllegalStateException("Item is not available for purchase.");
+    }
+
     double amount = item.getPrice();
     String orderId = "order-" + itemId + "-" + user.getId() + "-" + System.currentTimeMillis();
 
     String callbackPrefix = "https://mentally-crucial-quagga.ngrok-free.app/api/payments/vipps-callback";
     String fallBackUrl = "https://mentally-crucial-quagga.ngrok-free.app/api/payments/vipps-complete?orderId=" + orderId;
 
-    return initiatePayment(orderId, amount, user.getPhoneNumber(), callbackPrefix, fallBackUrl);
+    try {
+      paymentSessionStore.createPending(orderId);
+      return initiatePayment(orderId, amount, user.getPhoneNumber(), callbackPrefix, fallBackUrl);
+    } catch (RuntimeException e) {
+      itemRepository.releasePurchaseClaim(itemId, user.getId());
+      throw e;
+    }
   }
 
   /**
-   * Checks if the order has been finalized.
+   * Waits for the order to be finalized by the Vipps callback, without blocking the caller.
+   * All waiters for an order share one future. It is completed by the callback when it arrives
+   * at this instance, by {@link #pollPendingConfirmations()} when it arrives at another one,
+   * or with false by the scheduler of {@link CompletableFuture#completeOnTimeout} when the
+   * callback does not arrive in time.
    *
    * @param orderId the ID of the order
-   * @return true if the order has been finalized, false otherwise
+   * @return a future completed with true once the order is finalized, or false on timeout
    */
-  public boolean hasOrderBeenFinalized(String orderId) {
-    logger.debug("Checking if order {} has been finalized", orderId);
+  public CompletableFuture<Boolean> awaitOrderFinalized(String orderId) {
+    logger.debug("Waiting for order {} to be finalized", orderId);
 
-    int retries = 8;
-    int delayMs = 1000;
+    if (paymentSessionStore.isFinalized(orderId)) {
+      return CompletableFuture.completedFuture(true);
+    }
 
-    for (int i = 0; i < retries; i++) {
-      Boolean status = paymentStatusMap.get(orderId);
-      if (status != null && status) {
-        logger.debug("Order {} was finalized", orderId);
-        return true;
-      }
+    CompletableFuture<Boolean> confirmation = pendingConfirmations.computeIfAbsent(orderId, id -> {
+      CompletableFuture<Boolean> future = new CompletableFuture<Boolean>()
+          .completeOnTimeout(false, confirmationTimeoutMs, TimeUnit.MILLISECONDS);
+      future.whenComplete((finalized, e) -> {
+        pendingConfirmations.remove(id, future);
+        if (!Boolean.TRUE.equals(finalized)) {
+          logger.debug("Order {} was not finalized in time", id);
+        }
+      });
+      return future;
+    });
 
-      try {
-        Thread.sleep(delayMs);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        logger.warn("Thread interrupted while waiting for order {} finalization", orderId);
-        break;
-      }
+    // The callback may have landed between the first check and registering the future
+    if (paymentSessionStore.isFinalized(orderId)) {
+      confirmation.complete(true);
     }
+    return confirmation;
+  }
 
-    logger.debug("Order {} was not finalized in time", orderId);
-    return false;
+  /**
+   * Complete the waiters of orders whose callback was handled by another instance, which this
+   * instance only learns about from the payment session store. All orders being waited for are
+   * checked with a single query, and nothing is queried while no one is waiting.
+   */
+  @Scheduled(fixedDelayString = "${payments.confirmation-poll-interval-ms:250}")
+  public void pollPendingConfirmations() {
+    if (pendingConfirmations.isEmpty()) {
+      return;
+    }
+    try {
+      for (String orderId : paymentSessionStore.findFinalized(new ArrayList<>(pendingConfirmations.keySet()))) {
+        CompletableFuture<Boolean> confirmation = pendingConfirmations.remove(orderId);
+        if (confirmation != null) {
+          logger.debug("Order {} was finalized on another instance", orderId);
+          confirmation.complete(true);
+        }
+      }
+    } catch (Exception e) {
+      logger.error("Failed to poll pending payment confirmations: {}", e.getMessage(), e);
+      throw e;
+    }
   }
 }
@@ -0,0 +1,183 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.PaymentSession;
+import com.marketplace.backend.model.PaymentSessionStatus;
+import com.marketplace.backend.repository.PaymentSessionRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Store of the state of payments in flight with Vipps.
+ * Sessions are persisted, so a payment finalized by a callback on one instance is seen by the
+ * others and survives restarts. A bounded read-through cache keeps lookups off the database:
+ * finalized sessions never change and are cached for minutes, while pending sessions are only
+ * cached briefly, since they may be finalized on another instance.
+ */
+@Component
+public class PaymentSessionStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(PaymentSessionStore.class);
+
+  private static final long FINALIZED_TTL_NANOS = Duration.ofMinutes(10).toNanos();
+  private static final long PENDING_TTL_NANOS = Duration.ofSeconds(1).toNanos();
+  private static final int MAX_ENTRIES = 10_000;
+
+  private final PaymentSessionRepository paymentSessionRepository;
+  private final Duration retention;
+
+  private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private record Entry(PaymentSessionStatus status, long loadedAt) {
+
+    boolean isFresh(long now) {
+      long ttl = status == PaymentSessionStatus.FINALIZED ? FINALIZED_TTL_NANOS : PENDING_TTL_NANOS;
+      return now - loadedAt < ttl;
+    }
+  }
+
+  /**
+   * Constructor for PaymentSessionStore.
+   *
+   * @param paymentSessionRepository the repository for payment sessions
+   * @param retentionHours           the number of hours sessions are kept after they are created
+   */
+  public PaymentSessionStore(PaymentSessionRepository paymentSessionRepository,
+                             @Value("${payments.session-retention-hours:24}") long retentionHours) {
+    this.paymentSessionRepository = paymentSessionRepository;
+    this.retention = Duration.ofHours(retentionHours);
+  }
+
+  /**
+   * Record a payment that was initiated.
+   *
+   * @param orderId the ID of the order
+   */
+  public void createPending(String orderId) {
+    paymentSessionRepository.save(new PaymentSession(orderId, LocalDateTime.now()));
+    cache(orderId, PaymentSessionStatus.PENDING);
+  }
+
+  /**
+   * Record a payment that was finalized. Sessions that are missing, for example because they
+   * were created before a purge, are recreated as finalized. Safe to call concurrently for the
+   * same order.
+   *
+   * @param orderId the ID of the order
+   */
+  public void markFinalized(String orderId) {
+    LocalDateTime now = LocalDateTime.now();
+    if (paymentSessionRepository.markFinalized(orderId, now) == 0) {
+      PaymentSession session = new PaymentSession(orderId, now);
+      session.markFinalized(now);
+      try {
+        paymentSessionRepository.saveAndFlush(session);
+      } catch (DataIntegrityViolationException e) {
+        logger.debug("Payment session {} was finalized concurrently", orderId);
+      }
+    }
+    cache(orderId, PaymentSessionStatus.FINALIZED);
+  }
+
+  /**
+   * Check if a payment has been finalized, loading the session if it is not cached.
+   *
+   * @param orderId the ID of the order
+   * @return true if the payment has been finalized, false if it is pending or unknown
+   */
+  public boolean isFinalized(String orderId) {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      Entry entry = entries.get(orderId);
+      if (entry != null && entry.isFresh(now)) {
+        return entry.status() == PaymentSessionStatus.FINALIZED;
+      }
+    }
+
+    Optional<PaymentSession> session = paymentSessionRepository.findById(orderId);
+    if (session.isEmpty()) {
+      return false;
+    }
+    PaymentSessionStatus status = session.get().getStatus();
+    synchronized (entries) {
+      // A concurrent callback may have cached the finalized status while the session was loaded
+      Entry entry = entries.get(orderId);
+      if (entry == null || entry.status() != PaymentSessionStatus.FINALIZED) {
+        entries.put(orderId, new Entry(status, now));
+      }
+    }
+    return status == PaymentSessionStatus.FINALIZED;
+  }
+
+  /**
+   * Find which of a number of payments have been finalized. Payments not cached as finalized are
+   * loaded in a single query, bypassing cached pending entries, so payments finalized on another
+   * instance are seen as soon as they are committed.
+   *
+   * @param orderIds the IDs of the orders
+   * @return the IDs of the orders whose payments have been finalized
+   */
+  public Set<String> findFinalized(Collection<String> orderIds) {
+    Set<String> finalized = new HashSet<>();
+    List<String> unknown = new ArrayList<>();
+    long now = System.nanoTime();
+    synchronized (entries) {
+      for (String orderId : orderIds) {
+        Entry entry = entries.get(orderId);
+        if (entry != null && entry.status() == PaymentSessionStatus.FINALIZED && entry.isFresh(now)) {
+          finalized.add(orderId);
+        } else {
+          unknown.add(orderId);
+        }
+      }
+    }
+    if (!unknown.isEmpty()) {
+      List<String> loaded = paymentSessionRepository.findFinalizedOrderIds(unknown);
+      loaded.forEach(orderId -> cache(orderId, PaymentSessionStatus.FINALIZED));
+      finalized.addAll(loaded);
+    }
+    return finalized;
+  }
+
+  /**
+   * Remove sessions past their retention from the database and expired entries from the cache.
+   */
+  @Scheduled(cron = "${payments.session-purge-cron:0 15 * * * *}")
+  public void purgeExpired() {
+    try {
+      int removed = paymentSessionRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+      long now = System.nanoTime();
+      synchronized (entries) {
+        entries.values().removeIf(entry -> !entry.isFresh(now));
+      }
+      logger.info("Purged {} expired payment sessions", removed);
+    } catch (Exception e) {
+      logger.error("Failed to purge expired payment sessions: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  private void cache(String orderId, PaymentSessionStatus status) {
+    synchronized (entries) {
+      entries.put(orderId, new Entry(status, System.nanoTime()));
+    }
+  }
+}
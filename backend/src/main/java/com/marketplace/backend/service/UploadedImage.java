@@ -0,0 +1,14 @@
+package com.marketplace.backend.service;
+
+import java.util.List;
+
+/**
+ * The URLs of an uploaded image.
+ *
+ * @param url              the secure URL of the image
+ * @param thumbnailUrl     the secure URL of its thumbnail, or null if none was requested
+ * @param createdPublicIds the public IDs of the image and thumbnail stored by this upload, leaving
+ *                         out those already stored because the same content was uploaded before
+ */
+public record UploadedImage(String url, String thumbnailUrl, List<String> createdPublicIds) {
+}
@@ -0,0 +1,120 @@
+package com.marketplace.backend.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived, bounded cache of user category affinities.
+ * An affinity vector weighs the categories of the items a user viewed, with older views counting
+ * less. Cached vectors are updated as new views are written on this instance, so they only have
+ * to be loaded from the view history on a cache miss. Entries expire after 30 seconds, so views
+ * written on other instances reach the vector too.
+ */
+@Component
+public class UserAffinityCache {
+
+  static final double DECAY = 0.9;
+  static final int MAX_CATEGORIES = 20;
+  private static final int MAX_ENTRIES = 10_000;
+  private static final double MIN_AFFINITY = 0.01;
+  private static final long TTL_NANOS = 30_000_000_000L;
+
+  private final long ttlNanos;
+
+  private final Map<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  // Users being loaded, and whether a view of theirs was written during the load
+  private final Map<Long, Boolean> loading = new HashMap<>();
+
+  private record Entry(Map<Long, Double> affinities, long loadedAt) {}
+
+  /**
+   * Constructor for UserAffinityCache.
+   */
+  public UserAffinityCache() {
+    this(TTL_NANOS);
+  }
+
+  UserAffinityCache(long ttlNanos) {
+    this.ttlNanos = ttlNanos;
+  }
+
+  /**
+   * Get the category affinities of a user, loading them from the view history if missing or
+   * expired.
+   *
+   * @param userId the ID of the user
+   * @param loader the function loading the categories of the user's recent views, newest first
+   * @return the affinity of each category
+   */
+  public Map<Long, Double> get(Long userId, Function<Long, List<Long>> loader) {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      Entry entry = entries.get(userId);
+      if (entry != null && now - entry.loadedAt() < ttlNanos) {
+        return Map.copyOf(entry.affinities());
+      }
+      loading.putIfAbsent(userId, false);
+    }
+
+    Map<Long, Double> loaded = fromRecentCategories(loader.apply(userId));
+    synchronized (entries) {
+      // Don't cache affinities that may have been loaded before a view written during the load
+      if (Boolean.FALSE.equals(loading.remove(userId))) {
+        entries.put(userId, new Entry(loaded, now));
+      }
+      return Map.copyOf(loaded);
+    }
+  }
+
+  /**
+   * Fold a new view into the cached affinities of a user. Users not in the cache are skipped,
+   * since their affinities are loaded with the view on the next request.
+   *
+   * @param userId     the ID of the user
+   * @param categoryId the ID of the category of the viewed item
+   */
+  public void recordView(Long userId, Long categoryId) {
+    synchronized (entries) {
+      Entry entry = entries.get(userId);
+      if (entry != null) {
+        addView(entry.affinities(), categoryId);
+      }
+      loading.computeIfPresent(userId, (id, viewed) -> true);
+    }
+  }
+
+  /**
+   * Compute affinities from the categories of recent views.
+   *
+   * @param categoryIds the categories of the views, newest first
+   * @return the affinity of each category
+   */
+  static Map<Long, Double> fromRecentCategories(List<Long> categoryIds) {
+    Map<Long, Double> affinities = new HashMap<>();
+    for (int i = categoryIds.size() - 1; i >= 0; i--) {
+      addView(affinities, categoryIds.get(i));
+    }
+    return affinities;
+  }
+
+  private static void addView(Map<Long, Double> affinities, Long categoryId) {
+    affinities.replaceAll((id, affinity) -> affinity * DECAY);
+    affinities.merge(categoryId, 1.0, Double::sum);
+    affinities.values().removeIf(affinity -> affinity < MIN_AFFINITY);
+    while (affinities.size() > MAX_CATEGORIES) {
+      affinities.entrySet().stream()
+          .min(Map.Entry.comparingByValue())
+          .ifPresent(weakest -> affinities.remove(weakest.getKey()));
+    }
+  }
+}
@@ -5,17 +5,21 @@ import com.marketplace.backend.dto.UserResponseDto;
 import com.marketplace.backend.dto.UserUpdateDto;
 import com.marketplace.backend.model.User;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.CurrentUser;
+import com.marketplace.backend.security.TokenRevocationCache;
+import com.marketplace.backend.security.UserSnapshotCache;
 import java.io.IOException;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 /**
@@ -27,16 +31,35 @@ public class UserService {
 
   private final UserRepository userRepository;
   private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
-  private final CloudinaryService cloudinaryService;
+  private final ImageStorage imageStorage;
+  private final AssetDeletionOutbox assetDeletionOutbox;
+  private final TransactionTemplate transactionTemplate;
+  private final CurrentUser currentUser;
+  private final UserSnapshotCache userSnapshotCache;
+  private final TokenRevocationCache tokenRevocationCache;
 
   /**
    * Constructor for UserService.
    *
-   * @param userRepository the repository for user data
+   * @param userRepository    the repository for user data
+   * @param imageStorage      the storage of profile pictures
+   * @param assetDeletionOutbox the outbox of replaced profile pictures to delete
+   * @param transactionManager the transaction manager used to write users with their outbox entries
+   * @param currentUser       access to the user of the current request
+   * @param userSnapshotCache the cache of authenticated users to invalidate on updates
+   * @param tokenRevocationCache the record of revoked tokens, updated on email changes
    */
-  public UserService(UserRepository userRepository, CloudinaryService cloudinaryService) {
+  public UserService(UserRepository userRepository, ImageStorage imageStorage,
+                     AssetDeletionOutbox assetDeletionOutbox, PlatformTransactionManager transactionManager,
+                     CurrentUser currentUser, UserSnapshotCache userSnapshotCache,
+                     TokenRevocationCache tokenRevocationCache) {
     this.userRepository = userRepository;
-    this.cloudinaryService = cloudinaryService;
+    this.imageStorage = imageStorage;
+    this.assetDeletionOutbox = assetDeletionOutbox;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.currentUser = currentUser;
+    this.userSnapshotCache = userSnapshotCache;
+    this.tokenRevocationCache = tokenRevocationCache;
   }
 
   /**
@@ -77,6 +100,7 @@ public class UserService {
     logger.info("Updating user with ID: {}", id);
     try {
       return userRepository.findById(id).map(user -> {
+        String previousEmail = user.getEmail();
         if (dto.getEmail() != null && !dto.getEmail().equals(user.getEmail())) {
           if (userRepository.existsByEmail(dto.getEmail())) {
             throw new IllegalArgumentException("Email already in use");
@@ -93,22 +117,40 @@ public class UserService {
         if (dto.getPassword() != null) user.setPassword(passwordEncoder.encode(dto.getPassword()));
         if (dto.getPreferredLanguage() != null) user.setPreferredLanguage(dto.getPreferredLanguage());
 
+        List<String> replacedPictures = new ArrayList<>();
+        List<String> createdPictures = List.of();
         MultipartFile picture = dto.getProfilePicture();
         if (picture != null && !picture.isEmpty()) {
           try {
-            if (user.getProfilePicture() != null && !user.getProfilePicture().isEmpty()) {
-              String publicId = extractPublicIdFromUrl(user.getProfilePicture());
-              cloudinaryService.deleteImage(publicId);
+            String previousPicture = user.getProfilePicture();
+            UploadedImage uploaded = imageStorage.uploadImage(user.getId(), picture);
+            createdPictures = uploaded.createdPublicIds();
+            if (previousPicture != null && !previousPicture.isEmpty() && !previousPicture.equals(uploaded.url())) {
+              replacedPictures.add(imageStorage.publicIdOf(previousPicture));
             }
-            String url = cloudinaryService.uploadImage(user.getId(), picture);
-            user.setProfilePicture(url);
+            user.setProfilePicture(uploaded.url());
           } catch (IOException e) {
             logger.error("Failed to upload profile picture for user {}: {}", user.getId(), e.getMessage(), e);
             throw new RuntimeException("Failed to upload profile picture", e);
           }
         }
 
-        User updated = userRepository.save(user);
+        User updated;
+        try {
+          updated = transactionTemplate.execute(status -> {
+            assetDeletionOutbox.enqueue(replacedPictures);
+            return userRepository.save(user);
+          });
+        } catch (RuntimeException e) {
+          discardPictures(createdPictures);
+          throw e;
+        }
+        userSnapshotCache.invalidate(previousEmail);
+        userSnapshotCache.invalidate(updated.getEmail());
+        if (!updated.getEmail().equals(previousEmail)) {
+          // Tokens name the old email as subject, which no longer identifies the user
+          tokenRevocationCache.revokeAll(updated.getId());
+        }
         logger.info("User with ID {} updated successfully", updated.getId());
         return UserResponseDto.fromEntity(updated);
       });
@@ -118,16 +160,32 @@ public class UserService {
     }
   }
 
+  /**
+   * Delete newly uploaded profile pictures of an update that failed. Failures are logged, not
+   * thrown, so they do not hide the failure of the update.
+   *
+   * @param publicIds the public IDs of the pictures the update created
+   */
+  private void discardPictures(List<String> publicIds) {
+    for (String publicId : publicIds) {
+      try {
+        imageStorage.deleteImage(publicId);
+      } catch (Exception e) {
+        logger.warn("Failed to delete profile picture {}: {}", publicId, e.getMessage());
+      }
+    }
+  }
+
   /**
    * Get the current user.
    *
    * @return the current user
    */
   public UserResponseDto getCurrentUser() {
-    String email = getAuthenticatedEmail();
+    String email = currentUser.getEmail();
     logger.info("Fetching current user with email: {}", email);
     try {
-      User user = userRepository.findByEmail(email).orElseThrow();
+      User user = userRepository.findById(currentUser.getId()).orElseThrow();
       logger.debug("Found current user: {}", user.getId());
       return UserResponseDto.fromEntity(user);
     } catch (Exception e) {
@@ -136,28 +194,12 @@ public class UserService {
     }
   }
 
-  public Long getCurrentUserId() {
-    return userRepository.findByEmail(getAuthenticatedEmail())
-        .orElseThrow()
-        .getId();
-  }
-
   /**
-   * Get the email of the authenticated user.
+   * Get the ID of the current user.
    *
-   * @return the email of the authenticated user
+   * @return the ID of the current user
    */
-  private String getAuthenticatedEmail() {
-    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-    return authentication.getName();
-  }
-
-  private String extractPublicIdFromUrl(String imageUrl) {
-    try {
-      String filename = imageUrl.substring(imageUrl.lastIndexOf("/") + 1);
-      return filename.substring(0, filename.lastIndexOf("."));
-    } catch (Exception e) {
-      throw new IllegalArgumentException("Invalid Cloudinary URL: " + imageUrl, e);
-    }
+  public Long getCurrentUserId() {
+    return currentUser.getId();
   }
 }
@@ -0,0 +1,172 @@
+package com.marketplace.backend.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the Vipps access token.
+ * The token is refreshed in the background once most of its lifetime has passed, whether or not
+ * it is being used, so checkouts keep using the current token instead of waiting for a new one,
+ * even after a quiet period. Failed refreshes are retried while the current token is still
+ * usable. Only callers finding no usable token wait for it to be fetched, and concurrent
+ * refreshes are merged into a single request.
+ */
+public class VippsTokenCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(VippsTokenCache.class);
+
+  private static final Duration MAX_EXPIRY_MARGIN = Duration.ofSeconds(30);
+  private static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+  private final Supplier<AccessToken> loader;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "vipps-token-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicReference<CompletableFuture<AccessToken>> inFlight = new AtomicReference<>();
+  private volatile AccessToken current;
+
+  /**
+   * An access token and the times it should be refreshed by and stops being used.
+   *
+   * @param value     the access token
+   * @param refreshAt the time the token is refreshed in the background
+   * @param expiresAt the time the token is no longer used
+   */
+  public record AccessToken(String value, Instant refreshAt, Instant expiresAt) {
+
+    /**
+     * Create a token that was just issued. It is refreshed after three quarters of its lifetime
+     * and no longer used shortly before it expires.
+     *
+     * @param value    the access token
+     * @param lifetime the time until the token expires
+     * @param now      the current time
+     * @return the token
+     */
+    public static AccessToken issued(String value, Duration lifetime, Instant now) {
+      Duration margin = lifetime.dividedBy(10);
+      if (margin.compareTo(MAX_EXPIRY_MARGIN) > 0) {
+        margin = MAX_EXPIRY_MARGIN;
+      }
+      return new AccessToken(value, now.plus(lifetime.multipliedBy(3).dividedBy(4)),
+          now.plus(lifetime).minus(margin));
+    }
+  }
+
+  /**
+   * Constructor for VippsTokenCache.
+   *
+   * @param loader the function fetching a new token from Vipps
+   */
+  public VippsTokenCache(Supplier<AccessToken> loader) {
+    this.loader = loader;
+  }
+
+  /**
+   * Get a usable access token, fetching one if there is none.
+   *
+   * @return the access token
+   */
+  public String get() {
+    AccessToken token = current;
+    Instant now = Instant.now();
+    if (token != null && now.isBefore(token.expiresAt())) {
+      if (!now.isBefore(token.refreshAt())) {
+        refresh();
+      }
+      return token.value();
+    }
+
+    try {
+      return refresh().join().value();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Stop the refresh thread.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Start fetching a new token, or join the fetch in progress.
+   *
+   * @return a future of the new token
+   */
+  private CompletableFuture<AccessToken> refresh() {
+    while (true) {
+      CompletableFuture<AccessToken> existing = inFlight.get();
+      if (existing != null) {
+        return existing;
+      }
+      CompletableFuture<AccessToken> refresh = new CompletableFuture<>();
+      if (inFlight.compareAndSet(null, refresh)) {
+        executor.execute(() -> load(refresh));
+        return refresh;
+      }
+    }
+  }
+
+  private void load(CompletableFuture<AccessToken> refresh) {
+    AccessToken token;
+    try {
+      token = loader.get();
+    } catch (Throwable e) {
+      logger.warn("Failed to refresh Vipps access token: {}", e.getMessage());
+      inFlight.compareAndSet(refresh, null);
+      refresh.completeExceptionally(e);
+      AccessToken usable = current;
+      if (usable != null && Instant.now().isBefore(usable.expiresAt())) {
+        scheduleRefresh(Instant.now().plus(RETRY_DELAY));
+      }
+      return;
+    }
+    // Publish the token before a new refresh can start, so callers find the token or this refresh
+    current = token;
+    inFlight.compareAndSet(refresh, null);
+    logger.debug("Refreshed Vipps access token, next refresh at {}", token.refreshAt());
+    refresh.complete(token);
+    if (Instant.now().isBefore(token.expiresAt())) {
+      scheduleRefresh(token.refreshAt());
+    }
+  }
+
+  /**
+   * Schedule a background refresh. A refresh that finds the current token not yet due, because
+   * a caller already refreshed it, does nothing.
+   *
+   * @param at the time to refresh at
+   */
+  private void scheduleRefresh(Instant at) {
+    // Rounded up, so the refresh does not run just before the token is due and skip it
+    long delayMs = Math.max(0, Duration.between(Instant.now(), at).toMillis() + 1);
+    try {
+      executor.schedule(() -> {
+        AccessToken token = current;
+        if (token == null || !Instant.now().isBefore(token.refreshAt())) {
+          refresh();
+        }
+      }, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      logger.debug("Not scheduling Vipps access token refresh, the cache is shut down");
+    }
+  }
+}
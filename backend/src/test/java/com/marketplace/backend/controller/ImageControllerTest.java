@@ -0,0 +1,112 @@
+package com.marketplace.backend.controller;
+
+import com.marketplace.backend.service.LocalImageStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Test class for the ImageController, serving images from the local image storage.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+    "images.storage=local",
+    "images.local.root=target/test-images"
+})
+class ImageControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private LocalImageStorage localImageStorage;
+
+  private final byte[] content = jpeg();
+  private String url;
+
+  /**
+   * Store an image to serve.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    url = localImageStorage.uploadImage(1L, new MockMultipartFile("images", "a.jpg", "image/jpeg", content)).url();
+  }
+
+  /**
+   * Test that stored images are served without authentication, with a strong ETag and as immutable.
+   */
+  @Test
+  void shouldServeStoredImage() throws Exception {
+    MvcResult result = mockMvc.perform(get(url))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("image/jpeg"))
+        .andExpect(header().string(HttpHeaders.ETAG, "\"" + localImageStorage.publicIdOf(url).replace('/', '-') + "\""))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")))
+        .andReturn();
+
+    assertArrayEquals(content, result.getResponse().getContentAsByteArray());
+  }
+
+  /**
+   * Test that a client with the current version of an image gets a 304 response.
+   */
+  @Test
+  void shouldReturnNotModifiedForMatchingETag() throws Exception {
+    String etag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified());
+  }
+
+  /**
+   * Test that a range of an image can be requested.
+   */
+  @Test
+  void shouldServeRangeOfImage() throws Exception {
+    mockMvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=0-5"))
+        .andExpect(status().isPartialContent())
+        .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-5/" + content.length))
+        .andExpect(content().bytes(Arrays.copyOf(content, 6)));
+  }
+
+  /**
+   * Test that missing images and paths outside the storage are not served.
+   */
+  @Test
+  void shouldNotFindMissingImages() throws Exception {
+    mockMvc.perform(get("/api/images/items/1/missing.jpg"))
+        .andExpect(status().isNotFound());
+    mockMvc.perform(get("/api/images/items/1/..%2F..%2F..%2Fpom.jpg"))
+        .andExpect(status().is4xxClientError());
+  }
+
+  private static byte[] jpeg() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpeg", out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,168 @@
+package com.marketplace.backend.controller;
+
+import com.marketplace.backend.service.LocalImageStorage;
+import com.marketplace.backend.service.UploadedImage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Throughput benchmark for the local image storage: concurrent uploads of photos, which are
+ * downsized and get a thumbnail, and concurrent requests for the stored images. Not
+ * transactional, since nothing is written to the database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties", properties = {
+    "images.storage=local",
+    "images.local.root=target/throughput-images"
+})
+class ImageThroughputTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(ImageThroughputTest.class);
+
+  private static final Path ROOT = Path.of("target/throughput-images");
+  private static final int THREADS = 8;
+  private static final int UPLOADS = 32;
+  private static final int REQUESTS = 1000;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private LocalImageStorage localImageStorage;
+
+  private final List<byte[]> photos = new ArrayList<>();
+
+  /**
+   * Render distinct photos to upload, outside of the measurement.
+   */
+  @BeforeEach
+  void setUp() throws Exception {
+    for (int i = 0; i < UPLOADS; i++) {
+      BufferedImage photo = new BufferedImage(3200, 2400, BufferedImage.TYPE_INT_RGB);
+      Graphics2D graphics = photo.createGraphics();
+      graphics.setPaint(new GradientPaint(0, 0, new Color(i * 7, 40, 200), 3200, 2400, Color.ORANGE));
+      graphics.fillRect(0, 0, 3200, 2400);
+      graphics.dispose();
+      ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+      ImageIO.write(photo, "jpeg", jpeg);
+      photos.add(jpeg.toByteArray());
+    }
+  }
+
+  /**
+   * Remove the stored images.
+   */
+  @AfterEach
+  void tearDown() throws Exception {
+    FileSystemUtils.deleteRecursively(ROOT);
+  }
+
+  /**
+   * Measure how many photos can be uploaded per second, and how many stored images served per
+   * second, and check that every image is served whole.
+   */
+  @Test
+  void shouldMeasureUploadAndServeThroughput() throws Exception {
+    long uploadedBytes = photos.stream().mapToLong(photo -> photo.length).sum();
+    long start = System.nanoTime();
+    List<UploadedImage> uploaded = runConcurrently(UPLOADS, i -> localImageStorage.uploadItemImage(1L,
+        new MockMultipartFile("images", "photo.jpg", "image/jpeg", photos.get(i))));
+    long uploadNanos = System.nanoTime() - start;
+    logger.info("Uploaded {} photos of {} KB in {} ms: {} photos/s, {} KB/s", UPLOADS,
+        uploadedBytes / UPLOADS / 1024, TimeUnit.NANOSECONDS.toMillis(uploadNanos),
+        perSecond(UPLOADS, uploadNanos), perSecond(uploadedBytes / 1024, uploadNanos));
+
+    List<String> urls = new ArrayList<>();
+    List<Long> sizes = new ArrayList<>();
+    for (UploadedImage image : uploaded) {
+      for (String url : List.of(image.url(), image.thumbnailUrl())) {
+        urls.add(url);
+        sizes.add(Files.size(localImageStorage.resolve(localImageStorage.publicIdOf(url)).orElseThrow()));
+      }
+    }
+
+    start = System.nanoTime();
+    List<Integer> servedSizes = runConcurrently(REQUESTS, i -> {
+      MockHttpServletResponse response = mockMvc.perform(get(urls.get(i % urls.size()))).andReturn().getResponse();
+      assertEquals(200, response.getStatus());
+      return response.getContentAsByteArray().length;
+    });
+    long serveNanos = System.nanoTime() - start;
+    long servedBytes = servedSizes.stream().mapToLong(Integer::longValue).sum();
+    logger.info("Served {} images in {} ms: {} requests/s, {} KB/s", REQUESTS,
+        TimeUnit.NANOSECONDS.toMillis(serveNanos), perSecond(REQUESTS, serveNanos),
+        perSecond(servedBytes / 1024, serveNanos));
+
+    assertEquals(UPLOADS, uploaded.stream().map(UploadedImage::url).distinct().count());
+    for (int i = 0; i < REQUESTS; i++) {
+      assertEquals(sizes.get(i % sizes.size()), servedSizes.get(i).longValue());
+    }
+  }
+
+  /**
+   * Run tasks on a fixed number of threads, starting them all at once.
+   *
+   * @return the result of each task, in the order of the tasks
+   */
+  private static <T> List<T> runConcurrently(int tasks, Task<T> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<T>> futures = new ArrayList<>(tasks);
+      for (int i = 0; i < tasks; i++) {
+        int index = i;
+        futures.add(executor.submit(() -> {
+          start.await();
+          return task.run(index);
+        }));
+      }
+      start.countDown();
+      List<T> results = new ArrayList<>(tasks);
+      for (Future<T> future : futures) {
+        results.add(future.get(120, TimeUnit.SECONDS));
+      }
+      return results;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static long perSecond(long count, long nanos) {
+    return count * TimeUnit.SECONDS.toNanos(1) / Math.max(1, nanos);
+  }
+
+  private interface Task<T> {
+    T run(int index) throws Exception;
+  }
+}
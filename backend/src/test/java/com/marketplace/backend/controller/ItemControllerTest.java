@@ -1,15 +1,23 @@
 package com.marketplace.backend.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import com.marketplace.backend.BackendApplication;
 import com.marketplace.backend.controller.config.MockCloudinaryConfig;
 import com.marketplace.backend.dto.ItemCreateDto;
 import com.marketplace.backend.model.*;
 import com.marketplace.backend.repository.CategoryRepository;
 import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.PendingAssetDeletionRepository;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.service.AssetDeletionOutbox;
 import com.marketplace.backend.service.CloudinaryService;
+import com.marketplace.backend.service.ImageStorage;
+import com.marketplace.backend.service.ItemGeoIndex;
+import com.marketplace.backend.service.ItemSearchIndex;
 import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,14 +29,21 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
-import static org.mockito.Mockito.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -66,6 +81,18 @@ class ItemControllerTest {
   @Autowired
   private CloudinaryService cloudinaryService;
 
+  @Autowired
+  private ItemSearchIndex itemSearchIndex;
+
+  @Autowired
+  private AssetDeletionOutbox assetDeletionOutbox;
+
+  @Autowired
+  private PendingAssetDeletionRepository pendingAssetDeletionRepository;
+
+  @Autowired
+  private ItemGeoIndex itemGeoIndex;
+
   private User testUser;
 
   private Category testCategory;
@@ -225,7 +252,8 @@ class ItemControllerTest {
         .andExpect(content().contentType(MediaType.APPLICATION_JSON))
         .andExpect(jsonPath("$.title").value("Headphones"))
         .andExpect(jsonPath("$.categoryId").value(testCategory.getId()))
-        .andExpect(jsonPath("$.imageUrls").isArray());
+        .andExpect(jsonPath("$.imageUrls").isArray())
+        .andExpect(jsonPath("$.thumbnailUrls[0]").value("https://mock.url/fake-image_thumb.jpg"));
   }
 
   /**
@@ -286,6 +314,36 @@ class ItemControllerTest {
         .andExpect(status().isNotFound());
   }
 
+  /**
+   * Test that the images of a deleted item are deleted in the background, and retried on failure.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldDeleteImagesOfDeletedItemInBackground() throws Exception {
+    Item item = new Item(testUser, "Delete Me", "To be deleted", testCategory, 999.0,
+        LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925"));
+    item.setStatus(ItemStatus.FOR_SALE);
+    item.addImage(new Image(item, "https://res.cloudinary.com/demo/image/upload/v1/items/1/photo.jpg",
+        "https://res.cloudinary.com/demo/image/upload/v1/items/1/photo_thumb.jpg"));
+    item = itemRepository.save(item);
+    clearInvocations(cloudinaryService);
+    doThrow(new IOException("Cloudinary unavailable")).when(cloudinaryService).deleteImage("items/1/photo_thumb");
+
+    mockMvc.perform(delete("/api/items/" + item.getId()))
+        .andExpect(status().isNoContent());
+
+    verify(cloudinaryService, never()).deleteImage(anyString());
+    assertEquals(1, assetDeletionOutbox.drain());
+    verify(cloudinaryService).deleteImage("items/1/photo");
+    entityManager.clear();
+    List<PendingAssetDeletion> pending = pendingAssetDeletionRepository.findAll();
+    assertEquals(1, pending.size());
+    assertEquals("items/1/photo_thumb", pending.get(0).getPublicId());
+    assertEquals(1, pending.get(0).getAttempts());
+    assertEquals(0, assetDeletionOutbox.drain());
+    doNothing().when(cloudinaryService).deleteImage("items/1/photo_thumb");
+  }
+
   @Test
   @WithMockUser(username = "john@example.com")
   void shouldReturnNotFoundWhenDeletingNonExistentItem() throws Exception {
@@ -338,9 +396,77 @@ class ItemControllerTest {
             .contentType(MediaType.MULTIPART_FORM_DATA))
         .andExpect(status().isOk());
 
+    verify(cloudinaryService, never()).deleteImage("abc123");
+    assetDeletionOutbox.drain();
     verify(cloudinaryService).deleteImage("abc123");
   }
 
+  /**
+   * Test that a text-only edit keeps the images without any Cloudinary calls.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldKeepImagesWithoutCloudinaryCallsOnTextOnlyUpdate() throws Exception {
+    Item item = new Item(testUser, "Old Title", "Old Desc", testCategory, 100.0,
+        LocalDateTime.now(), new BigDecimal("63.0"), new BigDecimal("10.0"));
+    item.setStatus(ItemStatus.FOR_SALE);
+    item.addImage(new Image(item, "https://res.cloudinary.com/demo/image/upload/v1/items/1/keep.jpg"));
+    item = itemRepository.save(item);
+    clearInvocations(cloudinaryService);
+
+    MockMultipartFile updateFile = new MockMultipartFile("dto", "", MediaType.APPLICATION_JSON_VALUE,
+        "{\"price\":150.0}".getBytes());
+
+    mockMvc.perform(multipart("/api/items/" + item.getId())
+            .file(updateFile)
+            .with(req -> { req.setMethod("PUT"); return req; })
+            .contentType(MediaType.MULTIPART_FORM_DATA))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.price").value(150.0))
+        .andExpect(jsonPath("$.imageUrls", hasSize(1)));
+
+    verifyNoInteractions(cloudinaryService);
+  }
+
+  /**
+   * Test that only images not kept are deleted and already stored content is not uploaded again.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldOnlyUploadNewAndDeleteRemovedImages() throws Exception {
+    byte[] storedContent = "stored-image".getBytes();
+    String storedPublicId = ImageStorage.publicIdFor(testUser.getId(), storedContent);
+    Item item = new Item(testUser, "Old Title", "Old Desc", testCategory, 100.0,
+        LocalDateTime.now(), new BigDecimal("63.0"), new BigDecimal("10.0"));
+    item.setStatus(ItemStatus.FOR_SALE);
+    Image kept = new Image(item, "https://res.cloudinary.com/demo/image/upload/v1/items/1/kept.jpg");
+    item.addImage(kept);
+    item.addImage(new Image(item, "https://res.cloudinary.com/demo/image/upload/v1/items/1/removed.jpg"));
+    item.addImage(new Image(item, "https://res.cloudinary.com/demo/image/upload/v1/" + storedPublicId + ".jpg"));
+    item = itemRepository.save(item);
+    clearInvocations(cloudinaryService);
+
+    MockMultipartFile updateFile = new MockMultipartFile("dto", "", MediaType.APPLICATION_JSON_VALUE,
+        ("{\"keepImageIds\":[" + kept.getId() + "]}").getBytes());
+    MockMultipartFile storedFile = new MockMultipartFile("images", "stored.jpg", "image/jpeg", storedContent);
+    MockMultipartFile newFile = new MockMultipartFile("images", "new.jpg", "image/jpeg", "new-image".getBytes());
+
+    mockMvc.perform(multipart("/api/items/" + item.getId())
+            .file(updateFile)
+            .file(storedFile)
+            .file(newFile)
+            .with(req -> { req.setMethod("PUT"); return req; })
+            .contentType(MediaType.MULTIPART_FORM_DATA))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.imageUrls", hasSize(3)));
+
+    verify(cloudinaryService, times(1)).uploadItemImage(eq(testUser.getId()), any());
+    assetDeletionOutbox.drain();
+    verify(cloudinaryService).deleteImage("items/1/removed");
+    verify(cloudinaryService, never()).deleteImage("items/1/kept");
+    verify(cloudinaryService, never()).deleteImage(storedPublicId);
+  }
+
   /**
    * Test to update the status of an item.
    *
@@ -402,4 +528,179 @@ class ItemControllerTest {
         .andExpect(jsonPath("$.status").value("RESERVED"))
         .andExpect(jsonPath("$.reservedById").value(buyer.getId().intValue()));
   }
+
+  /**
+   * Test that text search resolves candidates from the search index and applies the other filters,
+   * matching the query as a substring of the title or description like the database search.
+   *
+   * @throws Exception if the test fails
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldSearchItemsUsingIndex() throws Exception {
+    User seller = userRepository.save(new User("Jane Roe", "jane@example.com", "password", Role.USER,
+        "11223344", null, "english"));
+
+    Item bike = itemRepository.save(new Item(seller, "Mountain bike", "Barely used bicycle", testCategory,
+        2500.0, LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+    Item helmet = itemRepository.save(new Item(seller, "Helmet", "Fits any bike rider", testCategory,
+        300.0, LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+    itemSearchIndex.index(bike.getId(), bike.getTitle(), bike.getDescription());
+    itemSearchIndex.index(helmet.getId(), helmet.getTitle(), helmet.getDescription());
+    itemGeoIndex.index(bike.getId(), bike.getLatitude(), bike.getLongitude());
+    itemGeoIndex.index(helmet.getId(), helmet.getLatitude(), helmet.getLongitude());
+
+    mockMvc.perform(get("/api/items").param("searchQuery", "bike"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].title").value("Mountain bike"))
+        .andExpect(jsonPath("$[1].title").value("Helmet"));
+
+    mockMvc.perform(get("/api/items").param("searchQuery", "bike").param("maxPrice", "1000"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].title").value("Helmet"));
+
+    mockMvc.perform(get("/api/items").param("searchQuery", "bike")
+            .param("latitude", "63.4300").param("longitude", "10.3900").param("distanceKm", "5"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+
+    mockMvc.perform(get("/api/items").param("searchQuery", "ike ride"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].title").value("Helmet"));
+
+    mockMvc.perform(get("/api/items").param("searchQuery", "rider bike"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(0));
+
+    itemSearchIndex.remove(bike.getId());
+    itemSearchIndex.remove(helmet.getId());
+    itemGeoIndex.remove(bike.getId());
+    itemGeoIndex.remove(helmet.getId());
+  }
+
+  /**
+   * Test that distance filtering resolves nearby candidates from the geo index, nearest first.
+   *
+   * @throws Exception if the test fails
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldFilterItemsByDistanceUsingGeoIndex() throws Exception {
+    User seller = userRepository.save(new User("Jane Roe", "jane@example.com", "password", Role.USER,
+        "11223344", null, "english"));
+
+    Item near = itemRepository.save(new Item(seller, "Chair", "Wooden chair", testCategory,
+        100.0, LocalDateTime.now(), new BigDecimal("63.4400"), new BigDecimal("10.3900")));
+    Item nearer = itemRepository.save(new Item(seller, "Table", "Oak table", testCategory,
+        400.0, LocalDateTime.now(), new BigDecimal("63.4310"), new BigDecimal("10.3900")));
+    Item far = itemRepository.save(new Item(seller, "Lamp", "Desk lamp", testCategory,
+        50.0, LocalDateTime.now(), new BigDecimal("59.9100"), new BigDecimal("10.7500")));
+    List.of(near, nearer, far).forEach(item ->
+        itemGeoIndex.index(item.getId(), item.getLatitude(), item.getLongitude()));
+
+    mockMvc.perform(get("/api/items")
+            .param("latitude", "63.4300").param("longitude", "10.3900").param("distanceKm", "10"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].title").value("Table"))
+        .andExpect(jsonPath("$[1].title").value("Chair"));
+
+    List.of(near, nearer, far).forEach(item -> itemGeoIndex.remove(item.getId()));
+  }
+  /**
+   * Test that the item feed pages through items newest first using the returned cursor.
+   *
+   * @throws Exception if the test fails
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldPageThroughItemFeedWithCursor() throws Exception {
+    User seller = userRepository.save(new User("Jane Roe", "jane@example.com", "password", Role.USER,
+        "11223344", null, "english"));
+    LocalDateTime published = LocalDateTime.of(2025, 1, 1, 12, 0);
+    for (int i = 1; i <= 5; i++) {
+      itemRepository.save(new Item(seller, "Feed item " + i, "Listed for the feed", testCategory,
+          100.0 * i, published.plusMinutes(i % 3), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+    }
+
+    MvcResult first = mockMvc.perform(get("/api/items/feed").param("size", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(2))
+        .andExpect(jsonPath("$.items[0].title").value("Feed item 5"))
+        .andExpect(jsonPath("$.items[1].title").value("Feed item 2"))
+        .andExpect(jsonPath("$.hasNext").value(true))
+        .andReturn();
+    String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+    MvcResult second = mockMvc.perform(get("/api/items/feed").param("size", "2").param("cursor", cursor))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].title").value("Feed item 4"))
+        .andExpect(jsonPath("$.items[1].title").value("Feed item 1"))
+        .andReturn();
+    cursor = JsonPath.read(second.getResponse().getContentAsString(), "$.nextCursor");
+
+    mockMvc.perform(get("/api/items/feed").param("size", "2").param("cursor", cursor))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1))
+        .andExpect(jsonPath("$.items[0].title").value("Feed item 3"))
+        .andExpect(jsonPath("$.hasNext").value(false))
+        .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+    mockMvc.perform(get("/api/items/feed").param("cursor", "not-a-cursor"))
+        .andExpect(status().isBadRequest());
+  }
+  /**
+   * Test that listing items runs the same number of statements regardless of page size.
+   *
+   * @throws Exception if the test fails
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldListItemsWithConstantNumberOfStatements() throws Exception {
+    Statistics statistics = entityManager.getEntityManagerFactory()
+        .unwrap(SessionFactory.class).getStatistics();
+
+    createListedItems(0, 2);
+    entityManager.flush();
+    entityManager.clear();
+    statistics.clear();
+    mockMvc.perform(get("/api/items/feed").param("size", "6"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(2));
+    long smallPageStatements = statistics.getPrepareStatementCount();
+
+    createListedItems(2, 6);
+    entityManager.flush();
+    entityManager.clear();
+    statistics.clear();
+    mockMvc.perform(get("/api/items/feed").param("size", "6"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(6))
+        .andExpect(jsonPath("$.items[?(@.favoritedByCurrentUser == true)]", hasSize(3)));
+    long fullPageStatements = statistics.getPrepareStatementCount();
+
+    assertEquals(smallPageStatements, fullPageStatements);
+  }
+
+  private void createListedItems(int from, int to) {
+    User fan = userRepository.findByEmail("fan@example.com").orElseGet(() -> userRepository.save(
+        new User("Fan", "fan@example.com", "password", Role.USER, "55555555", null, "english")));
+    for (int i = from; i < to; i++) {
+      User seller = userRepository.save(new User("Seller " + i, "seller" + i + "@example.com", "password",
+          Role.USER, "4444444" + i, null, "english"));
+      Item item = new Item(seller, "Listed " + i, "Listed item", testCategory, 100.0,
+          LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925"));
+      item.getImages().add(new Image(item, "https://mock.url/" + i + ".jpg"));
+      item = itemRepository.save(item);
+      fan.getFavoriteItems().add(item);
+      if (i % 2 == 0) {
+        testUser.getFavoriteItems().add(item);
+      }
+    }
+    userRepository.save(fan);
+    userRepository.save(testUser);
+  }
 }
@@ -0,0 +1,165 @@
+package com.marketplace.backend.controller;
+
+import com.marketplace.backend.model.Category;
+import com.marketplace.backend.model.Item;
+import com.marketplace.backend.model.ItemStatus;
+import com.marketplace.backend.model.Role;
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.CategoryRepository;
+import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test that a seller's change to an item that is sold or claimed by a buyer while it is being
+ * made is rejected with a conflict. Not transactional, since the sale or claim has to commit
+ * before the seller's change.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties")
+class ItemUpdateConflictTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @SpyBean
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private CategoryRepository categoryRepository;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private User seller;
+  private User buyer;
+  private Category category;
+  private Item item;
+  private Runnable concurrentChange;
+
+  /**
+   * Set up an item for sale that is sold by a payment callback right after the seller's change
+   * has read it, unless a test makes another concurrent change.
+   */
+  @BeforeEach
+  void setUp() {
+    seller = userRepository.save(new User("Seller", "seller@conflict.test", "password123", Role.USER,
+        "12345678", null, "english"));
+    buyer = userRepository.save(new User("Buyer", "buyer@conflict.test", "password123", Role.USER,
+        "87654321", null, "english"));
+    category = categoryRepository.save(new Category(null, "Conflicts"));
+    item = itemRepository.save(new Item(seller, "Bike", "Bike sold during an edit", category, 1500.0,
+        LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+
+    concurrentChange = () -> itemRepository.markSoldIfForSale(item.getId(), buyer.getId(), LocalDateTime.now());
+    AtomicBoolean changed = new AtomicBoolean();
+    doAnswer(invocation -> {
+      Item found = entityManager.find(Item.class, item.getId());
+      if (changed.compareAndSet(false, true)) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> concurrentChange.run());
+      }
+      return Optional.ofNullable(found);
+    }).when(itemRepository).findById(item.getId());
+  }
+
+  /**
+   * Remove the committed test data.
+   */
+  @AfterEach
+  void tearDown() {
+    itemRepository.deleteById(item.getId());
+    categoryRepository.delete(category);
+    userRepository.delete(buyer);
+    userRepository.delete(seller);
+  }
+
+  /**
+   * Test that a status change of an item sold concurrently is rejected with 409.
+   */
+  @Test
+  void shouldRejectStatusUpdateOfConcurrentlySoldItem() throws Exception {
+    mockMvc.perform(put("/api/items/" + item.getId() + "/status").param("value", "FOR_SALE")
+            .with(user(seller.getEmail())))
+        .andExpect(status().isConflict());
+
+    assertEquals(ItemStatus.SOLD, itemRepository.findById(item.getId()).orElseThrow().getStatus());
+  }
+
+  /**
+   * Test that an update of an item sold concurrently is rejected with 409.
+   */
+  @Test
+  void shouldRejectUpdateOfConcurrentlySoldItem() throws Exception {
+    MockMultipartFile dto = new MockMultipartFile("dto", "", "application/json",
+        "{\"price\":999.0}".getBytes());
+
+    mockMvc.perform(MockMvcRequestBuilders.multipart("/api/items/" + item.getId())
+            .file(dto)
+            .with(request -> {
+              request.setMethod("PUT");
+              return request;
+            })
+            .with(user(seller.getEmail())))
+        .andExpect(status().isConflict());
+
+    Item stored = itemRepository.findById(item.getId()).orElseThrow();
+    assertEquals(ItemStatus.SOLD, stored.getStatus());
+    assertEquals(1500.0, stored.getPrice());
+  }
+
+  /**
+   * Test that reserving an item for someone else is rejected with 409 when a buyer claims it
+   * after the reservation has read it, instead of overwriting the claim.
+   */
+  @Test
+  void shouldRejectReservationOfConcurrentlyClaimedItem() throws Exception {
+    User other = userRepository.save(new User("Other", "other@conflict.test", "password123", Role.USER,
+        "11223344", null, "english"));
+    try {
+      concurrentChange = () -> itemRepository.claimForPurchase(item.getId(), buyer.getId(), LocalDateTime.now(),
+          LocalDateTime.now().plusMinutes(10));
+
+      mockMvc.perform(put("/api/items/" + item.getId() + "/status").param("value", "RESERVED")
+              .param("buyerId", other.getId().toString())
+              .with(user(seller.getEmail())))
+          .andExpect(status().isConflict());
+
+      Item stored = itemRepository.findById(item.getId()).orElseThrow();
+      assertEquals(ItemStatus.FOR_SALE, stored.getStatus());
+      assertEquals(buyer.getId(), stored.getActivePurchaseClaim(LocalDateTime.now()));
+    } finally {
+      userRepository.delete(other);
+    }
+  }
+}
@@ -3,7 +3,17 @@ package com.marketplace.backend.controller;
 import com.marketplace.backend.model.*;
 import com.marketplace.backend.repository.CategoryRepository;
 import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.ItemViewDailyCountRepository;
+import com.marketplace.backend.repository.ItemViewRepository;
+import com.marketplace.backend.repository.UserCategoryViewDailyCountRepository;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.service.ItemRecommendationIndex;
+import com.marketplace.backend.service.ItemViewCompactor;
+import com.marketplace.backend.service.ItemViewCounters;
+import com.marketplace.backend.service.ItemViewRecorder;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,7 +27,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -42,6 +56,30 @@ class ItemViewControllerTest {
   @Autowired
   private CategoryRepository categoryRepository;
 
+  @Autowired
+  private ItemViewRepository itemViewRepository;
+
+  @Autowired
+  private ItemViewRecorder itemViewRecorder;
+
+  @Autowired
+  private ItemViewCounters itemViewCounters;
+
+  @Autowired
+  private ItemRecommendationIndex itemRecommendationIndex;
+
+  @Autowired
+  private ItemViewCompactor itemViewCompactor;
+
+  @Autowired
+  private ItemViewDailyCountRepository itemViewDailyCountRepository;
+
+  @Autowired
+  private UserCategoryViewDailyCountRepository userCategoryViewDailyCountRepository;
+
+  @Autowired
+  private EntityManager entityManager;
+
   private User testUser;
   private Item testItem;
   private Category category;
@@ -49,6 +87,8 @@ class ItemViewControllerTest {
 
   @BeforeEach
   void setUp() {
+    itemViewRecorder.flush();
+    itemViewRepository.deleteAll();
     itemRepository.deleteAll();
     userRepository.deleteAll();
     categoryRepository.deleteAll();
@@ -75,6 +115,28 @@ class ItemViewControllerTest {
         .andExpect(status().isOk());
   }
 
+  /**
+   * Test that repeated views are collapsed and written in a batch on flush.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldCollapseRepeatedViewsAndWriteOnFlush() throws Exception {
+    long collapsedBefore = itemViewRecorder.getCollapsedCount();
+    for (int i = 0; i < 3; i++) {
+      mockMvc.perform(post("/api/items/" + testItem.getId() + "/view"))
+          .andExpect(status().isOk());
+    }
+
+    assertEquals(0, itemViewRepository.count());
+    assertEquals(1, itemViewRecorder.getQueuedCount());
+    assertEquals(collapsedBefore + 2, itemViewRecorder.getCollapsedCount());
+
+    itemViewRecorder.flush();
+
+    assertEquals(0, itemViewRecorder.getQueuedCount());
+    assertEquals(1, itemViewRepository.count());
+  }
+
   /**
    * Test getting recommended items.
    */
@@ -90,8 +152,11 @@ class ItemViewControllerTest {
     otherItem.setStatus(ItemStatus.FOR_SALE);
     itemRepository.save(otherItem);
 
+    itemRecommendationIndex.rebuild();
+
     mockMvc.perform(post("/api/items/" + testItem.getId() + "/view"))
         .andExpect(status().isOk());
+    itemViewRecorder.flush();
 
     mockMvc.perform(get("/api/items/recommended"))
         .andExpect(status().isOk())
@@ -99,4 +164,173 @@ class ItemViewControllerTest {
         .andExpect(jsonPath("$.length()").value(1))
         .andExpect(jsonPath("$[0].title").value("Another Phone"));
   }
+
+  /**
+   * Test that users without views are recommended the most viewed items of others.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldRecommendMostViewedItemsToNewUsers() throws Exception {
+    User otherUser = userRepository.save(new User("Jacob", "jacob@example.com", "password", Role.USER,
+        "9876543210", null, "english"));
+    User thirdUser = userRepository.save(new User("Jane", "jane@example.com", "password", Role.USER,
+        "5555555555", null, "english"));
+
+    Item quiet = new Item(otherUser, "Lamp", "Desk lamp", category, 100.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    quiet.setStatus(ItemStatus.FOR_SALE);
+    quiet = itemRepository.save(quiet);
+    Item popular = new Item(otherUser, "Camera", "Old camera", category, 300.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    popular.setStatus(ItemStatus.FOR_SALE);
+    popular = itemRepository.save(popular);
+    itemRecommendationIndex.rebuild();
+
+    mockMvc.perform(post("/api/items/" + quiet.getId() + "/view").with(user("jane@example.com")))
+        .andExpect(status().isOk());
+    mockMvc.perform(post("/api/items/" + popular.getId() + "/view").with(user("jane@example.com")))
+        .andExpect(status().isOk());
+    mockMvc.perform(post("/api/items/" + popular.getId() + "/view").with(user("jacob@example.com")))
+        .andExpect(status().isOk());
+    mockMvc.perform(post("/api/items/" + testItem.getId() + "/view").with(user("jacob@example.com")))
+        .andExpect(status().isOk());
+    itemViewRecorder.flush();
+    itemViewCounters.flush();
+
+    assertEquals(2, itemViewCounters.getViewCount(popular.getId(), ItemViewCounters.Window.LAST_DAY));
+    mockMvc.perform(get("/api/items/recommended"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].title").value("Camera"))
+        .andExpect(jsonPath("$[1].title").value("Lamp"));
+  }
+
+  /**
+   * Test that recommendations follow the viewed categories, skip items not for sale and honor the limit.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldRecommendItemsForSaleFromViewedCategories() throws Exception {
+    User otherUser = userRepository.save(new User("Jacob", "jacob@example.com", "password", Role.USER,
+        "9876543210", null, "english"));
+    Category furniture = categoryRepository.save(new Category(null, "Furniture"));
+
+    Item sofa = new Item(otherUser, "Sofa", "Grey sofa", furniture, 900.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    sofa.setStatus(ItemStatus.FOR_SALE);
+    sofa = itemRepository.save(sofa);
+    Item chair = new Item(otherUser, "Chair", "Wooden chair", furniture, 150.0,
+        LocalDateTime.now().minusDays(30), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    chair.setStatus(ItemStatus.FOR_SALE);
+    chair = itemRepository.save(chair);
+    Item table = new Item(otherUser, "Table", "Dining table", furniture, 400.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    table.setStatus(ItemStatus.SOLD);
+    table = itemRepository.save(table);
+    Item laptop = new Item(otherUser, "Laptop", "Old laptop", category, 700.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    laptop.setStatus(ItemStatus.FOR_SALE);
+    itemRepository.save(laptop);
+    itemRecommendationIndex.rebuild();
+
+    mockMvc.perform(post("/api/items/" + table.getId() + "/view"))
+        .andExpect(status().isOk());
+    itemViewRecorder.flush();
+
+    mockMvc.perform(get("/api/items/recommended").param("limit", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].title").value("Sofa"))
+        .andExpect(jsonPath("$[1].title").value("Chair"));
+  }
+
+  /**
+   * Test that the most viewed fallback loads its items with a constant number of statements.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldRecommendMostViewedItemsWithConstantNumberOfStatements() throws Exception {
+    User otherUser = userRepository.save(new User("Jacob", "jacob@example.com", "password", Role.USER,
+        "9876543210", null, "english"));
+    for (int i = 0; i < 12; i++) {
+      Item popular = new Item(otherUser, "Popular " + i, "Popular item", category, 100.0,
+          LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+      popular.setStatus(i % 4 == 0 ? ItemStatus.SOLD : ItemStatus.FOR_SALE);
+      popular.getImages().add(new Image(popular, "https://mock.url/" + i + ".jpg"));
+      popular = itemRepository.save(popular);
+      mockMvc.perform(post("/api/items/" + popular.getId() + "/view").with(user("jacob@example.com")))
+          .andExpect(status().isOk());
+    }
+    itemRecommendationIndex.rebuild();
+    itemViewRecorder.flush();
+    itemViewCounters.flush();
+
+    Statistics statistics = entityManager.getEntityManagerFactory()
+        .unwrap(SessionFactory.class).getStatistics();
+    // Load the affinities of the user first, so both measured requests hit the cache
+    mockMvc.perform(get("/api/items/recommended"))
+        .andExpect(status().isOk());
+
+    entityManager.flush();
+    entityManager.clear();
+    statistics.clear();
+    mockMvc.perform(get("/api/items/recommended").param("limit", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+    long smallStatements = statistics.getPrepareStatementCount();
+
+    entityManager.clear();
+    statistics.clear();
+    mockMvc.perform(get("/api/items/recommended").param("limit", "20"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(9));
+    long largeStatements = statistics.getPrepareStatementCount();
+
+    assertEquals(smallStatements, largeStatements);
+  }
+
+  /**
+   * Test that old views are rolled up into daily counts and still drive recommendations.
+   */
+  @Test
+  @WithMockUser(username = "john@example.com")
+  void shouldRollUpOldViewsAndKeepRecommending() throws Exception {
+    User otherUser = userRepository.save(new User("Jacob", "jacob@example.com", "password", Role.USER,
+        "9876543210", null, "english"));
+    Category furniture = categoryRepository.save(new Category(null, "Furniture"));
+    Item sofa = new Item(otherUser, "Sofa", "Grey sofa", furniture, 900.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    sofa.setStatus(ItemStatus.FOR_SALE);
+    sofa = itemRepository.save(sofa);
+    Item phone = new Item(otherUser, "Old phone", "Works", category, 50.0,
+        LocalDateTime.now(), new BigDecimal("63.43"), new BigDecimal("10.39"));
+    phone.setStatus(ItemStatus.FOR_SALE);
+    itemRepository.save(phone);
+
+    LocalDateTime longAgo = LocalDateTime.now().minusDays(200);
+    for (int i = 0; i < 2; i++) {
+      ItemView oldView = new ItemView(testUser, sofa);
+      oldView.setViewedAt(longAgo.plusMinutes(i));
+      itemViewRepository.save(oldView);
+    }
+    itemViewRepository.save(new ItemView(otherUser, testItem));
+
+    assertEquals(2, itemViewCompactor.compact());
+
+    assertEquals(1, itemViewRepository.count());
+    List<ItemViewDailyCount> itemDays = itemViewDailyCountRepository.findAll();
+    assertEquals(1, itemDays.size());
+    assertEquals(sofa.getId(), itemDays.get(0).getItemId());
+    assertEquals(2, itemDays.get(0).getViews());
+    List<UserCategoryViewDailyCount> userDays = userCategoryViewDailyCountRepository.findAll();
+    assertEquals(1, userDays.size());
+    assertEquals(furniture.getId(), userDays.get(0).getCategoryId());
+    assertEquals(2, userDays.get(0).getViews());
+
+    itemRecommendationIndex.rebuild();
+    mockMvc.perform(get("/api/items/recommended").param("limit", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].title").value("Sofa"));
+  }
 }
@@ -1,9 +1,12 @@
 package com.marketplace.backend.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marketplace.backend.model.*;
 import com.marketplace.backend.repository.ItemRepository;
 import com.marketplace.backend.repository.MessageRepository;
 import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.AuthenticatedUser;
+import com.marketplace.backend.security.JwtService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,8 +20,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -35,6 +40,8 @@ class MessageControllerTest {
   @Autowired private UserRepository userRepository;
   @Autowired private ItemRepository itemRepository;
   @Autowired private MessageRepository messageRepository;
+  @Autowired private JwtService jwtService;
+  @Autowired private ObjectMapper objectMapper;
 
   private User seller;
   private User buyer;
@@ -171,7 +178,7 @@ class MessageControllerTest {
   @Test
   @WithMockUser(username = "buyer@example.com")
   void shouldGetAllConversationsForUser() throws Exception {
-    messageRepository.save(new Message(buyer, seller, item, "Hi there", LocalDateTime.now()));
+    sendMessage(seller, item, "Hi there");
 
     mockMvc.perform(get("/api/messages/conversations"))
         .andExpect(status().isOk())
@@ -179,6 +186,166 @@ class MessageControllerTest {
         .andExpect(jsonPath("$[0].itemId").value(item.getId()))
         .andExpect(jsonPath("$[0].withUserId").value(seller.getId()))
         .andExpect(jsonPath("$[0].itemTitle").value("Bike"))
-        .andExpect(jsonPath("$[0].lastMessage").value("Hi there"));
+        .andExpect(jsonPath("$[0].lastMessage").value("Hi there"))
+        .andExpect(jsonPath("$[0].unreadCount").value(0));
+  }
+
+  /**
+   * Test that conversation summaries track the latest message and unread count of each side.
+   */
+  @Test
+  @WithMockUser(username = "buyer@example.com")
+  void shouldTrackLatestMessageAndUnreadCount() throws Exception {
+    Item helmet = itemRepository.save(new Item(seller, "Helmet", "Bike helmet", null, 100.0,
+        LocalDateTime.now(), new BigDecimal("63.0"), new BigDecimal("10.0")));
+
+    sendMessage(seller, item, "Is the bike available?");
+    sendMessage(seller, item, "I can pick it up today");
+    sendMessage(seller, helmet, "And the helmet?");
+
+    mockMvc.perform(get("/api/messages/conversations").with(user("seller@example.com")))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].itemTitle").value("Helmet"))
+        .andExpect(jsonPath("$[1].itemTitle").value("Bike"))
+        .andExpect(jsonPath("$[1].withUserId").value(buyer.getId()))
+        .andExpect(jsonPath("$[1].withUserName").value("Buyer"))
+        .andExpect(jsonPath("$[1].lastMessage").value("I can pick it up today"))
+        .andExpect(jsonPath("$[1].unreadCount").value(2));
+
+    mockMvc.perform(get("/api/messages/conversation").with(user("seller@example.com"))
+            .param("itemId", String.valueOf(item.getId()))
+            .param("withUserId", String.valueOf(buyer.getId())))
+        .andExpect(status().isOk());
+
+    mockMvc.perform(get("/api/messages/conversations").with(user("seller@example.com")))
+        .andExpect(jsonPath("$[1].unreadCount").value(0))
+        .andExpect(jsonPath("$[0].unreadCount").value(1));
+
+    mockMvc.perform(get("/api/messages/conversations").param("size", "1"))
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].itemTitle").value("Helmet"));
+  }
+
+  /**
+   * Test paging backwards and forwards through a conversation by message ID.
+   */
+  @Test
+  @WithMockUser(username = "buyer@example.com")
+  void shouldPageThroughConversation() throws Exception {
+    List<Message> sent = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      User from = i % 2 == 1 ? buyer : seller;
+      User to = i % 2 == 1 ? seller : buyer;
+      sent.add(messageRepository.save(new Message(from, to, item, "Message " + i, LocalDateTime.now())));
+    }
+
+    mockMvc.perform(get("/api/messages/conversation")
+            .param("itemId", String.valueOf(item.getId()))
+            .param("withUserId", String.valueOf(seller.getId()))
+            .param("limit", "2"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].text").value("Message 4"))
+        .andExpect(jsonPath("$[0].fromYou").value(false))
+        .andExpect(jsonPath("$[1].text").value("Message 5"))
+        .andExpect(jsonPath("$[1].fromYou").value(true));
+
+    mockMvc.perform(get("/api/messages/conversation")
+            .param("itemId", String.valueOf(item.getId()))
+            .param("withUserId", String.valueOf(seller.getId()))
+            .param("beforeId", String.valueOf(sent.get(3).getId()))
+            .param("limit", "2"))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].text").value("Message 2"))
+        .andExpect(jsonPath("$[1].text").value("Message 3"));
+
+    mockMvc.perform(get("/api/messages/conversation")
+            .param("itemId", String.valueOf(item.getId()))
+            .param("withUserId", String.valueOf(seller.getId()))
+            .param("afterId", String.valueOf(sent.get(2).getId()))
+            .param("limit", "10"))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0].text").value("Message 4"))
+        .andExpect(jsonPath("$[1].text").value("Message 5"));
+  }
+
+  /**
+   * Test that a conversation page limit below one is rejected.
+   */
+  @Test
+  @WithMockUser(username = "buyer@example.com")
+  void shouldRejectNonPositiveConversationLimit() throws Exception {
+    for (String limit : List.of("0", "-5")) {
+      mockMvc.perform(get("/api/messages/conversation")
+              .param("itemId", String.valueOf(item.getId()))
+              .param("withUserId", String.valueOf(seller.getId()))
+              .param("limit", limit))
+          .andExpect(status().isBadRequest());
+    }
+  }
+
+  /**
+   * Test that the message stream is opened as an async server-sent event response.
+   */
+  @Test
+  @WithMockUser(username = "buyer@example.com")
+  void shouldOpenMessageStream() throws Exception {
+    mockMvc.perform(get("/api/messages/stream")
+            .accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isOk())
+        .andExpect(request().asyncStarted());
+  }
+
+  /**
+   * Test that a browser can open the message stream with a stream token instead of the
+   * Authorization header.
+   */
+  @Test
+  void shouldOpenMessageStreamWithStreamToken() throws Exception {
+    String response = mockMvc.perform(post("/api/messages/stream-token").with(user("buyer@example.com")))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    String token = objectMapper.readTree(response).get("token").asText();
+
+    mockMvc.perform(get("/api/messages/stream")
+            .param("token", token)
+            .accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isOk())
+        .andExpect(request().asyncStarted());
+  }
+
+  /**
+   * Test that stream tokens are only accepted by the message stream, and other tokens are not
+   * accepted in its URL.
+   */
+  @Test
+  void shouldOnlyAcceptStreamTokensForMessageStream() throws Exception {
+    String streamToken = jwtService.generateMessageStreamToken(buyer.getId(), buyer.getEmail());
+    String accessToken = jwtService.generateToken(AuthenticatedUser.fromEntity(buyer));
+
+    mockMvc.perform(get("/api/messages/conversations")
+            .header("Authorization", "Bearer " + streamToken))
+        .andExpect(status().isForbidden());
+
+    mockMvc.perform(get("/api/messages/stream")
+            .param("token", accessToken)
+            .accept(MediaType.TEXT_EVENT_STREAM))
+        .andExpect(status().isForbidden());
+  }
+
+  private void sendMessage(User receiver, Item about, String text) throws Exception {
+    String body = """
+        {
+          "receiverId": %d,
+          "itemId": %d,
+          "messageText": "%s"
+        }
+        """.formatted(receiver.getId(), about.getId(), text);
+
+    mockMvc.perform(post("/api/messages/send")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body))
+        .andExpect(status().isOk());
   }
 }
@@ -0,0 +1,179 @@
+package com.marketplace.backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marketplace.backend.model.Category;
+import com.marketplace.backend.model.Item;
+import com.marketplace.backend.model.ItemStatus;
+import com.marketplace.backend.model.Order;
+import com.marketplace.backend.model.Role;
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.CategoryRepository;
+import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.OrderRepository;
+import com.marketplace.backend.repository.PaymentSessionRepository;
+import com.marketplace.backend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Stress test for concurrent Vipps callbacks. Not transactional, since every callback has to
+ * commit on its own for the callbacks to contend for the item.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties")
+class PaymentCallbackStressTest {
+
+  private static final int THREADS = 32;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private CategoryRepository categoryRepository;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private PaymentSessionRepository paymentSessionRepository;
+
+  private final List<User> buyers = new ArrayList<>();
+  private User seller;
+  private Category category;
+  private Item item;
+
+  /**
+   * Set up an item for sale and its potential buyers.
+   */
+  @BeforeEach
+  void setUp() {
+    seller = userRepository.save(new User("Seller", "seller@stress.test", "password123", Role.USER,
+        "12345678", null, "english"));
+    for (int i = 0; i < THREADS; i++) {
+      buyers.add(userRepository.save(new User("Buyer " + i, "buyer" + i + "@stress.test", "password123",
+          Role.USER, "8765432" + i, null, "english")));
+    }
+    category = categoryRepository.save(new Category(null, "Stress"));
+    item = itemRepository.save(new Item(seller, "Bike", "Contended bike", category, 1000.0,
+        LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+  }
+
+  /**
+   * Remove the committed test data.
+   */
+  @AfterEach
+  void tearDown() {
+    orderRepository.deleteAll(orderRepository.findAll().stream()
+        .filter(order -> order.getItem().getId().equals(item.getId()))
+        .toList());
+    paymentSessionRepository.deleteAll();
+    itemRepository.deleteById(item.getId());
+    categoryRepository.delete(category);
+    userRepository.deleteAll(buyers);
+    userRepository.delete(seller);
+  }
+
+  /**
+   * Test that a storm of duplicate callbacks for one order sells the item and creates one order.
+   */
+  @Test
+  void shouldCreateOneOrderForDuplicateCallbacks() throws Exception {
+    String orderId = "order-" + item.getId() + "-" + buyers.get(0).getId() + "-1";
+
+    List<Integer> statuses = sendCallbacks(i -> orderId);
+
+    assertTrue(statuses.stream().allMatch(status -> status == 200), "Statuses were " + statuses);
+    assertSold(orderId);
+  }
+
+  /**
+   * Test that of concurrent callbacks for different buyers of one item, only one buys it.
+   */
+  @Test
+  void shouldSellItemOnceForCompetingCallbacks() throws Exception {
+    List<Integer> statuses = sendCallbacks(i -> "order-" + item.getId() + "-" + buyers.get(i).getId() + "-" + i);
+
+    assertEquals(1, statuses.stream().filter(status -> status == 200).count(), "Statuses were " + statuses);
+    Order order = assertSold(null);
+    assertTrue(order.getExternalOrderId().startsWith("order-" + item.getId() + "-" + order.getBuyer().getId() + "-"));
+  }
+
+  /**
+   * Send a callback from each thread at once.
+   *
+   * @param orderIds the order ID of the callback of each thread
+   * @return the status of each callback
+   */
+  private List<Integer> sendCallbacks(IntFunction<String> orderIds) throws Exception {
+    String payload = objectMapper.writeValueAsString(Map.of("transactionInfo", Map.of("status", "SALE")));
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        String orderId = orderIds.apply(i);
+        results.add(executor.submit(() -> {
+          start.await();
+          return mockMvc.perform(post("/api/payments/vipps-callback/v2/payments/" + orderId)
+                  .contentType("application/json")
+                  .content(payload))
+              .andReturn().getResponse().getStatus();
+        }));
+      }
+      start.countDown();
+      List<Integer> statuses = new ArrayList<>();
+      for (Future<Integer> result : results) {
+        statuses.add(result.get(30, TimeUnit.SECONDS));
+      }
+      return statuses;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Order assertSold(String orderId) {
+    Item sold = itemRepository.findById(item.getId()).orElseThrow();
+    assertEquals(ItemStatus.SOLD, sold.getStatus());
+    assertEquals(item.getVersion() + 1, sold.getVersion());
+
+    List<Order> orders = orderRepository.findAll().stream()
+        .filter(order -> order.getItem().getId().equals(item.getId()))
+        .toList();
+    assertEquals(1, orders.size());
+    if (orderId != null) {
+      assertEquals(orderId, orders.get(0).getExternalOrderId());
+    }
+    return orders.get(0);
+  }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marketplace.backend.service.PaymentService;
 import jakarta.transaction.Transactional;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,6 +13,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.*;
@@ -144,14 +146,39 @@ public class PaymentControllerTest {
   @Test
   void shouldRedirectToPaymentCompleteWhenOrderIsFinalized() throws Exception {
     String orderId = "order-1-2-123456";
-    when(paymentService.hasOrderBeenFinalized(orderId)).thenReturn(true);
+    when(paymentService.awaitOrderFinalized(orderId)).thenReturn(CompletableFuture.completedFuture(true));
 
-    mockMvc.perform(get("/api/payments/vipps-complete")
+    MvcResult result = mockMvc.perform(get("/api/payments/vipps-complete")
             .param("orderId", orderId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
         .andExpect(status().isFound())
         .andExpect(header().string("Location", "http://localhost:5173/payment-complete?orderId=" + orderId));
 
-    verify(paymentService, times(1)).hasOrderBeenFinalized(orderId);
+    verify(paymentService, times(1)).awaitOrderFinalized(orderId);
+  }
+
+  /**
+   * Test that the redirect is sent as soon as a pending order is finalized.
+   */
+  @Test
+  void shouldRedirectWhenPendingOrderIsFinalized() throws Exception {
+    String orderId = "order-1-2-123456";
+    CompletableFuture<Boolean> confirmation = new CompletableFuture<>();
+    when(paymentService.awaitOrderFinalized(orderId)).thenReturn(confirmation);
+
+    MvcResult result = mockMvc.perform(get("/api/payments/vipps-complete")
+            .param("orderId", orderId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    confirmation.complete(true);
+
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isFound())
+        .andExpect(header().string("Location", "http://localhost:5173/payment-complete?orderId=" + orderId));
   }
 
   /**
@@ -160,14 +187,18 @@ public class PaymentControllerTest {
   @Test
   void shouldRedirectToPaymentFailedWhenOrderIsNotFinalized() throws Exception {
     String orderId = "order-1-2-123456";
-    when(paymentService.hasOrderBeenFinalized(orderId)).thenReturn(false);
+    when(paymentService.awaitOrderFinalized(orderId)).thenReturn(CompletableFuture.completedFuture(false));
 
-    mockMvc.perform(get("/api/payments/vipps-complete")
+    MvcResult result = mockMvc.perform(get("/api/payments/vipps-complete")
             .param("orderId", orderId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
         .andExpect(status().isFound())
         .andExpect(header().string("Location", "http://localhost:5173/payment-failed"));
 
-    verify(paymentService, times(1)).hasOrderBeenFinalized(orderId);
+    verify(paymentService, times(1)).awaitOrderFinalized(orderId);
   }
 
   /**
@@ -176,13 +207,17 @@ public class PaymentControllerTest {
   @Test
   void shouldRedirectToPaymentFailedWhenExceptionOccurs() throws Exception {
     String orderId = "order-1-2-123456";
-    when(paymentService.hasOrderBeenFinalized(orderId)).thenThrow(new RuntimeException("Simulated error"));
+    when(paymentService.awaitOrderFinalized(orderId)).thenThrow(new RuntimeException("Simulated error"));
 
-    mockMvc.perform(get("/api/payments/vipps-complete")
+    MvcResult result = mockMvc.perform(get("/api/payments/vipps-complete")
             .param("orderId", orderId))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    mockMvc.perform(asyncDispatch(result))
         .andExpect(status().isFound())
         .andExpect(header().string("Location", "http://localhost:5173/payment-failed"));
 
-    verify(paymentService, times(1)).hasOrderBeenFinalized(orderId);
+    verify(paymentService, times(1)).awaitOrderFinalized(orderId);
   }
 }
@@ -0,0 +1,296 @@
+package com.marketplace.backend.controller;
+
+import com.marketplace.backend.model.Category;
+import com.marketplace.backend.model.Item;
+import com.marketplace.backend.model.ItemStatus;
+import com.marketplace.backend.model.Role;
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.CategoryRepository;
+import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.OrderRepository;
+import com.marketplace.backend.repository.PaymentSessionRepository;
+import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.service.PaymentService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Contention benchmark for buyers starting to pay for the same item at once, against a local
+ * stub of the Vipps API. Not transactional, since every claim has to commit on its own.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(locations = "classpath:application-test.properties")
+class PurchaseClaimContentionTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(PurchaseClaimContentionTest.class);
+
+  private static final int BUYERS = 100;
+
+  private static final AtomicInteger paymentRequests = new AtomicInteger();
+  private static final AtomicBoolean vippsFailing = new AtomicBoolean();
+  private static final HttpServer vipps = startVipps();
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private CategoryRepository categoryRepository;
+
+  @Autowired
+  private PaymentSessionRepository paymentSessionRepository;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private PaymentService paymentService;
+
+  private final List<User> buyers = new ArrayList<>();
+  private User seller;
+  private Category category;
+  private Item item;
+
+  @DynamicPropertySource
+  static void vippsProperties(DynamicPropertyRegistry registry) {
+    registry.add("vipps.base-url", () -> "http://localhost:" + vipps.getAddress().getPort());
+  }
+
+  /**
+   * Set up an item for sale and its buyers.
+   */
+  @BeforeEach
+  void setUp() {
+    paymentRequests.set(0);
+    vippsFailing.set(false);
+    seller = userRepository.save(new User("Seller", "seller@claim.test", "password123", Role.USER,
+        "12345678", null, "english"));
+    for (int i = 0; i < BUYERS; i++) {
+      buyers.add(userRepository.save(new User("Buyer " + i, "buyer" + i + "@claim.test", "password123",
+          Role.USER, "4" + (1000000 + i), null, "english")));
+    }
+    category = categoryRepository.save(new Category(null, "Claims"));
+    item = itemRepository.save(new Item(seller, "Camera", "Contended camera", category, 2500.0,
+        LocalDateTime.now(), new BigDecimal("63.4300"), new BigDecimal("10.3925")));
+  }
+
+  /**
+   * Remove the committed test data.
+   */
+  @AfterEach
+  void tearDown() {
+    paymentSessionRepository.deleteAll();
+    orderRepository.deleteAll();
+    itemRepository.deleteById(item.getId());
+    categoryRepository.delete(category);
+    userRepository.deleteAll(buyers);
+    userRepository.delete(seller);
+  }
+
+  @AfterAll
+  static void stopVipps() {
+    vipps.stop(0);
+    ((ExecutorService) vipps.getExecutor()).shutdownNow();
+  }
+
+  /**
+   * Test that of 100 buyers starting to pay at once, only one gets to pay.
+   */
+  @Test
+  void shouldLetOneOfConcurrentBuyersPay() throws Exception {
+    long start = System.nanoTime();
+    List<Integer> statuses = buyConcurrently();
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    logger.info("{} concurrent buyers for one item answered in {} ms", BUYERS, elapsedMs);
+
+    assertEquals(1, statuses.stream().filter(status -> status == 200).count(), "Statuses were " + statuses);
+    assertEquals(BUYERS - 1, statuses.stream().filter(status -> status == 409).count());
+    assertEquals(1, paymentRequests.get());
+
+    Long winner = buyers.get(statuses.indexOf(200)).getId();
+    Item claimed = itemRepository.findById(item.getId()).orElseThrow();
+    assertEquals(winner, claimed.getActivePurchaseClaim(LocalDateTime.now()));
+  }
+
+  /**
+   * Test that the claim is released when the payment cannot be initiated.
+   */
+  @Test
+  void shouldReleaseClaimWhenPaymentFails() throws Exception {
+    vippsFailing.set(true);
+    mockMvc.perform(post("/api/payments/vipps").param("itemId", item.getId().toString())
+            .with(user(buyers.get(0).getEmail())))
+        .andReturn();
+    assertNull(itemRepository.findById(item.getId()).orElseThrow().getActivePurchaseClaim(LocalDateTime.now()));
+
+    vippsFailing.set(false);
+    int status = mockMvc.perform(post("/api/payments/vipps").param("itemId", item.getId().toString())
+            .with(user(buyers.get(1).getEmail())))
+        .andReturn().getResponse().getStatus();
+    assertEquals(200, status);
+  }
+
+  /**
+   * Test that the seller cannot reserve the item for someone else, sell or delete it while a
+   * buyer is paying for it.
+   */
+  @Test
+  void shouldRejectSellerChangesWhileBuyerIsPaying() throws Exception {
+    mockMvc.perform(post("/api/payments/vipps").param("itemId", item.getId().toString())
+            .with(user(buyers.get(0).getEmail())))
+        .andExpect(status().isOk());
+
+    mockMvc.perform(put("/api/items/" + item.getId() + "/status").param("value", "RESERVED")
+            .param("buyerId", buyers.get(1).getId().toString())
+            .with(user(seller.getEmail())))
+        .andExpect(status().isConflict());
+    mockMvc.perform(multipart("/api/items/" + item.getId())
+            .file(new MockMultipartFile("dto", "", "application/json", "{\"status\":\"SOLD\"}".getBytes()))
+            .with(request -> {
+              request.setMethod("PUT");
+              return request;
+            })
+            .with(user(seller.getEmail())))
+        .andExpect(status().isConflict());
+    mockMvc.perform(delete("/api/items/" + item.getId()).with(user(seller.getEmail())))
+        .andExpect(status().isConflict());
+
+    Item claimed = itemRepository.findById(item.getId()).orElseThrow();
+    assertEquals(ItemStatus.FOR_SALE, claimed.getStatus());
+    assertEquals(buyers.get(0).getId(), claimed.getActivePurchaseClaim(LocalDateTime.now()));
+  }
+
+  /**
+   * Test that the late payment callback of a buyer whose claim expired does not sell the item
+   * over the live claim of the buyer paying for it now, whose callback still sells it.
+   */
+  @Test
+  void shouldNotSellOverLiveClaimOnCallbackOfExpiredClaim() {
+    User late = buyers.get(0);
+    User current = buyers.get(1);
+    LocalDateTime now = LocalDateTime.now();
+    itemRepository.claimForPurchase(item.getId(), late.getId(), now.minusMinutes(20), now.minusMinutes(10));
+    itemRepository.claimForPurchase(item.getId(), current.getId(), now, now.plusMinutes(10));
+
+    Map<String, Object> sale = Map.of("transactionInfo", Map.of("status", "SALE"));
+    String lateOrderId = "order-" + item.getId() + "-" + late.getId() + "-1";
+    assertThrows(IllegalStateException.class,
+        () -> paymentService.finalizeOrderFromVippsCallback(lateOrderId, sale));
+    Item claimed = itemRepository.findById(item.getId()).orElseThrow();
+    assertEquals(ItemStatus.FOR_SALE, claimed.getStatus());
+    assertEquals(current.getId(), claimed.getActivePurchaseClaim(LocalDateTime.now()));
+
+    String currentOrderId = "order-" + item.getId() + "-" + current.getId() + "-2";
+    paymentService.finalizeOrderFromVippsCallback(currentOrderId, sale);
+    assertEquals(ItemStatus.SOLD, itemRepository.findById(item.getId()).orElseThrow().getStatus());
+    assertTrue(orderRepository.existsByExternalOrderId(currentOrderId));
+    assertFalse(orderRepository.existsByExternalOrderId(lateOrderId));
+  }
+
+  /**
+   * Let every buyer start to pay for the item at once.
+   *
+   * @return the status of each buyer's request
+   */
+  private List<Integer> buyConcurrently() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(BUYERS);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> results = new ArrayList<>();
+      for (User buyer : buyers) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return mockMvc.perform(post("/api/payments/vipps").param("itemId", item.getId().toString())
+                  .with(user(buyer.getEmail())))
+              .andReturn().getResponse().getStatus();
+        }));
+      }
+      start.countDown();
+      List<Integer> statuses = new ArrayList<>();
+      for (Future<Integer> result : results) {
+        statuses.add(result.get(60, TimeUnit.SECONDS));
+      }
+      return statuses;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static HttpServer startVipps() {
+    // Send stub responses without waiting for delayed ACKs, which would dominate the latency
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    try {
+      HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/accesstoken/get", exchange ->
+          respond(exchange, 200, "{\"access_token\": \"token\", \"expires_in\": \"3600\"}"));
+      server.createContext("/ecomm/v2/payments", exchange -> {
+        exchange.getRequestBody().readAllBytes();
+        paymentRequests.incrementAndGet();
+        if (vippsFailing.get()) {
+          respond(exchange, 503, "{}");
+        } else {
+          respond(exchange, 200, "{\"url\": \"https://vipps.no/pay\"}");
+        }
+      });
+      server.setExecutor(Executors.newFixedThreadPool(8));
+      server.start();
+      return server;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -1,12 +1,13 @@
 package com.marketplace.backend.controller.config;
 
 import com.marketplace.backend.service.CloudinaryService;
-import java.util.Map;
+import com.marketplace.backend.service.UploadedImage;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.List;
 
 import static org.mockito.Mockito.*;
 
@@ -26,9 +27,11 @@ public class MockCloudinaryConfig {
   public CloudinaryService cloudinaryService() throws IOException {
     CloudinaryService mock = mock(CloudinaryService.class);
     when(mock.uploadImage(anyLong(), any(MultipartFile.class)))
-        .thenReturn("https://mock.url/fake-image.jpg");
-    when(mock.deleteImage(anyString()))
-        .thenReturn(Map.of("result", "ok"));
+        .thenReturn(new UploadedImage("https://mock.url/fake-image.jpg", null, List.of("fake-image")));
+    when(mock.uploadItemImage(anyLong(), any(MultipartFile.class)))
+        .thenReturn(new UploadedImage("https://mock.url/fake-image.jpg", "https://mock.url/fake-image_thumb.jpg",
+            List.of("fake-image", "fake-image_thumb")));
+    when(mock.publicIdOf(anyString())).thenCallRealMethod();
 
     return mock;
   }
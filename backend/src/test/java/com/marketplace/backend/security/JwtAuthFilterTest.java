@@ -1,5 +1,9 @@
 package com.marketplace.backend.security;
 
+import com.marketplace.backend.model.Role;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,12 +11,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -26,16 +30,27 @@ class JwtAuthFilterTest {
   private JwtAuthFilter jwtAuthFilter;
   private FilterChain filterChain;
   private CustomUserDetailsService userDetailsService;
+  private TokenRevocationCache tokenRevocationCache;
 
   @BeforeEach
   void setUp() {
-    jwtService = mock(JwtService.class);
+    jwtService = spy(new JwtService());
     userDetailsService = mock(CustomUserDetailsService.class);
     filterChain = mock(FilterChain.class);
-    jwtAuthFilter = new JwtAuthFilter(jwtService, userDetailsService);
+    tokenRevocationCache = new TokenRevocationCache();
+    jwtAuthFilter = new JwtAuthFilter(jwtService, userDetailsService, tokenRevocationCache);
     SecurityContextHolder.clearContext();
   }
 
+  private Claims claims(String username, Long userId, Date issuedAt) {
+    Claims claims = Jwts.claims().setSubject(username).setIssuedAt(issuedAt);
+    if (userId != null) {
+      claims.put(JwtService.USER_ID_CLAIM, userId);
+      claims.put(JwtService.ROLE_CLAIM, Role.USER.name());
+    }
+    return claims;
+  }
+
   /**
    * Test for the doFilterInternal method when no Authorization header is present.
    */
@@ -66,10 +81,10 @@ class JwtAuthFilterTest {
   }
 
   /**
-   * Test for setting authentication when the JWT is valid.
+   * Test for setting authentication from the token claims checked against the cached user.
    */
   @Test
-  void shouldSetAuthenticationWhenJwtIsValid() throws ServletException, IOException {
+  void shouldSetAuthenticationFromClaimsWhenJwtIsValid() throws ServletException, IOException {
     var username = "user@example.com";
     var jwt = "valid.jwt.token";
 
@@ -77,17 +92,125 @@ class JwtAuthFilterTest {
     request.addHeader("Authorization", "Bearer " + jwt);
     var response = new MockHttpServletResponse();
 
-    UserDetails userDetails = new User(username, "password", Collections.emptyList());
-
-    when(jwtService.extractUsername(jwt)).thenReturn(username);
-    when(userDetailsService.loadUserByUsername(username)).thenReturn(userDetails);
-    when(jwtService.isTokenValid(jwt, username)).thenReturn(true);
+    doReturn(claims(username, 42L, new Date())).when(jwtService).parseToken(jwt);
+    when(userDetailsService.loadCachedUserByUsername(username))
+        .thenReturn(new AuthenticatedUser(42L, username, "password", Role.USER));
 
     jwtAuthFilter.doFilterInternal(request, response, filterChain);
 
     verify(filterChain).doFilter(request, response);
+    verify(userDetailsService, never()).loadUserByUsername(any());
     assertNotNull(SecurityContextHolder.getContext().getAuthentication());
     assertEquals(username, SecurityContextHolder.getContext().getAuthentication().getName());
+    AuthenticatedUser principal =
+        (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+    assertEquals(42L, principal.getId());
+    assertEquals(Role.USER, principal.getRole());
+  }
+
+  /**
+   * Test for not setting authentication when the user of the token has been deleted.
+   */
+  @Test
+  void shouldNotSetAuthenticationWhenUserIsDeleted() throws ServletException, IOException {
+    var username = "user@example.com";
+    var jwt = "deleted.jwt.token";
+
+    var request = new MockHttpServletRequest();
+    request.addHeader("Authorization", "Bearer " + jwt);
+    var response = new MockHttpServletResponse();
+
+    doReturn(claims(username, 42L, new Date())).when(jwtService).parseToken(jwt);
+    when(userDetailsService.loadCachedUserByUsername(username))
+        .thenThrow(new UsernameNotFoundException("User not found"));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    assertNull(SecurityContextHolder.getContext().getAuthentication());
+  }
+
+  /**
+   * Test for not setting authentication when the role of the user changed after the token was issued.
+   */
+  @Test
+  void shouldNotSetAuthenticationWhenRoleChanged() throws ServletException, IOException {
+    var username = "user@example.com";
+    var jwt = "stale.jwt.token";
+
+    var request = new MockHttpServletRequest();
+    request.addHeader("Authorization", "Bearer " + jwt);
+    var response = new MockHttpServletResponse();
+
+    Claims claims = claims(username, 42L, new Date());
+    claims.put(JwtService.ROLE_CLAIM, Role.ADMIN.name());
+    doReturn(claims).when(jwtService).parseToken(jwt);
+    when(userDetailsService.loadCachedUserByUsername(username))
+        .thenReturn(new AuthenticatedUser(42L, username, "password", Role.USER));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    assertNull(SecurityContextHolder.getContext().getAuthentication());
+  }
+
+  /**
+   * Test for loading the user when the token was issued without user ID and role claims.
+   */
+  @Test
+  void shouldLoadUserForLegacyToken() throws ServletException, IOException {
+    var username = "user@example.com";
+    var jwt = "legacy.jwt.token";
+
+    var request = new MockHttpServletRequest();
+    request.addHeader("Authorization", "Bearer " + jwt);
+    var response = new MockHttpServletResponse();
+
+    doReturn(claims(username, null, new Date())).when(jwtService).parseToken(jwt);
+    when(userDetailsService.loadCachedUserByUsername(username))
+        .thenReturn(new AuthenticatedUser(42L, username, "password", Role.USER));
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    assertEquals(username, SecurityContextHolder.getContext().getAuthentication().getName());
+  }
+
+  /**
+   * Test for not setting authentication when the token cannot be parsed.
+   */
+  @Test
+  void shouldNotSetAuthenticationWhenJwtIsInvalid() throws ServletException, IOException {
+    var request = new MockHttpServletRequest();
+    request.addHeader("Authorization", "Bearer broken");
+    var response = new MockHttpServletResponse();
+
+    doThrow(new MalformedJwtException("broken")).when(jwtService).parseToken("broken");
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    assertNull(SecurityContextHolder.getContext().getAuthentication());
+  }
+
+  /**
+   * Test for not setting authentication when the token was issued before a revocation.
+   */
+  @Test
+  void shouldNotSetAuthenticationWhenTokenIsRevoked() throws ServletException, IOException {
+    var jwt = "revoked.jwt.token";
+    var request = new MockHttpServletRequest();
+    request.addHeader("Authorization", "Bearer " + jwt);
+    var response = new MockHttpServletResponse();
+
+    doReturn(claims("user@example.com", 42L, new Date(System.currentTimeMillis() - 60_000)))
+        .when(jwtService).parseToken(jwt);
+    tokenRevocationCache.revokeAll(42L);
+
+    jwtAuthFilter.doFilterInternal(request, response, filterChain);
+
+    verify(filterChain).doFilter(request, response);
+    assertNull(SecurityContextHolder.getContext().getAuthentication());
   }
 
   /**
@@ -1,5 +1,6 @@
 package com.marketplace.backend.security;
 
+import com.marketplace.backend.model.Role;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -68,4 +69,27 @@ class JwtServiceTest {
 
     assertThrows(Exception.class, () -> jwtService.extractUsername(invalidToken));
   }
+
+  /**
+   * Test that a token for an authenticated user carries the user ID and role.
+   */
+  @Test
+  void shouldEmbedUserIdAndRoleInToken() {
+    String token = jwtService.generateToken(new AuthenticatedUser(7L, testUsername, "hash", Role.ADMIN));
+    AuthenticatedUser principal = jwtService.toPrincipal(jwtService.parseToken(token));
+
+    assertEquals(7L, principal.getId());
+    assertEquals(testUsername, principal.getUsername());
+    assertEquals(Role.ADMIN, principal.getRole());
+  }
+
+  /**
+   * Test that a token without user ID and role claims yields no principal.
+   */
+  @Test
+  void shouldReturnNoPrincipalForLegacyToken() {
+    String token = jwtService.generateToken(testUsername);
+
+    assertNull(jwtService.toPrincipal(jwtService.parseToken(token)));
+  }
 }
@@ -0,0 +1,67 @@
+package com.marketplace.backend.security;
+
+import com.marketplace.backend.model.Role;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the UserSnapshotCache.
+ */
+class UserSnapshotCacheTest {
+
+  private UserSnapshotCache cache;
+  private AtomicInteger loads;
+
+  @BeforeEach
+  void setUp() {
+    cache = new UserSnapshotCache();
+    loads = new AtomicInteger();
+  }
+
+  private AuthenticatedUser load(String email) {
+    loads.incrementAndGet();
+    return new AuthenticatedUser((long) loads.get(), email, "hash", Role.USER);
+  }
+
+  /**
+   * Test that repeated lookups are served from the cache.
+   */
+  @Test
+  void shouldLoadUserOnlyOnce() {
+    AuthenticatedUser first = cache.get("john@example.com", this::load);
+    AuthenticatedUser second = cache.get("john@example.com", this::load);
+
+    assertSame(first, second);
+    assertEquals(1, loads.get());
+  }
+
+  /**
+   * Test that invalidating a user forces the next lookup to load it again.
+   */
+  @Test
+  void shouldReloadUserAfterInvalidation() {
+    cache.get("john@example.com", this::load);
+    cache.invalidate("john@example.com");
+    AuthenticatedUser reloaded = cache.get("john@example.com", this::load);
+
+    assertEquals(2, loads.get());
+    assertEquals(2L, reloaded.getId());
+  }
+
+  /**
+   * Test that a snapshot loaded while the user was being updated is not cached.
+   */
+  @Test
+  void shouldNotCacheSnapshotLoadedDuringInvalidation() {
+    cache.get("john@example.com", email -> {
+      cache.invalidate(email);
+      return load(email);
+    });
+    cache.get("john@example.com", this::load);
+
+    assertEquals(2, loads.get());
+  }
+}
@@ -0,0 +1,102 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.PendingAssetDeletion;
+import com.marketplace.backend.repository.ImageRepository;
+import com.marketplace.backend.repository.PendingAssetDeletionRepository;
+import com.marketplace.backend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the AssetDeletionOutbox.
+ */
+class AssetDeletionOutboxTest {
+
+  private static final String URL_PREFIX = "https://images.test/";
+  private static final String SHARED = "items/1/shared";
+  private static final String UNSHARED = "items/1/unshared";
+
+  private PendingAssetDeletionRepository pendingAssetDeletionRepository;
+  private ImageStorage imageStorage;
+  private ImageRepository imageRepository;
+  private UserRepository userRepository;
+  private AssetDeletionOutbox assetDeletionOutbox;
+
+  @BeforeEach
+  void setUp() {
+    pendingAssetDeletionRepository = mock(PendingAssetDeletionRepository.class);
+    imageStorage = mock(ImageStorage.class);
+    imageRepository = mock(ImageRepository.class);
+    userRepository = mock(UserRepository.class);
+    when(imageStorage.publicIdOf(anyString())).thenAnswer(invocation ->
+        invocation.<String>getArgument(0).substring(URL_PREFIX.length()));
+    when(userRepository.findProfilePictureById(any())).thenReturn(Optional.empty());
+    assetDeletionOutbox = new AssetDeletionOutbox(pendingAssetDeletionRepository, imageStorage,
+        imageRepository, userRepository);
+  }
+
+  /**
+   * Test that the retry delay doubles with every failed attempt up to the maximum.
+   */
+  @Test
+  void shouldBackOffExponentially() {
+    assertEquals(AssetDeletionOutbox.INITIAL_BACKOFF, AssetDeletionOutbox.backoff(1));
+    assertEquals(AssetDeletionOutbox.INITIAL_BACKOFF.multipliedBy(2), AssetDeletionOutbox.backoff(2));
+    assertEquals(AssetDeletionOutbox.INITIAL_BACKOFF.multipliedBy(8), AssetDeletionOutbox.backoff(4));
+    assertEquals(AssetDeletionOutbox.MAX_BACKOFF, AssetDeletionOutbox.backoff(20));
+    assertEquals(AssetDeletionOutbox.MAX_BACKOFF, AssetDeletionOutbox.backoff(Integer.MAX_VALUE));
+    assertTrue(AssetDeletionOutbox.backoff(10).compareTo(Duration.ZERO) > 0);
+  }
+
+  /**
+   * Test that removing one of two images with the same content keeps the asset they share,
+   * while an asset no image references anymore is deleted.
+   */
+  @Test
+  void shouldKeepAssetSharedByAnotherImage() throws Exception {
+    // The remaining image of the seller, in another item, has the same content as a removed one
+    when(imageRepository.findUrlsBySellerId(1L)).thenReturn(List.<Object[]>of(
+        new Object[] {URL_PREFIX + SHARED, URL_PREFIX + SHARED + ImageStorage.THUMBNAIL_SUFFIX}));
+    when(pendingAssetDeletionRepository.findDue(any(), any())).thenReturn(List.of(
+        pending(1L, SHARED), pending(2L, SHARED + ImageStorage.THUMBNAIL_SUFFIX), pending(3L, UNSHARED)));
+
+    assertEquals(3, assetDeletionOutbox.drain());
+
+    verify(imageStorage, never()).deleteImage(SHARED);
+    verify(imageStorage, never()).deleteImage(SHARED + ImageStorage.THUMBNAIL_SUFFIX);
+    verify(imageStorage).deleteImage(UNSHARED);
+    verify(pendingAssetDeletionRepository).deleteCompleted(List.of(1L, 2L, 3L));
+  }
+
+  /**
+   * Test that an asset still used as the owner's profile picture is kept.
+   */
+  @Test
+  void shouldKeepAssetUsedAsProfilePicture() throws Exception {
+    when(imageRepository.findUrlsBySellerId(1L)).thenReturn(List.of());
+    when(userRepository.findProfilePictureById(1L)).thenReturn(Optional.of(URL_PREFIX + SHARED));
+    when(pendingAssetDeletionRepository.findDue(any(), any())).thenReturn(List.of(pending(1L, SHARED)));
+
+    assetDeletionOutbox.drain();
+
+    verify(imageStorage, never()).deleteImage(anyString());
+    verify(pendingAssetDeletionRepository).deleteCompleted(List.of(1L));
+  }
+
+  private static PendingAssetDeletion pending(Long id, String publicId) {
+    PendingAssetDeletion deletion = new PendingAssetDeletion(publicId, LocalDateTime.now());
+    ReflectionTestUtils.setField(deletion, "id", id);
+    return deletion;
+  }
+}
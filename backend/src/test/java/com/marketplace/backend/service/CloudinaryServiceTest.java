@@ -0,0 +1,222 @@
+package com.marketplace.backend.service;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the CloudinaryService.
+ */
+class CloudinaryServiceTest {
+
+  private static final int IMAGE_SIZE = 10 * 1024 * 1024;
+
+  private CloudinaryService cloudinaryService;
+  private ImageProcessor imageProcessor;
+  private Map<String, byte[]> uploads;
+  private AtomicReference<File> uploadedFile;
+  private boolean captureUploads;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    Cloudinary cloudinary = mock(Cloudinary.class);
+    Uploader uploader = mock(Uploader.class);
+    when(cloudinary.uploader()).thenReturn(uploader);
+    uploads = new ConcurrentHashMap<>();
+    uploadedFile = new AtomicReference<>();
+    captureUploads = true;
+    when(uploader.upload(any(), anyMap())).thenAnswer(invocation -> {
+      File file = invocation.getArgument(0);
+      String publicId = (String) ((Map<?, ?>) invocation.getArgument(1)).get("public_id");
+      uploadedFile.set(file);
+      boolean existing = uploads.containsKey(publicId);
+      if (captureUploads && !existing) {
+        uploads.put(publicId, Files.readAllBytes(file.toPath()));
+      }
+      return Map.of("secure_url", "https://mock.url/" + publicId + ".jpg", "existing", existing);
+    });
+    imageProcessor = new ImageProcessor(1600, 320, 0.85f, 2);
+    cloudinaryService = new CloudinaryService(cloudinary, imageProcessor);
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageProcessor.shutdown();
+  }
+
+  /**
+   * Test that a small JPEG image is uploaded as is, under the public ID of its content, and that
+   * the spooled file is removed.
+   */
+  @Test
+  void shouldUploadSpooledFileUnderContentHash() throws Exception {
+    byte[] content = jpegImage(64 * 1024);
+    String publicId = ImageStorage.publicIdFor(7L, content);
+
+    String url = cloudinaryService.uploadImage(7L, new MockMultipartFile("images", "a.jpg", "image/jpeg", content)).url();
+
+    assertEquals("https://mock.url/" + publicId + ".jpg", url);
+    assertArrayEquals(content, uploads.get(publicId));
+    assertEquals(1, uploads.size());
+    assertFalse(uploadedFile.get().exists());
+    assertEquals(publicId, ImageStorage.publicIdFor(7L, new ByteArrayInputStream(content)));
+  }
+
+  /**
+   * Test that item images are downsized and stored with a thumbnail next to them.
+   */
+  @Test
+  void shouldUploadDownsizedImageAndThumbnail() throws Exception {
+    BufferedImage photo = new BufferedImage(4000, 3000, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(photo, "png", png);
+    String publicId = ImageStorage.publicIdFor(7L, png.toByteArray());
+
+    UploadedImage uploaded = cloudinaryService.uploadItemImage(7L,
+        new MockMultipartFile("images", "photo.png", "image/png", png.toByteArray()));
+
+    assertEquals("https://mock.url/" + publicId + ".jpg", uploaded.url());
+    assertEquals("https://mock.url/" + publicId + ImageStorage.THUMBNAIL_SUFFIX + ".jpg", uploaded.thumbnailUrl());
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(uploads.get(publicId)));
+    BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(uploads.get(publicId + ImageStorage.THUMBNAIL_SUFFIX)));
+    assertEquals(1600, image.getWidth());
+    assertEquals(1200, image.getHeight());
+    assertEquals(320, thumbnail.getWidth());
+    assertEquals(240, thumbnail.getHeight());
+  }
+
+  /**
+   * Test that uploading content that is already stored reports no created images, so undoing
+   * the upload keeps the images in use.
+   */
+  @Test
+  void shouldReportOnlyImagesCreatedByUpload() throws Exception {
+    BufferedImage photo = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(photo, "png", png);
+    String publicId = ImageStorage.publicIdFor(7L, png.toByteArray());
+    MultipartFile file = new MockMultipartFile("images", "photo.png", "image/png", png.toByteArray());
+
+    UploadedImage first = cloudinaryService.uploadItemImage(7L, file);
+    UploadedImage second = cloudinaryService.uploadItemImage(7L, file);
+
+    assertEquals(List.of(publicId, publicId + ImageStorage.THUMBNAIL_SUFFIX), first.createdPublicIds());
+    assertEquals(List.of(), second.createdPublicIds());
+    assertEquals(first.url(), second.url());
+  }
+
+  /**
+   * Allocation benchmark: uploading a 10MB image must allocate far less than the image itself,
+   * whereas reading the content into memory, once for the hash and once for the upload,
+   * allocates twice its size.
+   */
+  @Test
+  void shouldNotCopyImageContentOntoHeap() throws Exception {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    MultipartFile file = new CopyingMultipartFile(jpegImage(IMAGE_SIZE));
+    long threadId = Thread.currentThread().getId();
+    captureUploads = false;
+
+    for (int i = 0; i < 3; i++) {
+      cloudinaryService.uploadImage(1L, file);
+    }
+    int runs = 5;
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < runs; i++) {
+      cloudinaryService.uploadImage(1L, file);
+    }
+    long streamingPerUpload = (threads.getThreadAllocatedBytes(threadId) - before) / runs;
+
+    before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < runs; i++) {
+      ImageStorage.publicIdFor(1L, file.getBytes());
+      assertEquals(IMAGE_SIZE, file.getBytes().length);
+    }
+    long inMemoryPerUpload = (threads.getThreadAllocatedBytes(threadId) - before) / runs;
+
+    assertTrue(inMemoryPerUpload >= 2L * IMAGE_SIZE, "in-memory: " + inMemoryPerUpload);
+    assertTrue(streamingPerUpload < IMAGE_SIZE / 10, "streaming: " + streamingPerUpload);
+  }
+
+  /**
+   * Test that the public ID is the path of the URL after the version, without extension.
+   */
+  @Test
+  void shouldExtractPublicIdFromUrl() {
+    assertEquals("items/1/abc123", cloudinaryService.publicIdOf(
+        "https://res.cloudinary.com/demo/image/upload/v1234567890/items/1/abc123.jpg"));
+    assertEquals("items/1/abc123", cloudinaryService.publicIdOf(
+        "https://res.cloudinary.com/demo/image/upload/items/1/abc123.jpg"));
+    assertEquals("fake-image", cloudinaryService.publicIdOf("https://mock.url/fake-image.jpg"));
+    assertThrows(IllegalArgumentException.class, () -> cloudinaryService.publicIdOf("no-extension"));
+  }
+
+  /**
+   * Test that files that are not images are rejected instead of being stored as JPEG images.
+   */
+  @Test
+  void shouldRejectFilesThatAreNotImages() {
+    MultipartFile file = new MockMultipartFile("images", "page.jpg", "image/jpeg",
+        "<html><script>alert(1)</script></html>".getBytes());
+
+    assertThrows(IllegalArgumentException.class, () -> cloudinaryService.uploadItemImage(7L, file));
+    assertTrue(uploads.isEmpty());
+  }
+
+  /**
+   * Create a small JPEG image padded with random bytes after its end to the given size, which
+   * decoders ignore.
+   */
+  private static byte[] jpegImage(int size) throws IOException {
+    ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+    byte[] content = Arrays.copyOf(jpeg.toByteArray(), size);
+    byte[] padding = new byte[size - jpeg.size()];
+    new Random(42).nextBytes(padding);
+    System.arraycopy(padding, 0, content, jpeg.size(), padding.length);
+    return content;
+  }
+
+  /**
+   * Multipart file returning a copy of its content from getBytes, like a file spooled to disk.
+   */
+  private static class CopyingMultipartFile extends MockMultipartFile {
+
+    CopyingMultipartFile(byte[] content) {
+      super("images", "image.jpg", "image/jpeg", content);
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+      return super.getBytes().clone();
+    }
+  }
+}
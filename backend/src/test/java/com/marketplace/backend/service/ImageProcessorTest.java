@@ -0,0 +1,144 @@
+package com.marketplace.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the ImageProcessor.
+ */
+class ImageProcessorTest {
+
+  private ImageProcessor imageProcessor;
+
+  @BeforeEach
+  void setUp() {
+    imageProcessor = new ImageProcessor(1600, 320, 0.85f, 2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageProcessor.shutdown();
+  }
+
+  /**
+   * Test that large images are downsized to fit the maximum dimension, keeping their aspect ratio.
+   */
+  @Test
+  void shouldDownsizeLargeImages() throws Exception {
+    Path source = write(new BufferedImage(3000, 5000, BufferedImage.TYPE_INT_ARGB), "png");
+
+    ImageProcessor.ProcessedImage processed = imageProcessor.process(source, true);
+
+    BufferedImage image = ImageIO.read(processed.image().toFile());
+    BufferedImage thumbnail = ImageIO.read(processed.thumbnail().toFile());
+    assertNotEquals(source, processed.image());
+    assertEquals(960, image.getWidth());
+    assertEquals(1600, image.getHeight());
+    assertEquals(192, thumbnail.getWidth());
+    assertEquals(320, thumbnail.getHeight());
+  }
+
+  /**
+   * Test that small JPEG images are stored as they are.
+   */
+  @Test
+  void shouldKeepSmallJpegImages() throws Exception {
+    Path source = write(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB), "jpeg");
+
+    ImageProcessor.ProcessedImage processed = imageProcessor.process(source, false);
+
+    assertEquals(source, processed.image());
+    assertNull(processed.thumbnail());
+  }
+
+  /**
+   * Test that files that are not images are rejected instead of being stored as they are.
+   */
+  @Test
+  void shouldRejectUndecodableFiles() throws Exception {
+    Path source = Files.createTempFile("image-processor-test-", ".bin");
+    source.toFile().deleteOnExit();
+    Files.write(source, "<html><script>alert(1)</script></html>".getBytes());
+
+    assertThrows(IllegalArgumentException.class, () -> imageProcessor.process(source, true));
+  }
+
+  /**
+   * Test that photos are turned upright according to their EXIF orientation before they are
+   * downsized, even if they would otherwise be kept as they are.
+   */
+  @Test
+  void shouldTurnImagesUprightByExifOrientation() throws Exception {
+    // Left half red, right half blue, taken with the camera turned so it displays rotated clockwise
+    BufferedImage photo = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = photo.createGraphics();
+    graphics.setColor(Color.RED);
+    graphics.fillRect(0, 0, 200, 200);
+    graphics.setColor(Color.BLUE);
+    graphics.fillRect(200, 0, 200, 200);
+    graphics.dispose();
+    Path source = withExifOrientation(write(photo, "jpeg"), 6);
+    assertEquals(6, ImageProcessor.readOrientation(source));
+
+    ImageProcessor.ProcessedImage processed = imageProcessor.process(source, true);
+
+    BufferedImage image = ImageIO.read(processed.image().toFile());
+    BufferedImage thumbnail = ImageIO.read(processed.thumbnail().toFile());
+    assertNotEquals(source, processed.image());
+    assertEquals(200, image.getWidth());
+    assertEquals(400, image.getHeight());
+    assertEquals(160, thumbnail.getWidth());
+    assertEquals(320, thumbnail.getHeight());
+    assertTrue(new Color(image.getRGB(100, 50)).getRed() > 200);
+    assertTrue(new Color(image.getRGB(100, 350)).getBlue() > 200);
+  }
+
+  /**
+   * Test that images without EXIF data are upright.
+   */
+  @Test
+  void shouldReadDefaultOrientationWithoutExif() throws Exception {
+    Path source = write(new BufferedImage(80, 60, BufferedImage.TYPE_INT_RGB), "jpeg");
+
+    assertEquals(1, ImageProcessor.readOrientation(source));
+  }
+
+  private static Path write(BufferedImage image, String format) throws Exception {
+    Path file = Files.createTempFile("image-processor-test-", "." + format);
+    file.toFile().deleteOnExit();
+    ImageIO.write(image, format, file.toFile());
+    return file;
+  }
+
+  /**
+   * Insert an EXIF segment with only an orientation tag after the start of a JPEG file.
+   */
+  private static Path withExifOrientation(Path jpeg, int orientation) throws Exception {
+    ByteBuffer exif = ByteBuffer.allocate(36);
+    exif.putShort((short) 0xFFE1).putShort((short) 34);
+    exif.put("Exif".getBytes()).putShort((short) 0);
+    exif.put("MM".getBytes()).putShort((short) 42).putInt(8);
+    exif.putShort((short) 1);
+    exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+    exif.putInt(0);
+
+    byte[] content = Files.readAllBytes(jpeg);
+    byte[] result = new byte[content.length + exif.capacity()];
+    System.arraycopy(content, 0, result, 0, 2);
+    System.arraycopy(exif.array(), 0, result, 2, exif.capacity());
+    System.arraycopy(content, 2, result, 2 + exif.capacity(), content.length - 2);
+    Files.write(jpeg, result);
+    return jpeg;
+  }
+}
@@ -0,0 +1,146 @@
+package com.marketplace.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the ImageUploadService.
+ */
+class ImageUploadServiceTest {
+
+  private CloudinaryService cloudinaryService;
+  private ImageUploadService imageUploadService;
+
+  @BeforeEach
+  void setUp() {
+    cloudinaryService = mock(CloudinaryService.class);
+    when(cloudinaryService.publicIdOf(anyString())).thenCallRealMethod();
+    imageUploadService = new ImageUploadService(cloudinaryService);
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageUploadService.shutdown();
+  }
+
+  /**
+   * Test that the URLs are returned in the order of the files, even if later uploads finish first.
+   */
+  @Test
+  void shouldKeepImageOrder() throws Exception {
+    when(cloudinaryService.uploadItemImage(eq(1L), any())).thenAnswer(invocation -> {
+      MultipartFile file = invocation.getArgument(1);
+      int index = Integer.parseInt(file.getOriginalFilename().replace(".jpg", ""));
+      Thread.sleep(50L * (5 - index));
+      return new UploadedImage("https://mock.url/" + index + ".jpg", null, List.of(String.valueOf(index)));
+    });
+
+    List<String> urls = imageUploadService.uploadAll(1L, files(5)).stream().map(UploadedImage::url).toList();
+
+    assertEquals(List.of("https://mock.url/0.jpg", "https://mock.url/1.jpg", "https://mock.url/2.jpg",
+        "https://mock.url/3.jpg", "https://mock.url/4.jpg"), urls);
+  }
+
+  /**
+   * Test that no more than the allowed number of uploads of one user run at the same time.
+   */
+  @Test
+  void shouldBoundConcurrentUploadsPerUser() throws Exception {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    when(cloudinaryService.uploadItemImage(eq(1L), any())).thenAnswer(invocation -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      Thread.sleep(20);
+      running.decrementAndGet();
+      return new UploadedImage("https://mock.url/image.jpg", null, List.of("image"));
+    });
+
+    imageUploadService.uploadAll(1L, files(12));
+
+    assertTrue(maxRunning.get() > 1);
+    assertTrue(maxRunning.get() <= ImageUploadService.MAX_UPLOADS_PER_USER);
+  }
+
+  /**
+   * Test that the uploaded images and thumbnails are deleted again if one upload fails.
+   */
+  @Test
+  void shouldDeleteUploadedImagesWhenAnUploadFails() throws Exception {
+    when(cloudinaryService.uploadItemImage(eq(1L), any())).thenAnswer(invocation -> {
+      MultipartFile file = invocation.getArgument(1);
+      if (file.getOriginalFilename().equals("1.jpg")) {
+        throw new IOException("Upload failed");
+      }
+      String name = file.getOriginalFilename().replace(".jpg", "");
+      return new UploadedImage("https://mock.url/" + name + ".jpg", "https://mock.url/" + name + "_thumb.jpg",
+          List.of(name, name + "_thumb"));
+    });
+
+    IOException error = assertThrows(IOException.class, () -> imageUploadService.uploadAll(1L, files(3)));
+
+    assertEquals("Upload failed", error.getMessage());
+    verify(cloudinaryService, timeout(1000)).deleteImage("0");
+    verify(cloudinaryService, timeout(1000)).deleteImage("2");
+    verify(cloudinaryService, timeout(1000)).deleteImage("0_thumb");
+    verify(cloudinaryService, timeout(1000)).deleteImage("2_thumb");
+    verify(cloudinaryService, never()).deleteImage("1");
+  }
+
+  /**
+   * Test that images whose content was already stored are kept when another upload fails,
+   * since they may be in use.
+   */
+  @Test
+  void shouldKeepPreviouslyStoredImagesWhenAnUploadFails() throws Exception {
+    when(cloudinaryService.uploadItemImage(eq(1L), any())).thenAnswer(invocation -> {
+      MultipartFile file = invocation.getArgument(1);
+      return switch (file.getOriginalFilename()) {
+        case "0.jpg" -> new UploadedImage("https://mock.url/0.jpg", "https://mock.url/0_thumb.jpg", List.of());
+        case "1.jpg" -> throw new IOException("Upload failed");
+        default -> new UploadedImage("https://mock.url/2.jpg", "https://mock.url/2_thumb.jpg",
+            List.of("2", "2_thumb"));
+      };
+    });
+
+    assertThrows(IOException.class, () -> imageUploadService.uploadAll(1L, files(3)));
+
+    verify(cloudinaryService, timeout(1000)).deleteImage("2");
+    verify(cloudinaryService, timeout(1000)).deleteImage("2_thumb");
+    verify(cloudinaryService, never()).deleteImage("0");
+    verify(cloudinaryService, never()).deleteImage("0_thumb");
+  }
+
+  /**
+   * Test that old images are all deleted even if one deletion fails.
+   */
+  @Test
+  void shouldDeleteAllImagesDespiteFailures() throws Exception {
+    doThrow(new IOException("Delete failed")).when(cloudinaryService).deleteImage("b");
+
+    imageUploadService.deleteAll(List.of("a", "b", "c"));
+
+    verify(cloudinaryService).deleteImage("a");
+    verify(cloudinaryService).deleteImage("b");
+    verify(cloudinaryService).deleteImage("c");
+  }
+
+  private static List<MultipartFile> files(int count) {
+    return IntStream.range(0, count)
+        .<MultipartFile>mapToObj(i -> new MockMultipartFile("images", i + ".jpg", "image/jpeg", new byte[] {(byte) i}))
+        .toList();
+  }
+}
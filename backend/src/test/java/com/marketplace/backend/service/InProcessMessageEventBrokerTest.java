@@ -0,0 +1,118 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the InProcessMessageEventBroker.
+ */
+class InProcessMessageEventBrokerTest {
+
+  private InProcessMessageEventBroker broker;
+
+  @BeforeEach
+  void setUp() {
+    broker = new InProcessMessageEventBroker();
+  }
+
+  /**
+   * Test that events only reach the subscribers of their recipient.
+   */
+  @Test
+  void shouldDeliverEventsToRecipientOnly() {
+    List<MessageEventDto> first = new ArrayList<>();
+    List<MessageEventDto> second = new ArrayList<>();
+    List<MessageEventDto> other = new ArrayList<>();
+    broker.subscribe(1L, first::add);
+    broker.subscribe(1L, second::add);
+    broker.subscribe(2L, other::add);
+
+    MessageEventDto event = new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null);
+    broker.publish(1L, event);
+
+    assertEquals(List.of(event), first);
+    assertEquals(List.of(event), second);
+    assertTrue(other.isEmpty());
+  }
+
+  /**
+   * Test that unsubscribed listeners no longer receive events.
+   */
+  @Test
+  void shouldStopDeliveringAfterUnsubscribe() {
+    List<MessageEventDto> received = new ArrayList<>();
+    Runnable unsubscribe = broker.subscribe(1L, received::add);
+    unsubscribe.run();
+
+    broker.publish(1L, new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null));
+
+    assertTrue(received.isEmpty());
+  }
+
+  /**
+   * Test that a failing listener does not prevent delivery to the others.
+   */
+  @Test
+  void shouldIsolateFailingListeners() {
+    List<MessageEventDto> received = new ArrayList<>();
+    broker.subscribe(1L, event -> {
+      throw new IllegalStateException("closed");
+    });
+    broker.subscribe(1L, received::add);
+
+    broker.publish(1L, new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null));
+
+    assertEquals(1, received.size());
+  }
+
+  /**
+   * Test that a listener subscribing while others of the same user unsubscribe receives events.
+   */
+  @Test
+  void shouldDeliverToListenersSubscribedDuringUnsubscribes() throws Exception {
+    int threads = 8;
+    int rounds = 200_000;
+    MessageEventDto event = new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null);
+    AtomicInteger missed = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < rounds; i++) {
+            AtomicInteger received = new AtomicInteger();
+            Runnable unsubscribe = broker.subscribe(1L, e -> received.incrementAndGet());
+            broker.publish(1L, event);
+            if (received.get() == 0) {
+              missed.incrementAndGet();
+            }
+            unsubscribe.run();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(0, missed.get());
+  }
+}
@@ -0,0 +1,100 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the ItemGeoIndex.
+ */
+class ItemGeoIndexTest {
+
+  /**
+   * Test that the grid lookup returns exactly the items a full distance scan would.
+   */
+  @Test
+  void shouldMatchFullScan() {
+    ItemGeoIndex index = new ItemGeoIndex(mock(ItemRepository.class));
+    Random random = new Random(42);
+    double[][] locations = new double[5000][];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = new double[] {58 + random.nextDouble() * 12, 4 + random.nextDouble() * 26};
+      index.index((long) i, scaled(locations[i][0]), scaled(locations[i][1]));
+    }
+
+    for (double distanceKm : new double[] {1, 10, 50, 250}) {
+      double lat = 63.43;
+      double lon = 10.39;
+      Set<Long> expected = new HashSet<>();
+      for (int i = 0; i < locations.length; i++) {
+        double itemLat = scaled(locations[i][0]).doubleValue();
+        double itemLon = scaled(locations[i][1]).doubleValue();
+        if (ItemGeoIndex.greatCircleKm(lat, lon, itemLat, itemLon) <= distanceKm) {
+          expected.add((long) i);
+        }
+      }
+
+      List<Long> found = index.findWithin(BigDecimal.valueOf(lat), BigDecimal.valueOf(lon), distanceKm);
+      assertEquals(expected, new HashSet<>(found), "distance " + distanceKm);
+    }
+  }
+
+  /**
+   * Test that results are ordered by distance and that moved or removed items are updated.
+   */
+  @Test
+  void shouldOrderByDistanceAndTrackMoves() {
+    ItemGeoIndex index = new ItemGeoIndex(mock(ItemRepository.class));
+    index.index(1L, new BigDecimal("63.50"), new BigDecimal("10.39"));
+    index.index(2L, new BigDecimal("63.44"), new BigDecimal("10.39"));
+    index.index(3L, new BigDecimal("59.91"), new BigDecimal("10.75"));
+
+    BigDecimal lat = new BigDecimal("63.43");
+    BigDecimal lon = new BigDecimal("10.39");
+    assertEquals(List.of(2L, 1L), index.findWithin(lat, lon, 20));
+
+    index.index(3L, new BigDecimal("63.43"), new BigDecimal("10.39"));
+    index.remove(1L);
+    assertEquals(List.of(3L, 2L), index.findWithin(lat, lon, 20));
+  }
+
+  /**
+   * Test that a sync moves items changed on other instances and pruning removes items deleted there.
+   */
+  @Test
+  void shouldSyncAndPruneItemsChangedElsewhere() {
+    ItemRepository itemRepository = mock(ItemRepository.class);
+    ItemGeoIndex index = new ItemGeoIndex(itemRepository);
+    index.rebuild();
+    index.index(1L, new BigDecimal("63.44"), new BigDecimal("10.39"));
+    index.index(2L, new BigDecimal("63.45"), new BigDecimal("10.39"));
+    when(itemRepository.findLocationsUpdatedSince(any(), eq(0L), any())).thenReturn(List.of(
+        new Object[] {2L, new BigDecimal("59.91"), new BigDecimal("10.75")},
+        new Object[] {3L, new BigDecimal("63.43"), new BigDecimal("10.39")}));
+    when(itemRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(2L, 3L));
+
+    BigDecimal lat = new BigDecimal("63.43");
+    BigDecimal lon = new BigDecimal("10.39");
+    index.sync();
+    assertEquals(List.of(3L, 1L), index.findWithin(lat, lon, 20));
+
+    index.prune();
+    assertEquals(List.of(3L), index.findWithin(lat, lon, 20));
+  }
+
+  private static BigDecimal scaled(double degrees) {
+    return BigDecimal.valueOf(degrees).setScale(6, RoundingMode.HALF_UP);
+  }
+}
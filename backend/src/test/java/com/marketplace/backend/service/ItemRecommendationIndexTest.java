@@ -0,0 +1,106 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.ItemStatus;
+import com.marketplace.backend.repository.ItemRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the ItemRecommendationIndex.
+ */
+class ItemRecommendationIndexTest {
+
+  private static final Long ELECTRONICS = 1L;
+  private static final Long FURNITURE = 2L;
+
+  private ItemRepository itemRepository;
+  private ItemViewCounters counters;
+  private ItemRecommendationIndex index;
+
+  @BeforeEach
+  void setUp() {
+    counters = mock(ItemViewCounters.class);
+    when(counters.getLastWeekCounts()).thenReturn(Map.of(2L, 50L));
+    itemRepository = mock(ItemRepository.class);
+    index = new ItemRecommendationIndex(itemRepository, counters);
+
+    LocalDateTime now = LocalDateTime.now();
+    index.index(1L, ELECTRONICS, 10L, now, ItemStatus.FOR_SALE);
+    index.index(2L, ELECTRONICS, 10L, now.minusDays(60), ItemStatus.FOR_SALE);
+    index.index(3L, ELECTRONICS, 20L, now.minusDays(60), ItemStatus.FOR_SALE);
+    index.index(4L, FURNITURE, 10L, now, ItemStatus.FOR_SALE);
+    index.index(5L, FURNITURE, 10L, now, ItemStatus.SOLD);
+    index.rerank();
+  }
+
+  /**
+   * Test that items are ranked by popularity and recency within a category.
+   */
+  @Test
+  void shouldRankByPopularityAndRecency() {
+    assertEquals(List.of(2L, 1L, 3L), index.recommend(Map.of(ELECTRONICS, 1.0), 99L, 10));
+  }
+
+  /**
+   * Test that the seller's own items and items not for sale are skipped.
+   */
+  @Test
+  void shouldSkipOwnAndUnavailableItems() {
+    assertEquals(List.of(3L), index.recommend(Map.of(ELECTRONICS, 1.0, FURNITURE, 1.0), 10L, 10));
+    assertEquals(List.of(4L), index.recommend(Map.of(FURNITURE, 1.0), 99L, 10));
+  }
+
+  /**
+   * Test that lists are merged by affinity-weighted score up to the limit.
+   */
+  @Test
+  void shouldMergeCategoriesByAffinity() {
+    assertEquals(List.of(4L, 2L), index.recommend(Map.of(ELECTRONICS, 0.1, FURNITURE, 1.0), 99L, 2));
+    assertEquals(List.of(2L, 1L), index.recommend(Map.of(ELECTRONICS, 1.0, FURNITURE, 0.1), 99L, 2));
+  }
+
+  /**
+   * Test that status changes take effect on the next ranking.
+   */
+  @Test
+  void shouldDropItemsNoLongerForSale() {
+    index.updateStatus(2L, ItemStatus.RESERVED);
+    index.remove(3L);
+    index.rerank();
+
+    assertEquals(List.of(1L), index.recommend(Map.of(ELECTRONICS, 1.0), 99L, 10));
+    assertEquals(ELECTRONICS, index.findCategoryId(2L));
+    assertNull(index.findCategoryId(3L));
+  }
+
+  /**
+   * Test that a sync picks up items listed or sold on other instances, and pruning drops items
+   * deleted there.
+   */
+  @Test
+  void shouldSyncAndPruneItemsChangedElsewhere() {
+    index.rebuild();
+    when(itemRepository.findRecommendationFactsUpdatedSince(any(), eq(0L), any())).thenReturn(List.of(
+        new Object[] {2L, ELECTRONICS, 10L, LocalDateTime.now().minusDays(60), ItemStatus.SOLD},
+        new Object[] {6L, FURNITURE, 20L, LocalDateTime.now(), ItemStatus.FOR_SALE}));
+    when(itemRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(1L, 2L, 4L, 5L, 6L));
+
+    index.sync();
+    index.prune();
+    index.rerank();
+
+    assertEquals(List.of(1L), index.recommend(Map.of(ELECTRONICS, 1.0), 99L, 10));
+    assertEquals(2, index.recommend(Map.of(FURNITURE, 1.0), 99L, 10).size());
+    assertTrue(index.recommend(Map.of(FURNITURE, 1.0), 99L, 10).contains(6L));
+  }
+}
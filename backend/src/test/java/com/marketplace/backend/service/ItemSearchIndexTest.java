@@ -0,0 +1,149 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the ItemSearchIndex.
+ */
+class ItemSearchIndexTest {
+
+  private ItemRepository itemRepository;
+  private ItemSearchIndex index;
+
+  @BeforeEach
+  void setUp() {
+    itemRepository = mock(ItemRepository.class);
+    index = new ItemSearchIndex(itemRepository);
+    index.index(1L, "Gaming laptop", "Fast laptop with a good screen");
+    index.index(2L, "Phone case", "Fits most laptops and phones");
+    index.index(3L, "Sofa", "Grey three-seat sofa");
+  }
+
+  /**
+   * Test that title matches rank above description matches.
+   */
+  @Test
+  void shouldRankTitleMatchesFirst() {
+    assertEquals(List.of(1L, 2L), index.search("laptop"));
+  }
+
+  /**
+   * Test that terms match the start of longer tokens.
+   */
+  @Test
+  void shouldMatchPrefixes() {
+    assertEquals(List.of(2L), index.search("pho"));
+    assertEquals(List.of(3L), index.search("THREE sea"));
+  }
+
+  /**
+   * Test that terms match anywhere inside tokens, so items containing the query as a substring
+   * are candidates, ranked below items with tokens starting with the term.
+   */
+  @Test
+  void shouldMatchInsideTokens() {
+    index.index(4L, "iPhone 12", "Red shoes included");
+
+    assertEquals(List.of(2L, 4L), index.search("phone"));
+    assertEquals(List.of(2L, 4L), index.search("ph"));
+    assertEquals(List.of(4L), index.search("ed sho"));
+  }
+
+  /**
+   * Test that candidates do not have to contain the query as a phrase, which the database checks.
+   */
+  @Test
+  void shouldReturnCandidatesWithTermsInAnyOrder() {
+    index.index(4L, "iPhone 12", "Red shoes included");
+
+    assertEquals(List.of(4L), index.search("shoe red"));
+  }
+
+  /**
+   * Test that every term of the query must match.
+   */
+  @Test
+  void shouldRequireAllTerms() {
+    assertEquals(List.of(1L), index.search("laptop screen"));
+    assertTrue(index.search("laptop sofa").isEmpty());
+  }
+
+  /**
+   * Test that re-indexing and removing items updates the postings.
+   */
+  @Test
+  void shouldReflectUpdatesAndRemovals() {
+    index.index(3L, "Leather sofa", "Brown");
+    assertTrue(index.search("grey").isEmpty());
+    assertEquals(List.of(3L), index.search("leather"));
+
+    index.remove(1L);
+    assertEquals(List.of(2L), index.search("laptop"));
+    assertTrue(index.search("gaming").isEmpty());
+    assertTrue(index.search("amin").isEmpty());
+  }
+
+  /**
+   * Test that queries without letter or digit tokens are left to the database.
+   */
+  @Test
+  void shouldNotAnswerQueriesWithoutTokens() {
+    assertNull(index.search("!!! -- ?"));
+  }
+
+  /**
+   * Test that terms found in too many tokens are left to the database instead of dropping matches.
+   */
+  @Test
+  void shouldNotAnswerTruncatedTermExpansions() {
+    for (long id = 10; id < 10 + ItemSearchIndex.MAX_TERM_EXPANSIONS + 1; id++) {
+      index.index(id, "zeta" + id, null);
+    }
+
+    assertNull(index.search("zeta"));
+    assertNull(index.search("sofa zet"));
+    assertNull(index.search("eta"));
+    assertEquals(List.of(10L), index.search("zeta10"));
+  }
+
+  /**
+   * Test that a sync indexes items created or changed on other instances.
+   */
+  @Test
+  void shouldSyncItemsChangedElsewhere() {
+    index.rebuild();
+    when(itemRepository.findSearchDocumentsUpdatedSince(any(), eq(0L), any())).thenReturn(List.of(
+        new Object[] {3L, "Corner sofa", "Green"},
+        new Object[] {4L, "Kayak", "Sea kayak with paddle"}));
+
+    index.sync();
+
+    assertEquals(List.of(4L), index.search("kayak"));
+    assertEquals(List.of(3L), index.search("corner"));
+    assertTrue(index.search("grey").isEmpty());
+  }
+
+  /**
+   * Test that pruning removes items deleted on other instances.
+   */
+  @Test
+  void shouldPruneItemsDeletedElsewhere() {
+    index.rebuild();
+    when(itemRepository.findIdsAfter(eq(0L), any())).thenReturn(List.of(2L, 3L));
+
+    index.prune();
+
+    assertEquals(List.of(2L), index.search("laptop"));
+    assertTrue(index.search("gaming").isEmpty());
+  }
+}
@@ -0,0 +1,55 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemViewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the ItemViewCompactor.
+ */
+class ItemViewCompactorTest {
+
+  private ItemViewRepository itemViewRepository;
+  private JdbcTemplate jdbcTemplate;
+  private PlatformTransactionManager transactionManager;
+  private ItemViewCompactor compactor;
+
+  @BeforeEach
+  void setUp() {
+    itemViewRepository = mock(ItemViewRepository.class);
+    jdbcTemplate = mock(JdbcTemplate.class);
+    transactionManager = mock(PlatformTransactionManager.class);
+    when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+    compactor = new ItemViewCompactor(itemViewRepository, jdbcTemplate, transactionManager, 90);
+
+    LocalDateTime viewedAt = LocalDateTime.now().minusDays(100);
+    List<Object[]> views = List.of(
+        new Object[] {1L, 10L, 100L, 1000L, viewedAt},
+        new Object[] {2L, 10L, 100L, 1000L, viewedAt});
+    when(itemViewRepository.findViewsBefore(any(), any())).thenReturn(views);
+  }
+
+  /**
+   * Test that a batch another instance already deleted part of is rolled back without being counted.
+   */
+  @Test
+  void shouldRollBackBatchCompactedConcurrently() {
+    when(itemViewRepository.deleteViews(List.of(1L, 2L))).thenReturn(1);
+
+    assertEquals(0, compactor.compact());
+
+    verifyNoInteractions(jdbcTemplate);
+    verify(transactionManager).rollback(any());
+    verify(transactionManager, never()).commit(any());
+  }
+}
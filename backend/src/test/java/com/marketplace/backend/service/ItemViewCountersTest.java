@@ -0,0 +1,173 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.repository.ItemViewCountRepository;
+import com.marketplace.backend.repository.ItemViewDailyCountRepository;
+import com.marketplace.backend.repository.ItemViewHourlyCountRepository;
+import com.marketplace.backend.repository.ItemViewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the ItemViewCounters.
+ */
+class ItemViewCountersTest {
+
+  private ItemViewCounters counters;
+  private ItemViewCountRepository itemViewCountRepository;
+  private ItemViewHourlyCountRepository itemViewHourlyCountRepository;
+  private JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+        .thenAnswer(invocation -> new int[((List<?>) invocation.getArgument(1)).size()]);
+    itemViewCountRepository = mock(ItemViewCountRepository.class);
+    itemViewHourlyCountRepository = mock(ItemViewHourlyCountRepository.class);
+    counters = new ItemViewCounters(itemViewCountRepository,
+        itemViewHourlyCountRepository, mock(ItemViewRepository.class),
+        mock(ItemViewDailyCountRepository.class), jdbcTemplate, mock(PlatformTransactionManager.class));
+  }
+
+  /**
+   * Test that each flush adds only the views counted since the previous flush, so instances
+   * counting views of the same item do not overwrite each other.
+   */
+  @Test
+  void shouldFlushViewsCountedSinceLastFlush() {
+    LocalDateTime now = LocalDateTime.now();
+    when(itemViewCountRepository.findCountsAfter(eq(0L), any()))
+        .thenReturn(List.<Object[]>of(new Object[] {1L, 2L}), List.<Object[]>of(new Object[] {1L, 3L}));
+    counters.increment(1L, now);
+    counters.increment(1L, now);
+    counters.flush();
+    counters.increment(1L, now);
+    counters.flush();
+
+    ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.captor();
+    verify(jdbcTemplate, times(2)).batchUpdate(
+        eq("UPDATE ItemViewCounts SET total_views = total_views + ? WHERE item_id = ?"), rows.capture());
+    assertArrayEquals(new Object[] {2L, 1L}, rows.getAllValues().get(0).get(0));
+    assertArrayEquals(new Object[] {1L, 1L}, rows.getAllValues().get(1).get(0));
+    assertEquals(3, counters.getViewCount(1L, ItemViewCounters.Window.ALL_TIME));
+  }
+
+  /**
+   * Test that views that fail to be written are added on the next flush.
+   */
+  @Test
+  void shouldKeepViewsWhenFlushFails() {
+    LocalDateTime now = LocalDateTime.now();
+    counters.increment(1L, now);
+    when(jdbcTemplate.batchUpdate(startsWith("UPDATE ItemViewHourlyCounts"), anyList()))
+        .thenThrow(new DataAccessResourceFailureException("down"))
+        .thenAnswer(invocation -> new int[] {1});
+    counters.flush();
+    counters.increment(1L, now);
+    counters.flush();
+
+    ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.captor();
+    verify(jdbcTemplate, times(2)).batchUpdate(startsWith("UPDATE ItemViewHourlyCounts"), rows.capture());
+    assertEquals(2L, rows.getAllValues().get(1).get(0)[0]);
+  }
+
+  /**
+   * Test that a flush reloads the counts of all instances, so every instance ranks items the
+   * same, and keeps the views of this instance that are not written yet.
+   */
+  @Test
+  void shouldRankByCountsOfAllInstancesAfterFlush() {
+    LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+    counters.increment(1L, hour);
+    when(itemViewCountRepository.findCountsAfter(eq(0L), any()))
+        .thenReturn(List.<Object[]>of(new Object[] {1L, 1L}, new Object[] {2L, 5L}));
+    when(itemViewHourlyCountRepository.findCountsSince(any()))
+        .thenReturn(List.<Object[]>of(new Object[] {1L, hour, 1L}, new Object[] {2L, hour, 5L}));
+    doAnswer(invocation -> {
+      counters.increment(1L, hour);
+      return 0;
+    }).when(itemViewHourlyCountRepository).deleteCountsBefore(any());
+
+    counters.flush();
+
+    assertEquals(List.of(2L, 1L), counters.getTopItemIds(ItemViewCounters.Window.LAST_WEEK));
+    assertEquals(List.of(2L, 1L), counters.getTopItemIds(ItemViewCounters.Window.ALL_TIME));
+    assertEquals(Map.of(1L, 2L, 2L, 5L), counters.getLastWeekCounts());
+    assertEquals(5, counters.getViewCount(2L, ItemViewCounters.Window.LAST_DAY));
+    assertEquals(2, counters.getViewCount(1L, ItemViewCounters.Window.ALL_TIME));
+  }
+
+  /**
+   * Test that views only count towards the windows they fall into.
+   */
+  @Test
+  void shouldCountViewsPerWindow() {
+    LocalDateTime now = LocalDateTime.now();
+    counters.increment(1L, now);
+    counters.increment(1L, now.minusDays(2));
+    counters.increment(1L, now.minusDays(30));
+
+    assertEquals(3, counters.getViewCount(1L, ItemViewCounters.Window.ALL_TIME));
+    assertEquals(2, counters.getViewCount(1L, ItemViewCounters.Window.LAST_WEEK));
+    assertEquals(1, counters.getViewCount(1L, ItemViewCounters.Window.LAST_DAY));
+    assertEquals(0, counters.getViewCount(2L, ItemViewCounters.Window.ALL_TIME));
+  }
+
+  /**
+   * Test that the rankings order items by views within each window.
+   */
+  @Test
+  void shouldRankMostViewedItemsPerWindow() {
+    LocalDateTime now = LocalDateTime.now();
+    for (int i = 0; i < 5; i++) {
+      counters.increment(1L, now.minusDays(3));
+    }
+    for (int i = 0; i < 3; i++) {
+      counters.increment(2L, now);
+    }
+    counters.increment(3L, now);
+
+    counters.refreshRankings();
+
+    assertEquals(List.of(1L, 2L, 3L), counters.getTopItemIds(ItemViewCounters.Window.ALL_TIME));
+    assertEquals(List.of(1L, 2L, 3L), counters.getTopItemIds(ItemViewCounters.Window.LAST_WEEK));
+    assertEquals(List.of(2L, 3L), counters.getTopItemIds(ItemViewCounters.Window.LAST_DAY));
+  }
+
+  /**
+   * Test that the rankings are capped at the top K items.
+   */
+  @Test
+  void shouldKeepOnlyTopK() {
+    LocalDateTime now = LocalDateTime.now();
+    for (long itemId = 1; itemId <= ItemViewCounters.TOP_K + 20; itemId++) {
+      for (int i = 0; i < itemId; i++) {
+        counters.increment(itemId, now);
+      }
+    }
+
+    counters.refreshRankings();
+
+    List<Long> top = counters.getTopItemIds(ItemViewCounters.Window.ALL_TIME);
+    assertEquals(ItemViewCounters.TOP_K, top.size());
+    assertEquals(ItemViewCounters.TOP_K + 20L, top.get(0));
+    assertEquals(21L, top.get(top.size() - 1));
+  }
+}
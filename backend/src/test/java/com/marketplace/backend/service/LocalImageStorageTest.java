@@ -0,0 +1,74 @@
+package com.marketplace.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the LocalImageStorage.
+ */
+class LocalImageStorageTest {
+
+  @TempDir
+  Path root;
+
+  private ImageProcessor imageProcessor;
+  private LocalImageStorage storage;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    imageProcessor = new ImageProcessor(1600, 320, 0.85f, 1);
+    storage = new LocalImageStorage(imageProcessor, root.toString(), "/api/images");
+  }
+
+  @AfterEach
+  void tearDown() {
+    imageProcessor.shutdown();
+  }
+
+  /**
+   * Test that images are stored once under their content address and can be deleted again.
+   */
+  @Test
+  void shouldStoreImagesByContent() throws Exception {
+    ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "jpeg", jpeg);
+    byte[] content = jpeg.toByteArray();
+    String publicId = ImageStorage.publicIdFor(3L, content);
+
+    String url = storage.uploadImage(3L, new MockMultipartFile("images", "a.jpg", "image/jpeg", content)).url();
+    String again = storage.uploadImage(3L, new MockMultipartFile("images", "b.jpg", "image/jpeg", content)).url();
+
+    assertEquals("/api/images/" + publicId + ".jpg", url);
+    assertEquals(url, again);
+    assertEquals(publicId, storage.publicIdOf(url));
+    Path file = storage.resolve(publicId).orElseThrow();
+    assertArrayEquals(content, Files.readAllBytes(file));
+    try (var files = Files.list(file.getParent())) {
+      assertEquals(1, files.count());
+    }
+
+    storage.deleteImage(publicId);
+    assertFalse(Files.exists(file));
+  }
+
+  /**
+   * Test that public IDs cannot point outside the storage directory.
+   */
+  @Test
+  void shouldRejectPathsOutsideRoot() {
+    assertTrue(storage.resolve("../secret").isEmpty());
+    assertTrue(storage.resolve("items/1/../../../secret").isEmpty());
+    assertThrows(IllegalArgumentException.class, () -> storage.publicIdOf("https://mock.url/fake-image.jpg"));
+  }
+}
@@ -0,0 +1,108 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.MessageEventDto;
+import com.marketplace.backend.security.CurrentUser;
+import com.marketplace.backend.security.JwtService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for the MessageStreamService.
+ */
+class MessageStreamServiceTest {
+
+  private InProcessMessageEventBroker broker;
+  private MessageStreamService messageStreamService;
+
+  @BeforeEach
+  void setUp() {
+    broker = new InProcessMessageEventBroker();
+    messageStreamService = new MessageStreamService(broker, mock(CurrentUser.class), mock(JwtService.class));
+  }
+
+  @AfterEach
+  void tearDown() {
+    messageStreamService.shutdown();
+  }
+
+  /**
+   * Test that opening more than the maximum number of streams closes the user's oldest stream.
+   */
+  @Test
+  void shouldCloseOldestStreamWhenUserOpensTooMany() throws Exception {
+    List<RecordingEmitter> emitters = new ArrayList<>();
+    for (int i = 0; i <= MessageStreamService.MAX_STREAMS_PER_USER; i++) {
+      RecordingEmitter emitter = new RecordingEmitter(null);
+      emitters.add(emitter);
+      messageStreamService.open(1L, emitter);
+    }
+    messageStreamService.open(2L, new RecordingEmitter(null));
+
+    assertEquals(MessageStreamService.MAX_STREAMS_PER_USER + 1, messageStreamService.getOpenStreamCount());
+
+    broker.publish(1L, new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null));
+    assertFalse(emitters.get(0).sent.await(200, TimeUnit.MILLISECONDS));
+    for (RecordingEmitter emitter : emitters.subList(1, emitters.size())) {
+      assertTrue(emitter.sent.await(1, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Test that a client that stops reading does not hold up the streams of other users.
+   */
+  @Test
+  void shouldDeliverToOtherStreamsWhileOneIsBlocked() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingEmitter blocked = new RecordingEmitter(release);
+    RecordingEmitter other = new RecordingEmitter(null);
+    messageStreamService.open(1L, blocked);
+    messageStreamService.open(2L, other);
+
+    try {
+      broker.publish(1L, new MessageEventDto(MessageEventDto.MESSAGE, 10L, 2L, null));
+      assertTrue(blocked.sent.await(1, TimeUnit.SECONDS));
+      broker.publish(2L, new MessageEventDto(MessageEventDto.MESSAGE, 10L, 1L, null));
+
+      assertTrue(other.sent.await(1, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  /**
+   * Emitter that records sends, optionally blocking in them like a write to a client that
+   * stopped reading.
+   */
+  private static class RecordingEmitter extends SseEmitter {
+
+    private final CountDownLatch sent = new CountDownLatch(1);
+    private final CountDownLatch release;
+
+    RecordingEmitter(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+      sent.countDown();
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.config.VippsConfig;
+import com.marketplace.backend.model.Item;
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.ItemRepository;
+import com.marketplace.backend.repository.OrderRepository;
+import com.marketplace.backend.repository.PaymentSessionRepository;
+import com.marketplace.backend.repository.UserRepository;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the PaymentService, calling a local stub of the Vipps API.
+ */
+class PaymentServiceTest {
+
+  private static final String ORDER_ID = "order-1-2-123456";
+  private static final long TOKEN_DELAY_MS = 200;
+
+  static {
+    // Send stub responses without waiting for delayed ACKs, which would dominate the latency
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final AtomicInteger tokenRequests = new AtomicInteger();
+  private HttpServer vipps;
+  private ItemRepository itemRepository;
+  private UserRepository userRepository;
+  private PaymentService paymentService;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    vipps = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    vipps.createContext("/accesstoken/get", exchange -> {
+      tokenRequests.incrementAndGet();
+      sleep(TOKEN_DELAY_MS);
+      respond(exchange, "{\"access_token\": \"token\", \"expires_in\": \"3600\"}");
+    });
+    vipps.createContext("/ecomm/v2/payments", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      respond(exchange, "{\"url\": \"https://vipps.no/pay\"}");
+    });
+    vipps.setExecutor(Executors.newFixedThreadPool(8));
+    vipps.start();
+
+    itemRepository = mock(ItemRepository.class);
+    userRepository = mock(UserRepository.class);
+    paymentService = newPaymentService(new PaymentSessionStore(mock(PaymentSessionRepository.class), 24));
+
+    Item item = new Item();
+    item.setSeller(new User());
+    item.setPrice(100.0);
+    when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+    when(itemRepository.markSoldIfForSale(eq(1L), eq(2L), any())).thenReturn(1);
+    when(itemRepository.existsById(1L)).thenReturn(true);
+    when(userRepository.findById(2L)).thenReturn(Optional.of(new User()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    paymentService.shutdown();
+    vipps.stop(0);
+    ((ExecutorService) vipps.getExecutor()).shutdownNow();
+  }
+
+  /**
+   * Test that checkouts reuse the cached access token instead of fetching one each time.
+   */
+  @Test
+  void shouldReuseAccessTokenAcrossCheckouts() {
+    // The first checkout fetches the token and opens the connection
+    assertEquals("https://vipps.no/pay", initiatePayment(0));
+
+    int checkouts = 20;
+    long start = System.nanoTime();
+    for (int i = 1; i <= checkouts; i++) {
+      assertEquals("https://vipps.no/pay", initiatePayment(i));
+    }
+    long averageMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) / checkouts;
+
+    assertEquals(1, tokenRequests.get());
+    assertTrue(averageMs < TOKEN_DELAY_MS, "Average checkout latency was " + averageMs + " ms");
+  }
+
+  /**
+   * Test that concurrent checkouts without a token share a single token request.
+   */
+  @Test
+  void shouldFetchAccessTokenOnceForConcurrentCheckouts() throws Exception {
+    int checkouts = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(checkouts);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<String>> urls = new ArrayList<>();
+      for (int i = 0; i < checkouts; i++) {
+        int order = i;
+        urls.add(executor.submit(() -> {
+          start.await();
+          return initiatePayment(order);
+        }));
+      }
+      start.countDown();
+      for (Future<String> url : urls) {
+        assertEquals("https://vipps.no/pay", url.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, tokenRequests.get());
+  }
+
+  /**
+   * Test that waiters are completed by the callback, and later waiters complete immediately.
+   */
+  @Test
+  void shouldCompleteWaitersWhenOrderIsFinalized() throws Exception {
+    CompletableFuture<Boolean> first = paymentService.awaitOrderFinalized(ORDER_ID);
+    CompletableFuture<Boolean> second = paymentService.awaitOrderFinalized(ORDER_ID);
+    assertFalse(first.isDone());
+    assertSame(first, second);
+
+    paymentService.finalizeOrderFromVippsCallback(ORDER_ID, Map.of("transactionInfo", Map.of("status", "SALE")));
+
+    assertTrue(first.get(1, TimeUnit.SECONDS));
+    assertTrue(paymentService.awaitOrderFinalized(ORDER_ID).getNow(false));
+  }
+
+  /**
+   * Test that waiters get false when the callback does not arrive in time.
+   */
+  @Test
+  void shouldCompleteWithFalseOnTimeout() throws Exception {
+    ReflectionTestUtils.setField(paymentService, "confirmationTimeoutMs", 50L);
+
+    CompletableFuture<Boolean> confirmation = paymentService.awaitOrderFinalized(ORDER_ID);
+
+    assertFalse(confirmation.get(1, TimeUnit.SECONDS));
+    assertNotSame(confirmation, paymentService.awaitOrderFinalized(ORDER_ID));
+  }
+
+  /**
+   * Test that waiters are completed when the callback is handled by another instance sharing
+   * the payment sessions.
+   */
+  @Test
+  void shouldCompleteWaitersWhenAnotherInstanceFinalizesOrder() throws Exception {
+    Set<String> finalizedOrders = ConcurrentHashMap.newKeySet();
+    PaymentSessionRepository sharedRepository = mock(PaymentSessionRepository.class);
+    when(sharedRepository.findById(any())).thenReturn(Optional.empty());
+    when(sharedRepository.markFinalized(any(), any())).thenAnswer(invocation -> {
+      finalizedOrders.add(invocation.getArgument(0));
+      return 1;
+    });
+    when(sharedRepository.findFinalizedOrderIds(any())).thenAnswer(invocation ->
+        invocation.<Collection<String>>getArgument(0).stream().filter(finalizedOrders::contains).toList());
+    PaymentService waiting = newPaymentService(new PaymentSessionStore(sharedRepository, 24));
+    PaymentService finalizing = newPaymentService(new PaymentSessionStore(sharedRepository, 24));
+    try {
+      CompletableFuture<Boolean> confirmation = waiting.awaitOrderFinalized(ORDER_ID);
+      waiting.pollPendingConfirmations();
+      assertFalse(confirmation.isDone());
+
+      finalizing.finalizeOrderFromVippsCallback(ORDER_ID, Map.of("transactionInfo", Map.of("status", "SALE")));
+      assertFalse(confirmation.isDone());
+      waiting.pollPendingConfirmations();
+
+      assertTrue(confirmation.getNow(false));
+    } finally {
+      waiting.shutdown();
+      finalizing.shutdown();
+    }
+  }
+
+  private PaymentService newPaymentService(PaymentSessionStore paymentSessionStore) {
+    PaymentService service = new PaymentService(userRepository, itemRepository, mock(OrderRepository.class),
+        mock(ItemRecommendationIndex.class), paymentSessionStore, vippsRestTemplate(),
+        mock(PlatformTransactionManager.class));
+    ReflectionTestUtils.setField(service, "confirmationTimeoutMs", 5000L);
+    for (String field : List.of("clientId", "clientSecret", "subscriptionKey", "merchantSerialNumber")) {
+      ReflectionTestUtils.setField(service, field, "test");
+    }
+    ReflectionTestUtils.setField(service, "vippsBaseUrl", "http://localhost:" + vipps.getAddress().getPort());
+    return service;
+  }
+
+  private static RestTemplate vippsRestTemplate() {
+    VippsConfig config = new VippsConfig();
+    ReflectionTestUtils.setField(config, "connectTimeoutMs", 1000L);
+    ReflectionTestUtils.setField(config, "readTimeoutMs", 5000L);
+    return config.vippsRestTemplate();
+  }
+
+  private String initiatePayment(int order) {
+    return paymentService.initiatePayment("order-1-2-" + order, 100.0, "4712345678",
+        "http://localhost/callback", "http://localhost/fallback");
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.model.PaymentSession;
+import com.marketplace.backend.repository.PaymentSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the PaymentSessionStore.
+ */
+class PaymentSessionStoreTest {
+
+  private PaymentSessionRepository repository;
+  private PaymentSessionStore store;
+
+  @BeforeEach
+  void setUp() {
+    repository = mock(PaymentSessionRepository.class);
+    when(repository.findById(any())).thenReturn(Optional.empty());
+    store = new PaymentSessionStore(repository, 24);
+  }
+
+  /**
+   * Test that a session finalized by another instance is read from the database and cached.
+   */
+  @Test
+  void shouldReadThroughFinalizedSessions() {
+    PaymentSession session = new PaymentSession("order-1-2-3", LocalDateTime.now());
+    session.markFinalized(LocalDateTime.now());
+    when(repository.findById("order-1-2-3")).thenReturn(Optional.of(session));
+
+    assertTrue(store.isFinalized("order-1-2-3"));
+    assertTrue(store.isFinalized("order-1-2-3"));
+    assertFalse(store.isFinalized("order-unknown"));
+
+    verify(repository, times(1)).findById("order-1-2-3");
+  }
+
+  /**
+   * Test that a pending session is seen as finalized once it is finalized.
+   */
+  @Test
+  void shouldFinalizePendingSessions() {
+    store.createPending("order-1-2-3");
+    assertFalse(store.isFinalized("order-1-2-3"));
+
+    when(repository.markFinalized(eq("order-1-2-3"), any())).thenReturn(1);
+    store.markFinalized("order-1-2-3");
+
+    assertTrue(store.isFinalized("order-1-2-3"));
+    verify(repository, times(1)).save(any(PaymentSession.class));
+    verify(repository, never()).saveAndFlush(any(PaymentSession.class));
+  }
+}
@@ -0,0 +1,118 @@
+package com.marketplace.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the UserAffinityCache.
+ */
+class UserAffinityCacheTest {
+
+  private UserAffinityCache cache;
+
+  @BeforeEach
+  void setUp() {
+    cache = new UserAffinityCache();
+  }
+
+  /**
+   * Test that recent views weigh more than older ones.
+   */
+  @Test
+  void shouldWeighRecentViewsHigher() {
+    Map<Long, Double> affinities = UserAffinityCache.fromRecentCategories(List.of(1L, 2L, 2L));
+
+    assertEquals(1.0, affinities.get(1L), 1e-9);
+    assertEquals(UserAffinityCache.DECAY + UserAffinityCache.DECAY * UserAffinityCache.DECAY,
+        affinities.get(2L), 1e-9);
+  }
+
+  /**
+   * Test that affinities are loaded once and then updated incrementally.
+   */
+  @Test
+  void shouldUpdateCachedAffinitiesWithNewViews() {
+    AtomicInteger loads = new AtomicInteger();
+    cache.get(1L, userId -> {
+      loads.incrementAndGet();
+      return List.of(5L);
+    });
+
+    cache.recordView(1L, 6L);
+    Map<Long, Double> affinities = cache.get(1L, userId -> {
+      loads.incrementAndGet();
+      return List.of();
+    });
+
+    assertEquals(1, loads.get());
+    assertEquals(1.0, affinities.get(6L), 1e-9);
+    assertEquals(UserAffinityCache.DECAY, affinities.get(5L), 1e-9);
+  }
+
+  /**
+   * Test that expired affinities are loaded again, picking up views written on other instances.
+   */
+  @Test
+  void shouldReloadExpiredAffinities() {
+    UserAffinityCache expiring = new UserAffinityCache(0);
+    expiring.get(1L, userId -> List.of(5L));
+
+    assertEquals(Map.of(6L, 1.0, 5L, UserAffinityCache.DECAY), expiring.get(1L, userId -> List.of(6L, 5L)));
+  }
+
+  /**
+   * Test that affinities loaded while a view of the user is written are not cached, since the
+   * load may have missed the view.
+   */
+  @Test
+  void shouldNotCacheAffinitiesLoadedDuringView() {
+    AtomicInteger loads = new AtomicInteger();
+    cache.get(1L, userId -> {
+      loads.incrementAndGet();
+      cache.recordView(1L, 6L);
+      return List.of(5L);
+    });
+
+    Map<Long, Double> affinities = cache.get(1L, userId -> {
+      loads.incrementAndGet();
+      return List.of(6L, 5L);
+    });
+
+    assertEquals(2, loads.get());
+    assertEquals(1.0, affinities.get(6L), 1e-9);
+  }
+
+  /**
+   * Test that views of users not in the cache are ignored.
+   */
+  @Test
+  void shouldIgnoreViewsOfUncachedUsers() {
+    cache.recordView(2L, 6L);
+
+    assertEquals(Map.of(7L, 1.0), cache.get(2L, userId -> List.of(7L)));
+  }
+
+  /**
+   * Test that only the strongest categories are kept.
+   */
+  @Test
+  void shouldKeepStrongestCategories() {
+    List<Long> categories = new ArrayList<>();
+    for (long categoryId = 1; categoryId <= UserAffinityCache.MAX_CATEGORIES + 5; categoryId++) {
+      categories.add(0, categoryId);
+    }
+
+    Map<Long, Double> affinities = UserAffinityCache.fromRecentCategories(categories);
+
+    assertEquals(UserAffinityCache.MAX_CATEGORIES, affinities.size());
+    assertTrue(affinities.containsKey(UserAffinityCache.MAX_CATEGORIES + 5L));
+    assertFalse(affinities.containsKey(1L));
+  }
+}
@@ -0,0 +1,81 @@
+package com.marketplace.backend.service;
+
+import com.marketplace.backend.dto.UserUpdateDto;
+import com.marketplace.backend.model.Role;
+import com.marketplace.backend.model.User;
+import com.marketplace.backend.repository.UserRepository;
+import com.marketplace.backend.security.CurrentUser;
+import com.marketplace.backend.security.TokenRevocationCache;
+import com.marketplace.backend.security.UserSnapshotCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the UserService.
+ */
+class UserServiceTest {
+
+  private static final String PICTURE_URL = "https://images.test/items/1/picture.jpg";
+
+  private UserRepository userRepository;
+  private ImageStorage imageStorage;
+  private UserService userService;
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    imageStorage = mock(ImageStorage.class);
+    userService = new UserService(userRepository, imageStorage, mock(AssetDeletionOutbox.class),
+        mock(PlatformTransactionManager.class), mock(CurrentUser.class), mock(UserSnapshotCache.class),
+        mock(TokenRevocationCache.class));
+
+    User user = new User("John Doe", "john@example.com", "password123", Role.USER, "12345678", null, "english");
+    user.setId(1L);
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+    when(userRepository.save(any())).thenThrow(new DataIntegrityViolationException("Update failed"));
+  }
+
+  /**
+   * Test that a profile picture uploaded by an update that fails to commit is deleted again.
+   */
+  @Test
+  void shouldDiscardNewProfilePictureWhenUpdateFails() throws Exception {
+    when(imageStorage.uploadImage(eq(1L), any()))
+        .thenReturn(new UploadedImage(PICTURE_URL, null, List.of("items/1/picture")));
+
+    assertThrows(DataIntegrityViolationException.class, () -> userService.updateUser(1L, withPicture()));
+
+    verify(imageStorage).deleteImage("items/1/picture");
+  }
+
+  /**
+   * Test that a failed update keeps a profile picture whose content was already stored, since
+   * other images may use it.
+   */
+  @Test
+  void shouldKeepExistingPictureWhenUpdateFails() throws Exception {
+    when(imageStorage.uploadImage(eq(1L), any())).thenReturn(new UploadedImage(PICTURE_URL, null, List.of()));
+
+    assertThrows(DataIntegrityViolationException.class, () -> userService.updateUser(1L, withPicture()));
+
+    verify(imageStorage, never()).deleteImage(anyString());
+  }
+
+  private static UserUpdateDto withPicture() {
+    UserUpdateDto dto = new UserUpdateDto();
+    dto.setProfilePicture(new MockMultipartFile("profilePicture", "avatar.jpg", "image/jpeg", new byte[] {1, 2, 3}));
+    return dto;
+  }
+}
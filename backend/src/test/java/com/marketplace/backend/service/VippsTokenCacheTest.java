@@ -0,0 +1,118 @@
+package com.marketplace.backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the VippsTokenCache.
+ */
+class VippsTokenCacheTest {
+
+  private VippsTokenCache cache;
+
+  @AfterEach
+  void tearDown() {
+    cache.shutdown();
+  }
+
+  /**
+   * Test that a token due for refresh is still used while a new one is fetched in the background.
+   */
+  @Test
+  void shouldRefreshTokenInBackground() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    cache = new VippsTokenCache(() -> {
+      int fetch = fetches.incrementAndGet();
+      Instant now = Instant.now();
+      if (fetch == 1) {
+        return new VippsTokenCache.AccessToken("first", now, now.plusSeconds(60));
+      }
+      release.join();
+      return VippsTokenCache.AccessToken.issued("second", Duration.ofHours(1), now);
+    });
+
+    assertEquals("first", cache.get());
+    assertEquals("first", cache.get());
+    assertEquals("first", cache.get());
+
+    release.complete(null);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!"second".equals(cache.get()) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals("second", cache.get());
+    assertEquals(2, fetches.get());
+  }
+
+  /**
+   * Test that a token is refreshed ahead of its expiry without anyone asking for it.
+   */
+  @Test
+  void shouldRefreshIdleTokenBeforeExpiry() throws Exception {
+    AtomicInteger fetches = new AtomicInteger();
+    CountDownLatch refreshed = new CountDownLatch(1);
+    cache = new VippsTokenCache(() -> {
+      int fetch = fetches.incrementAndGet();
+      Instant now = Instant.now();
+      if (fetch == 1) {
+        return new VippsTokenCache.AccessToken("first", now.plusMillis(100), now.plusSeconds(60));
+      }
+      refreshed.countDown();
+      return VippsTokenCache.AccessToken.issued("second", Duration.ofHours(1), now);
+    });
+
+    assertEquals("first", cache.get());
+
+    assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!"second".equals(cache.get()) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals("second", cache.get());
+    assertEquals(2, fetches.get());
+  }
+
+  /**
+   * Test that callers wait for a new token once the current one expired, and see fetch errors.
+   */
+  @Test
+  void shouldFetchTokenWhenExpired() {
+    AtomicInteger fetches = new AtomicInteger();
+    cache = new VippsTokenCache(() -> {
+      int fetch = fetches.incrementAndGet();
+      if (fetch == 2) {
+        throw new IllegalStateException("Vipps unavailable");
+      }
+      Instant now = Instant.now();
+      return new VippsTokenCache.AccessToken("token-" + fetch, now, now.minusSeconds(1));
+    });
+
+    assertEquals("token-1", cache.get());
+    assertThrows(IllegalStateException.class, () -> cache.get());
+    assertEquals("token-3", cache.get());
+  }
+
+  /**
+   * Test that tokens are refreshed after three quarters of their lifetime and dropped before expiry.
+   */
+  @Test
+  void shouldScheduleRefreshBeforeExpiry() {
+    cache = new VippsTokenCache(() -> null);
+    Instant now = Instant.now();
+
+    VippsTokenCache.AccessToken token = VippsTokenCache.AccessToken.issued("token", Duration.ofHours(24), now);
+
+    assertEquals(now.plus(Duration.ofHours(18)), token.refreshAt());
+    assertEquals(now.plus(Duration.ofHours(24)).minusSeconds(30), token.expiresAt());
+  }
+}